@@ -0,0 +1,55 @@
+package com.selfservice.application.auth;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Reads claims from the Keycloak access tokens the bot holds. Signatures are not checked; the
+ * tokens came straight from the token endpoint.
+ */
+public final class AccessTokens {
+
+    private static final Logger log = LoggerFactory.getLogger(AccessTokens.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private AccessTokens() {
+    }
+
+    /**
+     * The Keycloak subject ({@code sub} claim) of a JWT access token, or {@code null} if the token
+     * is not a JWT carrying one.
+     */
+    public static String subject(String accessToken) {
+        if (!StringUtils.hasText(accessToken)) {
+            return null;
+        }
+        String[] parts = accessToken.split("\\.");
+        if (parts.length < 2) {
+            return null;
+        }
+        try {
+            JsonNode claims = JSON.readTree(new String(Base64.getUrlDecoder().decode(parts[1]),
+                    StandardCharsets.UTF_8));
+            String subject = claims.path("sub").asText(null);
+            return StringUtils.hasText(subject) ? subject : null;
+        } catch (Exception e) {
+            log.debug("Access token payload could not be read: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Who a token belongs to, for keying per-user data: its subject when it carries one, so a
+     * refreshed token keeps the same key, otherwise the token itself.
+     */
+    public static String owner(String accessToken) {
+        String subject = subject(accessToken);
+        return subject != null ? "sub:" + subject : "token:" + accessToken;
+    }
+}
@@ -2,6 +2,7 @@ package com.selfservice.application.auth;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
@@ -39,21 +40,19 @@ public class KeycloakAuthService {
             @Value("${keycloak.token-endpoint}") String tokenEndpoint,
             @Value("${keycloak.client-credentials.client-id}") String clientId,
             @Value("${keycloak.client-credentials.client-secret}") String clientSecret,
-            @Value("${keycloak.allow-insecure-certs:false}") boolean allowInsecure) {
+            @Value("${keycloak.allow-insecure-certs:false}") boolean allowInsecure,
+            @Qualifier("channelRestTemplate") RestTemplate channelRestTemplate) {
 
         this.tokenEndpoint = Objects.requireNonNull(tokenEndpoint, "keycloak.token-endpoint is required");
         this.clientId = Objects.requireNonNull(clientId, "keycloak.client-id is required");
         this.clientSecret = Objects.requireNonNull(clientSecret, "keycloak.client-secret is required");
         this.allowInsecure = allowInsecure;
 
-        this.rest = buildRestTemplate(allowInsecure);
+        this.rest = allowInsecure ? buildInsecureRestTemplate() : channelRestTemplate;
         log.info("KeycloakAuthService configured endpoint={} insecure={}", this.tokenEndpoint, this.allowInsecure);
     }
 
-    private RestTemplate buildRestTemplate(boolean insecure) {
-        if (!insecure)
-            return new RestTemplate();
-
+    private RestTemplate buildInsecureRestTemplate() {
         try {
             // create an SSLContext that trusts all certificates
             TrustManager[] trustAllCerts = new TrustManager[] {
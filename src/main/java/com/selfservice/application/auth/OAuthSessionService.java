@@ -2,6 +2,7 @@ package com.selfservice.application.auth;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
@@ -46,7 +47,8 @@ public class OAuthSessionService {
             @Value("${keycloak.allow-insecure-certs:false}") boolean allowInsecure,
             @Value("${keycloak.logout-endpoint:}") String logoutEndpoint,
             @Value("${keycloak.logout-redirect-uri:}") String logoutRedirectUri,
-            PkceStore pkceStore
+            PkceStore pkceStore,
+            @Qualifier("channelRestTemplate") RestTemplate channelRestTemplate
     ) {
         this.authEndpoint = Objects.requireNonNull(authEndpoint);
         this.tokenEndpoint = Objects.requireNonNull(tokenEndpoint);
@@ -60,7 +62,8 @@ public class OAuthSessionService {
             this.logoutRedirectUri = logoutRedirectUri;
         }
         this.pkceStore = pkceStore;
-        this.rest = new RestTemplate(); // if you need trust-all, copy your KC RestTemplate here
+        // Insecure mode keeps the JDK client, which picks up the trust-all defaults KeycloakAuthService installs.
+        this.rest = allowInsecure ? new RestTemplate() : channelRestTemplate;
         log.info("OAuthSessionService ready, redirectUri={}", redirectUri);
     }
 
@@ -18,7 +18,11 @@ public class ApimanEndpointsProperties {
     private Endpoint troubleTicket = new Endpoint();
     private Endpoint impersonationInitiate = new Endpoint();
     private Endpoint bill = new Endpoint();
+    private Endpoint billDocument = new Endpoint();
     private Endpoint account = new Endpoint();
+    private ResponseCache responseCache = new ResponseCache();
+    private Resilience resilience = new Resilience();
+    private Hedging hedging = new Hedging();
 
     private static final Map<String, String> DEFAULT_FIND_USER_QUERY_PARAMS = Map.of(
             "offset", "0",
@@ -46,6 +50,10 @@ public class ApimanEndpointsProperties {
             "sort", "-billDate"
     );
 
+    private static final long DEFAULT_PRODUCT_CACHE_TTL_SECONDS = 60;
+    private static final long DEFAULT_TROUBLE_TICKET_CACHE_TTL_SECONDS = 30;
+    private static final long DEFAULT_BILL_CACHE_TTL_SECONDS = 120;
+
     public String getBaseUrl() {
         return normalize(baseUrl);
     }
@@ -90,6 +98,10 @@ public class ApimanEndpointsProperties {
         return DEFAULT_PRODUCT_QUERY_PARAMS;
     }
 
+    public long getProductCacheTtlSeconds() {
+        return resolveCacheTtl(product, DEFAULT_PRODUCT_CACHE_TTL_SECONDS);
+    }
+
     public void setProduct(Endpoint product) {
         this.product = product;
     }
@@ -119,6 +131,10 @@ public class ApimanEndpointsProperties {
         return DEFAULT_TROUBLE_TICKET_QUERY_PARAMS;
     }
 
+    public long getTroubleTicketCacheTtlSeconds() {
+        return resolveCacheTtl(troubleTicket, DEFAULT_TROUBLE_TICKET_CACHE_TTL_SECONDS);
+    }
+
     public void setTroubleTicket(Endpoint troubleTicket) {
         this.troubleTicket = troubleTicket;
     }
@@ -139,10 +155,33 @@ public class ApimanEndpointsProperties {
         return DEFAULT_BILL_QUERY_PARAMS;
     }
 
+    public long getBillCacheTtlSeconds() {
+        return resolveCacheTtl(bill, DEFAULT_BILL_CACHE_TTL_SECONDS);
+    }
+
     public void setBill(Endpoint bill) {
         this.bill = bill;
     }
 
+    /**
+     * URL of a bill's PDF, with {@code {billId}} standing for the bill; defaults to the bill's
+     * {@code document} resource under the bill endpoint.
+     */
+    public String getBillDocumentUrl() {
+        if (billDocument != null && billDocument.getUrl() != null) {
+            return billDocument.getUrl();
+        }
+        String billUrl = getBillUrl();
+        if (billUrl == null) {
+            return null;
+        }
+        return (billUrl.endsWith("/") ? billUrl : billUrl + "/") + "{billId}/document";
+    }
+
+    public void setBillDocument(Endpoint billDocument) {
+        this.billDocument = billDocument;
+    }
+
     public String getAccountUrl() {
         if (account != null && account.getUrl() != null) {
             return account.getUrl();
@@ -179,6 +218,83 @@ public class ApimanEndpointsProperties {
         this.impersonationInitiate = impersonationInitiate;
     }
 
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache == null ? new ResponseCache() : responseCache;
+    }
+
+    public Resilience getResilience() {
+        return resilience;
+    }
+
+    public void setResilience(Resilience resilience) {
+        this.resilience = resilience == null ? new Resilience() : resilience;
+    }
+
+    public Hedging getHedging() {
+        return hedging;
+    }
+
+    public void setHedging(Hedging hedging) {
+        this.hedging = hedging == null ? new Hedging() : hedging;
+    }
+
+    /**
+     * Whether GETs to the named endpoint may be hedged. Unless configured otherwise only the
+     * lookups the login waits on, find-user and account, are.
+     */
+    public boolean isHedged(String name) {
+        Endpoint endpoint = endpoint(name);
+        if (endpoint == null) {
+            return false;
+        }
+        if (endpoint.getHedged() == null) {
+            return "find-user".equals(name) || "account".equals(name);
+        }
+        return endpoint.getHedged();
+    }
+
+    /**
+     * The configured endpoints by name with their resolved URLs, for telling which endpoint an
+     * outbound call goes to. Endpoints without a URL are left out.
+     */
+    public Map<String, String> getEndpointUrls() {
+        Map<String, String> urls = new LinkedHashMap<>();
+        putIfPresent(urls, "find-user", getFindUserUrl());
+        putIfPresent(urls, "product", getProductUrl());
+        putIfPresent(urls, "trouble-ticket", getTroubleTicketUrl());
+        putIfPresent(urls, "impersonation-initiate", getImpersonationInitiateUrl());
+        putIfPresent(urls, "bill", getBillUrl());
+        putIfPresent(urls, "account", getAccountUrl());
+        return urls;
+    }
+
+    /**
+     * Concurrent calls allowed to the named endpoint, falling back to the resilience default.
+     */
+    public int getMaxConcurrentCalls(String name) {
+        Endpoint endpoint = endpoint(name);
+        if (endpoint == null || endpoint.getMaxConcurrentCalls() == null) {
+            return Math.max(1, resilience.getMaxConcurrentCalls());
+        }
+        return Math.max(1, endpoint.getMaxConcurrentCalls());
+    }
+
+    /**
+     * Connect and read timeout for calls to the named endpoint, falling back to the resilience
+     * default.
+     */
+    public long getTimeoutMillis(String name) {
+        Endpoint endpoint = endpoint(name);
+        if (endpoint == null || endpoint.getTimeoutMillis() == null) {
+            return Math.max(1L, resilience.getTimeoutMillis());
+        }
+        return Math.max(1L, endpoint.getTimeoutMillis());
+    }
+
     public boolean hasFindUser() {
         return getFindUserUrl() != null;
     }
@@ -206,6 +322,34 @@ public class ApimanEndpointsProperties {
         return Map.copyOf(resolved);
     }
 
+    private long resolveCacheTtl(Endpoint endpoint, long defaultSeconds) {
+        if (endpoint == null || endpoint.getCacheTtlSeconds() == null) {
+            return defaultSeconds;
+        }
+        return Math.max(0L, endpoint.getCacheTtlSeconds());
+    }
+
+    private Endpoint endpoint(String name) {
+        if (name == null) {
+            return null;
+        }
+        return switch (name) {
+            case "find-user" -> findUser;
+            case "product" -> product;
+            case "trouble-ticket" -> troubleTicket;
+            case "impersonation-initiate" -> impersonationInitiate;
+            case "bill" -> bill;
+            case "account" -> account;
+            default -> null;
+        };
+    }
+
+    private static void putIfPresent(Map<String, String> urls, String name, String url) {
+        if (url != null) {
+            urls.put(name, url);
+        }
+    }
+
     private String normalize(String value) {
         if (!StringUtils.hasText(value)) {
             return null;
@@ -217,6 +361,23 @@ public class ApimanEndpointsProperties {
         private String url;
         private HttpMethod method = HttpMethod.GET;
         private Map<String, String> queryParams = new LinkedHashMap<>();
+        /**
+         * How long a user's response from this endpoint is reused; 0 disables caching, unset
+         * keeps the endpoint's default.
+         */
+        private Long cacheTtlSeconds;
+        /**
+         * Calls to this endpoint allowed at once; unset keeps the resilience default.
+         */
+        private Integer maxConcurrentCalls;
+        /**
+         * Connect and read timeout for this endpoint; unset keeps the resilience default.
+         */
+        private Long timeoutMillis;
+        /**
+         * Whether idempotent GETs to this endpoint may be hedged; unset keeps the endpoint's default.
+         */
+        private Boolean hedged;
 
         public String getUrl() {
             return normalize(url);
@@ -242,6 +403,38 @@ public class ApimanEndpointsProperties {
             this.queryParams = queryParams == null ? new LinkedHashMap<>() : new LinkedHashMap<>(queryParams);
         }
 
+        public Long getCacheTtlSeconds() {
+            return cacheTtlSeconds;
+        }
+
+        public void setCacheTtlSeconds(Long cacheTtlSeconds) {
+            this.cacheTtlSeconds = cacheTtlSeconds;
+        }
+
+        public Integer getMaxConcurrentCalls() {
+            return maxConcurrentCalls;
+        }
+
+        public void setMaxConcurrentCalls(Integer maxConcurrentCalls) {
+            this.maxConcurrentCalls = maxConcurrentCalls;
+        }
+
+        public Long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        public void setTimeoutMillis(Long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        public Boolean getHedged() {
+            return hedged;
+        }
+
+        public void setHedged(Boolean hedged) {
+            this.hedged = hedged;
+        }
+
         private static String normalize(String value) {
             if (!StringUtils.hasText(value)) {
                 return null;
@@ -249,4 +442,191 @@ public class ApimanEndpointsProperties {
             return value.trim();
         }
     }
+
+    /**
+     * Per-user cache of product, trouble-ticket and bill responses.
+     */
+    public static class ResponseCache {
+        /**
+         * When false, every lookup calls APIMAN.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Upper bound on cached responses across all users; beyond it the least recently used
+         * are dropped.
+         */
+        private int maxEntries = 10_000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    /**
+     * Per-endpoint isolation of APIMAN calls: each endpoint gets its own cap on concurrent calls,
+     * its own timeout and its own circuit breaker, so one slow API cannot hold every thread.
+     */
+    public static class Resilience {
+        /**
+         * When false, calls go out without bulkheads or circuit breakers.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Default cap on concurrent calls per endpoint; calls beyond it fail at once.
+         */
+        private int maxConcurrentCalls = 16;
+
+        /**
+         * Default connect and read timeout per endpoint.
+         */
+        private long timeoutMillis = 10_000;
+
+        /**
+         * Number of most recent calls per endpoint the failure rate is taken over.
+         */
+        private int windowSize = 20;
+
+        /**
+         * Calls that must be seen before the failure rate can open the circuit.
+         */
+        private int minimumCalls = 10;
+
+        /**
+         * Failure rate, in percent, at which the circuit opens.
+         */
+        private int failureRatePercent = 50;
+
+        /**
+         * How long an open circuit fails calls before letting a trial call through.
+         */
+        private long openSeconds = 30;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxConcurrentCalls() {
+            return maxConcurrentCalls;
+        }
+
+        public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+            this.maxConcurrentCalls = maxConcurrentCalls;
+        }
+
+        public long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        public void setTimeoutMillis(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
+
+        public void setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+        }
+
+        public int getFailureRatePercent() {
+            return failureRatePercent;
+        }
+
+        public void setFailureRatePercent(int failureRatePercent) {
+            this.failureRatePercent = failureRatePercent;
+        }
+
+        public long getOpenSeconds() {
+            return openSeconds;
+        }
+
+        public void setOpenSeconds(long openSeconds) {
+            this.openSeconds = openSeconds;
+        }
+    }
+
+    /**
+     * Hedged GETs: when a call to a hedged endpoint has not answered within the endpoint's usual
+     * latency, a second identical call is sent and whichever answers first is used.
+     */
+    public static class Hedging {
+        /**
+         * When false, no call is hedged.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Latency percentile of recent calls after which the second call is sent.
+         */
+        private int percentile = 95;
+
+        /**
+         * Lower bound on the delay before hedging, whatever the recent latencies.
+         */
+        private long minDelayMillis = 50;
+
+        /**
+         * Hedges allowed as a percentage of hedgeable calls, so hedging never doubles the load.
+         */
+        private int budgetPercent = 10;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getPercentile() {
+            return percentile;
+        }
+
+        public void setPercentile(int percentile) {
+            this.percentile = percentile;
+        }
+
+        public long getMinDelayMillis() {
+            return minDelayMillis;
+        }
+
+        public void setMinDelayMillis(long minDelayMillis) {
+            this.minDelayMillis = minDelayMillis;
+        }
+
+        public int getBudgetPercent() {
+            return budgetPercent;
+        }
+
+        public void setBudgetPercent(int budgetPercent) {
+            this.budgetPercent = budgetPercent;
+        }
+    }
 }
@@ -0,0 +1,37 @@
+package com.selfservice.application.config;
+
+import java.util.function.Supplier;
+
+/**
+ * Per-call connect and read timeout for the {@code loggingRestTemplate} and the pooled
+ * {@code outboundHttpClient}. Both open their connections on the calling thread, so a timeout
+ * set here around a call applies to that call only and overrides the client's defaults.
+ */
+public final class CallTimeouts {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private CallTimeouts() {
+    }
+
+    public static <T> T with(long timeoutMillis, Supplier<T> call) {
+        Integer previous = CURRENT.get();
+        CURRENT.set((int) Math.min(Integer.MAX_VALUE, Math.max(1L, timeoutMillis)));
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * The timeout set for the current call, or {@code null} to keep the defaults.
+     */
+    static Integer current() {
+        return CURRENT.get();
+    }
+}
@@ -0,0 +1,139 @@
+package com.selfservice.application.config;
+
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.AbstractClientHttpResponse;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+/**
+ * {@link ClientHttpRequestFactory} on top of an Apache HttpClient 5 classic client, so RestTemplate
+ * callers share its connection pool. Spring 5.3's own HttpComponents factory only supports
+ * HttpClient 4.
+ */
+public class HttpClient5RequestFactory implements ClientHttpRequestFactory {
+
+    private final CloseableHttpClient httpClient;
+
+    public HttpClient5RequestFactory(CloseableHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+        return new Request(uri, httpMethod);
+    }
+
+    private final class Request extends AbstractClientHttpRequest {
+        private final URI uri;
+        private final HttpMethod method;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+
+        private Request(URI uri, HttpMethod method) {
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public String getMethodValue() {
+            return method.name();
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        protected OutputStream getBodyInternal(HttpHeaders headers) {
+            return body;
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+            HttpUriRequestBase request = new HttpUriRequestBase(method.name(), uri);
+            headers.forEach((name, values) -> {
+                // The client derives these from the entity and rejects duplicates.
+                if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)
+                        && !HttpHeaders.TRANSFER_ENCODING.equalsIgnoreCase(name)) {
+                    values.forEach(value -> request.addHeader(name, value));
+                }
+            });
+            if (body.size() > 0) {
+                String contentType = headers.getFirst(HttpHeaders.CONTENT_TYPE);
+                request.setEntity(new ByteArrayEntity(body.toByteArray(),
+                        contentType == null ? null : ContentType.parse(contentType)));
+            }
+            return new Response(httpClient.execute(request));
+        }
+    }
+
+    private static final class Response extends AbstractClientHttpResponse {
+        private final CloseableHttpResponse response;
+        private HttpHeaders headers;
+
+        private Response(CloseableHttpResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public int getRawStatusCode() {
+            return response.getCode();
+        }
+
+        @Override
+        public String getStatusText() {
+            return response.getReasonPhrase();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            if (headers == null) {
+                HttpHeaders copy = new HttpHeaders();
+                for (Header header : response.getHeaders()) {
+                    copy.add(header.getName(), header.getValue());
+                }
+                headers = copy;
+            }
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            HttpEntity entity = response.getEntity();
+            return entity == null ? InputStream.nullInputStream() : entity.getContent();
+        }
+
+        @Override
+        public void close() {
+            try {
+                // Draining the entity lets the connection go back to the pool instead of being discarded.
+                EntityUtils.consume(response.getEntity());
+            } catch (IOException ignored) {
+                // connection is discarded by close() below
+            } finally {
+                try {
+                    response.close();
+                } catch (IOException ignored) {
+                    // nothing left to release
+                }
+            }
+        }
+    }
+}
@@ -8,20 +8,28 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.client.*;
-import org.springframework.util.StreamUtils;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Configuration
 public class HttpLoggingConfig {
 
     @Value("${app.http-logging.enabled:true}") // flip in YAML if you want
     private boolean httpLoggingEnabled;
-    // inside HttpLoggingConfig.java
+
+    @Value("${app.http-logging.max-body-bytes:4000}")
+    private int maxBodyBytes;
+
+    @Value("${app.http-logging.body-sample-rate:1.0}")
+    private double bodySampleRate;
 
     @Bean(name = "loggingRestTemplate")
     public RestTemplate loggingRestTemplate() {
@@ -32,85 +40,123 @@ public class HttpLoggingConfig {
                 // CRITICAL: don’t auto-follow redirects; we want to see 30x
                 con.setInstanceFollowRedirects(false);
                 super.prepareConnection(con, method);
+                Integer timeout = CallTimeouts.current();
+                if (timeout != null) {
+                    con.setConnectTimeout(Math.min(timeout, 15_000));
+                    con.setReadTimeout(timeout);
+                }
             }
         };
         base.setConnectTimeout(15_000);
         base.setReadTimeout(30_000);
 
-        // Buffering so we can log bodies
-        RestTemplate rt = new RestTemplate(new BufferingClientHttpRequestFactory(base));
+        // No buffering: the interceptor tees the first bytes of each body off the stream instead
+        RestTemplate rt = new RestTemplate(base);
         if (httpLoggingEnabled) {
-            rt.setInterceptors(List.of(new LoggingInterceptor()));
+            rt.setInterceptors(List.of(new LoggingInterceptor(maxBodyBytes, bodySampleRate)));
         }
         return rt;
     }
 
-
-
-
-
-
+    /**
+     * Logs each call's request and response lines. For the sampled share of calls it also logs
+     * the first {@code maxBodyBytes} of the request and response bodies; the response is logged
+     * once the caller has read and closed it, so its body is never copied beyond that prefix.
+     */
     static class LoggingInterceptor implements ClientHttpRequestInterceptor {
         private static final Logger log = LoggerFactory.getLogger(LoggingInterceptor.class);
 
+        private final int maxBodyBytes;
+        private final double bodySampleRate;
+
+        LoggingInterceptor(int maxBodyBytes, double bodySampleRate) {
+            this.maxBodyBytes = Math.max(0, maxBodyBytes);
+            this.bodySampleRate = Math.max(0.0, Math.min(1.0, bodySampleRate));
+        }
+
         @Override
         public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
                 throws IOException {
 
+            boolean logBodies = bodySampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < bodySampleRate;
+
             // ---- Request ----
-            String reqBody = safe(body);
-            log.info("HTTP >> {} {}\nHeaders: {}\nBody: {}",
-                    request.getMethod(), request.getURI(), request.getHeaders(), truncate(reqBody, 4000));
+            if (logBodies) {
+                log.info("HTTP >> {} {}\nHeaders: {}\nBody: {}",
+                        request.getMethod(), request.getURI(), request.getHeaders(), prefix(body, maxBodyBytes));
+            } else {
+                log.info("HTTP >> {} {}", request.getMethod(), request.getURI());
+            }
 
             // Execute
             ClientHttpResponse response = execution.execute(request, body);
 
             // ---- Response ----
-            byte[] respBytes = StreamUtils.copyToByteArray(response.getBody());
-            String respBody = new String(respBytes, StandardCharsets.UTF_8);
-            log.info("HTTP << {} {} {}\nHeaders: {}\nBody: {}",
-                    request.getMethod(), request.getURI(), response.getStatusCode(),
-                    response.getHeaders(), truncate(respBody, 4000));
-
-            // Re-wrap so caller can read the body normally
-            return new BufferingClientHttpResponseWrapper(response, respBytes);
+            if (!logBodies) {
+                log.info("HTTP << {} {} {}", request.getMethod(), request.getURI(), response.getRawStatusCode());
+                return response;
+            }
+            return new TeeClientHttpResponse(response, maxBodyBytes, (captured, total) -> log.info(
+                    "HTTP << {} {} {}\nHeaders: {}\nBody: {}",
+                    request.getMethod(), request.getURI(), rawStatus(response), response.getHeaders(),
+                    describe(captured, total, maxBodyBytes)));
         }
 
-        private static String safe(byte[] b) {
+        private static String prefix(byte[] b, int max) {
             if (b == null || b.length == 0)
                 return "<empty>";
-            return new String(b, StandardCharsets.UTF_8);
+            return describe(b, b.length, max);
         }
 
-        private static String truncate(String s, int max) {
-            if (s == null)
-                return "<null>";
-            return s.length() > max ? s.substring(0, max) + " …(truncated)" : s;
+        private static String describe(byte[] captured, long total, int max) {
+            if (total == 0)
+                return "<empty>";
+            String text = new String(captured, 0, Math.min(captured.length, max), StandardCharsets.UTF_8);
+            return total > max ? text + " …(truncated, " + total + " bytes)" : text;
+        }
+
+        private static Object rawStatus(ClientHttpResponse response) {
+            try {
+                return response.getRawStatusCode();
+            } catch (IOException ex) {
+                return "<unknown>";
+            }
         }
     }
 
     /**
-     * Wraps the original response but returns our buffered byte[] for any
-     * subsequent reads.
+     * Told what a tee captured once its response is closed.
      */
-    static class BufferingClientHttpResponseWrapper implements ClientHttpResponse {
+    @FunctionalInterface
+    interface BodyListener {
+        void closed(byte[] captured, long totalBytes);
+    }
+
+    /**
+     * Passes the original response through, with a body stream that copies its first bytes
+     * aside as the caller reads it, and reports them when the response is closed.
+     */
+    static class TeeClientHttpResponse implements ClientHttpResponse {
         private final ClientHttpResponse delegate;
-        private final byte[] body;
+        private final int maxCaptured;
+        private final BodyListener listener;
+        private TeeInputStream body;
+        private boolean closed;
 
-        BufferingClientHttpResponseWrapper(ClientHttpResponse delegate, byte[] body) {
+        TeeClientHttpResponse(ClientHttpResponse delegate, int maxCaptured, BodyListener listener) {
             this.delegate = delegate;
-            this.body = body;
+            this.maxCaptured = maxCaptured;
+            this.listener = listener;
         }
 
         @Override
         public HttpStatus getStatusCode() throws IOException {
-            // In Boot 3+, getStatusCode returns HttpStatusCode
             return delegate.getStatusCode();
         }
 
         @Override
         public int getRawStatusCode() throws IOException {
-            return getStatusCode().value();
+            return delegate.getRawStatusCode();
         }
 
         @Override
@@ -118,19 +164,86 @@ public class HttpLoggingConfig {
             return delegate.getStatusText();
         }
 
+        @Override
+        public org.springframework.http.HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = new TeeInputStream(delegate.getBody(), maxCaptured);
+            }
+            return body;
+        }
+
         @Override
         public void close() {
+            if (!closed) {
+                closed = true;
+                listener.closed(body == null ? new byte[0] : body.captured(), body == null ? 0 : body.total());
+            }
             delegate.close();
         }
+    }
+
+    /**
+     * Copies the first {@code maxCaptured} bytes read through it aside and counts the rest.
+     */
+    static class TeeInputStream extends FilterInputStream {
+        private final ByteArrayOutputStream captured;
+        private final int maxCaptured;
+        private long total;
+
+        TeeInputStream(InputStream in, int maxCaptured) {
+            super(in);
+            this.maxCaptured = maxCaptured;
+            this.captured = new ByteArrayOutputStream(Math.min(maxCaptured, 1024));
+        }
 
         @Override
-        public org.springframework.http.HttpHeaders getHeaders() {
-            return delegate.getHeaders();
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                if (captured.size() < maxCaptured) {
+                    captured.write(b);
+                }
+                total++;
+            }
+            return b;
         }
 
         @Override
-        public java.io.InputStream getBody() {
-            return new java.io.ByteArrayInputStream(body);
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                int room = maxCaptured - captured.size();
+                if (room > 0) {
+                    captured.write(b, off, Math.min(room, n));
+                }
+                total += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            total += Math.max(0, skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        byte[] captured() {
+            return captured.toByteArray();
+        }
+
+        long total() {
+            return total;
         }
     }
 
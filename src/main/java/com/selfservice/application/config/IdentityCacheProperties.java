@@ -0,0 +1,52 @@
+package com.selfservice.application.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Limits on the per-customer data shared between channels after login.
+ */
+@Component
+@ConfigurationProperties(prefix = "sessions.identity")
+public class IdentityCacheProperties {
+
+    /**
+     * When false, every login fetches the customer's accounts and services again.
+     */
+    private boolean enabled = true;
+
+    /**
+     * How long a login's account list, services and exchange id are reused by a login on another
+     * channel. Never longer than the access token they were fetched with.
+     */
+    private long ttlMinutes = 10;
+
+    /**
+     * Upper bound on customers held; beyond it the least recently used are dropped.
+     */
+    private int maxEntries = 10_000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getTtlMinutes() {
+        return ttlMinutes;
+    }
+
+    public void setTtlMinutes(long ttlMinutes) {
+        this.ttlMinutes = ttlMinutes;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+}
@@ -0,0 +1,108 @@
+package com.selfservice.application.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.nio.file.Path;
+
+/**
+ * Delivery of invoice PDFs: the local disk cache they are streamed into and the signed links
+ * the chat channels fetch them through.
+ */
+@Component
+@ConfigurationProperties(prefix = "invoices.pdf")
+public class InvoiceDocumentProperties {
+
+    /**
+     * Directory of the PDF cache; defaults to a folder under the system temp directory. With the
+     * file session store it must be set to storage every replica mounts, since a link may be
+     * served by another replica than the one that downloaded the PDF.
+     */
+    private String cacheDir;
+
+    /**
+     * How long a downloaded PDF is served again without going back to APIMAN.
+     */
+    private long cacheTtlMinutes = 60;
+
+    /**
+     * Upper bound on the cache's size on disk; beyond it the oldest PDFs are deleted.
+     */
+    private long maxCacheMegabytes = 512;
+
+    /**
+     * Larger documents are not downloaded. Telegram fetches documents by URL up to 20 MB.
+     */
+    private long maxDocumentMegabytes = 20;
+
+    /**
+     * How long a signed download link stays valid.
+     */
+    private long linkTtlSeconds = 300;
+
+    /**
+     * Key the download links are signed with. When blank a random key is made at startup, so
+     * links do not survive a restart and only work on the instance that issued them; the file
+     * session store therefore requires it.
+     */
+    private String signingSecret;
+
+    public Path getCacheDir() {
+        if (StringUtils.hasText(cacheDir)) {
+            return Path.of(cacheDir.trim());
+        }
+        return Path.of(System.getProperty("java.io.tmpdir"), "selfservice-invoices");
+    }
+
+    /**
+     * Whether a cache directory is configured rather than the default.
+     */
+    public boolean hasCacheDir() {
+        return StringUtils.hasText(cacheDir);
+    }
+
+    public void setCacheDir(String cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public long getCacheTtlMinutes() {
+        return cacheTtlMinutes;
+    }
+
+    public void setCacheTtlMinutes(long cacheTtlMinutes) {
+        this.cacheTtlMinutes = cacheTtlMinutes;
+    }
+
+    public long getMaxCacheMegabytes() {
+        return maxCacheMegabytes;
+    }
+
+    public void setMaxCacheMegabytes(long maxCacheMegabytes) {
+        this.maxCacheMegabytes = maxCacheMegabytes;
+    }
+
+    public long getMaxDocumentMegabytes() {
+        return maxDocumentMegabytes;
+    }
+
+    public void setMaxDocumentMegabytes(long maxDocumentMegabytes) {
+        this.maxDocumentMegabytes = maxDocumentMegabytes;
+    }
+
+    public long getLinkTtlSeconds() {
+        return linkTtlSeconds;
+    }
+
+    public void setLinkTtlSeconds(long linkTtlSeconds) {
+        this.linkTtlSeconds = linkTtlSeconds;
+    }
+
+    public String getSigningSecret() {
+        return signingSecret;
+    }
+
+    public void setSigningSecret(String signingSecret) {
+        this.signingSecret = signingSecret;
+    }
+}
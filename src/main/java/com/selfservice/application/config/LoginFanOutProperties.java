@@ -0,0 +1,67 @@
+package com.selfservice.application.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sizing of the pool that runs the APIMAN lookups following a login, after the browser has been
+ * answered, and of the separate pool that prefetches the first menu lists.
+ */
+@Component
+@ConfigurationProperties(prefix = "login.fan-out")
+public class LoginFanOutProperties {
+
+    /**
+     * Threads running login lookups. Each login holds up to two at a time; prefetches run on
+     * their own pool.
+     */
+    private int threads = 8;
+
+    /**
+     * Upper bound on each lookup. A lookup that takes longer is treated as failed and the login
+     * carries on without it.
+     */
+    private long callTimeoutMillis = 5_000;
+
+    /**
+     * Threads prefetching the first menu lists after a login.
+     */
+    private int prefetchThreads = 2;
+
+    /**
+     * Prefetch loads that may wait for a thread; beyond this they are skipped.
+     */
+    private int prefetchQueue = 30;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public long getCallTimeoutMillis() {
+        return callTimeoutMillis;
+    }
+
+    public void setCallTimeoutMillis(long callTimeoutMillis) {
+        this.callTimeoutMillis = callTimeoutMillis;
+    }
+
+    public int getPrefetchThreads() {
+        return prefetchThreads;
+    }
+
+    public void setPrefetchThreads(int prefetchThreads) {
+        this.prefetchThreads = prefetchThreads;
+    }
+
+    public int getPrefetchQueue() {
+        return prefetchQueue;
+    }
+
+    public void setPrefetchQueue(int prefetchQueue) {
+        this.prefetchQueue = prefetchQueue;
+    }
+}
@@ -0,0 +1,105 @@
+package com.selfservice.application.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactoryBuilder;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+import javax.net.ssl.SSLContext;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * One pooled, keep-alive HTTP client shared by every outbound channel call, so messages reuse
+ * warm connections and TLS sessions instead of handshaking per request.
+ */
+@Configuration
+public class OutboundHttpClientConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundHttpClientConfig.class);
+
+    @Bean
+    public PoolingHttpClientConnectionManager outboundConnectionManager(OutboundHttpProperties properties,
+            MeterRegistry meterRegistry) throws GeneralSecurityException {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, null, null);
+        sslContext.getClientSessionContext().setSessionCacheSize(properties.getTlsSessionCacheSize());
+        sslContext.getClientSessionContext().setSessionTimeout(properties.getTlsSessionTimeoutSeconds());
+
+        PoolingHttpClientConnectionManager manager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setSSLSocketFactory(SSLConnectionSocketFactoryBuilder.create()
+                        .setSslContext(sslContext)
+                        .build())
+                .setMaxConnTotal(properties.getMaxTotal())
+                .setMaxConnPerRoute(properties.getMaxPerRoute())
+                .setValidateAfterInactivity(TimeValue.ofMilliseconds(properties.getValidateAfterInactivityMs()))
+                .build();
+
+        registerPoolGauge(meterRegistry, manager, "leased", PoolStats::getLeased);
+        registerPoolGauge(meterRegistry, manager, "available", PoolStats::getAvailable);
+        registerPoolGauge(meterRegistry, manager, "pending", PoolStats::getPending);
+        registerPoolGauge(meterRegistry, manager, "max", PoolStats::getMax);
+
+        log.info("Outbound HTTP pool ready maxTotal={} maxPerRoute={}",
+                properties.getMaxTotal(), properties.getMaxPerRoute());
+        return manager;
+    }
+
+    @Bean
+    public CloseableHttpClient outboundHttpClient(PoolingHttpClientConnectionManager outboundConnectionManager,
+            OutboundHttpProperties properties) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(properties.getConnectTimeoutMs()))
+                .setResponseTimeout(Timeout.ofMilliseconds(properties.getResponseTimeoutMs()))
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(properties.getConnectionRequestTimeoutMs()))
+                .setDefaultKeepAlive(properties.getKeepAliveSeconds(), TimeUnit.SECONDS)
+                .build();
+        return HttpClients.custom()
+                .setConnectionManager(outboundConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .addRequestInterceptorFirst((request, entity, context) -> {
+                    Integer timeout = CallTimeouts.current();
+                    if (timeout != null) {
+                        HttpClientContext clientContext = HttpClientContext.adapt(context);
+                        clientContext.setRequestConfig(RequestConfig.copy(clientContext.getRequestConfig())
+                                .setConnectTimeout(Timeout.ofMilliseconds(Math.min(timeout, properties.getConnectTimeoutMs())))
+                                .setResponseTimeout(Timeout.ofMilliseconds(timeout))
+                                .build());
+                    }
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(properties.getIdleEvictionSeconds()))
+                .build();
+    }
+
+    /**
+     * RestTemplate for channel APIs (Telegram, WhatsApp, Messenger) and Keycloak.
+     */
+    @Bean(name = "channelRestTemplate")
+    public RestTemplate channelRestTemplate(CloseableHttpClient outboundHttpClient) {
+        return new RestTemplate(new HttpClient5RequestFactory(outboundHttpClient));
+    }
+
+    private void registerPoolGauge(MeterRegistry meterRegistry, PoolingHttpClientConnectionManager manager,
+            String state, ToDoubleFunction<PoolStats> value) {
+        Gauge.builder("http.client.pool.connections", manager, m -> value.applyAsDouble(m.getTotalStats()))
+                .description("Outbound HTTP pool connections by state")
+                .tag("pool", "outbound")
+                .tag("state", state)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,134 @@
+package com.selfservice.application.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Connection pool settings for the shared HTTP client used by the channel senders and the
+ * Keycloak token calls.
+ */
+@Component
+@ConfigurationProperties(prefix = "outbound-http")
+public class OutboundHttpProperties {
+
+    /**
+     * Maximum open connections across all hosts.
+     */
+    private int maxTotal = 200;
+
+    /**
+     * Maximum open connections to a single host (e.g. api.telegram.org).
+     */
+    private int maxPerRoute = 50;
+
+    private int connectTimeoutMs = 5_000;
+
+    private int responseTimeoutMs = 30_000;
+
+    /**
+     * How long a caller waits for a free pooled connection before failing.
+     */
+    private int connectionRequestTimeoutMs = 2_000;
+
+    /**
+     * Keep-alive applied when the server does not send a Keep-Alive header.
+     */
+    private int keepAliveSeconds = 60;
+
+    /**
+     * Connections idle for longer than this are closed by a background evictor.
+     */
+    private int idleEvictionSeconds = 30;
+
+    /**
+     * Pooled connections idle for longer than this are re-validated before reuse.
+     */
+    private int validateAfterInactivityMs = 2_000;
+
+    /**
+     * Number of TLS sessions cached for abbreviated handshakes on new connections.
+     */
+    private int tlsSessionCacheSize = 1_000;
+
+    private int tlsSessionTimeoutSeconds = 3_600;
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public void setMaxPerRoute(int maxPerRoute) {
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    public int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    public void setConnectTimeoutMs(int connectTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
+    public int getResponseTimeoutMs() {
+        return responseTimeoutMs;
+    }
+
+    public void setResponseTimeoutMs(int responseTimeoutMs) {
+        this.responseTimeoutMs = responseTimeoutMs;
+    }
+
+    public int getConnectionRequestTimeoutMs() {
+        return connectionRequestTimeoutMs;
+    }
+
+    public void setConnectionRequestTimeoutMs(int connectionRequestTimeoutMs) {
+        this.connectionRequestTimeoutMs = connectionRequestTimeoutMs;
+    }
+
+    public int getKeepAliveSeconds() {
+        return keepAliveSeconds;
+    }
+
+    public void setKeepAliveSeconds(int keepAliveSeconds) {
+        this.keepAliveSeconds = keepAliveSeconds;
+    }
+
+    public int getIdleEvictionSeconds() {
+        return idleEvictionSeconds;
+    }
+
+    public void setIdleEvictionSeconds(int idleEvictionSeconds) {
+        this.idleEvictionSeconds = idleEvictionSeconds;
+    }
+
+    public int getValidateAfterInactivityMs() {
+        return validateAfterInactivityMs;
+    }
+
+    public void setValidateAfterInactivityMs(int validateAfterInactivityMs) {
+        this.validateAfterInactivityMs = validateAfterInactivityMs;
+    }
+
+    public int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    public void setTlsSessionCacheSize(int tlsSessionCacheSize) {
+        this.tlsSessionCacheSize = tlsSessionCacheSize;
+    }
+
+    public int getTlsSessionTimeoutSeconds() {
+        return tlsSessionTimeoutSeconds;
+    }
+
+    public void setTlsSessionTimeoutSeconds(int tlsSessionTimeoutSeconds) {
+        this.tlsSessionTimeoutSeconds = tlsSessionTimeoutSeconds;
+    }
+}
@@ -0,0 +1,79 @@
+package com.selfservice.application.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings for the local outbox journal that keeps outbound chat messages across restarts.
+ */
+@Component
+@ConfigurationProperties(prefix = "outbox")
+public class OutboxProperties {
+
+    /**
+     * When true, every outbound chat message is journaled before it is sent and replayed on
+     * startup if it was never acknowledged.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Directory holding the journal segments. Must survive restarts (e.g. a persistent volume).
+     */
+    private String directory = "data/outbox";
+
+    /**
+     * Size of one memory-mapped journal segment.
+     */
+    private int segmentSizeMb = 16;
+
+    /**
+     * How often buffered journal writes are forced to disk. All messages journaled within one
+     * interval share a single fsync.
+     */
+    private long flushIntervalMs = 20;
+
+    /**
+     * Restarts an unacknowledged message is resent after before it is dropped.
+     */
+    private int maxReplays = 3;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public int getSegmentSizeMb() {
+        return segmentSizeMb;
+    }
+
+    public void setSegmentSizeMb(int segmentSizeMb) {
+        this.segmentSizeMb = segmentSizeMb;
+    }
+
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    public void setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    public int getMaxReplays() {
+        return maxReplays;
+    }
+
+    public void setMaxReplays(int maxReplays) {
+        this.maxReplays = maxReplays;
+    }
+}
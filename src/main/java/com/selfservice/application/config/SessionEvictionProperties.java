@@ -0,0 +1,53 @@
+package com.selfservice.application.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Limits on the chat session state kept in memory by the Telegram and WhatsApp session services.
+ */
+@Component
+@ConfigurationProperties(prefix = "sessions")
+public class SessionEvictionProperties {
+
+    /**
+     * Chats unused for this long lose their login, cached lists and menu position. Language and
+     * opt-in are kept.
+     */
+    private long idleTimeoutMinutes = 30;
+
+    /**
+     * Upper bound on chats holding session state per channel. Beyond it the least recently used
+     * chats are trimmed before their idle timeout.
+     */
+    private int maxActiveSessions = 50_000;
+
+    /**
+     * How often the sweeper looks for idle chats; also the granularity of the idle timeout.
+     */
+    private long sweepIntervalSeconds = 15;
+
+    public long getIdleTimeoutMinutes() {
+        return idleTimeoutMinutes;
+    }
+
+    public void setIdleTimeoutMinutes(long idleTimeoutMinutes) {
+        this.idleTimeoutMinutes = idleTimeoutMinutes;
+    }
+
+    public int getMaxActiveSessions() {
+        return maxActiveSessions;
+    }
+
+    public void setMaxActiveSessions(int maxActiveSessions) {
+        this.maxActiveSessions = maxActiveSessions;
+    }
+
+    public long getSweepIntervalSeconds() {
+        return sweepIntervalSeconds;
+    }
+
+    public void setSweepIntervalSeconds(long sweepIntervalSeconds) {
+        this.sweepIntervalSeconds = sweepIntervalSeconds;
+    }
+}
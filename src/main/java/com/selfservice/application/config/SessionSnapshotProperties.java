@@ -0,0 +1,81 @@
+package com.selfservice.application.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings for the encrypted on-disk snapshot that carries chat sessions across restarts.
+ */
+@Component
+@ConfigurationProperties(prefix = "sessions.snapshot")
+public class SessionSnapshotProperties {
+
+    /**
+     * When true, session changes are written to a memory-mapped snapshot per channel and loaded
+     * back on startup, so a deploy does not log every user out.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Directory holding the snapshot files. Must survive restarts (e.g. a persistent volume).
+     */
+    private String directory = "data/sessions";
+
+    /**
+     * Base64-encoded AES key (16, 24 or 32 bytes) protecting the snapshot, which holds tokens.
+     * Required when enabled; changing it makes existing snapshots unreadable.
+     */
+    private String encryptionKey;
+
+    /**
+     * How often changed sessions are appended to the snapshot. Changes made in the last interval
+     * before a crash are lost.
+     */
+    private long flushIntervalSeconds = 5;
+
+    /**
+     * Initial size of a memory-mapped snapshot file. The file is compacted when three quarters
+     * full and grows if live sessions alone need more than half of it.
+     */
+    private int fileSizeMb = 64;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public String getEncryptionKey() {
+        return encryptionKey;
+    }
+
+    public void setEncryptionKey(String encryptionKey) {
+        this.encryptionKey = encryptionKey;
+    }
+
+    public long getFlushIntervalSeconds() {
+        return flushIntervalSeconds;
+    }
+
+    public void setFlushIntervalSeconds(long flushIntervalSeconds) {
+        this.flushIntervalSeconds = flushIntervalSeconds;
+    }
+
+    public int getFileSizeMb() {
+        return fileSizeMb;
+    }
+
+    public void setFileSizeMb(int fileSizeMb) {
+        this.fileSizeMb = fileSizeMb;
+    }
+}
@@ -0,0 +1,84 @@
+package com.selfservice.application.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Where chat sessions are kept: in this JVM only, or in storage shared by every replica.
+ */
+@Component
+@ConfigurationProperties(prefix = "sessions.store")
+public class SessionStoreProperties {
+
+    public enum Type {
+        /** Sessions live in this JVM; run a single replica. */
+        HEAP,
+        /** Sessions live in a directory every replica mounts, with a near-cache per node. */
+        FILE
+    }
+
+    private Type type = Type.HEAP;
+
+    /**
+     * Shared directory holding one file per chat when {@code type} is {@code file}.
+     */
+    private String directory = "data/shared-sessions";
+
+    /**
+     * Base64-encoded AES key (16, 24 or 32 bytes) sealing shared session files, which hold
+     * tokens. File names are derived from it too. Required for the file store and identical on
+     * every replica.
+     */
+    private String encryptionKey;
+
+    /**
+     * How long a node trusts its cached copy of a session before checking the shared store for a
+     * newer one. Bounds how stale a chat can look after another node served it.
+     */
+    private long nearCacheTtlMillis = 500;
+
+    /**
+     * How often sessions changed on this node are written to the shared store.
+     */
+    private long flushIntervalMillis = 200;
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public String getEncryptionKey() {
+        return encryptionKey;
+    }
+
+    public void setEncryptionKey(String encryptionKey) {
+        this.encryptionKey = encryptionKey;
+    }
+
+    public long getNearCacheTtlMillis() {
+        return nearCacheTtlMillis;
+    }
+
+    public void setNearCacheTtlMillis(long nearCacheTtlMillis) {
+        this.nearCacheTtlMillis = nearCacheTtlMillis;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+}
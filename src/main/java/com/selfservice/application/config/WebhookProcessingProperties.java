@@ -0,0 +1,105 @@
+package com.selfservice.application.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sizing of the worker pool that processes inbound webhook updates after they have been acknowledged.
+ */
+@Component
+@ConfigurationProperties(prefix = "webhook.processing")
+public class WebhookProcessingProperties {
+
+    /**
+     * When true (default), updates are acknowledged immediately and processed on the worker pool.
+     * When false, updates are processed on the HTTP request thread as before.
+     */
+    private boolean async = true;
+
+    /**
+     * Number of worker threads processing updates.
+     */
+    private int workerThreads = 8;
+
+    /**
+     * Maximum number of accepted updates waiting for a worker. Updates beyond this are rejected
+     * so the channel redelivers them later.
+     */
+    private int queueCapacity = 1000;
+
+    /**
+     * When true (default), queued updates are processed before the application stops.
+     */
+    private boolean drainOnShutdown = true;
+
+    /**
+     * Upper bound in seconds for draining queued updates on shutdown.
+     */
+    private long drainTimeoutSeconds = 20;
+
+    /**
+     * Number of recent delivery ids remembered per channel to drop redeliveries.
+     */
+    private int dedupCapacity = 10_000;
+
+    /**
+     * How long in seconds a delivery id is remembered for dedup.
+     */
+    private long dedupWindowSeconds = 600;
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public boolean isDrainOnShutdown() {
+        return drainOnShutdown;
+    }
+
+    public void setDrainOnShutdown(boolean drainOnShutdown) {
+        this.drainOnShutdown = drainOnShutdown;
+    }
+
+    public long getDrainTimeoutSeconds() {
+        return drainTimeoutSeconds;
+    }
+
+    public void setDrainTimeoutSeconds(long drainTimeoutSeconds) {
+        this.drainTimeoutSeconds = drainTimeoutSeconds;
+    }
+
+    public int getDedupCapacity() {
+        return dedupCapacity;
+    }
+
+    public void setDedupCapacity(int dedupCapacity) {
+        this.dedupCapacity = dedupCapacity;
+    }
+
+    public long getDedupWindowSeconds() {
+        return dedupWindowSeconds;
+    }
+
+    public void setDedupWindowSeconds(long dedupWindowSeconds) {
+        this.dedupWindowSeconds = dedupWindowSeconds;
+    }
+}
@@ -0,0 +1,68 @@
+package com.selfservice.application.controller;
+
+import com.selfservice.application.service.InvoiceDocumentService;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Serves cached invoice PDFs behind the signed, short-lived links the chat channels are given.
+ * The file goes from disk to the response with channel transfers, never whole into memory.
+ */
+@RestController
+public class InvoiceDocumentController {
+
+    private final InvoiceDocumentService invoiceDocumentService;
+
+    public InvoiceDocumentController(InvoiceDocumentService invoiceDocumentService) {
+        this.invoiceDocumentService = invoiceDocumentService;
+    }
+
+    @GetMapping("/invoices/pdf/{name}")
+    public ResponseEntity<StreamingResponseBody> download(@PathVariable String name,
+                                                          @RequestParam String file,
+                                                          @RequestParam long expires,
+                                                          @RequestParam String signature) throws IOException {
+        Path document = invoiceDocumentService.resolve(name, file, expires, signature);
+        if (document == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        long size = Files.size(document);
+        // Opened now so a cache prune before the body is written cannot lose the file
+        FileChannel source = FileChannel.open(document, StandardOpenOption.READ);
+        StreamingResponseBody body = out -> {
+            try (source) {
+                WritableByteChannel target = Channels.newChannel(out);
+                long position = 0;
+                while (position < size) {
+                    long moved = source.transferTo(position, size - position, target);
+                    if (moved <= 0) {
+                        break;
+                    }
+                    position += moved;
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_PDF)
+                .contentLength(size)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(file).build().toString())
+                .header(HttpHeaders.CACHE_CONTROL, "private, no-store")
+                .body(body);
+    }
+}
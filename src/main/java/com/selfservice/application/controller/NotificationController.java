@@ -1,7 +1,10 @@
 package com.selfservice.application.controller;
 
 import com.selfservice.application.config.ConnectorsProperties;
+import com.selfservice.application.dto.BroadcastProgress;
+import com.selfservice.application.service.BroadcastService;
 import com.selfservice.application.service.OperationsMonitoringService;
+import com.selfservice.application.service.SessionKey;
 import com.selfservice.telegrambot.service.TelegramService;
 import com.selfservice.telegrambot.service.UserSessionService;
 import com.selfservice.whatsapp.service.WhatsappService;
@@ -9,11 +12,14 @@ import com.selfservice.whatsapp.service.WhatsappSessionService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -27,19 +33,22 @@ public class NotificationController {
     private final WhatsappSessionService whatsappSessionService;
     private final OperationsMonitoringService monitoringService;
     private final ConnectorsProperties connectorsProperties;
+    private final BroadcastService broadcastService;
 
     public NotificationController(TelegramService telegramService,
                                   WhatsappService whatsappService,
                                   UserSessionService userSessionService,
                                   WhatsappSessionService whatsappSessionService,
                                   OperationsMonitoringService monitoringService,
-                                  ConnectorsProperties connectorsProperties) {
+                                  ConnectorsProperties connectorsProperties,
+                                  BroadcastService broadcastService) {
         this.telegramService = telegramService;
         this.whatsappService = whatsappService;
         this.userSessionService = userSessionService;
         this.whatsappSessionService = whatsappSessionService;
         this.monitoringService = monitoringService;
         this.connectorsProperties = connectorsProperties;
+        this.broadcastService = broadcastService;
     }
 
     @PostMapping
@@ -96,6 +105,14 @@ public class NotificationController {
                     ));
                 }
                 String chatId = request.chatId.trim();
+                try {
+                    SessionKey.whatsapp(chatId);
+                } catch (IllegalArgumentException e) {
+                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of(
+                            "status", "rejected",
+                            "reason", "Chat ID must be a phone number for WhatsApp"
+                    ));
+                }
                 if (!whatsappSessionService.isOptedIn(chatId)) {
                     return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of(
                             "status", "rejected",
@@ -121,6 +138,56 @@ public class NotificationController {
         }
     }
 
+    /**
+     * Queues one message for many recipients and returns the job id straight away. Recipients that
+     * have not opted in are skipped; progress is available from {@code GET /notifications/batch/{jobId}}.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> sendBatch(@RequestBody BatchNotificationRequest request) {
+        if (request == null || request.message == null || request.message.isBlank()
+                || request.recipients == null || request.recipients.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of(
+                    "status", "rejected",
+                    "reason", "Message and at least one recipient are required"
+            ));
+        }
+        if (request.recipients.size() > broadcastService.getMaxRecipients()) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(Map.of(
+                    "status", "rejected",
+                    "reason", "A batch may contain at most " + broadcastService.getMaxRecipients() + " recipients"
+            ));
+        }
+
+        List<BroadcastService.Recipient> recipients = request.recipients.stream()
+                .filter(recipient -> recipient != null)
+                .map(recipient -> new BroadcastService.Recipient(recipient.channel, recipient.chatId))
+                .toList();
+        BroadcastProgress progress = broadcastService.start(request.message.trim(), recipients);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(progress);
+    }
+
+    @GetMapping("/batch/{jobId}")
+    public ResponseEntity<?> batchProgress(@PathVariable String jobId) {
+        BroadcastProgress progress = broadcastService.progress(jobId);
+        if (progress == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                    "status", "unknown",
+                    "reason", "No batch job with this id"
+            ));
+        }
+        return ResponseEntity.ok(progress);
+    }
+
+    public static final class BatchNotificationRequest {
+        public String message;
+        public List<BatchRecipient> recipients;
+    }
+
+    public static final class BatchRecipient {
+        public String channel;
+        public String chatId;
+    }
+
     public static final class NotificationRequest {
         public String channel;
         public String chatId;
@@ -3,9 +3,14 @@ package com.selfservice.application.controller;
 import com.selfservice.application.auth.OAuthSessionService;
 import com.selfservice.application.dto.AccountSummary;
 import com.selfservice.application.dto.FindUserResult;
+import com.selfservice.application.dto.ServiceListResult;
+import com.selfservice.application.dto.ServiceSummary;
 import com.selfservice.application.config.UxProperties;
 import com.selfservice.application.config.ConnectorsProperties;
 import com.selfservice.application.service.FindUserService;
+import com.selfservice.application.service.IdentityCache;
+import com.selfservice.application.service.LoginFanOut;
+import com.selfservice.application.service.LoginPrefetcher;
 import com.selfservice.application.service.ImpersonationService;
 import com.selfservice.application.service.AccountBalanceService;
 import com.selfservice.telegrambot.service.TelegramService;
@@ -20,6 +25,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.math.BigDecimal;
 
 @RestController
@@ -38,6 +44,9 @@ public class OAuthCallbackController {
     private final UxProperties uxProperties;
     private final ConnectorsProperties connectorsProperties;
     private final AccountBalanceService accountBalanceService;
+    private final IdentityCache identityCache;
+    private final LoginFanOut fanOut;
+    private final LoginPrefetcher prefetcher;
 
     public OAuthCallbackController(OAuthSessionService oauth,
                                    TelegramService telegram,
@@ -50,7 +59,10 @@ public class OAuthCallbackController {
                                    OperationsMonitoringService monitoringService,
                                    UxProperties uxProperties,
                                    ConnectorsProperties connectorsProperties,
-                                   AccountBalanceService accountBalanceService) {
+                                   AccountBalanceService accountBalanceService,
+                                   IdentityCache identityCache,
+                                   LoginFanOut fanOut,
+                                   LoginPrefetcher prefetcher) {
         this.oauth = oauth;
         this.telegram = telegram;
         this.sessions = sessions;
@@ -63,6 +75,9 @@ public class OAuthCallbackController {
         this.uxProperties = uxProperties;
         this.connectorsProperties = connectorsProperties;
         this.accountBalanceService = accountBalanceService;
+        this.identityCache = identityCache;
+        this.fanOut = fanOut;
+        this.prefetcher = prefetcher;
     }
 
     @GetMapping(value = "/oauth/callback", produces = MediaType.TEXT_HTML_VALUE)
@@ -91,25 +106,13 @@ public class OAuthCallbackController {
             if (error != null) {
                 String msg = "Login ERROR: " + error + (errorDescription != null ? " - " + errorDescription : "");
                 log.error("Self-service login failed for session {}: {}", sessionKey, msg);
-                if (chatId > 0) {
-                    telegram.sendMessageWithKey(chatId, "LoginFailed");
-                    telegram.sendLoginMenu(chatId, oauth.buildAuthUrl(chatId));
-                }
-                if (whatsappUser && whatsappChatId != null) {
-                    whatsappService.sendText(whatsappChatId, msg);
-                }
+                sendLoginFailed(chatId, whatsappUser ? whatsappChatId : null, msg);
                 return "<h3>" + msg + "</h3>";
             }
             if (code == null) {
                 String msg = "Login ERROR: missing authorization code";
                 log.error("Self-service login failed for session {}: {}", sessionKey, msg);
-                if (chatId > 0) {
-                    telegram.sendMessageWithKey(chatId, "LoginFailed");
-                    telegram.sendLoginMenu(chatId, oauth.buildAuthUrl(chatId));
-                }
-                if (whatsappUser && whatsappChatId != null) {
-                    whatsappService.sendText(whatsappChatId, msg);
-                }
+                sendLoginFailed(chatId, whatsappUser ? whatsappChatId : null, msg);
                 return "<h3>Missing authorization code</h3>";
             }
 
@@ -123,179 +126,227 @@ public class OAuthCallbackController {
             }
             log.info("Login token summary for session {} (chatId={}):\n{}", sessionKey, chatId, tokenSummary);
 
-            // 3) Store token for this chat
+            // 3) Look the customer up and message the chat in the background; the browser is answered now
             Object at = tokens.get("access_token");
             Object exp = tokens.get("expires_in");
             Object rt = tokens.get("refresh_token");
             Object id = tokens.get("id_token");
-            String exchangeId = (at instanceof String)
-                    ? impersonationService.initiate((String) at)
-                    : null;
+            String accessToken = (at instanceof String) ? (String) at : null;
+            long expSecs = (exp instanceof Number) ? ((Number) exp).longValue() : 300L;
+            String whatsappChat = whatsappUser ? whatsappChatId : null;
             boolean telegramOptIn = chatId > 0 && sessions.isOptedIn(chatId);
-            boolean whatsappOptIn = whatsappUser && whatsappChatId != null && whatsappSessions.isOptedIn(whatsappChatId);
-            if (chatId > 0 && at instanceof String) {
-                long expSecs = (exp instanceof Number) ? ((Number) exp).longValue() : 300L;
-                sessions.save(chatId,
-                        (String) at,
-                        rt instanceof String ? (String) rt : null,
-                        id instanceof String ? (String) id : null,
-                        expSecs,
-                        exchangeId);
-                monitoringService.markLoggedIn("Telegram", Long.toString(chatId), null, telegramOptIn);
-            }
-            if (whatsappUser && whatsappChatId != null && at instanceof String) {
-                long expSecs = (exp instanceof Number) ? ((Number) exp).longValue() : 300L;
-                whatsappSessions.save(whatsappChatId,
-                        (String) at,
-                        rt instanceof String ? (String) rt : null,
-                        id instanceof String ? (String) id : null,
-                        expSecs,
-                        exchangeId);
-                monitoringService.markLoggedIn("WhatsApp", whatsappChatId, null, whatsappOptIn);
-            }
-
-            // 4) Immediately call APIMAN with the user token
-            FindUserResult findUserResult = (at instanceof String)
-                    ? findUserService.fetchAccountNumbers((String) at)
-                    : new FindUserResult(false, "No access_token to call APIMAN.", java.util.List.of(), null);
+            boolean whatsappOptIn = whatsappChat != null && whatsappSessions.isOptedIn(whatsappChat);
 
-            if (findUserResult.summary() != null) {
-                log.info("findUser summary: {}", findUserResult.summary());
+            // The tokens are stored before the browser is answered, so the chat's next tap finds them
+            if (accessToken != null) {
+                String refreshToken = rt instanceof String ? (String) rt : null;
+                String idToken = id instanceof String ? (String) id : null;
+                if (chatId > 0) {
+                    sessions.save(chatId, accessToken, refreshToken, idToken, expSecs, null);
+                    monitoringService.markLoggedIn("Telegram", Long.toString(chatId), null, telegramOptIn);
+                }
+                if (whatsappChat != null) {
+                    whatsappSessions.save(whatsappChat, accessToken, refreshToken, idToken, expSecs, null);
+                    monitoringService.markLoggedIn("WhatsApp", whatsappChat, null, whatsappOptIn);
+                }
             }
 
-            String displayName = findUserResult.givenName();
-            if (chatId > 0) {
-                monitoringService.markLoggedIn("Telegram", Long.toString(chatId), displayName, telegramOptIn);
-            }
-            if (whatsappUser && whatsappChatId != null) {
-                monitoringService.markLoggedIn("WhatsApp", whatsappChatId, displayName, whatsappOptIn);
-            }
+            // A login on another channel within the TTL already fetched what follows for this customer
+            IdentityCache.Identity identity = (accessToken != null)
+                    ? identityCache.identity(identityCache.subjectOf(accessToken), expSecs)
+                    : null;
 
-            String accountListMessage;
-            List<AccountSummary> accounts = findUserResult.accounts();
-            boolean setContextOnLogin = uxProperties.isSetContext();
-            if (findUserResult.success()) {
+            // Impersonation and findUser need only the token, so they run side by side
+            CompletableFuture<String> exchangeId = (identity != null)
+                    ? fanOut.call("impersonation",
+                            () -> identity.exchangeId(() -> impersonationService.initiate(accessToken)), null)
+                    : CompletableFuture.completedFuture(null);
+            CompletableFuture<FindUserResult> findUser = (identity != null)
+                    ? fanOut.call("find-user",
+                            () -> identity.findUser(() -> findUserService.fetchAccountNumbers(accessToken)),
+                            new FindUserResult(false, "APIMAN findUser is not available right now.", List.of(), null))
+                    : CompletableFuture.completedFuture(
+                            new FindUserResult(false, "No access_token to call APIMAN.", List.of(), null));
+
+            // The exchange id is attached to the stored tokens once impersonation answers
+            CompletableFuture<Void> stored = exchangeId.thenAcceptAsync(exchange -> {
+                if (accessToken == null || exchange == null) {
+                    return;
+                }
                 if (chatId > 0) {
-                    sessions.saveAccounts(chatId, accounts);
+                    sessions.saveExchangeId(chatId, accessToken, exchange);
                 }
-                if (whatsappUser && whatsappChatId != null) {
-                    whatsappSessions.saveAccounts(whatsappChatId, accounts);
+                if (whatsappChat != null) {
+                    whatsappSessions.saveExchangeId(whatsappChat, accessToken, exchange);
                 }
-                String noAccountsMessage = (chatId > 0)
-                        ? telegram.translate(chatId, "NoBillingAccountsFound")
-                        : "No billing accounts were found.";
-                accountListMessage = accounts.isEmpty()
-                        ? noAccountsMessage
-                        : accounts.stream()
-                        .map(a -> a.accountId() + " - " + a.truncatedName())
-                        .reduce((a, b) -> a + "\n" + b)
-                        .orElse(noAccountsMessage);
-            } else {
-                accountListMessage = findUserResult.summary();
-            }
+            }, fanOut.executor());
+
+            // Products and balance need only the first account, so they run side by side once it is known
+            CompletableFuture<AccountSummary> firstAccount = findUser.thenApply(result ->
+                    result.success() && uxProperties.isSetContext() && !result.accounts().isEmpty()
+                            ? result.accounts().get(0)
+                            : null);
+            CompletableFuture<ServiceListResult> services = firstAccount.thenComposeAsync(account ->
+                    (account == null || accessToken == null)
+                            ? CompletableFuture.completedFuture(null)
+                            : fanOut.call("products", () -> identity.services(account.accountId(),
+                                    () -> productService.getMainServices(accessToken, account.accountId())), null),
+                    fanOut.executor());
+            CompletableFuture<AccountBalanceService.AccountBalanceResult> balance = firstAccount.thenComposeAsync(account ->
+                    (account == null || whatsappChat == null)
+                            ? CompletableFuture.completedFuture(null)
+                            : fanOut.call("balance", () -> accountBalanceService.lookup(accessToken, account.accountId()),
+                                    AccountBalanceService.AccountBalanceResult.notDue(account.accountId(), false)),
+                    fanOut.executor());
+
+            CompletableFuture.allOf(stored, services, balance)
+                    .thenRunAsync(() -> sendLoginResult(chatId, whatsappChat, telegramOptIn, whatsappOptIn,
+                            findUser.join(), firstAccount.join(), services.join(), balance.join()), fanOut.executor())
+                    // Warm the lists the first menu taps ask for, once the login has selected the account
+                    .thenRun(() -> prefetcher.prefetch(accessToken, firstAccount.join(), firstService(services.join())))
+                    .exceptionally(ex -> {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        log.error("Self-service login failed for session {}", sessionKey, cause);
+                        sendLoginFailed(chatId, whatsappChat, "Login ERROR: " + cause.getMessage());
+                        return null;
+                    });
+
+            return """
+                   <html><body>
+                   <h3>Login successful. You can return to your chat.</h3>
+                   <pre>""" + ("Login OK ✅\n" + tokenSummary)
+                        .replace("&","&amp;").replace("<","&lt;") + "</pre></body></html>";
+        } catch (Exception e) {
+            String msg = "Login ERROR: " + e.getMessage();
+            log.error("Self-service login failed for session {}", sessionKey, e);
+            sendLoginFailed(chatId, whatsappUser ? whatsappChatId : null, msg);
+            return "<h3>" + msg + "</h3>";
+        }
+    }
+
+    /**
+     * Stores what the lookups found and sends the logged-in chat its greeting and context card.
+     * {@code firstAccount} is set only when context is selected on login and there are accounts;
+     * {@code services} and {@code balance} then hold its lookups, or null if they failed.
+     */
+    private void sendLoginResult(long chatId, String whatsappChatId, boolean telegramOptIn, boolean whatsappOptIn,
+                                 FindUserResult findUserResult, AccountSummary firstAccount,
+                                 ServiceListResult services, AccountBalanceService.AccountBalanceResult balance) {
+        if (findUserResult.summary() != null) {
+            log.info("findUser summary: {}", findUserResult.summary());
+        }
 
-            // 5) DM Telegram with both
+        String displayName = findUserResult.givenName();
+        if (chatId > 0) {
+            monitoringService.markLoggedIn("Telegram", Long.toString(chatId), displayName, telegramOptIn);
+        }
+        if (whatsappChatId != null) {
+            monitoringService.markLoggedIn("WhatsApp", whatsappChatId, displayName, whatsappOptIn);
+        }
+
+        String accountListMessage;
+        List<AccountSummary> accounts = findUserResult.accounts();
+        boolean setContextOnLogin = uxProperties.isSetContext();
+        if (findUserResult.success()) {
             if (chatId > 0) {
-                String greeting = (findUserResult.givenName() != null && !findUserResult.givenName().isBlank())
-                        ? telegram.format(chatId, "LoginGreeting", findUserResult.givenName())
-                        : null;
+                sessions.saveAccounts(chatId, accounts);
+            }
+            if (whatsappChatId != null) {
+                whatsappSessions.saveAccounts(whatsappChatId, accounts);
+            }
+            String noAccountsMessage = (chatId > 0)
+                    ? telegram.translate(chatId, "NoBillingAccountsFound")
+                    : "No billing accounts were found.";
+            accountListMessage = accounts.isEmpty()
+                    ? noAccountsMessage
+                    : accounts.stream()
+                    .map(a -> a.accountId() + " - " + a.truncatedName())
+                    .reduce((a, b) -> a + "\n" + b)
+                    .orElse(noAccountsMessage);
+        } else {
+            accountListMessage = findUserResult.summary();
+        }
+        ServiceSummary firstService = firstService(services);
+
+        // DM Telegram with both
+        if (chatId > 0) {
+            String greeting = (findUserResult.givenName() != null && !findUserResult.givenName().isBlank())
+                    ? telegram.format(chatId, "LoginGreeting", findUserResult.givenName())
+                    : null;
 
-                if (findUserResult.success()) {
-                    if (!setContextOnLogin) {
-                        sessions.clearSelectedAccount(chatId);
-                        telegram.sendLoggedInMenu(chatId, null, false, greeting);
-                    } else if (accounts.isEmpty()) {
-                        sessions.clearSelectedAccount(chatId);
-                        String noAccountsMessage = telegram.translate(chatId, "NoBillingAccountsFound");
-                        if (greeting != null && !greeting.isBlank()) {
-                            telegram.sendMessage(chatId, greeting.strip() + "\n\n" + noAccountsMessage);
-                        } else {
-                            telegram.sendMessage(chatId, noAccountsMessage);
-                        }
+            if (findUserResult.success()) {
+                if (!setContextOnLogin) {
+                    sessions.clearSelectedAccount(chatId);
+                    telegram.sendLoggedInMenu(chatId, null, false, greeting);
+                } else if (accounts.isEmpty()) {
+                    sessions.clearSelectedAccount(chatId);
+                    String noAccountsMessage = telegram.translate(chatId, "NoBillingAccountsFound");
+                    if (greeting != null && !greeting.isBlank()) {
+                        telegram.sendMessage(chatId, greeting.strip() + "\n\n" + noAccountsMessage);
                     } else {
-                        // Select first account and auto-select first service if available; always show combined card
-                        var firstAccount = accounts.get(0);
-                        sessions.selectAccount(chatId, firstAccount);
-                        com.selfservice.application.dto.ServiceSummary firstService = null;
-                        try {
-                            String accessToken = (at instanceof String) ? (String) at : null;
-                            if (accessToken != null) {
-                                var servicesResult = productService.getMainServices(accessToken, firstAccount.accountId());
-                                if (!servicesResult.hasError() && servicesResult.services() != null && !servicesResult.services().isEmpty()) {
-                                    sessions.saveServices(chatId, servicesResult.services());
-                                    firstService = servicesResult.services().get(0);
-                                    sessions.selectService(chatId, firstService);
-                                }
-                            }
-                        } catch (Exception ignored) {
-                        }
-                        telegram.sendAccountServiceCard(chatId, firstAccount, firstService, accounts.size() > 1, greeting);
+                        telegram.sendMessage(chatId, noAccountsMessage);
                     }
                 } else {
-                    sessions.clearSelectedAccount(chatId);
-                    telegram.sendMessage(chatId, accountListMessage);
+                    // Select first account and auto-select first service if available; always show combined card
+                    sessions.selectAccount(chatId, firstAccount);
+                    if (firstService != null) {
+                        sessions.saveServices(chatId, services.services());
+                        sessions.selectService(chatId, firstService);
+                    }
+                    telegram.sendAccountServiceCard(chatId, firstAccount, firstService, accounts.size() > 1, greeting);
                 }
+            } else {
+                sessions.clearSelectedAccount(chatId);
+                telegram.sendMessage(chatId, accountListMessage);
             }
+        }
 
-            if (whatsappUser && whatsappChatId != null) {
-                String greeting = (findUserResult.givenName() != null && !findUserResult.givenName().isBlank())
-                        ? "Hello " + findUserResult.givenName()
-                        : null;
+        if (whatsappChatId != null) {
+            String greeting = (findUserResult.givenName() != null && !findUserResult.givenName().isBlank())
+                    ? "Hello " + findUserResult.givenName()
+                    : null;
 
-                if (findUserResult.success()) {
-                    if (!setContextOnLogin) {
-                        whatsappSessions.clearSelectedAccount(whatsappChatId);
-                        whatsappService.sendLoggedInMenu(whatsappChatId, null, false, null);
-                    } else if (accounts.isEmpty()) {
-                        whatsappSessions.clearSelectedAccount(whatsappChatId);
-                        whatsappService.sendAccountServiceCard(whatsappChatId, null, null, false, greeting);
+            if (findUserResult.success()) {
+                if (!setContextOnLogin) {
+                    whatsappSessions.clearSelectedAccount(whatsappChatId);
+                    whatsappService.sendLoggedInMenu(whatsappChatId, null, false, null);
+                } else if (accounts.isEmpty()) {
+                    whatsappSessions.clearSelectedAccount(whatsappChatId);
+                    whatsappService.sendAccountServiceCard(whatsappChatId, null, null, false, greeting);
+                } else {
+                    // Always select first account and auto-select first service; show combined card
+                    whatsappSessions.selectAccount(whatsappChatId, firstAccount);
+                    if (firstService != null) {
+                        whatsappSessions.saveServices(whatsappChatId, services.services());
+                        whatsappSessions.selectService(whatsappChatId, firstService);
+                    }
+                    if (balance != null && balance.hasDueBalance()) {
+                        whatsappService.sendAccountBalanceAlert(whatsappChatId, firstAccount, firstService, greeting,
+                                balance.current(), balance.overdue());
                     } else {
-                        // Always select first account and auto-select first service; show combined card
-                        var firstAccount = accounts.get(0);
-                        whatsappSessions.selectAccount(whatsappChatId, firstAccount);
-                        com.selfservice.application.dto.ServiceSummary firstService = null;
-                        try {
-                            String accessToken = (at instanceof String) ? (String) at : null;
-                            if (accessToken != null) {
-                                var servicesResult = productService.getMainServices(accessToken, firstAccount.accountId());
-                                if (!servicesResult.hasError() && servicesResult.services() != null && !servicesResult.services().isEmpty()) {
-                                    whatsappSessions.saveServices(whatsappChatId, servicesResult.services());
-                                    firstService = servicesResult.services().get(0);
-                                    whatsappSessions.selectService(whatsappChatId, firstService);
-                                }
-                            }
-                        } catch (Exception ignored) {
-                        }
-                        var balance = accountBalanceService.lookup((String) at, firstAccount.accountId());
-                        if (balance.hasDueBalance()) {
-                            whatsappService.sendAccountBalanceAlert(whatsappChatId, firstAccount, firstService, greeting,
-                                    balance.current(), balance.overdue());
-                        } else {
-                            // Send combined account+service card including greeting in the card header
-                            whatsappService.sendAccountServiceCard(whatsappChatId, firstAccount, firstService, accounts.size() > 1, greeting);
-                        }
+                        // Send combined account+service card including greeting in the card header
+                        whatsappService.sendAccountServiceCard(whatsappChatId, firstAccount, firstService, accounts.size() > 1, greeting);
                     }
-                } else {
-                    whatsappService.sendText(whatsappChatId, accountListMessage);
                 }
+            } else {
+                whatsappService.sendText(whatsappChatId, accountListMessage);
             }
+        }
+    }
 
-            return """
-                   <html><body>
-                   <h3>Login successful. You can return to your chat.</h3>
-                   <pre>""" + (("Login OK ✅\n" + tokenSummary) + "\n\nAPIMAN findUser summary:\n" + accountListMessage)
-                        .replace("&","&amp;").replace("<","&lt;") + "</pre></body></html>";
-        } catch (Exception e) {
-            String msg = "Login ERROR: " + e.getMessage();
-            log.error("Self-service login failed for session {}", sessionKey, e);
-            if (chatId > 0) {
-                telegram.sendMessageWithKey(chatId, "LoginFailed");
-                telegram.sendLoginMenu(chatId, oauth.buildAuthUrl(chatId));
-            }
-            if (whatsappUser && whatsappChatId != null) {
-                whatsappService.sendText(whatsappChatId, msg);
-            }
-            return "<h3>" + msg + "</h3>";
+    private static ServiceSummary firstService(ServiceListResult services) {
+        return (services != null && !services.hasError() && !services.services().isEmpty())
+                ? services.services().get(0)
+                : null;
+    }
+
+    private void sendLoginFailed(long chatId, String whatsappChatId, String msg) {
+        if (chatId > 0) {
+            telegram.sendMessageWithKey(chatId, "LoginFailed");
+            telegram.sendLoginMenu(chatId, oauth.buildAuthUrl(chatId));
+        }
+        if (whatsappChatId != null) {
+            whatsappService.sendText(whatsappChatId, msg);
         }
     }
 }
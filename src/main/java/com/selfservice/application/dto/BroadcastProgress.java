@@ -0,0 +1,17 @@
+package com.selfservice.application.dto;
+
+import java.time.Instant;
+
+/** Point-in-time view of a broadcast job, returned by the batch notification endpoints. */
+public record BroadcastProgress(
+        String jobId,
+        String status,
+        int recipients,
+        int queued,
+        int delivered,
+        int failed,
+        int skippedNotOptedIn,
+        int skippedInvalid,
+        Instant startedAt,
+        Instant finishedAt,
+        double messagesPerSecond) { }
@@ -0,0 +1,256 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.auth.AccessTokens;
+import com.selfservice.application.config.ApimanEndpointsProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of parsed APIMAN list responses, per user. Entries are keyed by the token's
+ * Keycloak subject, the billing account, the endpoint and its query parameters, so one customer
+ * never sees another's data. Only results the caller marks cacheable are kept, each for its
+ * endpoint's TTL; the least recently used are dropped beyond the configured size. Selecting an
+ * account drops what is cached for it, and logging out drops everything cached for the user.
+ * Lookups may also run as prefetches after login; whether those entries are then used is counted.
+ * When APIMAN fails, an expired entry not older than {@link #STALE_IF_ERROR_MS} past its TTL is
+ * returned instead of the error.
+ */
+@Service
+public class ApiResponseCache {
+
+    private record Key(String owner, String accountId, String endpoint, String query) { }
+
+    private static final class Entry {
+        final Object value;
+        final long expiresAtMs;
+        final boolean prefetched;
+        volatile boolean used;
+
+        Entry(Object value, long expiresAtMs, boolean prefetched) {
+            this.value = value;
+            this.expiresAtMs = expiresAtMs;
+            this.prefetched = prefetched;
+        }
+    }
+
+    /** Lookups per endpoint, read by the hit-ratio gauge. */
+    private static final class Stats {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder prefetched = new LongAdder();
+        final LongAdder prefetchUsed = new LongAdder();
+        final LongAdder staleServed = new LongAdder();
+
+        double hitRatio() {
+            long hit = hits.sum();
+            long total = hit + misses.sum();
+            return total == 0 ? 0.0 : (double) hit / total;
+        }
+    }
+
+    /** Invalidations are remembered this long, well beyond any lookup, to keep late loads out. */
+    private static final long INVALIDATION_MEMORY_NANOS = TimeUnit.MINUTES.toNanos(5);
+    /** How long past its TTL an entry may still stand in for a failed call. */
+    static final long STALE_IF_ERROR_MS = TimeUnit.MINUTES.toMillis(15);
+    private static final ThreadLocal<Boolean> PREFETCHING = ThreadLocal.withInitial(() -> false);
+
+    private final boolean enabled;
+    private final Map<Key, Entry> entries;
+    /** When each user, or user and account, was last invalidated; guarded by {@code entries}. */
+    private final Map<String, Long> invalidatedNanos = new HashMap<>();
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private final SingleFlight<Key, Object> loads;
+    private final MeterRegistry meterRegistry;
+
+    public ApiResponseCache(ApimanEndpointsProperties properties, MeterRegistry meterRegistry) {
+        ApimanEndpointsProperties.ResponseCache settings = properties.getResponseCache();
+        this.enabled = settings.isEnabled();
+        int maxEntries = Math.max(1, settings.getMaxEntries());
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.meterRegistry = meterRegistry;
+        this.loads = new SingleFlight<>("apiman-cache", meterRegistry);
+        Gauge.builder("apiman.cache.size", this, ApiResponseCache::size)
+                .description("APIMAN responses held in the per-user cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached result of {@code endpoint} for this user, account and query, or calls
+     * {@code fetch} and keeps its result for {@code ttlSeconds} if {@code cacheable} accepts it.
+     * Concurrent misses for the same key share one {@code fetch} and its parsed result. A result
+     * whose load overlapped an invalidation of its user or account is returned but not kept.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String endpoint, String accessToken, String accountId, Map<String, String> queryParams,
+                     long ttlSeconds, Supplier<T> fetch, Predicate<T> cacheable) {
+        boolean prefetch = PREFETCHING.get();
+        if (!enabled || ttlSeconds <= 0) {
+            // Nowhere to keep a prefetched result, so do not load it
+            return prefetch ? null : fetch.get();
+        }
+        String owner = AccessTokens.owner(accessToken);
+        Key key = new Key(owner, accountId, endpoint, String.valueOf(new TreeMap<>(queryParams)));
+        Stats endpointStats = stats(endpoint);
+        long nowMs = System.currentTimeMillis();
+        Entry stale;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            stale = entry != null && entry.expiresAtMs + STALE_IF_ERROR_MS > nowMs ? entry : null;
+            if (entry != null && entry.expiresAtMs > nowMs) {
+                if (!prefetch) {
+                    endpointStats.hits.increment();
+                    if (entry.prefetched && !entry.used) {
+                        entry.used = true;
+                        endpointStats.prefetchUsed.increment();
+                    }
+                }
+                return (T) entry.value;
+            }
+        }
+        if (!prefetch) {
+            endpointStats.misses.increment();
+        }
+        return (T) loads.run(key, () -> {
+            long startedNanos = System.nanoTime();
+            T value = fetch.get();
+            if (value == null || !cacheable.test(value)) {
+                if (stale != null && !prefetch) {
+                    synchronized (entries) {
+                        // Only if the stale entry was not invalidated while the call ran
+                        if (entries.get(key) == stale) {
+                            endpointStats.staleServed.increment();
+                            return (T) stale.value;
+                        }
+                    }
+                }
+                return value;
+            }
+            synchronized (entries) {
+                if (!invalidatedSince(owner, accountId, startedNanos)) {
+                    entries.put(key, new Entry(value, nowMs + ttlSeconds * 1000L, prefetch));
+                    if (prefetch) {
+                        endpointStats.prefetched.increment();
+                    }
+                }
+            }
+            return value;
+        });
+    }
+
+    /**
+     * Runs {@code lookups}, which go through {@link #get}, as a speculative load: results are
+     * kept and counted as prefetched, and nothing runs if the user or account was invalidated
+     * since {@code requestedNanos}.
+     */
+    public void prefetch(String accessToken, String accountId, long requestedNanos, Runnable lookups) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (entries) {
+            if (invalidatedSince(AccessTokens.owner(accessToken), accountId, requestedNanos)) {
+                return;
+            }
+        }
+        PREFETCHING.set(true);
+        try {
+            lookups.run();
+        } finally {
+            PREFETCHING.remove();
+        }
+    }
+
+    /**
+     * Drops what is cached for the user's account, so the next lookups for it go to APIMAN.
+     */
+    public void invalidateAccount(String accessToken, String accountId) {
+        String owner = AccessTokens.owner(accessToken);
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> key.owner().equals(owner) && Objects.equals(key.accountId(), accountId));
+            markInvalidated(owner + '\n' + accountId);
+        }
+    }
+
+    /**
+     * Drops everything cached for the user, including loads and prefetches still running.
+     */
+    public void invalidateUser(String accessToken) {
+        String owner = AccessTokens.owner(accessToken);
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> key.owner().equals(owner));
+            markInvalidated(owner);
+        }
+    }
+
+    private void markInvalidated(String scope) {
+        long nowNanos = System.nanoTime();
+        if (invalidatedNanos.size() >= 1024) {
+            invalidatedNanos.values().removeIf(at -> nowNanos - at > INVALIDATION_MEMORY_NANOS);
+        }
+        invalidatedNanos.put(scope, nowNanos);
+    }
+
+    private boolean invalidatedSince(String owner, String accountId, long sinceNanos) {
+        Long user = invalidatedNanos.get(owner);
+        Long account = invalidatedNanos.get(owner + '\n' + accountId);
+        return (user != null && user - sinceNanos >= 0) || (account != null && account - sinceNanos >= 0);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private Stats stats(String endpoint) {
+        Stats existing = stats.get(endpoint);
+        if (existing != null) {
+            return existing;
+        }
+        return stats.computeIfAbsent(endpoint, name -> {
+            Stats created = new Stats();
+            FunctionCounter.builder("apiman.cache.hits", created, s -> s.hits.sum())
+                    .description("APIMAN lookups answered from the per-user cache")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            FunctionCounter.builder("apiman.cache.misses", created, s -> s.misses.sum())
+                    .description("APIMAN lookups that had to call APIMAN")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            FunctionCounter.builder("apiman.prefetch.loaded", created, s -> s.prefetched.sum())
+                    .description("Responses loaded speculatively after login")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            FunctionCounter.builder("apiman.prefetch.used", created, s -> s.prefetchUsed.sum())
+                    .description("Prefetched responses that a user then asked for")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            FunctionCounter.builder("apiman.cache.stale.served", created, s -> s.staleServed.sum())
+                    .description("Expired responses returned because APIMAN failed")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            Gauge.builder("apiman.cache.hit.ratio", created, Stats::hitRatio)
+                    .description("Share of APIMAN lookups answered from the per-user cache")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            return created;
+        });
+    }
+}
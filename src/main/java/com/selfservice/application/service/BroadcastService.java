@@ -0,0 +1,260 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.ConnectorsProperties;
+import com.selfservice.application.dto.BroadcastProgress;
+import com.selfservice.telegrambot.service.TelegramService;
+import com.selfservice.telegrambot.service.UserSessionService;
+import com.selfservice.whatsapp.service.WhatsappService;
+import com.selfservice.whatsapp.service.WhatsappSessionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans a notification out to many recipients in the background. Messages go through the
+ * rate-limited channel senders, so a large campaign is paced rather than rejected, and the job's
+ * progress can be polled while it runs. Jobs run one at a time and keep at most
+ * {@code max-in-flight} messages in the channel send queues, leaving the rest of the queues to
+ * chat replies.
+ */
+@Service
+public class BroadcastService {
+
+    private static final Logger log = LoggerFactory.getLogger(BroadcastService.class);
+
+    public record Recipient(String channel, String chatId) { }
+
+    private final TelegramService telegramService;
+    private final WhatsappService whatsappService;
+    private final UserSessionService userSessionService;
+    private final WhatsappSessionService whatsappSessionService;
+    private final ConnectorsProperties connectorsProperties;
+    private final int maxRecipients;
+    private final int historySize;
+    private final Semaphore inFlight;
+    private final ExecutorService fanOutExecutor;
+    private final Map<String, Job> jobs;
+
+    public BroadcastService(TelegramService telegramService,
+                            WhatsappService whatsappService,
+                            UserSessionService userSessionService,
+                            WhatsappSessionService whatsappSessionService,
+                            ConnectorsProperties connectorsProperties,
+                            @Value("${notifications.broadcast.max-recipients:10000}") int maxRecipients,
+                            @Value("${notifications.broadcast.history-size:100}") int historySize,
+                            @Value("${notifications.broadcast.max-in-flight:200}") int maxInFlight) {
+        this.telegramService = telegramService;
+        this.whatsappService = whatsappService;
+        this.userSessionService = userSessionService;
+        this.whatsappSessionService = whatsappSessionService;
+        this.connectorsProperties = connectorsProperties;
+        this.maxRecipients = maxRecipients;
+        this.historySize = Math.max(1, historySize);
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+        this.fanOutExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "broadcast-fanout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.jobs = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Job> eldest) {
+                return size() > BroadcastService.this.historySize && eldest.getValue().isFinished();
+            }
+        };
+    }
+
+    public int getMaxRecipients() {
+        return maxRecipients;
+    }
+
+    /**
+     * Registers the job and starts the fan-out in the background; returns immediately.
+     */
+    public BroadcastProgress start(String message, List<Recipient> recipients) {
+        // Duplicate entries in one batch would message the same person twice.
+        Set<Recipient> unique = new LinkedHashSet<>();
+        for (Recipient recipient : recipients) {
+            if (recipient != null) {
+                unique.add(new Recipient(normalize(recipient.channel()), trim(recipient.chatId())));
+            }
+        }
+
+        Job job = new Job(UUID.randomUUID().toString(), unique.size());
+        synchronized (jobs) {
+            jobs.put(job.id, job);
+        }
+        log.info("Broadcast {} started for {} recipients", job.id, unique.size());
+        fanOutExecutor.execute(() -> fanOut(job, message, unique));
+        return job.snapshot();
+    }
+
+    public BroadcastProgress progress(String jobId) {
+        Job job;
+        synchronized (jobs) {
+            job = jobs.get(jobId);
+        }
+        return job == null ? null : job.snapshot();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fanOutExecutor.shutdownNow();
+    }
+
+    private void fanOut(Job job, String message, Set<Recipient> recipients) {
+        try {
+            for (Recipient recipient : recipients) {
+                // Waits for an earlier message to leave the send queue before queueing another
+                inFlight.acquire();
+                CompletableFuture<Boolean> sent;
+                try {
+                    sent = send(job, recipient, message);
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    throw e;
+                }
+                if (sent == null) {
+                    inFlight.release();
+                    continue;
+                }
+                job.queued.incrementAndGet();
+                job.outstanding.incrementAndGet();
+                sent.whenComplete((ok, error) -> {
+                    inFlight.release();
+                    if (error == null && Boolean.TRUE.equals(ok)) {
+                        job.delivered.incrementAndGet();
+                    } else {
+                        job.failed.incrementAndGet();
+                    }
+                    job.release();
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Broadcast {} stopped by shutdown while queueing messages", job.id);
+        } catch (RuntimeException e) {
+            log.error("Broadcast {} stopped while queueing messages", job.id, e);
+        } finally {
+            job.release();
+        }
+    }
+
+    /**
+     * Queues the message for one recipient, or records why it was skipped and returns null.
+     */
+    private CompletableFuture<Boolean> send(Job job, Recipient recipient, String message) {
+        String chatId = recipient.chatId();
+        if (chatId == null || chatId.isEmpty()) {
+            job.skippedInvalid.incrementAndGet();
+            return null;
+        }
+        switch (recipient.channel()) {
+            case "telegram" -> {
+                if (!connectorsProperties.isTelegramEnabled()) {
+                    job.skippedInvalid.incrementAndGet();
+                    return null;
+                }
+                long telegramChatId;
+                try {
+                    telegramChatId = Long.parseLong(chatId);
+                } catch (NumberFormatException e) {
+                    job.skippedInvalid.incrementAndGet();
+                    return null;
+                }
+                if (!userSessionService.isOptedIn(telegramChatId)) {
+                    job.skippedNotOptedIn.incrementAndGet();
+                    return null;
+                }
+                return telegramService.sendMessage(telegramChatId, message);
+            }
+            case "whatsapp", "wa" -> {
+                if (!connectorsProperties.isWhatsappEnabled()) {
+                    job.skippedInvalid.incrementAndGet();
+                    return null;
+                }
+                try {
+                    SessionKey.whatsapp(chatId);
+                } catch (IllegalArgumentException e) {
+                    job.skippedInvalid.incrementAndGet();
+                    return null;
+                }
+                if (!whatsappSessionService.isOptedIn(chatId)) {
+                    job.skippedNotOptedIn.incrementAndGet();
+                    return null;
+                }
+                return whatsappService.sendText(chatId, message);
+            }
+            default -> {
+                job.skippedInvalid.incrementAndGet();
+                return null;
+            }
+        }
+    }
+
+    private static String normalize(String channel) {
+        return channel == null ? "" : channel.trim().toLowerCase();
+    }
+
+    private static String trim(String value) {
+        return value == null ? null : value.trim();
+    }
+
+    private static final class Job {
+        private final String id;
+        private final int recipients;
+        private final Instant startedAt = Instant.now();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger delivered = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger skippedNotOptedIn = new AtomicInteger();
+        private final AtomicInteger skippedInvalid = new AtomicInteger();
+        // Starts at 1 for the fan-out loop itself, so the job cannot finish while still queueing.
+        private final AtomicInteger outstanding = new AtomicInteger(1);
+        private volatile Instant finishedAt;
+
+        private Job(String id, int recipients) {
+            this.id = id;
+            this.recipients = recipients;
+        }
+
+        private void release() {
+            if (outstanding.decrementAndGet() == 0) {
+                finishedAt = Instant.now();
+                log.info("Broadcast {} finished delivered={} failed={} skippedNotOptedIn={} skippedInvalid={}",
+                        id, delivered.get(), failed.get(), skippedNotOptedIn.get(), skippedInvalid.get());
+            }
+        }
+
+        private boolean isFinished() {
+            return finishedAt != null;
+        }
+
+        private BroadcastProgress snapshot() {
+            Instant end = finishedAt;
+            Duration elapsed = Duration.between(startedAt, end == null ? Instant.now() : end);
+            double seconds = elapsed.toMillis() / 1000.0;
+            int done = delivered.get() + failed.get();
+            double rate = seconds > 0 ? Math.round(done / seconds * 100.0) / 100.0 : 0.0;
+            return new BroadcastProgress(id, end == null ? "running" : "completed", recipients,
+                    queued.get(), delivered.get(), failed.get(), skippedNotOptedIn.get(), skippedInvalid.get(),
+                    startedAt, end, rate);
+        }
+    }
+}
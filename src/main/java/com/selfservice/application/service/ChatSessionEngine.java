@@ -0,0 +1,1065 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.SessionEvictionProperties;
+import com.selfservice.application.config.SessionSnapshotProperties;
+import com.selfservice.application.config.SessionStoreProperties;
+import com.selfservice.application.dto.AccountSummary;
+import com.selfservice.application.dto.InvoiceSummary;
+import com.selfservice.application.dto.ServiceSummary;
+import com.selfservice.application.dto.TroubleTicketSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Session state of one channel's chats, shared by every channel. Everything known about a chat
+ * lives in one {@link ChatSession} held in a {@link SessionStore} under its {@link SessionKey}, so
+ * an update costs a single lookup and logout a single removal. The default store is a
+ * primitive-long-keyed map in this JVM; with {@code sessions.store.type: file} sessions are
+ * shared between replicas. Compound updates lock the session; single-field reads do not.
+ *
+ * <p>State only one channel needs lives in an {@link Extension} created with each session.
+ *
+ * <p>Chats left idle are trimmed by an {@link IdleSessionSweeper}: login, cached lists and menu
+ * state go, language and opt-in stay, and a chat with neither is removed altogether. When
+ * enabled, a {@link SessionSnapshotLog} carries logins, preferences and menu position across
+ * restarts; cached lists are not kept and are fetched again.
+ *
+ * @param <X> channel-specific session state
+ */
+public final class ChatSessionEngine<X extends ChatSessionEngine.Extension> {
+
+    /**
+     * Channel-specific part of a session. It guards its own fields; {@link #reset()} is called
+     * under the session lock whenever the chat is cleared or trimmed.
+     */
+    public interface Extension {
+        Extension NONE = () -> { };
+
+        void reset();
+    }
+
+    public static final class TokenInfo {
+        public final String accessToken;
+        public final String refreshToken;
+        public final String idToken;
+        public final long expiryEpochMs;
+        public final List<AccountSummary> accounts;
+        public final AccountSummary selectedAccount;
+        public final String exchangeId;
+
+        public TokenInfo(String accessToken, String refreshToken, String idToken, long expiryEpochMs,
+                List<AccountSummary> accounts, AccountSummary selectedAccount, String exchangeId) {
+            this.accessToken = accessToken;
+            this.refreshToken = refreshToken;
+            this.idToken = idToken;
+            this.expiryEpochMs = expiryEpochMs;
+            this.accounts = accounts;
+            this.selectedAccount = selectedAccount;
+            this.exchangeId = exchangeId;
+        }
+    }
+
+    public enum TokenState {
+        NONE,
+        VALID,
+        EXPIRED,
+        INVALID
+    }
+
+    public record TokenSnapshot(TokenState state, String token) {
+        public static TokenSnapshot none() {
+            return new TokenSnapshot(TokenState.NONE, null);
+        }
+    }
+
+    public record ContextState(String accountContext, String serviceContext, String objectContext, String objectLabel) { }
+
+    public record PendingFunctionMenu(String submenuId, String contextLabel, List<String> options,
+                                      List<String> contextValues, boolean storeContext,
+                                      boolean accountContext, boolean serviceContext, boolean objectContextEnabled,
+                                      String objectContextLabel) { }
+
+    public record PendingSelection(PendingFunctionMenu menu, String selection, String objectContextValue) { }
+
+    private static final long EXPIRY_BUFFER_MS = 30_000;
+
+    /**
+     * Mutable state of one chat. Fields are volatile, so a session that has been looked up is read
+     * without taking its lock (the lookup itself briefly holds a map stripe lock); updates that
+     * touch more than one field, or read-modify-write one, synchronize on the session.
+     */
+    static final class ChatSession extends IdleSessionSweeper.Tracked {
+        final SessionKey key;
+        final Extension extension;
+        volatile TokenInfo token;
+        volatile List<ServiceSummary> services;
+        volatile ServiceSummary selectedService;
+        volatile List<TroubleTicketSummary> tickets;
+        volatile List<InvoiceSummary> invoices;
+        volatile InvoiceSummary selectedInvoice;
+        volatile String invoiceActionsMenu;
+        volatile String language;
+        volatile List<String> menuPath;
+        volatile List<String> loginMenuPath;
+        volatile boolean optIn;
+        volatile String menuContext;
+        volatile PendingFunctionMenu pendingFunctionMenu;
+        volatile ContextState contextState;
+
+        ChatSession(SessionKey key, Extension extension) {
+            this.key = key;
+            this.extension = extension;
+        }
+
+        /**
+         * Returns the token unless it is about to expire, in which case it is dropped.
+         */
+        TokenInfo liveToken() {
+            TokenInfo info = token;
+            if (info != null && info.expiryEpochMs <= System.currentTimeMillis() + EXPIRY_BUFFER_MS) {
+                synchronized (this) {
+                    if (token == info) {
+                        token = null;
+                    }
+                }
+                return null;
+            }
+            return info;
+        }
+    }
+
+    private final SessionKey.Channel channel;
+    private final Supplier<X> extensions;
+    private final SessionStore<SessionKey, ChatSession> sessions;
+    private final IdleSessionSweeper<ChatSession> sweeper;
+    private final SessionSnapshotLog<SessionKey, ChatSession> snapshot;
+    private final ApiResponseCache responseCache;
+
+    public ChatSessionEngine(SessionKey.Channel channel, Supplier<X> extensions, SessionEvictionProperties properties,
+                             SessionSnapshotProperties snapshotProperties, SessionStoreProperties storeProperties,
+                             ApiResponseCache responseCache, MeterRegistry meterRegistry) {
+        this.channel = channel;
+        this.extensions = extensions;
+        this.responseCache = responseCache;
+        SessionCodec codec = new SessionCodec();
+        this.sessions = storeProperties.getType() == SessionStoreProperties.Type.FILE
+                ? new SharedSessionStore<>(channel.id(), new FileSessionBackend(Paths.get(storeProperties.getDirectory()),
+                        SessionSnapshotLog.decodeKey(storeProperties.getEncryptionKey(), "sessions.store.encryption-key")),
+                        storeProperties, codec, this::newSession, this::retire, meterRegistry)
+                : new HeapSessionStore<>(this::newSession);
+        this.sweeper = new IdleSessionSweeper<>(channel.id(),
+                Duration.ofMinutes(properties.getIdleTimeoutMinutes()),
+                Duration.ofSeconds(properties.getSweepIntervalSeconds()),
+                properties.getMaxActiveSessions(),
+                this::evictIdle,
+                meterRegistry);
+        Gauge.builder("session.resident", sessions, SessionStore::size)
+                .description("Chats with any state in memory, including those reduced to their preferences")
+                .tag("channel", channel.id())
+                .register(meterRegistry);
+        this.snapshot = new SessionSnapshotLog<>(channel.id(), snapshotProperties, codec, sessions);
+        snapshot.restore((session, lastAccessMs) -> {
+            sessions.putIfAbsent(session.key, session);
+            sweeper.restore(session, lastAccessMs);
+        });
+    }
+
+    public void start() {
+        sessions.start();
+        sweeper.start();
+        snapshot.start();
+    }
+
+    public void shutdown() {
+        sweeper.shutdown();
+        snapshot.shutdown();
+        sessions.shutdown();
+    }
+
+    private ChatSession newSession(SessionKey key) {
+        return new ChatSession(key, extensions.get());
+    }
+
+    /**
+     * Takes a session the store no longer holds off the sweeper, so holders look it up again.
+     */
+    private void retire(ChatSession session) {
+        synchronized (session) {
+            sweeper.retire(session);
+        }
+    }
+
+    private ChatSession session(SessionKey key) {
+        checkChannel(key);
+        while (true) {
+            ChatSession session = sessions.getOrCreate(key);
+            if (sweeper.touch(session)) {
+                return session;
+            }
+        }
+    }
+
+    private ChatSession existing(SessionKey key) {
+        checkChannel(key);
+        while (true) {
+            ChatSession session = sessions.get(key);
+            if (session == null || sweeper.touch(session)) {
+                return session;
+            }
+        }
+    }
+
+    /**
+     * Looks a chat up without counting as activity, for preference reads such as broadcast
+     * opt-in checks that must not keep dormant chats alive.
+     */
+    private ChatSession peek(SessionKey key) {
+        checkChannel(key);
+        return sessions.get(key);
+    }
+
+    private void checkChannel(SessionKey key) {
+        if (key.channel() != channel) {
+            throw new IllegalArgumentException(key + " is not a " + channel.id() + " chat");
+        }
+    }
+
+    private TokenInfo liveToken(SessionKey key) {
+        ChatSession session = existing(key);
+        return session == null ? null : session.liveToken();
+    }
+
+    /**
+     * The chat's channel-specific state, creating the session if needed.
+     */
+    @SuppressWarnings("unchecked")
+    public X extension(SessionKey key) {
+        return (X) session(key).extension;
+    }
+
+    /**
+     * The chat's channel-specific state, or null if the chat has no session.
+     */
+    @SuppressWarnings("unchecked")
+    public X existingExtension(SessionKey key) {
+        ChatSession session = existing(key);
+        return session == null ? null : (X) session.extension;
+    }
+
+    public void save(SessionKey key, String accessToken, String refreshToken, String idToken, long expiresInSeconds,
+            String exchangeId) {
+        long exp = System.currentTimeMillis() + expiresInSeconds * 1000L;
+        ChatSession session = session(key);
+        synchronized (session) {
+            session.token = new TokenInfo(accessToken, refreshToken, idToken, exp, Collections.emptyList(), null,
+                    exchangeId);
+            session.services = null;
+            session.selectedService = null;
+            session.tickets = null;
+            clearInvoices(session);
+        }
+    }
+
+    /**
+     * Attaches the impersonation exchange id to the token saved for {@code accessToken}. Does
+     * nothing if the chat has since logged out or logged in again.
+     */
+    public void saveExchangeId(SessionKey key, String accessToken, String exchangeId) {
+        ChatSession session = existing(key);
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            TokenInfo existing = session.token;
+            if (existing == null || !Objects.equals(existing.accessToken, accessToken)) {
+                return;
+            }
+            session.token = new TokenInfo(existing.accessToken, existing.refreshToken, existing.idToken,
+                    existing.expiryEpochMs, existing.accounts, existing.selectedAccount, exchangeId);
+        }
+    }
+
+    public TokenSnapshot getTokenSnapshot(SessionKey key) {
+        ChatSession session = existing(key);
+        TokenInfo info = session == null ? null : session.token;
+        if (info == null) {
+            return TokenSnapshot.none();
+        }
+        boolean expired = info.expiryEpochMs <= System.currentTimeMillis() + EXPIRY_BUFFER_MS;
+        return new TokenSnapshot(expired ? TokenState.EXPIRED : TokenState.VALID, info.accessToken);
+    }
+
+    public String getValidAccessToken(SessionKey key) {
+        TokenInfo ti = liveToken(key);
+        return ti == null ? null : ti.accessToken;
+    }
+
+    public String getExchangeId(SessionKey key) {
+        TokenInfo ti = liveToken(key);
+        return ti == null ? null : ti.exchangeId;
+    }
+
+    public void saveAccounts(SessionKey key, List<AccountSummary> accounts) {
+        final List<AccountSummary> copy = accounts == null ? Collections.emptyList() : List.copyOf(accounts);
+        ChatSession session = existing(key);
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            TokenInfo existing = session.liveToken();
+            if (existing == null) {
+                session.selectedService = null;
+                return;
+            }
+            AccountSummary selected = null;
+            AccountSummary priorSelection = existing.selectedAccount;
+            if (priorSelection != null) {
+                String selectedAccountId = priorSelection.accountId();
+                selected = copy.stream()
+                        .filter(a -> a.accountId().equals(selectedAccountId))
+                        .findFirst()
+                        .orElse(null);
+            }
+            session.token = new TokenInfo(existing.accessToken, existing.refreshToken, existing.idToken,
+                    existing.expiryEpochMs, copy, selected, existing.exchangeId);
+            if (selected == null) {
+                session.selectedService = null;
+            }
+        }
+    }
+
+    public List<AccountSummary> getAccounts(SessionKey key) {
+        TokenInfo info = liveToken(key);
+        return info == null ? List.of() : info.accounts;
+    }
+
+    public AccountSummary getSelectedAccount(SessionKey key) {
+        TokenInfo info = liveToken(key);
+        return info == null ? null : info.selectedAccount;
+    }
+
+    public void selectAccount(SessionKey key, AccountSummary account) {
+        if (account == null) {
+            return;
+        }
+        ChatSession session = session(key);
+        synchronized (session) {
+            TokenInfo existing = session.liveToken();
+            if (existing != null) {
+                AccountSummary matched = existing.accounts.stream()
+                        .filter(a -> a.accountId().equals(account.accountId()))
+                        .findFirst()
+                        .orElse(null);
+                if (matched != null) {
+                    session.token = new TokenInfo(existing.accessToken, existing.refreshToken, existing.idToken,
+                            existing.expiryEpochMs, existing.accounts, matched, existing.exchangeId);
+                }
+                // Switching accounts is when users expect its lists to be current; the first
+                // selection after login keeps what login fetched or prefetched
+                if (existing.selectedAccount != null) {
+                    responseCache.invalidateAccount(existing.accessToken, account.accountId());
+                }
+            }
+            updateContext(session, account.accountId(), null, null, null);
+            session.services = null;
+            session.selectedService = null;
+            session.tickets = null;
+            clearInvoices(session);
+        }
+    }
+
+    public void clearSelectedAccount(SessionKey key) {
+        ChatSession session = existing(key);
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            TokenInfo existing = session.liveToken();
+            if (existing != null && existing.selectedAccount != null) {
+                session.token = new TokenInfo(existing.accessToken, existing.refreshToken, existing.idToken,
+                        existing.expiryEpochMs, existing.accounts, null, existing.exchangeId);
+            }
+            session.services = null;
+            session.selectedService = null;
+            session.tickets = null;
+            clearInvoices(session);
+            updateContext(session, null, null, null, null);
+        }
+    }
+
+    public void saveServices(SessionKey key, List<ServiceSummary> services) {
+        List<ServiceSummary> copy = services == null ? List.of() : List.copyOf(services);
+        ChatSession session = session(key);
+        synchronized (session) {
+            session.services = copy;
+            ServiceSummary currentSelection = session.selectedService;
+            if (copy.size() == 1) {
+                session.selectedService = copy.get(0);
+            } else if (currentSelection != null) {
+                boolean stillPresent = copy.stream()
+                        .anyMatch(s -> s.productId().equals(currentSelection.productId()));
+                if (!stillPresent) {
+                    session.selectedService = null;
+                }
+            }
+        }
+    }
+
+    public List<ServiceSummary> getServices(SessionKey key) {
+        ChatSession session = existing(key);
+        List<ServiceSummary> services = session == null ? null : session.services;
+        return services == null ? List.of() : services;
+    }
+
+    public void clearServices(SessionKey key) {
+        ChatSession session = existing(key);
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            session.services = null;
+            session.selectedService = null;
+        }
+    }
+
+    public ServiceSummary getSelectedService(SessionKey key) {
+        ChatSession session = existing(key);
+        return session == null ? null : session.selectedService;
+    }
+
+    public void selectService(SessionKey key, ServiceSummary service) {
+        if (service == null) {
+            return;
+        }
+        ChatSession session = existing(key);
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            List<ServiceSummary> services = session.services == null ? List.of() : session.services;
+            ServiceSummary matched = services.stream()
+                    .filter(s -> s.productId().equals(service.productId()))
+                    .findFirst()
+                    .orElse(null);
+            if (matched != null) {
+                session.selectedService = matched;
+                updateContext(session, null, matched.productId(), null, null);
+            }
+        }
+    }
+
+    public void clearSelectedService(SessionKey key) {
+        ChatSession session = existing(key);
+        if (session != null) {
+            session.selectedService = null;
+        }
+    }
+
+    public void saveTroubleTickets(SessionKey key, List<TroubleTicketSummary> tickets) {
+        session(key).tickets = tickets == null ? List.of() : List.copyOf(tickets);
+    }
+
+    public List<TroubleTicketSummary> getTroubleTickets(SessionKey key) {
+        ChatSession session = existing(key);
+        List<TroubleTicketSummary> tickets = session == null ? null : session.tickets;
+        return tickets == null ? List.of() : tickets;
+    }
+
+    public void clearTroubleTickets(SessionKey key) {
+        ChatSession session = existing(key);
+        if (session != null) {
+            session.tickets = null;
+        }
+    }
+
+    public void saveInvoices(SessionKey key, List<InvoiceSummary> invoices) {
+        ChatSession session = session(key);
+        synchronized (session) {
+            session.invoices = invoices == null ? List.of() : List.copyOf(invoices);
+            InvoiceSummary currentSelection = session.selectedInvoice;
+            if (invoices != null && invoices.size() == 1) {
+                session.selectedInvoice = invoices.get(0);
+            } else if (currentSelection != null) {
+                boolean stillPresent = invoices != null && invoices.stream()
+                        .anyMatch(inv -> inv.id().equals(currentSelection.id()));
+                if (!stillPresent) {
+                    session.selectedInvoice = null;
+                }
+            }
+        }
+    }
+
+    public List<InvoiceSummary> getInvoices(SessionKey key) {
+        ChatSession session = existing(key);
+        List<InvoiceSummary> invoices = session == null ? null : session.invoices;
+        return invoices == null ? List.of() : invoices;
+    }
+
+    public void setInvoiceActionsMenu(SessionKey key, String menuId) {
+        if (menuId == null || menuId.isBlank()) {
+            ChatSession session = existing(key);
+            if (session != null) {
+                session.invoiceActionsMenu = null;
+            }
+        } else {
+            session(key).invoiceActionsMenu = menuId;
+        }
+    }
+
+    public String getInvoiceActionsMenu(SessionKey key) {
+        ChatSession session = existing(key);
+        return session == null ? null : session.invoiceActionsMenu;
+    }
+
+    public void selectInvoice(SessionKey key, InvoiceSummary invoice) {
+        if (invoice == null) {
+            return;
+        }
+        ChatSession session = existing(key);
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            List<InvoiceSummary> invoices = session.invoices == null ? List.of() : session.invoices;
+            InvoiceSummary matched = invoices.stream()
+                    .filter(inv -> inv.id().equals(invoice.id()))
+                    .findFirst()
+                    .orElse(null);
+            if (matched != null) {
+                session.selectedInvoice = matched;
+            }
+        }
+    }
+
+    public InvoiceSummary getSelectedInvoice(SessionKey key) {
+        ChatSession session = existing(key);
+        return session == null ? null : session.selectedInvoice;
+    }
+
+    public void clearSelectedInvoice(SessionKey key) {
+        ChatSession session = existing(key);
+        if (session != null) {
+            session.selectedInvoice = null;
+        }
+    }
+
+    public void clearInvoices(SessionKey key) {
+        ChatSession session = existing(key);
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            clearInvoices(session);
+        }
+    }
+
+    /**
+     * Trims an idle chat to its language and opt-in. Runs under the session lock.
+     */
+    private boolean evictIdle(ChatSession session) {
+        session.token = null;
+        session.services = null;
+        session.selectedService = null;
+        session.tickets = null;
+        clearInvoices(session);
+        session.menuPath = null;
+        session.loginMenuPath = null;
+        session.menuContext = null;
+        session.pendingFunctionMenu = null;
+        session.contextState = null;
+        session.extension.reset();
+        snapshot.changed(session.key);
+        sessions.changed(session.key);
+        if (session.language == null && !session.optIn) {
+            sessions.remove(session.key, session);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Runs one sweep as of {@code nowMs}; the background sweeper does the same once per interval.
+     */
+    public void sweepIdleSessions(long nowMs) {
+        sweeper.sweep(nowMs);
+    }
+
+    private static void clearInvoices(ChatSession session) {
+        session.invoices = null;
+        session.selectedInvoice = null;
+        session.invoiceActionsMenu = null;
+    }
+
+    /**
+     * Drops everything known about the chat except its login menu position.
+     */
+    public void clearSession(SessionKey key) {
+        ChatSession session = existing(key);
+        if (session == null) {
+            return;
+        }
+        TokenInfo token = session.token;
+        if (token != null) {
+            responseCache.invalidateUser(token.accessToken);
+        }
+        synchronized (session) {
+            if (session.loginMenuPath == null) {
+                sessions.remove(key, session);
+                sweeper.retire(session);
+                snapshot.changed(key);
+                return;
+            }
+            session.token = null;
+            session.services = null;
+            session.selectedService = null;
+            session.tickets = null;
+            clearInvoices(session);
+            session.language = null;
+            session.menuPath = null;
+            session.optIn = false;
+            session.menuContext = null;
+            session.pendingFunctionMenu = null;
+            session.contextState = null;
+            session.extension.reset();
+        }
+    }
+
+    /**
+     * Logs the chat out, keeping opt-in, context and login menu position. Returns whether a
+     * token was stored.
+     */
+    public boolean logout(SessionKey key) {
+        ChatSession session = existing(key);
+        if (session == null) {
+            return false;
+        }
+        synchronized (session) {
+            session.services = null;
+            session.selectedService = null;
+            clearInvoices(session);
+            session.tickets = null;
+            session.language = null;
+            session.menuPath = null;
+            session.menuContext = null;
+            session.pendingFunctionMenu = null;
+            session.extension.reset();
+            TokenInfo token = session.token;
+            session.token = null;
+            if (token != null) {
+                responseCache.invalidateUser(token.accessToken);
+            }
+            return token != null;
+        }
+    }
+
+    public String getRefreshToken(SessionKey key) {
+        TokenInfo info = liveToken(key);
+        return info == null ? null : info.refreshToken;
+    }
+
+    public String getIdToken(SessionKey key) {
+        TokenInfo info = liveToken(key);
+        return info == null ? null : info.idToken;
+    }
+
+    public String getLanguage(SessionKey key, String defaultLanguage) {
+        ChatSession session = peek(key);
+        String language = session == null ? null : session.language;
+        return language == null ? defaultLanguage : language;
+    }
+
+    public void setLanguage(SessionKey key, String language) {
+        if (language == null || language.isBlank()) {
+            ChatSession session = existing(key);
+            if (session != null) {
+                session.language = null;
+            }
+            return;
+        }
+        session(key).language = language;
+    }
+
+    public void resetBusinessMenu(SessionKey key, String rootMenuId) {
+        ChatSession session = session(key);
+        synchronized (session) {
+            session.menuPath = List.of(rootMenuId);
+            session.menuContext = null;
+            session.pendingFunctionMenu = null;
+        }
+    }
+
+    public void resetLoginMenu(SessionKey key, String rootMenuId) {
+        session(key).loginMenuPath = List.of(rootMenuId);
+    }
+
+    public boolean isOptedIn(SessionKey key) {
+        ChatSession session = peek(key);
+        return session != null && session.optIn;
+    }
+
+    public void setOptIn(SessionKey key, boolean optIn) {
+        if (optIn) {
+            session(key).optIn = true;
+        } else {
+            ChatSession session = existing(key);
+            if (session != null) {
+                session.optIn = false;
+            }
+        }
+    }
+
+    public String currentBusinessMenu(SessionKey key, String rootMenuId) {
+        List<String> path = ensureMenuPath(key, rootMenuId);
+        return path.get(path.size() - 1);
+    }
+
+    public String currentLoginMenu(SessionKey key, String rootMenuId) {
+        List<String> path = ensureLoginMenuPath(key, rootMenuId);
+        return path.get(path.size() - 1);
+    }
+
+    public void enterBusinessMenu(SessionKey key, String menuId, String rootMenuId) {
+        ChatSession session = session(key);
+        synchronized (session) {
+            session.menuPath = append(session.menuPath, menuId, rootMenuId);
+        }
+    }
+
+    public void enterLoginMenu(SessionKey key, String menuId, String rootMenuId) {
+        ChatSession session = session(key);
+        synchronized (session) {
+            session.loginMenuPath = append(session.loginMenuPath, menuId, rootMenuId);
+        }
+    }
+
+    public boolean goUpBusinessMenu(SessionKey key, String rootMenuId) {
+        ChatSession session = session(key);
+        synchronized (session) {
+            List<String> path = rootIfEmpty(session.menuPath, rootMenuId);
+            if (path.size() <= 1) {
+                session.menuPath = path;
+                return false;
+            }
+            session.menuPath = List.copyOf(path.subList(0, path.size() - 1));
+            session.menuContext = null;
+            session.pendingFunctionMenu = null;
+            return true;
+        }
+    }
+
+    public boolean goUpLoginMenu(SessionKey key, String rootMenuId) {
+        ChatSession session = session(key);
+        synchronized (session) {
+            List<String> path = rootIfEmpty(session.loginMenuPath, rootMenuId);
+            if (path.size() <= 1) {
+                session.loginMenuPath = path;
+                return false;
+            }
+            session.loginMenuPath = List.copyOf(path.subList(0, path.size() - 1));
+            return true;
+        }
+    }
+
+    public void setMenuContext(SessionKey key, String contextMessage) {
+        if (contextMessage == null || contextMessage.isBlank()) {
+            clearMenuContext(key);
+            return;
+        }
+        session(key).menuContext = contextMessage;
+    }
+
+    public String getMenuContext(SessionKey key) {
+        ChatSession session = existing(key);
+        return session == null ? null : session.menuContext;
+    }
+
+    public void clearMenuContext(SessionKey key) {
+        ChatSession session = existing(key);
+        if (session != null) {
+            session.menuContext = null;
+        }
+    }
+
+    public void updateContext(SessionKey key, String accountContext, String serviceContext, String objectContext) {
+        updateContext(key, accountContext, serviceContext, objectContext, null);
+    }
+
+    public void updateContext(SessionKey key, String accountContext, String serviceContext, String objectContext,
+                              String objectLabel) {
+        ChatSession session = session(key);
+        synchronized (session) {
+            updateContext(session, accountContext, serviceContext, objectContext, objectLabel);
+        }
+    }
+
+    private static void updateContext(ChatSession session, String accountContext, String serviceContext,
+                                      String objectContext, String objectLabel) {
+        ContextState existing = session.contextState;
+        String accountValue = accountContext == null ? (existing == null ? null : existing.accountContext())
+                : (accountContext.isBlank() ? null : accountContext);
+        String serviceValue = serviceContext == null ? (existing == null ? null : existing.serviceContext())
+                : (serviceContext.isBlank() ? null : serviceContext);
+        String objectValue = objectContext == null ? (existing == null ? null : existing.objectContext())
+                : (objectContext.isBlank() ? null : objectContext);
+        String objectLabelValue = objectLabel == null ? (existing == null ? null : existing.objectLabel())
+                : (objectLabel.isBlank() ? null : objectLabel);
+        if (objectValue == null) {
+            objectLabelValue = null;
+        }
+        if (accountValue == null && serviceValue == null && objectValue == null) {
+            session.contextState = null;
+            return;
+        }
+        session.contextState = new ContextState(accountValue, serviceValue, objectValue, objectLabelValue);
+    }
+
+    public boolean resetObjectContextIfLabelMismatch(SessionKey key, String newObjectLabel) {
+        ContextState state = getContextState(key);
+        if (state == null || state.objectContext() == null || state.objectContext().isBlank()) {
+            return false;
+        }
+        String existingLabel = state.objectLabel() == null ? null : state.objectLabel().trim();
+        String incomingLabel = newObjectLabel == null ? null : newObjectLabel.trim();
+        if (Objects.equals(existingLabel, incomingLabel)) {
+            return false;
+        }
+        updateContext(key, null, null, "", "");
+        return true;
+    }
+
+    public ContextState getContextState(SessionKey key) {
+        ChatSession session = existing(key);
+        return session == null ? null : session.contextState;
+    }
+
+    public void setPendingFunctionMenu(SessionKey key, String submenuId, String contextLabel, List<String> options,
+                                       List<String> contextValues, boolean storeContext, boolean accountContext,
+                                       boolean serviceContext, boolean objectContextEnabled, String objectContextLabel) {
+        if (options == null || options.isEmpty()) {
+            clearPendingFunctionMenu(key);
+            return;
+        }
+        session(key).pendingFunctionMenu =
+                new PendingFunctionMenu(submenuId, contextLabel, List.copyOf(options),
+                        contextValues == null ? List.of() : List.copyOf(contextValues), storeContext,
+                        accountContext, serviceContext, objectContextEnabled, objectContextLabel);
+    }
+
+    public PendingSelection consumePendingFunctionMenu(SessionKey key, String selection) {
+        ChatSession session = existing(key);
+        PendingFunctionMenu pending = session == null ? null : session.pendingFunctionMenu;
+        if (pending == null || selection == null || selection.isBlank()) {
+            return null;
+        }
+        String trimmed = selection.trim();
+        String matchedOption = null;
+        String matchedContext = null;
+        for (int i = 0; i < pending.options().size(); i++) {
+            String option = pending.options().get(i);
+            if (option != null && option.equalsIgnoreCase(trimmed)) {
+                matchedOption = option;
+                if (pending.contextValues().size() > i) {
+                    matchedContext = pending.contextValues().get(i);
+                }
+                break;
+            }
+        }
+        if (matchedOption == null && channel.numberedOptions()) {
+            int number = optionNumber(trimmed);
+            if (number >= 1 && number <= pending.options().size()) {
+                matchedOption = pending.options().get(number - 1);
+                if (pending.contextValues().size() >= number) {
+                    matchedContext = pending.contextValues().get(number - 1);
+                }
+            }
+        }
+        if (matchedOption == null) {
+            return null;
+        }
+        synchronized (session) {
+            if (session.pendingFunctionMenu == pending) {
+                session.pendingFunctionMenu = null;
+            }
+        }
+        return new PendingSelection(pending, matchedOption, matchedContext);
+    }
+
+    private static int optionNumber(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public void clearPendingFunctionMenu(SessionKey key) {
+        ChatSession session = existing(key);
+        if (session != null) {
+            session.pendingFunctionMenu = null;
+        }
+    }
+
+    public int getBusinessMenuDepth(SessionKey key, String rootMenuId) {
+        List<String> path = ensureMenuPath(key, rootMenuId);
+        return Math.max(0, path.size() - 1);
+    }
+
+    public int getLoginMenuDepth(SessionKey key, String rootMenuId) {
+        List<String> path = ensureLoginMenuPath(key, rootMenuId);
+        return Math.max(0, path.size() - 1);
+    }
+
+    private List<String> ensureMenuPath(SessionKey key, String rootMenuId) {
+        ChatSession session = session(key);
+        List<String> path = session.menuPath;
+        if (path != null && !path.isEmpty()) {
+            return path;
+        }
+        synchronized (session) {
+            session.menuPath = rootIfEmpty(session.menuPath, rootMenuId);
+            return session.menuPath;
+        }
+    }
+
+    private List<String> ensureLoginMenuPath(SessionKey key, String rootMenuId) {
+        ChatSession session = session(key);
+        List<String> path = session.loginMenuPath;
+        if (path != null && !path.isEmpty()) {
+            return path;
+        }
+        synchronized (session) {
+            session.loginMenuPath = rootIfEmpty(session.loginMenuPath, rootMenuId);
+            return session.loginMenuPath;
+        }
+    }
+
+    /**
+     * Menu paths are immutable lists replaced on every change, so readers never see a half-edited path.
+     */
+    private static List<String> rootIfEmpty(List<String> path, String rootMenuId) {
+        return (path == null || path.isEmpty()) ? List.of(rootMenuId) : path;
+    }
+
+    private static List<String> append(List<String> path, String menuId, String rootMenuId) {
+        List<String> next = new ArrayList<>(rootIfEmpty(path, rootMenuId));
+        next.add(menuId);
+        return List.copyOf(next);
+    }
+
+    /**
+     * Keeps the login, preferences, menu position and context of a chat; cached lists are
+     * fetched again after a restart or on another node.
+     */
+    private final class SessionCodec implements SessionSnapshotLog.Codec<SessionKey, ChatSession> {
+
+        @Override
+        public SessionKey keyOf(ChatSession session) {
+            return session.key;
+        }
+
+        @Override
+        public void writeKey(DataOutput out, SessionKey key) throws IOException {
+            out.writeLong(key.packed());
+        }
+
+        @Override
+        public SessionKey readKey(DataInput in) throws IOException {
+            return SessionKey.fromPacked(in.readLong());
+        }
+
+        @Override
+        public void writeSession(DataOutput out, ChatSession session) throws IOException {
+            TokenInfo token = session.token;
+            out.writeBoolean(token != null);
+            if (token != null) {
+                SessionSnapshotLog.writeString(out, token.accessToken);
+                SessionSnapshotLog.writeString(out, token.refreshToken);
+                SessionSnapshotLog.writeString(out, token.idToken);
+                out.writeLong(token.expiryEpochMs);
+                out.writeInt(token.accounts.size());
+                for (AccountSummary account : token.accounts) {
+                    writeAccount(out, account);
+                }
+                out.writeBoolean(token.selectedAccount != null);
+                if (token.selectedAccount != null) {
+                    writeAccount(out, token.selectedAccount);
+                }
+                SessionSnapshotLog.writeString(out, token.exchangeId);
+            }
+            ServiceSummary service = session.selectedService;
+            out.writeBoolean(service != null);
+            if (service != null) {
+                SessionSnapshotLog.writeString(out, service.productId());
+                SessionSnapshotLog.writeString(out, service.productName());
+                SessionSnapshotLog.writeString(out, service.accessNumber());
+            }
+            SessionSnapshotLog.writeString(out, session.language);
+            out.writeBoolean(session.optIn);
+            SessionSnapshotLog.writeStrings(out, session.menuPath);
+            SessionSnapshotLog.writeStrings(out, session.loginMenuPath);
+            SessionSnapshotLog.writeString(out, session.menuContext);
+            ContextState context = session.contextState;
+            out.writeBoolean(context != null);
+            if (context != null) {
+                SessionSnapshotLog.writeString(out, context.accountContext());
+                SessionSnapshotLog.writeString(out, context.serviceContext());
+                SessionSnapshotLog.writeString(out, context.objectContext());
+                SessionSnapshotLog.writeString(out, context.objectLabel());
+            }
+        }
+
+        @Override
+        public ChatSession readSession(DataInput in, SessionKey key) throws IOException {
+            ChatSession session = newSession(key);
+            if (in.readBoolean()) {
+                String accessToken = SessionSnapshotLog.readString(in);
+                String refreshToken = SessionSnapshotLog.readString(in);
+                String idToken = SessionSnapshotLog.readString(in);
+                long expiry = in.readLong();
+                int accountCount = in.readInt();
+                List<AccountSummary> accounts = new ArrayList<>(accountCount);
+                for (int i = 0; i < accountCount; i++) {
+                    accounts.add(readAccount(in));
+                }
+                AccountSummary selected = in.readBoolean() ? readAccount(in) : null;
+                session.token = new TokenInfo(accessToken, refreshToken, idToken, expiry, List.copyOf(accounts),
+                        selected, SessionSnapshotLog.readString(in));
+            }
+            if (in.readBoolean()) {
+                session.selectedService = new ServiceSummary(SessionSnapshotLog.readString(in),
+                        SessionSnapshotLog.readString(in), SessionSnapshotLog.readString(in));
+            }
+            session.language = SessionSnapshotLog.readString(in);
+            session.optIn = in.readBoolean();
+            session.menuPath = SessionSnapshotLog.readStrings(in);
+            session.loginMenuPath = SessionSnapshotLog.readStrings(in);
+            session.menuContext = SessionSnapshotLog.readString(in);
+            if (in.readBoolean()) {
+                session.contextState = new ContextState(SessionSnapshotLog.readString(in),
+                        SessionSnapshotLog.readString(in), SessionSnapshotLog.readString(in),
+                        SessionSnapshotLog.readString(in));
+            }
+            return session;
+        }
+
+        private static void writeAccount(DataOutput out, AccountSummary account) throws IOException {
+            SessionSnapshotLog.writeString(out, account.accountId());
+            SessionSnapshotLog.writeString(out, account.accountName());
+        }
+
+        private static AccountSummary readAccount(DataInput in) throws IOException {
+            return new AccountSummary(SessionSnapshotLog.readString(in), SessionSnapshotLog.readString(in));
+        }
+    }
+}
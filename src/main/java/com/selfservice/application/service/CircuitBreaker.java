@@ -0,0 +1,156 @@
+package com.selfservice.application.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Count-based circuit breaker for one downstream endpoint. While closed it records the outcome
+ * of the last {@code windowSize} calls and opens once at least {@code minimumCalls} have been
+ * seen and the failure rate reaches the threshold. While open every call is refused until the
+ * open period has passed; then a single trial call is let through (half-open), whose outcome
+ * closes the breaker again or reopens it.
+ */
+public final class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final String name;
+    private final boolean[] failures;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final long openMs;
+    private final MeterRegistry meterRegistry;
+
+    private State state = State.CLOSED;
+    private int recorded;
+    private int next;
+    private int failed;
+    private long openedAtMs;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRatePercent, long openMs,
+                          MeterRegistry meterRegistry) {
+        this.name = name;
+        this.failures = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, failures.length));
+        this.failureRatePercent = Math.max(1, Math.min(100, failureRatePercent));
+        this.openMs = Math.max(0L, openMs);
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("apiman.circuit.state", this, breaker -> breaker.state().ordinal())
+                .description("Circuit state per endpoint: 0 closed, 1 half-open, 2 open")
+                .tag("endpoint", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether a call may go out now. A caller that is let through must report its outcome with
+     * {@link #record}.
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(System.currentTimeMillis());
+    }
+
+    synchronized boolean tryAcquire(long nowMs) {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (nowMs - openedAtMs < openMs) {
+                    return false;
+                }
+                transition(State.HALF_OPEN);
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    /**
+     * Gives back a permission from {@link #tryAcquire} for a call that never went out.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    public void record(boolean success) {
+        record(success, System.currentTimeMillis());
+    }
+
+    synchronized void record(boolean success, long nowMs) {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            if (success) {
+                reset();
+                transition(State.CLOSED);
+            } else {
+                open(nowMs);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            return;
+        }
+        if (recorded == failures.length && failures[next]) {
+            failed--;
+        }
+        failures[next] = !success;
+        if (!success) {
+            failed++;
+        }
+        next = (next + 1) % failures.length;
+        recorded = Math.min(recorded + 1, failures.length);
+        if (recorded >= minimumCalls && failed * 100 >= failureRatePercent * recorded) {
+            open(nowMs);
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    private void open(long nowMs) {
+        openedAtMs = nowMs;
+        reset();
+        transition(State.OPEN);
+    }
+
+    private void reset() {
+        recorded = 0;
+        next = 0;
+        failed = 0;
+        Arrays.fill(failures, false);
+    }
+
+    private void transition(State to) {
+        State from = state;
+        state = to;
+        Counter.builder("apiman.circuit.transitions")
+                .description("Circuit breaker state changes per endpoint")
+                .tag("endpoint", name)
+                .tag("from", from.name().toLowerCase())
+                .tag("to", to.name().toLowerCase())
+                .register(meterRegistry)
+                .increment();
+        if (to == State.OPEN) {
+            log.warn("Circuit for APIMAN {} opened; calls fail fast for {} ms", name, openMs);
+        } else {
+            log.info("Circuit for APIMAN {} is now {}", name, to.name().toLowerCase());
+        }
+    }
+}
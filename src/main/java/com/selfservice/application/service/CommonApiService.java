@@ -1,5 +1,8 @@
 package com.selfservice.application.service;
 
+import com.selfservice.application.auth.AccessTokens;
+import com.selfservice.application.config.CallTimeouts;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -15,10 +18,16 @@ import org.springframework.web.util.UriComponentsBuilder;
 
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
 
 /**
  * Centralized REST client wrapper that applies shared headers, bearer auth, and query parameter
- * handling for outbound calls to APIMAN-managed endpoints.
+ * handling for outbound calls to APIMAN-managed endpoints. Identical GET requests for the same
+ * user that overlap in time share one downstream call. Each endpoint has its own cap on calls in
+ * flight, its own timeout and a circuit breaker; a call refused by either fails at once with a
+ * "temporarily unavailable" response instead of waiting on a struggling API. GETs to endpoints
+ * marked for hedging go through {@link RequestHedger}.
  */
 @Service
 public class CommonApiService {
@@ -26,9 +35,16 @@ public class CommonApiService {
     private static final Logger log = LoggerFactory.getLogger(CommonApiService.class);
 
     private final RestTemplate restTemplate;
+    private final SingleFlight<String, ApiResponse> flights;
+    private final EndpointGuards guards;
+    private final RequestHedger hedger;
 
-    public CommonApiService(@Qualifier("loggingRestTemplate") RestTemplate restTemplate) {
+    public CommonApiService(@Qualifier("loggingRestTemplate") RestTemplate restTemplate, EndpointGuards guards,
+                            RequestHedger hedger, MeterRegistry meterRegistry) {
         this.restTemplate = restTemplate;
+        this.guards = guards;
+        this.hedger = hedger;
+        this.flights = new SingleFlight<>("apiman", meterRegistry);
     }
 
     /**
@@ -36,6 +52,13 @@ public class CommonApiService {
      * structure that captures headers, body, and status details.
      */
     public ApiResponse execute(ApiRequest request) {
+        if (request.method() == HttpMethod.GET && request.body() == null) {
+            return flights.run(flightKey(request), () -> send(request));
+        }
+        return send(request);
+    }
+
+    private ApiResponse send(ApiRequest request) {
         if (request.url() == null || request.url().isBlank()) {
             return new ApiResponse(false, 0, new HttpHeaders(), null,
                     "Endpoint URL is not configured.");
@@ -67,8 +90,38 @@ public class CommonApiService {
         HttpEntity<?> entity = request.body() == null ? new HttpEntity<>(headers)
                 : new HttpEntity<>(request.body(), headers);
 
+        if (!guards.isEnabled()) {
+            return exchange(targetUrl, request.method(), entity);
+        }
+        EndpointGuards.Guard guard = guards.guardFor(request.url());
+        if (!guard.breaker().tryAcquire()) {
+            return unavailable(guard, "circuit open");
+        }
+        if (!guard.tryEnter()) {
+            guard.breaker().release();
+            return unavailable(guard, "too many calls in flight");
+        }
         try {
-            ResponseEntity<String> response = restTemplate.exchange(targetUrl, request.method(), entity, String.class);
+            Supplier<ApiResponse> attempt = () -> CallTimeouts.with(guard.timeoutMillis(),
+                    () -> exchange(targetUrl, request.method(), entity));
+            boolean idempotent = request.method() == HttpMethod.GET && request.body() == null;
+            ApiResponse response = idempotent && hedger.appliesTo(guard) ? hedger.run(guard, attempt) : attempt.get();
+            guard.breaker().record(response.statusCode() != 0 && response.statusCode() < 500);
+            return response;
+        } finally {
+            guard.release();
+        }
+    }
+
+    private static ApiResponse unavailable(EndpointGuards.Guard guard, String reason) {
+        log.warn("APIMAN {} call refused: {}", guard.name(), reason);
+        return new ApiResponse(false, 0, new HttpHeaders(), null,
+                "APIMAN " + guard.name() + " is temporarily unavailable.");
+    }
+
+    private ApiResponse exchange(String targetUrl, HttpMethod method, HttpEntity<?> entity) {
+        try {
+            ResponseEntity<String> response = restTemplate.exchange(targetUrl, method, entity, String.class);
             return new ApiResponse(true, response.getStatusCode().value(), response.getHeaders(), response.getBody(), null);
         } catch (HttpStatusCodeException ex) {
             String body = ex.getResponseBodyAsString();
@@ -82,6 +135,21 @@ public class CommonApiService {
         }
     }
 
+    /**
+     * Method, URL, sorted query parameters, extra headers and the token's owner; a refreshed
+     * token of the same user makes the same request.
+     */
+    private static String flightKey(ApiRequest request) {
+        StringBuilder key = new StringBuilder(128)
+                .append(request.method()).append(' ').append(request.url())
+                .append(' ').append(request.queryParams() == null ? "{}" : new TreeMap<>(request.queryParams()))
+                .append(' ').append(AccessTokens.owner(request.bearerToken()));
+        if (request.additionalHeaders() != null && !request.additionalHeaders().isEmpty()) {
+            key.append(' ').append(new TreeMap<>(request.additionalHeaders()));
+        }
+        return key.toString();
+    }
+
     /**
      * Immutable DTO describing an outbound API call.
      */
@@ -0,0 +1,136 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.ApimanEndpointsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bulkhead, timeout and circuit breaker for each configured APIMAN endpoint. A call is matched to
+ * the endpoint whose URL is the longest prefix of its own; calls to anything else share the
+ * {@code other} guard with the default limits.
+ */
+@Service
+public class EndpointGuards {
+
+    static final String OTHER = "other";
+
+    /**
+     * Limits for one endpoint.
+     */
+    public static final class Guard {
+        private final String name;
+        private final Semaphore bulkhead;
+        private final int maxConcurrentCalls;
+        private final long timeoutMillis;
+        private final CircuitBreaker breaker;
+        private final Counter rejected;
+
+        private Guard(String name, int maxConcurrentCalls, long timeoutMillis,
+                      ApimanEndpointsProperties.Resilience settings, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.maxConcurrentCalls = maxConcurrentCalls;
+            this.bulkhead = new Semaphore(maxConcurrentCalls);
+            this.timeoutMillis = timeoutMillis;
+            this.breaker = new CircuitBreaker(name, settings.getWindowSize(), settings.getMinimumCalls(),
+                    settings.getFailureRatePercent(), settings.getOpenSeconds() * 1000L, meterRegistry);
+            this.rejected = Counter.builder("apiman.bulkhead.rejected")
+                    .description("Calls refused because the endpoint already had its maximum in flight")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            Gauge.builder("apiman.bulkhead.active", this, Guard::active)
+                    .description("Calls in flight per endpoint")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long timeoutMillis() {
+            return timeoutMillis;
+        }
+
+        public CircuitBreaker breaker() {
+            return breaker;
+        }
+
+        /**
+         * Takes a slot without waiting; a caller that gets one must {@link #release} it.
+         */
+        public boolean tryEnter() {
+            if (bulkhead.tryAcquire()) {
+                return true;
+            }
+            rejected.increment();
+            return false;
+        }
+
+        public void release() {
+            bulkhead.release();
+        }
+
+        int active() {
+            return maxConcurrentCalls - bulkhead.availablePermits();
+        }
+    }
+
+    private final boolean enabled;
+    private final ApimanEndpointsProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Guard> guards = new ConcurrentHashMap<>();
+
+    public EndpointGuards(ApimanEndpointsProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.getResilience().isEnabled();
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The guard for a call to {@code url}.
+     */
+    public Guard guardFor(String url) {
+        return guards.computeIfAbsent(endpointOf(url), this::create);
+    }
+
+    String endpointOf(String url) {
+        String match = OTHER;
+        int matchLength = -1;
+        if (url != null) {
+            for (Map.Entry<String, String> endpoint : properties.getEndpointUrls().entrySet()) {
+                String prefix = endpoint.getValue();
+                if (prefix.length() > matchLength && matches(url, prefix)) {
+                    match = endpoint.getKey();
+                    matchLength = prefix.length();
+                }
+            }
+        }
+        return match;
+    }
+
+    private static boolean matches(String url, String prefix) {
+        if (!url.startsWith(prefix)) {
+            return false;
+        }
+        if (url.length() == prefix.length() || prefix.endsWith("/")) {
+            return true;
+        }
+        char next = url.charAt(prefix.length());
+        return next == '/' || next == '?';
+    }
+
+    private Guard create(String name) {
+        return new Guard(name, properties.getMaxConcurrentCalls(name), properties.getTimeoutMillis(name),
+                properties.getResilience(), meterRegistry);
+    }
+}
@@ -0,0 +1,164 @@
+package com.selfservice.application.service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * {@link SharedSessionBackend} over a directory that every replica mounts, one file per chat.
+ * A file holds its version followed by the record and is replaced by an atomic rename, so
+ * readers never see a partial write. Writers take an OS file lock on one of 256 lock files,
+ * chosen by the chat's hash, to make compare-and-set safe across processes.
+ *
+ * <p>File names are HMACs of the chat id under a key derived from the store's secret, so phone
+ * numbers and chat ids do not appear on disk and cannot be recovered by hashing candidates.
+ */
+public final class FileSessionBackend implements SharedSessionBackend {
+
+    private static final int LOCK_STRIPES = 256;
+    private static final String NAME_KEY_LABEL = "shared-session-file-names";
+
+    private final Path directory;
+    private final Path lockDirectory;
+    private final ThreadLocal<Mac> macs;
+    /** An OS file lock is held per process, so threads of this JVM also serialize on a monitor. */
+    private final Object[] monitors = new Object[LOCK_STRIPES];
+
+    /**
+     * @param secret the store's secret, identical on every replica; file names are keyed by it
+     */
+    public FileSessionBackend(Path directory, byte[] secret) {
+        this.directory = directory;
+        this.lockDirectory = directory.resolve(".locks");
+        // Separate key for names, so the secret itself is only ever used by its own cipher.
+        SecretKeySpec nameKey = new SecretKeySpec(newMac(new SecretKeySpec(secret, "HmacSHA256"))
+                .doFinal(NAME_KEY_LABEL.getBytes(StandardCharsets.UTF_8)), "HmacSHA256");
+        this.macs = ThreadLocal.withInitial(() -> newMac(nameKey));
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            monitors[i] = new Object();
+        }
+        try {
+            Files.createDirectories(lockDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create shared session directory " + directory.toAbsolutePath(), e);
+        }
+    }
+
+    @Override
+    public long version(String channel, String id) throws IOException {
+        return versionOf(file(channel, hash(id)));
+    }
+
+    @Override
+    public Stored read(String channel, String id) throws IOException {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(file(channel, hash(id)));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (content.length < Long.BYTES) {
+            return null;
+        }
+        return new Stored(ByteBuffer.wrap(content).getLong(), Arrays.copyOfRange(content, Long.BYTES, content.length));
+    }
+
+    @Override
+    public long write(String channel, String id, long expectedVersion, byte[] data) throws IOException {
+        byte[] hash = hash(id);
+        Path file = file(channel, hash);
+        int stripe = hash[0] & 0xff;
+        synchronized (monitors[stripe]) {
+            try (FileChannel lockChannel = lockChannel(stripe)) {
+                FileLock lock = lockChannel.lock();
+                try {
+                    long current = versionOf(file);
+                    if (current != expectedVersion) {
+                        return CONFLICT;
+                    }
+                    // Clock-based floor so a chat deleted and created again never reuses a version a
+                    // node may still hold for its previous record.
+                    long next = Math.max(current + 1, System.currentTimeMillis() << 10);
+                    Files.createDirectories(file.getParent());
+                    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+                    ByteBuffer content = ByteBuffer.allocate(Long.BYTES + data.length);
+                    content.putLong(next).put(data);
+                    Files.write(temp, content.array());
+                    Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    return next;
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean delete(String channel, String id, long expectedVersion) throws IOException {
+        byte[] hash = hash(id);
+        Path file = file(channel, hash);
+        int stripe = hash[0] & 0xff;
+        synchronized (monitors[stripe]) {
+            try (FileChannel lockChannel = lockChannel(stripe)) {
+                FileLock lock = lockChannel.lock();
+                try {
+                    if (versionOf(file) != expectedVersion) {
+                        return false;
+                    }
+                    Files.deleteIfExists(file);
+                    return true;
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    private static long versionOf(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer version = ByteBuffer.allocate(Long.BYTES);
+            while (version.hasRemaining() && channel.read(version) >= 0) {
+                // keep reading
+            }
+            return version.hasRemaining() ? ABSENT : version.getLong(0);
+        } catch (NoSuchFileException e) {
+            return ABSENT;
+        }
+    }
+
+    private FileChannel lockChannel(int stripe) throws IOException {
+        return FileChannel.open(lockDirectory.resolve(String.format("%02x.lock", stripe)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private Path file(String channel, byte[] hash) {
+        return directory.resolve(channel).resolve(HexFormat.of().formatHex(hash, 0, 20) + ".session");
+    }
+
+    private byte[] hash(String id) {
+        return macs.get().doFinal(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Mac newMac(SecretKeySpec key) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available for the shared session store", e);
+        }
+    }
+}
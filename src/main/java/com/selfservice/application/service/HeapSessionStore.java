@@ -0,0 +1,52 @@
+package com.selfservice.application.service;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Sessions held in this JVM only. The default; a single replica can serve every chat. Sessions
+ * sit in a {@link StripedLongMap} on the packed {@link SessionKey}, so lookups do not allocate
+ * map entries.
+ *
+ * @param <S> session type
+ */
+public final class HeapSessionStore<S extends IdleSessionSweeper.Tracked> implements SessionStore<SessionKey, S> {
+
+    private final StripedLongMap<S> sessions = new StripedLongMap<>();
+    private final Function<SessionKey, S> factory;
+
+    public HeapSessionStore(Function<SessionKey, S> factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public S get(SessionKey key) {
+        return sessions.get(key.packed());
+    }
+
+    @Override
+    public S getOrCreate(SessionKey key) {
+        S session = sessions.get(key.packed());
+        return session != null ? session : sessions.computeIfAbsent(key.packed(), packed -> factory.apply(key));
+    }
+
+    @Override
+    public S putIfAbsent(SessionKey key, S session) {
+        return sessions.computeIfAbsent(key.packed(), packed -> session);
+    }
+
+    @Override
+    public boolean remove(SessionKey key, S session) {
+        return sessions.remove(key.packed(), session);
+    }
+
+    @Override
+    public void forEach(Consumer<S> visitor) {
+        sessions.forEach((packed, session) -> visitor.accept(session));
+    }
+
+    @Override
+    public int size() {
+        return sessions.size();
+    }
+}
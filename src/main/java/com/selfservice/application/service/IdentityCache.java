@@ -0,0 +1,133 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.auth.AccessTokens;
+import com.selfservice.application.config.IdentityCacheProperties;
+import com.selfservice.application.dto.FindUserResult;
+import com.selfservice.application.dto.ServiceListResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * What a login learned about a customer, keyed by their Keycloak subject so a login on another
+ * channel can reuse it: the impersonation exchange id, the findUser result and the main services
+ * of each account looked at. Failed lookups are not kept. An entry lives for the configured TTL,
+ * cut short by the lifetime of the access token it was first filled with.
+ */
+@Service
+public class IdentityCache {
+
+    /**
+     * One customer's cached lookups. Each value is fetched at most once per entry while it
+     * succeeds; concurrent logins may both fetch, and either result is kept.
+     */
+    public static final class Identity {
+        private final long expiresAtMs;
+        private final boolean cached;
+        private volatile String exchangeId;
+        private volatile FindUserResult findUser;
+        private final Map<String, ServiceListResult> services = new ConcurrentHashMap<>();
+
+        private Identity(long expiresAtMs, boolean cached) {
+            this.expiresAtMs = expiresAtMs;
+            this.cached = cached;
+        }
+
+        public String exchangeId(Supplier<String> fetch) {
+            String current = exchangeId;
+            if (current == null) {
+                current = fetch.get();
+                if (cached && StringUtils.hasText(current)) {
+                    exchangeId = current;
+                }
+            }
+            return current;
+        }
+
+        public FindUserResult findUser(Supplier<FindUserResult> fetch) {
+            FindUserResult current = findUser;
+            if (current == null) {
+                current = fetch.get();
+                if (cached && current != null && current.success()) {
+                    findUser = current;
+                }
+            }
+            return current;
+        }
+
+        public ServiceListResult services(String accountId, Supplier<ServiceListResult> fetch) {
+            ServiceListResult current = accountId == null ? null : services.get(accountId);
+            if (current == null) {
+                current = fetch.get();
+                if (cached && accountId != null && current != null && !current.hasError()) {
+                    services.put(accountId, current);
+                }
+            }
+            return current;
+        }
+    }
+
+    private final boolean enabled;
+    private final long ttlMs;
+    private final Map<String, Identity> identities;
+    private final Counter hits;
+    private final Counter misses;
+
+    public IdentityCache(IdentityCacheProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.ttlMs = Math.max(0L, properties.getTtlMinutes()) * 60_000L;
+        int maxEntries = Math.max(1, properties.getMaxEntries());
+        this.identities = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Identity> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.hits = Counter.builder("identity.cache.hits")
+                .description("Logins that reused what another channel fetched for the same customer")
+                .register(meterRegistry);
+        this.misses = Counter.builder("identity.cache.misses")
+                .description("Logins that had to fetch the customer's data")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The Keycloak subject of an access token, or {@code null} if it carries none.
+     */
+    public String subjectOf(String accessToken) {
+        return AccessTokens.subject(accessToken);
+    }
+
+    /**
+     * The cached lookups for {@code subject}, starting an entry that lasts at most
+     * {@code tokenLifetimeSeconds} if there is none. Without a subject, or with the cache
+     * disabled, returns an entry that fetches every time and keeps nothing.
+     */
+    public Identity identity(String subject, long tokenLifetimeSeconds) {
+        return identity(subject, tokenLifetimeSeconds, System.currentTimeMillis());
+    }
+
+    Identity identity(String subject, long tokenLifetimeSeconds, long nowMs) {
+        if (!enabled || subject == null || ttlMs == 0) {
+            return new Identity(nowMs, false);
+        }
+        long lifetimeMs = Math.min(ttlMs, Math.max(0L, tokenLifetimeSeconds) * 1000L);
+        synchronized (identities) {
+            Identity current = identities.get(subject);
+            if (current != null && current.expiresAtMs > nowMs) {
+                hits.increment();
+                return current;
+            }
+            misses.increment();
+            Identity fresh = new Identity(nowMs + lifetimeMs, true);
+            identities.put(subject, fresh);
+            return fresh;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.selfservice.application.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Trims chat sessions that nobody used for a while back to their durable preferences. Active
+ * sessions are filed in a hashed timing wheel under the time they would go idle. An access only
+ * stamps the session; when its slot comes round the sweeper either evicts it or, if it was used
+ * in the meantime, files it again further ahead. The request path therefore touches the wheel
+ * once per activation, not once per update.
+ *
+ * <p>When more sessions are active than the configured maximum, the sweeper also evicts the least
+ * recently used ones ahead of their timeout. It walks the slots ahead in deadline order, and a
+ * session used since it was filed is re-filed under its real deadline, further along that same
+ * walk, instead of being evicted. Trimming therefore follows last use, to within one tick.
+ *
+ * @param <S> session type; the sweeper synchronizes on the session while evicting it
+ */
+public final class IdleSessionSweeper<S extends IdleSessionSweeper.Tracked> {
+
+    private static final Logger log = LoggerFactory.getLogger(IdleSessionSweeper.class);
+
+    /**
+     * Sweeper bookkeeping carried by every session object.
+     */
+    public abstract static class Tracked {
+        private volatile long lastAccessMs;
+        private volatile boolean sweeping;
+        private volatile boolean retired;
+        /** Written under the session's monitor. */
+        private volatile boolean scheduled;
+
+        public final long lastAccessMs() {
+            return lastAccessMs;
+        }
+
+        /**
+         * True once the session was removed from its store; its state is no longer authoritative.
+         */
+        public final boolean isRetired() {
+            return retired;
+        }
+    }
+
+    /**
+     * Drops the transient state of an idle session.
+     */
+    @FunctionalInterface
+    public interface Evictor<S> {
+        /**
+         * Runs under the session's lock. Keeps durable preferences and returns true when nothing
+         * is left, after removing the session from its store.
+         */
+        boolean evict(S session);
+    }
+
+    private final String channel;
+    private final long idleMs;
+    private final long tickMs;
+    private final int maxActive;
+    private final Evictor<S> evictor;
+    private final List<Queue<S>> wheel;
+    private final AtomicInteger active = new AtomicInteger();
+    private final Counter idleEvictions;
+    private final Counter capacityEvictions;
+    /** Next tick to sweep; every slot before it has been drained. */
+    private volatile long cursor;
+    private ScheduledExecutorService timer;
+
+    public IdleSessionSweeper(String channel, Duration idleTimeout, Duration tick, int maxActive,
+                              Evictor<S> evictor, MeterRegistry meterRegistry) {
+        this.channel = channel;
+        this.tickMs = Math.max(1L, tick.toMillis());
+        this.idleMs = Math.max(tickMs, idleTimeout.toMillis());
+        this.maxActive = Math.max(1, maxActive);
+        this.evictor = evictor;
+        // Deadlines are at most one timeout ahead, so one revolution covers them all.
+        int slots = (int) Math.min(1 << 16, idleMs / tickMs + 2);
+        this.wheel = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            wheel.add(new ConcurrentLinkedQueue<>());
+        }
+
+        Gauge.builder("session.active", active, AtomicInteger::get)
+                .description("Chat sessions holding transient state such as tokens, lists and menu position")
+                .tag("channel", channel)
+                .register(meterRegistry);
+        this.idleEvictions = evictionCounter(meterRegistry, channel, "idle");
+        this.capacityEvictions = evictionCounter(meterRegistry, channel, "capacity");
+    }
+
+    /**
+     * Starts sweeping in the background, once per tick.
+     */
+    public synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, channel + "-session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(() -> {
+            try {
+                sweep(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                log.error("Idle {} session sweep failed", channel, e);
+            }
+        }, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void shutdown() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    /**
+     * Records a use of the session. Returns false when the sweeper removed the session
+     * concurrently; the caller must look it up again.
+     */
+    public boolean touch(S session) {
+        return touch(session, System.currentTimeMillis());
+    }
+
+    boolean touch(S session, long nowMs) {
+        Tracked tracked = session;
+        tracked.lastAccessMs = nowMs;
+        // Pairs with sweep: either the sweeper sees this stamp and keeps the session, or we wait
+        // for its verdict before using the session.
+        while (tracked.sweeping) {
+            Thread.onSpinWait();
+        }
+        if (tracked.retired) {
+            return false;
+        }
+        if (!tracked.scheduled) {
+            synchronized (session) {
+                if (!tracked.scheduled && !tracked.retired) {
+                    tracked.scheduled = true;
+                    active.incrementAndGet();
+                    file(session, nowMs + idleMs, cursor);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Files a session loaded from a snapshot as if it was last used at {@code lastAccessMs}, so it
+     * goes idle on its original schedule.
+     */
+    public void restore(S session, long lastAccessMs) {
+        touch(session, lastAccessMs);
+    }
+
+    /**
+     * Marks a session its owner removed from the store, so holders of a stale reference look it
+     * up again, and stops counting it as active. Call while holding the session's lock.
+     */
+    public void retire(S session) {
+        Tracked tracked = session;
+        tracked.retired = true;
+        if (tracked.scheduled) {
+            unschedule(tracked);
+        }
+    }
+
+    public int activeSessions() {
+        return active.get();
+    }
+
+    /**
+     * Evicts sessions that went idle by {@code nowMs}, then trims the least recently used ones
+     * while over capacity. Runs once per tick once started.
+     */
+    public synchronized void sweep(long nowMs) {
+        long target = Math.floorDiv(nowMs, tickMs);
+        // After a long pause every slot is due; drain each of them once.
+        long tick = Math.max(cursor, target - wheel.size() + 1);
+        for (; tick <= target; tick++) {
+            cursor = tick + 1;
+            drain(tick, nowMs, false);
+        }
+        for (long ahead = cursor; active.get() > maxActive && ahead < cursor + wheel.size(); ahead++) {
+            drain(ahead, nowMs, true);
+        }
+    }
+
+    private void drain(long tick, long nowMs, boolean overCapacity) {
+        Queue<S> slot = slot(tick);
+        // Sessions re-filed a full revolution ahead land in this same slot; leave them for then.
+        int due = slot.size();
+        S session;
+        while (due-- > 0 && (!overCapacity || active.get() > maxActive) && (session = slot.poll()) != null) {
+            expire(session, tick, nowMs, overCapacity);
+        }
+    }
+
+    private void expire(S session, long tick, long nowMs, boolean overCapacity) {
+        Tracked tracked = session;
+        synchronized (session) {
+            if (!tracked.scheduled) {
+                return;
+            }
+            if (tracked.retired) {
+                unschedule(tracked);
+                return;
+            }
+            tracked.sweeping = true;
+            try {
+                long deadline = tracked.lastAccessMs + idleMs;
+                // Capacity evictions spare anything used within the last tick.
+                if (deadline > tick * tickMs || (overCapacity && tracked.lastAccessMs > nowMs - tickMs)) {
+                    file(session, Math.max(deadline, nowMs + tickMs), tick + 1);
+                    return;
+                }
+                unschedule(tracked);
+                if (evictor.evict(session)) {
+                    tracked.retired = true;
+                }
+                (overCapacity ? capacityEvictions : idleEvictions).increment();
+            } finally {
+                tracked.sweeping = false;
+            }
+        }
+    }
+
+    private void unschedule(Tracked tracked) {
+        tracked.scheduled = false;
+        active.decrementAndGet();
+    }
+
+    private void file(S session, long deadlineMs, long earliestTick) {
+        long tick = Math.max(Math.floorDiv(deadlineMs + tickMs - 1, tickMs), earliestTick);
+        slot(tick).add(session);
+    }
+
+    private Queue<S> slot(long tick) {
+        return wheel.get((int) Math.floorMod(tick, (long) wheel.size()));
+    }
+
+    private static Counter evictionCounter(MeterRegistry meterRegistry, String channel, String reason) {
+        return Counter.builder("session.evictions")
+                .description("Idle chat sessions trimmed back to their preferences")
+                .tag("channel", channel)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
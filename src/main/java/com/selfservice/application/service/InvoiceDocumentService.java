@@ -0,0 +1,366 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.auth.AccessTokens;
+import com.selfservice.application.config.ApimanEndpointsProperties;
+import com.selfservice.application.config.CallTimeouts;
+import com.selfservice.application.config.InvoiceDocumentProperties;
+import com.selfservice.application.config.SessionStoreProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Gets invoice PDFs to the chat channels without holding them in memory. A bill's document is
+ * streamed from APIMAN straight into a local disk cache with NIO channel transfers, and the
+ * channels are handed a short-lived signed link to it, which {@code InvoiceDocumentController}
+ * serves from disk the same way. Cached files are named after a hash of the user and bill, so a
+ * user only ever gets a link to their own PDFs; they are reused for the configured TTL and the
+ * oldest are deleted once the cache outgrows its size limit. With the file session store any
+ * replica may serve a link, so the cache and signing secret must then be shared.
+ */
+@Service
+public class InvoiceDocumentService {
+
+    private static final Logger log = LoggerFactory.getLogger(InvoiceDocumentService.class);
+
+    private record CachedFile(Path path, long size, long modifiedMs) { }
+
+    /** Bytes moved per channel transfer call. */
+    private static final long TRANSFER_CHUNK = 1L << 20;
+    private static final String SUFFIX = ".pdf";
+
+    private final CloseableHttpClient httpClient;
+    private final ApimanEndpointsProperties apimanEndpoints;
+    private final EndpointGuards guards;
+    private final Path cacheDir;
+    private final long cacheTtlMs;
+    private final long maxCacheBytes;
+    private final long maxDocumentBytes;
+    private final long linkTtlSeconds;
+    private final byte[] signingKey;
+    private final String publicBaseUrl;
+    private final SingleFlight<String, Path> downloads;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+
+    public InvoiceDocumentService(CloseableHttpClient outboundHttpClient,
+                                  ApimanEndpointsProperties apimanEndpoints,
+                                  EndpointGuards guards,
+                                  InvoiceDocumentProperties properties,
+                                  SessionStoreProperties sessionStore,
+                                  @Value("${app.public-base-url:}") String publicBaseUrl,
+                                  MeterRegistry meterRegistry) {
+        if (sessionStore.getType() == SessionStoreProperties.Type.FILE) {
+            if (!StringUtils.hasText(properties.getSigningSecret())) {
+                throw new IllegalStateException(
+                        "invoices.pdf.signing-secret is required when sessions are shared between replicas");
+            }
+            if (!properties.hasCacheDir()) {
+                throw new IllegalStateException(
+                        "invoices.pdf.cache-dir is required when sessions are shared between replicas");
+            }
+        }
+        this.httpClient = outboundHttpClient;
+        this.apimanEndpoints = apimanEndpoints;
+        this.guards = guards;
+        this.cacheDir = properties.getCacheDir();
+        this.cacheTtlMs = Math.max(0L, properties.getCacheTtlMinutes()) * 60_000L;
+        this.maxCacheBytes = Math.max(1L, properties.getMaxCacheMegabytes()) << 20;
+        this.maxDocumentBytes = Math.max(1L, properties.getMaxDocumentMegabytes()) << 20;
+        this.linkTtlSeconds = Math.max(1L, properties.getLinkTtlSeconds());
+        this.signingKey = StringUtils.hasText(properties.getSigningSecret())
+                ? properties.getSigningSecret().getBytes(StandardCharsets.UTF_8)
+                : randomKey();
+        this.publicBaseUrl = publicBaseUrl == null ? "" : publicBaseUrl.strip().replaceAll("/+$", "");
+        this.downloads = new SingleFlight<>("invoice-pdf", meterRegistry);
+        this.cacheHits = Counter.builder("invoice.pdf.cache.hits")
+                .description("Invoice PDFs served from the local disk cache")
+                .register(meterRegistry);
+        this.cacheMisses = Counter.builder("invoice.pdf.cache.misses")
+                .description("Invoice PDFs that had to be downloaded from APIMAN")
+                .register(meterRegistry);
+    }
+
+    /**
+     * A signed link to the PDF of {@code invoiceId} for the token's user, downloading it first
+     * unless a fresh copy is cached. Returns {@code null} if the PDF cannot be had or no public
+     * base URL is configured for the channels to fetch it from.
+     */
+    public String downloadLink(String accessToken, String invoiceId) {
+        if (publicBaseUrl.isEmpty()) {
+            log.warn("Cannot hand out invoice PDF links because app.public-base-url is not configured");
+            return null;
+        }
+        if (!StringUtils.hasText(accessToken) || !StringUtils.hasText(invoiceId)) {
+            return null;
+        }
+        Path document = document(accessToken, invoiceId.strip());
+        if (document == null) {
+            return null;
+        }
+        String name = document.getFileName().toString();
+        String fileName = fileName(invoiceId);
+        long expires = System.currentTimeMillis() / 1000L + linkTtlSeconds;
+        return UriComponentsBuilder.fromHttpUrl(publicBaseUrl)
+                .path("/invoices/pdf/{name}")
+                .queryParam("file", fileName)
+                .queryParam("expires", expires)
+                .queryParam("signature", sign(name, fileName, expires))
+                .buildAndExpand(name)
+                .toUriString();
+    }
+
+    /**
+     * The file name an invoice's PDF is delivered under.
+     */
+    public static String fileName(String invoiceId) {
+        return "invoice-" + invoiceId.strip().replaceAll("[^A-Za-z0-9._-]", "_") + SUFFIX;
+    }
+
+    /**
+     * The cached PDF a link points to, or {@code null} if the link is forged, expired or its
+     * file is gone.
+     */
+    public Path resolve(String name, String fileName, long expires, String signature) {
+        return resolve(name, fileName, expires, signature, System.currentTimeMillis());
+    }
+
+    Path resolve(String name, String fileName, long expires, String signature, long nowMs) {
+        if (name == null || fileName == null || signature == null || !name.matches("[0-9a-f]{64}\\.pdf")) {
+            return null;
+        }
+        if (expires < nowMs / 1000L) {
+            return null;
+        }
+        byte[] expected = sign(name, fileName, expires).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, signature.getBytes(StandardCharsets.US_ASCII))) {
+            return null;
+        }
+        Path file = cacheDir.resolve(name);
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    private Path document(String accessToken, String invoiceId) {
+        String name = cacheName(AccessTokens.owner(accessToken), invoiceId);
+        Path cached = cacheDir.resolve(name);
+        if (isFresh(cached)) {
+            cacheHits.increment();
+            return cached;
+        }
+        return downloads.run(name, () -> {
+            if (isFresh(cached)) {
+                cacheHits.increment();
+                return cached;
+            }
+            cacheMisses.increment();
+            return download(accessToken, invoiceId, cached);
+        });
+    }
+
+    private boolean isFresh(Path file) {
+        try {
+            return Files.isRegularFile(file)
+                    && Files.getLastModifiedTime(file).toMillis() + cacheTtlMs > System.currentTimeMillis();
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private Path download(String accessToken, String invoiceId, Path target) {
+        String template = apimanEndpoints.getBillDocumentUrl();
+        if (template == null) {
+            log.warn("Bill document URL is not configured; cannot fetch PDF for invoice {}", invoiceId);
+            return null;
+        }
+        String url = template.replace("{billId}", UriUtils.encodePathSegment(invoiceId, StandardCharsets.UTF_8));
+        EndpointGuards.Guard guard = guards.guardFor(url);
+        if (guards.isEnabled()) {
+            if (!guard.breaker().tryAcquire()) {
+                log.warn("APIMAN {} is temporarily unavailable; cannot fetch PDF for invoice {}", guard.name(), invoiceId);
+                return null;
+            }
+            if (!guard.tryEnter()) {
+                guard.breaker().release();
+                log.warn("APIMAN {} has too many calls in flight; cannot fetch PDF for invoice {}", guard.name(), invoiceId);
+                return null;
+            }
+        }
+        int status = 0;
+        try {
+            Files.createDirectories(cacheDir);
+            Path partial = Files.createTempFile(cacheDir, "download-", ".part");
+            try {
+                HttpGet request = new HttpGet(url);
+                request.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken);
+                request.setHeader(HttpHeaders.ACCEPT, "application/pdf");
+                request.setHeader(HttpHeaders.USER_AGENT, "SelfserviceTelegramBot/1.0");
+                try {
+                    status = CallTimeouts.with(guard.timeoutMillis(), () -> fetch(request, partial));
+                } catch (UncheckedIOException ex) {
+                    throw ex.getCause();
+                }
+                if (status != 200) {
+                    log.warn("APIMAN returned {} for the PDF of invoice {}", status, invoiceId);
+                    return null;
+                }
+                Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(partial);
+            }
+            prune();
+            return target;
+        } catch (IOException ex) {
+            log.warn("Failed to fetch PDF for invoice {}: {}", invoiceId, ex.toString());
+            return null;
+        } finally {
+            if (guards.isEnabled()) {
+                guard.breaker().record(status != 0 && status < 500);
+                guard.release();
+            }
+        }
+    }
+
+    /**
+     * Sends {@code request} and streams a 200 answer's body into {@code file}, returning the
+     * status.
+     */
+    private int fetch(HttpGet request, Path file) {
+        try {
+            return httpClient.execute(request, response -> {
+                HttpEntity entity = response.getEntity();
+                if (response.getCode() != 200 || entity == null) {
+                    EntityUtils.consume(entity);
+                    return response.getCode();
+                }
+                if (entity.getContentLength() > maxDocumentBytes) {
+                    EntityUtils.consume(entity);
+                    throw new IOException("document of " + entity.getContentLength() + " bytes is too large");
+                }
+                try (InputStream body = entity.getContent()) {
+                    transfer(body, file);
+                }
+                return response.getCode();
+            });
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Moves {@code body} into {@code file} through channels, a chunk at a time, refusing more
+     * than the document size limit.
+     */
+    private void transfer(InputStream body, Path file) throws IOException {
+        try (ReadableByteChannel source = Channels.newChannel(body);
+             FileChannel target = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            long moved;
+            while ((moved = target.transferFrom(source, position, TRANSFER_CHUNK)) > 0) {
+                position += moved;
+                if (position > maxDocumentBytes) {
+                    throw new IOException("document exceeds " + maxDocumentBytes + " bytes");
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the oldest cached PDFs until the cache fits its size limit again.
+     */
+    void prune() {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> listing = Files.list(cacheDir)) {
+            listing.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).forEach(files::add);
+        } catch (IOException ex) {
+            log.warn("Failed to list invoice PDF cache {}: {}", cacheDir, ex.toString());
+            return;
+        }
+        long total = 0;
+        List<CachedFile> cached = new ArrayList<>(files.size());
+        for (Path file : files) {
+            try {
+                long size = Files.size(file);
+                total += size;
+                cached.add(new CachedFile(file, size, Files.getLastModifiedTime(file).toMillis()));
+            } catch (IOException ignored) {
+                // Deleted meanwhile
+            }
+        }
+        if (total <= maxCacheBytes) {
+            return;
+        }
+        cached.sort(Comparator.comparingLong(CachedFile::modifiedMs));
+        for (CachedFile file : cached) {
+            if (total <= maxCacheBytes) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(file.path());
+                total -= file.size();
+            } catch (IOException ex) {
+                log.warn("Failed to delete cached invoice PDF {}: {}", file.path(), ex.toString());
+            }
+        }
+    }
+
+    static String cacheName(String owner, String invoiceId) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((owner + '\n' + invoiceId).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash) + SUFFIX;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private String sign(String name, String fileName, long expires) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(signingKey, "HmacSHA256"));
+            byte[] signature = mac.doFinal((name + '\n' + fileName + '\n' + expires).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("HmacSHA256 is not available", ex);
+        }
+    }
+
+    private static byte[] randomKey() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+}
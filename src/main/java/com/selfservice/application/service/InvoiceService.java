@@ -21,6 +21,7 @@ public class InvoiceService {
     private static final Logger log = LoggerFactory.getLogger(InvoiceService.class);
 
     private final CommonApiService commonApiService;
+    private final ApiResponseCache responseCache;
     private final ObjectMapper objectMapper;
     private final String billEndpoint;
     private final ApimanEndpointsProperties apimanEndpoints;
@@ -28,8 +29,10 @@ public class InvoiceService {
 
     public InvoiceService(CommonApiService commonApiService,
             ApimanEndpointsProperties apimanEndpoints,
-            ObjectMapper objectMapper) {
+            ObjectMapper objectMapper,
+            ApiResponseCache responseCache) {
         this.commonApiService = commonApiService;
+        this.responseCache = responseCache;
         this.objectMapper = objectMapper;
         this.billEndpoint = apimanEndpoints.getBillUrl();
         this.apimanEndpoints = apimanEndpoints;
@@ -53,6 +56,12 @@ public class InvoiceService {
         Map<String, String> queryParams = new java.util.LinkedHashMap<>(configuredQueryParams);
         queryParams.put("billingAccount.id", accountId);
 
+        return responseCache.get("bill", accessToken, accountId, queryParams,
+                apimanEndpoints.getBillCacheTtlSeconds(),
+                () -> fetchInvoices(accessToken, queryParams), result -> !result.hasError());
+    }
+
+    private InvoiceListResult fetchInvoices(String accessToken, Map<String, String> queryParams) {
         CommonApiService.ApiResponse response = commonApiService.execute(
                 new CommonApiService.ApiRequest(billEndpoint, apimanEndpoints.getBillMethod(), accessToken, queryParams, null,
                         null));
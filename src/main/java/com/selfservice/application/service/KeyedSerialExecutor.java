@@ -0,0 +1,113 @@
+package com.selfservice.application.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks on a shared executor while keeping tasks with the same key strictly ordered.
+ * Each key gets a lane that exists only while it has pending work; a lane runs one task at a
+ * time and hands the thread back between tasks so busy keys cannot starve the others.
+ */
+public class KeyedSerialExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyedSerialExecutor.class);
+
+    private final String name;
+    private final Executor executor;
+    private final ConcurrentHashMap<Object, Lane> lanes = new ConcurrentHashMap<>();
+    private final DistributionSummary laneDepth;
+    private final Timer laneWait;
+
+    public KeyedSerialExecutor(String name, Executor executor, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.executor = executor;
+        this.laneDepth = DistributionSummary.builder("webhook.lane.depth")
+                .description("Tasks queued in a lane, including the one just added")
+                .tag("lanes", name)
+                .register(meterRegistry);
+        this.laneWait = Timer.builder("webhook.lane.wait")
+                .description("Time a task waited in its lane before starting")
+                .tag("lanes", name)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("webhook.lanes.active", lanes, ConcurrentHashMap::size)
+                .description("Keys with pending or running work")
+                .tag("lanes", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues the task behind any earlier task for the same key.
+     */
+    public void execute(Object key, Runnable task) {
+        QueuedTask queued = new QueuedTask(task, System.nanoTime());
+        Lane[] started = new Lane[1];
+        lanes.compute(key, (k, lane) -> {
+            if (lane == null) {
+                lane = new Lane(k);
+                started[0] = lane;
+            }
+            lane.tasks.add(queued);
+            laneDepth.record(lane.tasks.size());
+            return lane;
+        });
+        if (started[0] != null) {
+            schedule(started[0]);
+        }
+    }
+
+    public int activeLanes() {
+        return lanes.size();
+    }
+
+    private void schedule(Lane lane) {
+        try {
+            executor.execute(() -> runNext(lane));
+        } catch (RejectedExecutionException ex) {
+            Lane removed = lanes.remove(lane.key);
+            int dropped = removed == null ? 0 : removed.tasks.size();
+            log.warn("{} lane {} dropped {} task(s): executor rejected work", name, lane.key, dropped);
+        }
+    }
+
+    private void runNext(Lane lane) {
+        QueuedTask next = lane.tasks.poll();
+        if (next != null) {
+            laneWait.record(System.nanoTime() - next.enqueuedAtNanos(), TimeUnit.NANOSECONDS);
+            try {
+                next.task().run();
+            } catch (RuntimeException ex) {
+                log.error("Unhandled error in {} lane {}", name, lane.key, ex);
+            }
+        }
+        // Retire the lane only when nothing was added while the task ran; compute() on the same
+        // key serialises this check with concurrent execute() calls.
+        Lane remaining = lanes.computeIfPresent(lane.key, (k, current) -> current.tasks.isEmpty() ? null : current);
+        if (remaining != null) {
+            schedule(remaining);
+        }
+    }
+
+    private static final class Lane {
+        private final Object key;
+        private final Queue<QueuedTask> tasks = new ConcurrentLinkedQueue<>();
+
+        private Lane(Object key) {
+            this.key = key;
+        }
+    }
+
+    private record QueuedTask(Runnable task, long enqueuedAtNanos) {
+    }
+}
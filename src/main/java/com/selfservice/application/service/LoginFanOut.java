@@ -0,0 +1,82 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.LoginFanOutProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the lookups a login needs on a dedicated pool so independent ones overlap and none can
+ * hold the login up for longer than the per-call timeout. A call that fails or times out yields
+ * its fallback; the login goes on with what it has. A timed-out call is not interrupted and keeps
+ * its thread until the HTTP client gives up.
+ */
+@Component
+public class LoginFanOut {
+
+    private static final Logger log = LoggerFactory.getLogger(LoginFanOut.class);
+
+    private final ExecutorService executor;
+    private final long callTimeoutMs;
+    private final MeterRegistry meterRegistry;
+
+    public LoginFanOut(LoginFanOutProperties properties, MeterRegistry meterRegistry) {
+        this.callTimeoutMs = Math.max(1L, properties.getCallTimeoutMillis());
+        this.meterRegistry = meterRegistry;
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, properties.getThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "login-fan-out-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts {@code call} on the pool; the future holds its result, or {@code fallback} if it
+     * failed or did not finish within the timeout.
+     */
+    public <T> CompletableFuture<T> call(String name, Supplier<T> call, T fallback) {
+        return CompletableFuture.supplyAsync(call, executor)
+                .orTimeout(callTimeoutMs, TimeUnit.MILLISECONDS)
+                .exceptionally(ex -> {
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause instanceof TimeoutException) {
+                        counter("login.fanout.timeouts", name).increment();
+                        log.warn("Login lookup {} did not finish within {} ms", name, callTimeoutMs);
+                    } else {
+                        counter("login.fanout.failures", name).increment();
+                        log.warn("Login lookup {} failed: {}", name, cause.toString());
+                    }
+                    return fallback;
+                });
+    }
+
+    /**
+     * Pool for stages that follow the lookups, so they never run on the timeout scheduler.
+     */
+    public Executor executor() {
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Counter counter(String name, String call) {
+        return Counter.builder(name).tag("call", call).register(meterRegistry);
+    }
+}
@@ -0,0 +1,96 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.LoginFanOutProperties;
+import com.selfservice.application.dto.AccountSummary;
+import com.selfservice.application.dto.ServiceSummary;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms the per-user {@link ApiResponseCache} right after login with what the business menu asks
+ * for first: the selected account's main services, recent invoices and the tickets for the
+ * selected service. The loads run on a small pool of their own, apart from the {@link LoginFanOut}
+ * pool, so they never delay or time out a login's own lookups; when that pool's queue is full a
+ * load is skipped. Logging out or switching account before a load finishes keeps its result out
+ * of the cache, and loads not yet started are skipped.
+ */
+@Service
+public class LoginPrefetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(LoginPrefetcher.class);
+
+    private final ApiResponseCache responseCache;
+    private final ProductService productService;
+    private final InvoiceService invoiceService;
+    private final TroubleTicketService troubleTicketService;
+    private final ThreadPoolExecutor executor;
+    private final Counter skipped;
+
+    public LoginPrefetcher(ApiResponseCache responseCache, ProductService productService,
+                           InvoiceService invoiceService, TroubleTicketService troubleTicketService,
+                           LoginFanOutProperties properties, MeterRegistry meterRegistry) {
+        this.responseCache = responseCache;
+        this.productService = productService;
+        this.invoiceService = invoiceService;
+        this.troubleTicketService = troubleTicketService;
+        int threads = Math.max(1, properties.getPrefetchThreads());
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, properties.getPrefetchQueue())), runnable -> {
+                    Thread thread = new Thread(runnable, "login-prefetch-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.skipped = Counter.builder("login.prefetch.skipped")
+                .description("Prefetch loads dropped because the prefetch pool was busy")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts loading the lists for {@code account}, and tickets for {@code service} if one is
+     * selected, and returns at once.
+     */
+    public void prefetch(String accessToken, AccountSummary account, ServiceSummary service) {
+        if (accessToken == null || account == null) {
+            return;
+        }
+        String accountId = account.accountId();
+        String serviceId = service == null ? null : service.productId();
+        long requestedNanos = System.nanoTime();
+        load("prefetch-products", accessToken, accountId, requestedNanos,
+                () -> productService.getMainServices(accessToken, accountId));
+        load("prefetch-invoices", accessToken, accountId, requestedNanos,
+                () -> invoiceService.getInvoices(accessToken, accountId));
+        load("prefetch-tickets", accessToken, accountId, requestedNanos,
+                () -> troubleTicketService.getTroubleTicketsByAccountId(accessToken, accountId, serviceId));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void load(String name, String accessToken, String accountId, long requestedNanos, Runnable lookup) {
+        try {
+            executor.execute(() -> {
+                try {
+                    responseCache.prefetch(accessToken, accountId, requestedNanos, lookup);
+                } catch (RuntimeException e) {
+                    log.warn("Login lookup {} failed: {}", name, e.toString());
+                }
+            });
+        } catch (RejectedExecutionException busy) {
+            skipped.increment();
+        }
+    }
+}
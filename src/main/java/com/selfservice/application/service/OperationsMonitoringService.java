@@ -1,6 +1,5 @@
 package com.selfservice.application.service;
 
-import com.selfservice.telegrambot.service.UserSessionService;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
@@ -69,15 +68,7 @@ public class OperationsMonitoringService {
         });
     }
 
-    public TokenDetails toTokenDetails(UserSessionService.TokenSnapshot snapshot) {
-        if (snapshot == null) {
-            return TokenDetails.none();
-        }
-        String state = snapshot.state() != null ? snapshot.state().name() : "NONE";
-        return new TokenDetails(state, snapshot.token());
-    }
-
-    public TokenDetails toTokenDetails(com.selfservice.whatsapp.service.WhatsappSessionService.TokenSnapshot snapshot) {
+    public TokenDetails toTokenDetails(ChatSessionEngine.TokenSnapshot snapshot) {
         if (snapshot == null) {
             return TokenDetails.none();
         }
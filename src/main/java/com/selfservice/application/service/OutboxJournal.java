@@ -0,0 +1,374 @@
+package com.selfservice.application.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.selfservice.application.config.OutboxProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped journal of outbound chat messages. A message is journaled before it
+ * is sent and acknowledged once the channel answered; entries never acknowledged are handed back
+ * to their channel on the next startup.
+ *
+ * <p>Writes land in the mapped page cache, so they survive a process crash immediately. A
+ * background flusher forces the active segment at a fixed interval (group commit), which bounds
+ * the window lost to a host crash without an fsync per message. Segments are deleted, oldest
+ * first, once every message in them has been acknowledged.
+ */
+@Component
+public class OutboxJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxJournal.class);
+
+    private static final byte ENQUEUE = 1;
+    private static final byte ACKNOWLEDGE = 2;
+    /** type + id, followed by the payload and a CRC32 of type, id and payload. */
+    private static final int RECORD_OVERHEAD = 1 + Long.BYTES + Integer.BYTES;
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /**
+     * A journaled message. {@code target} is channel-specific (e.g. the Bot API method) and never
+     * contains credentials. {@code replays} counts the restarts it has already been resent after.
+     */
+    public record Entry(long id, String channel, String recipient, String target, Map<String, Object> body,
+                        int replays) { }
+
+    private record Payload(String channel, String recipient, String target, Map<String, Object> body,
+                           int replays) { }
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxReplays;
+    private final ObjectMapper objectMapper;
+    private final ScheduledExecutorService flusher;
+
+    private final Object lock = new Object();
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Map<Long, Segment> pendingById = new HashMap<>();
+    private final Map<Long, Entry> recovered = new ConcurrentHashMap<>();
+    private Segment active;
+    private long nextId = 1;
+    private volatile boolean dirty;
+
+    public OutboxJournal(OutboxProperties properties, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.directory = Paths.get(properties.getDirectory());
+        this.segmentSize = Math.max(1, properties.getSegmentSizeMb()) * 1024 * 1024;
+        this.maxReplays = Math.max(0, properties.getMaxReplays());
+        this.objectMapper = objectMapper;
+        if (!enabled) {
+            this.flusher = null;
+            return;
+        }
+
+        try {
+            Files.createDirectories(directory);
+            recover();
+            roll();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open outbox journal in " + directory.toAbsolutePath(), e);
+        }
+
+        Gauge.builder("outbox.pending", this, journal -> journal.pendingCount())
+                .description("Journaled outbound messages not yet acknowledged")
+                .register(meterRegistry);
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "outbox-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1L, properties.getFlushIntervalMs());
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Outbox journal ready in {} ({} unacknowledged messages to replay)",
+                directory.toAbsolutePath(), recovered.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Journals a message before it is sent. Returns its id, or -1 when the journal is disabled or
+     * the message could not be written (the send should still go ahead).
+     */
+    public long append(String channel, String recipient, String target, Map<String, Object> body) {
+        return append(channel, recipient, target, body, 0);
+    }
+
+    /**
+     * Journals a message resent from the outbox, carrying the number of restarts it has been
+     * replayed after.
+     */
+    public long append(String channel, String recipient, String target, Map<String, Object> body, int replays) {
+        if (!enabled) {
+            return -1L;
+        }
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(new Payload(channel, recipient, target, body, replays));
+        } catch (IOException e) {
+            log.warn("Cannot journal {} message for {}", channel, recipient, e);
+            return -1L;
+        }
+        if (Integer.BYTES + RECORD_OVERHEAD + payload.length > segmentSize) {
+            log.warn("{} message for {} exceeds the outbox segment size; sending without journaling", channel, recipient);
+            return -1L;
+        }
+        synchronized (lock) {
+            long id = nextId++;
+            write(ENQUEUE, id, payload);
+            active.pending++;
+            pendingById.put(id, active);
+            return id;
+        }
+    }
+
+    /**
+     * Marks a journaled message as done, whether it was delivered or permanently failed.
+     */
+    public void acknowledge(long id) {
+        if (!enabled || id < 0) {
+            return;
+        }
+        synchronized (lock) {
+            Segment segment = pendingById.remove(id);
+            if (segment == null) {
+                return;
+            }
+            write(ACKNOWLEDGE, id, new byte[0]);
+            segment.pending--;
+            compact();
+        }
+    }
+
+    /**
+     * Takes the messages of a channel that were journaled but never acknowledged before the last
+     * shutdown. The caller resends them (journaling them again with one more replay) and
+     * acknowledges the old ids. Messages already replayed after the configured number of
+     * restarts are acknowledged here and dropped, so none is resent for ever.
+     */
+    public List<Entry> takeRecovered(String channel) {
+        List<Entry> entries = new ArrayList<>();
+        List<Entry> exhausted = new ArrayList<>();
+        recovered.values().removeIf(entry -> {
+            if (entry.channel().equals(channel)) {
+                (entry.replays() < maxReplays ? entries : exhausted).add(entry);
+                return true;
+            }
+            return false;
+        });
+        for (Entry entry : exhausted) {
+            log.warn("Dropping {} message {} for {} after {} replays", channel, entry.id(), entry.recipient(),
+                    entry.replays());
+            acknowledge(entry.id());
+        }
+        entries.sort(Comparator.comparingLong(Entry::id));
+        return entries;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        flusher.shutdown();
+        synchronized (lock) {
+            if (active != null) {
+                active.buffer.force();
+            }
+        }
+    }
+
+    private int pendingCount() {
+        synchronized (lock) {
+            return pendingById.size();
+        }
+    }
+
+    private void flush() {
+        if (!dirty) {
+            return;
+        }
+        MappedByteBuffer buffer;
+        synchronized (lock) {
+            dirty = false;
+            buffer = active.buffer;
+        }
+        try {
+            buffer.force();
+        } catch (RuntimeException e) {
+            log.error("Outbox journal flush failed", e);
+        }
+    }
+
+    /**
+     * Appends one record. The length prefix is written last, so a torn record reads as the end
+     * of the segment. Callers hold {@link #lock}.
+     */
+    private void write(byte type, long id, byte[] payload) {
+        int length = RECORD_OVERHEAD + payload.length;
+        if (active.position + Integer.BYTES + length > segmentSize) {
+            roll();
+        }
+        MappedByteBuffer buffer = active.buffer;
+        int start = active.position;
+        buffer.put(start + Integer.BYTES, type);
+        buffer.putLong(start + Integer.BYTES + 1, id);
+        buffer.put(start + Integer.BYTES + 1 + Long.BYTES, payload);
+        buffer.putInt(start + Integer.BYTES + 1 + Long.BYTES + payload.length, checksum(type, id, payload));
+        buffer.putInt(start, length);
+        active.position = start + Integer.BYTES + length;
+        dirty = true;
+    }
+
+    /**
+     * Starts a new segment. Called on startup and when the active segment is full.
+     */
+    private void roll() {
+        long sequence = active == null
+                ? segments.stream().mapToLong(segment -> segment.sequence).max().orElse(0L) + 1
+                : active.sequence + 1;
+        Path file = directory.resolve(SEGMENT_PREFIX + String.format("%016d", sequence) + SEGMENT_SUFFIX);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            if (active != null) {
+                active.buffer.force();
+            }
+            active = new Segment(sequence, file, buffer);
+            segments.addLast(active);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create outbox segment " + file, e);
+        }
+        compact();
+    }
+
+    /**
+     * Deletes fully acknowledged segments from the oldest one forward. Going strictly in order
+     * keeps every acknowledgement at least as long as the message it refers to.
+     */
+    private void compact() {
+        while (segments.size() > 1 && segments.peekFirst() != active && segments.peekFirst().pending == 0) {
+            Segment segment = segments.pollFirst();
+            try {
+                Files.deleteIfExists(segment.file);
+            } catch (IOException e) {
+                log.warn("Cannot delete outbox segment {}", segment.file, e);
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            Segment segment = new Segment(sequence, file, null);
+            segments.addLast(segment);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                replaySegment(segment, buffer);
+            }
+        }
+    }
+
+    private void replaySegment(Segment segment, MappedByteBuffer buffer) {
+        int position = 0;
+        int limit = buffer.capacity();
+        while (position + Integer.BYTES <= limit) {
+            int length = buffer.getInt(position);
+            if (length < RECORD_OVERHEAD || position + Integer.BYTES + length > limit) {
+                break;
+            }
+            int start = position + Integer.BYTES;
+            byte type = buffer.get(start);
+            long id = buffer.getLong(start + 1);
+            byte[] payload = new byte[length - RECORD_OVERHEAD];
+            buffer.get(start + 1 + Long.BYTES, payload);
+            if (buffer.getInt(start + 1 + Long.BYTES + payload.length) != checksum(type, id, payload)) {
+                log.warn("Outbox segment {} has a torn record at offset {}; ignoring the rest", segment.file, position);
+                break;
+            }
+            nextId = Math.max(nextId, id + 1);
+            if (type == ENQUEUE) {
+                try {
+                    Payload decoded = objectMapper.readValue(payload, new TypeReference<Payload>() { });
+                    recovered.put(id, new Entry(id, decoded.channel(), decoded.recipient(), decoded.target(), decoded.body(),
+                            decoded.replays()));
+                    pendingById.put(id, segment);
+                    segment.pending++;
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable outbox entry {} in {}", id, segment.file, e);
+                }
+            } else if (type == ACKNOWLEDGE) {
+                recovered.remove(id);
+                Segment owner = pendingById.remove(id);
+                if (owner != null) {
+                    owner.pending--;
+                }
+            }
+            position = start + length;
+        }
+    }
+
+    private static int checksum(byte type, long id, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (id >>> shift));
+        }
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static final class Segment {
+        private final long sequence;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int position;
+        private int pending;
+
+        private Segment(long sequence, Path file, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+}
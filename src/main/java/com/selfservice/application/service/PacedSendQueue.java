@@ -0,0 +1,399 @@
+package com.selfservice.application.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Outbound message queue that paces sends against a global and a per-recipient {@link TokenBucket}.
+ * Messages for one recipient go out strictly in order, one in flight at a time; when the channel
+ * asks us to back off, the message is put back at the head of its recipient queue instead of
+ * being dropped. The queue holds at most {@code maxQueued} messages; further submits are rejected
+ * straight away rather than piling up behind the rate limit.
+ *
+ * <p>A single dispatcher thread hands messages to the {@link Sender}, so senders must not block;
+ * blocking transports should run the call on their own executor and return the future.
+ *
+ * @param <M> channel-specific message type
+ */
+public final class PacedSendQueue<M> {
+
+    private static final Logger log = LoggerFactory.getLogger(PacedSendQueue.class);
+
+    @FunctionalInterface
+    public interface Sender<M> {
+        /**
+         * Sends one message. {@code attempt} starts at 1. The future should not complete
+         * exceptionally; failures are reported as {@link Outcome#failed()}.
+         */
+        CompletableFuture<Outcome> send(M message, int attempt);
+    }
+
+    /**
+     * Result of one send attempt. {@code retryAfterMillis} and {@code pauseAll} only apply to
+     * {@link Status#RETRY}: the former delays the retry, the latter pauses every recipient
+     * instead of just this one.
+     */
+    public record Outcome(Status status, long retryAfterMillis, boolean pauseAll) {
+
+        public enum Status {
+            DELIVERED,
+            FAILED,
+            RETRY
+        }
+
+        private static final Outcome DELIVERED = new Outcome(Status.DELIVERED, 0L, false);
+        private static final Outcome FAILED = new Outcome(Status.FAILED, 0L, false);
+
+        public static Outcome delivered() {
+            return DELIVERED;
+        }
+
+        public static Outcome failed() {
+            return FAILED;
+        }
+
+        public static Outcome retryAfter(long millis) {
+            return new Outcome(Status.RETRY, Math.max(0L, millis), false);
+        }
+
+        public static Outcome retryAllAfter(long millis) {
+            return new Outcome(Status.RETRY, Math.max(0L, millis), true);
+        }
+    }
+
+    /**
+     * How a message left the queue. {@code STOPPED} means shutdown cut it off before the channel
+     * gave a final answer; every other result is final.
+     */
+    public enum Result {
+        DELIVERED,
+        FAILED,
+        REJECTED,
+        STOPPED
+    }
+
+    private final String channel;
+    private final TokenBucket globalBucket;
+    private final Supplier<TokenBucket> recipientBucketFactory;
+    private final int maxAttempts;
+    private final int maxQueued;
+    private final Sender<M> sender;
+
+    private final ConcurrentHashMap<Object, Recipient> recipients = new ConcurrentHashMap<>();
+    private final DelayQueue<Wakeup> ready = new DelayQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    private final Timer queueLatency;
+    private final Timer sendLatency;
+    private final Counter delivered;
+    private final Counter failed;
+    private final Counter rejected;
+    private final Counter retries;
+
+    /**
+     * @param channel                metric tag and thread name, e.g. "telegram"
+     * @param globalBucket           limit shared by all recipients
+     * @param recipientBucketFactory creates the bucket for a recipient seen for the first time
+     * @param maxAttempts            attempts per message before it is reported as failed
+     * @param maxQueued              messages waiting or in flight before submits are rejected
+     */
+    public PacedSendQueue(String channel, TokenBucket globalBucket, Supplier<TokenBucket> recipientBucketFactory,
+            int maxAttempts, int maxQueued, Sender<M> sender, MeterRegistry meterRegistry) {
+        this.channel = channel;
+        this.globalBucket = Objects.requireNonNull(globalBucket, "globalBucket must not be null");
+        this.recipientBucketFactory = Objects.requireNonNull(recipientBucketFactory,
+                "recipientBucketFactory must not be null");
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.maxQueued = Math.max(1, maxQueued);
+        this.sender = Objects.requireNonNull(sender, "sender must not be null");
+
+        this.queueLatency = Timer.builder("channel.send.queue.latency")
+                .description("Time a message waited for its rate-limit slot")
+                .tag("channel", channel)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.sendLatency = Timer.builder("channel.send.latency")
+                .description("Channel API round trip per send attempt")
+                .tag("channel", channel)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.delivered = outcomeCounter(meterRegistry, "delivered");
+        this.failed = outcomeCounter(meterRegistry, "failed");
+        this.rejected = outcomeCounter(meterRegistry, "rejected");
+        this.retries = Counter.builder("channel.send.retries")
+                .description("Send attempts retried after the channel asked us to back off")
+                .tag("channel", channel)
+                .register(meterRegistry);
+        Gauge.builder("channel.send.queue.depth", queued, AtomicInteger::get)
+                .description("Messages waiting to be sent")
+                .tag("channel", channel)
+                .register(meterRegistry);
+
+        this.dispatcher = new Thread(this::dispatchLoop, channel + "-send-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Queues a message for the recipient. The future completes with {@code true} once the channel
+     * accepted it and with {@code false} when it failed, the queue was full or it was shut down.
+     */
+    public CompletableFuture<Boolean> submit(Object recipientKey, M message) {
+        return enqueue(recipientKey, message).thenApply(result -> result == Result.DELIVERED);
+    }
+
+    /**
+     * Queues a message for the recipient like {@link #submit}, completing with how it left the
+     * queue, so callers can tell a final answer from a send cut off by shutdown.
+     */
+    public CompletableFuture<Result> enqueue(Object recipientKey, M message) {
+        Objects.requireNonNull(recipientKey, "recipientKey must not be null");
+        Pending<M> pending = new Pending<>(message, System.nanoTime());
+        if (!running) {
+            pending.result.complete(Result.STOPPED);
+            return pending.result;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejected.increment();
+            log.warn("{} send queue is full ({} messages), rejecting message for {}", channel, maxQueued, recipientKey);
+            pending.result.complete(Result.REJECTED);
+            return pending.result;
+        }
+        while (true) {
+            Recipient recipient = recipients.computeIfAbsent(recipientKey,
+                    key -> new Recipient(key, recipientBucketFactory.get()));
+            synchronized (recipient) {
+                if (recipient.retired) {
+                    continue;
+                }
+                recipient.messages.addLast(pending);
+                if (!recipient.inFlight) {
+                    wake(recipient, 0L);
+                }
+            }
+            return pending.result;
+        }
+    }
+
+    public int queuedMessages() {
+        return queued.get();
+    }
+
+    /**
+     * Stops dispatching. Messages still queued complete with {@code false}, or
+     * {@link Result#STOPPED}.
+     */
+    public void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+        recipients.values().forEach(recipient -> {
+            synchronized (recipient) {
+                recipient.retired = true;
+                Pending<?> pending;
+                while ((pending = recipient.messages.pollFirst()) != null) {
+                    queued.decrementAndGet();
+                    pending.result.complete(Result.STOPPED);
+                }
+            }
+        });
+        recipients.clear();
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            Wakeup wakeup;
+            try {
+                wakeup = ready.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                dispatch(wakeup.recipient);
+            } catch (RuntimeException e) {
+                log.error("{} send dispatcher failed for recipient {}", channel, wakeup.recipient.key, e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void dispatch(Recipient recipient) {
+        long now = System.nanoTime();
+        Pending<M> pending;
+        synchronized (recipient) {
+            recipient.scheduled = false;
+            if (recipient.retired || recipient.inFlight) {
+                return;
+            }
+            if (recipient.messages.isEmpty()) {
+                // Keep the bucket around until it refilled, otherwise a new burst could slip through.
+                long untilFull = recipient.bucket.nanosUntilFull(now);
+                if (untilFull > 0) {
+                    wake(recipient, untilFull);
+                } else {
+                    recipient.retired = true;
+                    recipients.remove(recipient.key, recipient);
+                }
+                return;
+            }
+            long wait = recipient.bucket.tryAcquire(now);
+            if (wait > 0) {
+                wake(recipient, wait);
+                return;
+            }
+            long globalWait = globalBucket.tryAcquire(now);
+            if (globalWait > 0) {
+                recipient.bucket.release();
+                wake(recipient, globalWait);
+                return;
+            }
+            pending = (Pending<M>) recipient.messages.pollFirst();
+            recipient.inFlight = true;
+        }
+
+        pending.attempts++;
+        if (pending.attempts == 1) {
+            queueLatency.record(now - pending.enqueuedNanos, TimeUnit.NANOSECONDS);
+        }
+        CompletableFuture<Outcome> attempt;
+        try {
+            attempt = sender.send(pending.message, pending.attempts);
+        } catch (RuntimeException e) {
+            log.error("{} sender failed for recipient {}", channel, recipient.key, e);
+            attempt = CompletableFuture.completedFuture(Outcome.failed());
+        }
+        long startedNanos = now;
+        attempt.whenComplete((outcome, error) -> {
+            sendLatency.record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+            complete(recipient, pending, error == null && outcome != null ? outcome : Outcome.failed());
+        });
+    }
+
+    private void complete(Recipient recipient, Pending<M> pending, Outcome outcome) {
+        if (outcome.status() == Outcome.Status.RETRY && pending.attempts < maxAttempts) {
+            if (!running) {
+                synchronized (recipient) {
+                    recipient.inFlight = false;
+                }
+                queued.decrementAndGet();
+                pending.result.complete(Result.STOPPED);
+                return;
+            }
+            long delayNanos = TimeUnit.MILLISECONDS.toNanos(outcome.retryAfterMillis());
+            long resumeAt = System.nanoTime() + delayNanos;
+            (outcome.pauseAll() ? globalBucket : recipient.bucket).pauseUntil(resumeAt);
+            retries.increment();
+            log.warn("{} send to {} throttled, retrying in {} ms (attempt {}/{})",
+                    channel, recipient.key, outcome.retryAfterMillis(), pending.attempts, maxAttempts);
+            synchronized (recipient) {
+                recipient.inFlight = false;
+                if (recipient.retired) {
+                    queued.decrementAndGet();
+                    pending.result.complete(Result.STOPPED);
+                    return;
+                }
+                recipient.messages.addFirst(pending);
+                wake(recipient, delayNanos);
+            }
+            return;
+        }
+
+        queued.decrementAndGet();
+        boolean ok = outcome.status() == Outcome.Status.DELIVERED;
+        (ok ? delivered : failed).increment();
+        synchronized (recipient) {
+            recipient.inFlight = false;
+            if (!recipient.retired) {
+                wake(recipient, 0L);
+            }
+        }
+        pending.result.complete(ok ? Result.DELIVERED : Result.FAILED);
+    }
+
+    /**
+     * Puts the recipient on the ready queue unless it already is. Callers hold the recipient lock.
+     */
+    private void wake(Recipient recipient, long delayNanos) {
+        if (!recipient.scheduled) {
+            recipient.scheduled = true;
+            ready.put(new Wakeup(recipient, System.nanoTime() + delayNanos));
+        }
+    }
+
+    private Counter outcomeCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("channel.send.outcome")
+                .description("Messages that left the send queue, by result")
+                .tag("channel", channel)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static final class Recipient {
+        private final Object key;
+        private final TokenBucket bucket;
+        private final Deque<Pending<?>> messages = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean inFlight;
+        private boolean retired;
+
+        private Recipient(Object key, TokenBucket bucket) {
+            this.key = key;
+            this.bucket = bucket;
+        }
+    }
+
+    private static final class Pending<M> {
+        private final M message;
+        private final long enqueuedNanos;
+        private final CompletableFuture<Result> result = new CompletableFuture<>();
+        private int attempts;
+
+        private Pending(M message, long enqueuedNanos) {
+            this.message = message;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    private static final class Wakeup implements Delayed {
+        private final Recipient recipient;
+        private final long dueNanos;
+
+        private Wakeup(Recipient recipient, long dueNanos) {
+            this.recipient = recipient;
+            this.dueNanos = dueNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other instanceof Wakeup wakeup) {
+                return Long.compare(dueNanos - wakeup.dueNanos, 0L);
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
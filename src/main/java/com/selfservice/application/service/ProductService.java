@@ -25,6 +25,7 @@ public class ProductService {
     private static final Logger log = LoggerFactory.getLogger(ProductService.class);
 
     private final CommonApiService commonApiService;
+    private final ApiResponseCache responseCache;
     private final ObjectMapper objectMapper;
     private final String serviceEndpoint;
     private final ApimanEndpointsProperties apimanEndpoints;
@@ -32,8 +33,10 @@ public class ProductService {
 
     public ProductService(CommonApiService commonApiService,
             ApimanEndpointsProperties apimanEndpoints,
-            ObjectMapper objectMapper) {
+            ObjectMapper objectMapper,
+            ApiResponseCache responseCache) {
         this.commonApiService = commonApiService;
+        this.responseCache = responseCache;
         this.objectMapper = objectMapper;
         this.serviceEndpoint = apimanEndpoints.getProductUrl();
         this.apimanEndpoints = apimanEndpoints;
@@ -64,6 +67,12 @@ public class ProductService {
         Map<String, String> queryParams = new java.util.LinkedHashMap<>(configuredQueryParams);
         queryParams.put("billingAccount.id", accountId);
 
+        return responseCache.get("product", accessToken, accountId, queryParams,
+                apimanEndpoints.getProductCacheTtlSeconds(),
+                () -> fetchMainServices(accessToken, queryParams), result -> !result.hasError());
+    }
+
+    private ServiceListResult fetchMainServices(String accessToken, Map<String, String> queryParams) {
         CommonApiService.ApiResponse response = commonApiService.execute(
                 new CommonApiService.ApiRequest(serviceEndpoint, apimanEndpoints.getProductMethod(), accessToken,
                         queryParams, null, null));
@@ -0,0 +1,184 @@
+package com.selfservice.application.service;
+
+import java.time.Duration;
+
+/**
+ * Remembers the most recent ids seen within a time window using only primitive arrays: a ring
+ * buffer keeps arrival order for expiry and an open-addressing table answers membership. Neither
+ * allocates after construction.
+ */
+public final class RecentIdWindow {
+
+    private static final long EMPTY = 0L;
+
+    private final long windowNanos;
+    private final long[] ringIds;
+    private final long[] ringTimes;
+    /** Whether each ring slot still backs its table entry; cleared by {@link #forget}. */
+    private final boolean[] ringLive;
+    private final long[] table;
+    private final int mask;
+    private int head;
+    private int size;
+    private int live;
+    private boolean zeroPresent;
+
+    public RecentIdWindow(int capacity, Duration window) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.windowNanos = window.toNanos();
+        this.ringIds = new long[capacity];
+        this.ringTimes = new long[capacity];
+        this.ringLive = new boolean[capacity];
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+        this.table = new long[tableSize];
+        this.mask = tableSize - 1;
+    }
+
+    /**
+     * Records the id and returns true when it was not seen within the window.
+     */
+    public boolean firstSeen(long id) {
+        return firstSeen(id, System.nanoTime());
+    }
+
+    synchronized boolean firstSeen(long id, long nowNanos) {
+        while (size > 0 && nowNanos - ringTimes[head] > windowNanos) {
+            evictOldest();
+        }
+        if (contains(id)) {
+            return false;
+        }
+        if (size == ringIds.length) {
+            evictOldest();
+        }
+        int tail = (head + size) % ringIds.length;
+        ringIds[tail] = id;
+        ringTimes[tail] = nowNanos;
+        ringLive[tail] = true;
+        size++;
+        live++;
+        insert(id);
+        return true;
+    }
+
+    /**
+     * Forgets an id recorded by {@link #firstSeen(long)}, e.g. when the delivery could not be
+     * queued and the channel is expected to send it again. Its ring slot is marked dead, so when
+     * it ages out it cannot take a later recording of the same id with it.
+     */
+    public synchronized void forget(long id) {
+        if (!contains(id)) {
+            return;
+        }
+        remove(id);
+        // Usually the newest slot, so search from the tail
+        for (int n = size - 1; n >= 0; n--) {
+            int i = (head + n) % ringIds.length;
+            if (ringLive[i] && ringIds[i] == id) {
+                ringLive[i] = false;
+                live--;
+                if (n == size - 1) {
+                    size--;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Ids currently remembered.
+     */
+    public synchronized int size() {
+        return live;
+    }
+
+    /**
+     * 64-bit FNV-1a hash over the UTF-16 code units of the value. Collisions at this width are
+     * negligible for the window sizes used here.
+     */
+    public static long hash(CharSequence value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash ^= c & 0xff;
+            hash *= 0x100000001b3L;
+            hash ^= c >>> 8;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private void evictOldest() {
+        if (ringLive[head]) {
+            remove(ringIds[head]);
+            ringLive[head] = false;
+            live--;
+        }
+        head = (head + 1) % ringIds.length;
+        size--;
+    }
+
+    private int slot(long id) {
+        long h = id;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private boolean contains(long id) {
+        if (id == EMPTY) {
+            return zeroPresent;
+        }
+        for (int i = slot(id); table[i] != EMPTY; i = (i + 1) & mask) {
+            if (table[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void insert(long id) {
+        if (id == EMPTY) {
+            zeroPresent = true;
+            return;
+        }
+        int i = slot(id);
+        while (table[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        table[i] = id;
+    }
+
+    private void remove(long id) {
+        if (id == EMPTY) {
+            zeroPresent = false;
+            return;
+        }
+        int i = slot(id);
+        while (table[i] != id) {
+            if (table[i] == EMPTY) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        // Backward-shift deletion keeps probe chains intact without tombstones.
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (table[j] == EMPTY) {
+                break;
+            }
+            int home = slot(table[j]);
+            boolean between = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (between) {
+                continue;
+            }
+            table[i] = table[j];
+            i = j;
+        }
+        table[i] = EMPTY;
+    }
+}
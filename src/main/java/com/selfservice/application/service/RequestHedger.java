@@ -0,0 +1,277 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.ApimanEndpointsProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hedges idempotent APIMAN GETs against the gateway's latency tail. The call goes out on a pool
+ * thread; if it has not answered within the endpoint's recent latency percentile, an identical
+ * second call is sent and the first to answer is returned. Hedges come out of a budget that earns
+ * a fraction of a hedge per call, and need a free slot in the endpoint's bulkhead. Until enough
+ * latencies have been seen for an endpoint its calls are not hedged. The losing call is not
+ * interrupted; it finishes in the background within its timeout.
+ */
+@Service
+public class RequestHedger {
+
+    /** Recent latencies kept per endpoint. */
+    static final int WINDOW = 128;
+    /** Latencies needed before an endpoint's calls are hedged. */
+    static final int MIN_SAMPLES = 20;
+    /** Unused hedges that can build up during quiet periods. */
+    private static final double MAX_BUDGET = 10.0;
+
+    /** Latency window and counts for one endpoint. */
+    static final class Stats {
+        private final long[] latenciesMs = new long[WINDOW];
+        private int recorded;
+        private int next;
+        private long delayMs = -1;
+        final LongAdder calls = new LongAdder();
+        final LongAdder hedged = new LongAdder();
+        final LongAdder won = new LongAdder();
+        final LongAdder budgetExhausted = new LongAdder();
+
+        synchronized void record(long latencyMs) {
+            latenciesMs[next] = latencyMs;
+            next = (next + 1) % WINDOW;
+            recorded = Math.min(recorded + 1, WINDOW);
+            delayMs = -1;
+        }
+
+        /** The latency at {@code percentile}, or -1 while there are too few samples. */
+        synchronized long percentile(int percentile) {
+            if (recorded < MIN_SAMPLES) {
+                return -1;
+            }
+            if (delayMs < 0) {
+                long[] sorted = Arrays.copyOf(latenciesMs, recorded);
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(percentile / 100.0 * recorded) - 1;
+                delayMs = sorted[Math.max(0, Math.min(recorded - 1, index))];
+            }
+            return delayMs;
+        }
+
+        double hedgeRate() {
+            long total = calls.sum();
+            return total == 0 ? 0.0 : (double) hedged.sum() / total;
+        }
+
+        double winRate() {
+            long sent = hedged.sum();
+            return sent == 0 ? 0.0 : (double) won.sum() / sent;
+        }
+    }
+
+    private final boolean enabled;
+    private final ApimanEndpointsProperties properties;
+    private final int percentile;
+    private final long minDelayMs;
+    private final double budgetPerCall;
+    private final ExecutorService executor;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private double budget = MAX_BUDGET;
+
+    public RequestHedger(ApimanEndpointsProperties properties, MeterRegistry meterRegistry) {
+        ApimanEndpointsProperties.Hedging settings = properties.getHedging();
+        this.enabled = settings.isEnabled();
+        this.properties = properties;
+        this.percentile = Math.max(1, Math.min(99, settings.getPercentile()));
+        this.minDelayMs = Math.max(0L, settings.getMinDelayMillis());
+        this.budgetPerCall = Math.max(0, Math.min(100, settings.getBudgetPercent())) / 100.0;
+        this.meterRegistry = meterRegistry;
+        AtomicInteger sequence = new AtomicInteger();
+        // Unbounded, but in practice capped by the endpoints' bulkheads
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "apiman-hedge-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Whether calls to the guarded endpoint are hedged.
+     */
+    public boolean appliesTo(EndpointGuards.Guard guard) {
+        return enabled && properties.isHedged(guard.name());
+    }
+
+    /**
+     * Runs {@code attempt}, sending it a second time if the first is slow and the budget and
+     * bulkhead allow. The caller holds one bulkhead slot for the first attempt; the hedge takes
+     * and releases its own.
+     */
+    public CommonApiService.ApiResponse run(EndpointGuards.Guard guard,
+                                            Supplier<CommonApiService.ApiResponse> attempt) {
+        Stats endpointStats = stats(guard.name());
+        endpointStats.calls.increment();
+        earn();
+        long delayMs = endpointStats.percentile(percentile);
+        CompletableFuture<CommonApiService.ApiResponse> primary = CompletableFuture.supplyAsync(() -> {
+            long startedNanos = System.nanoTime();
+            CommonApiService.ApiResponse response = attempt.get();
+            endpointStats.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos));
+            return response;
+        }, executor);
+        if (delayMs < 0) {
+            return await(primary);
+        }
+        try {
+            return primary.get(Math.max(minDelayMs, delayMs), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException slow) {
+            if (!spend()) {
+                endpointStats.budgetExhausted.increment();
+                return await(primary);
+            }
+            if (!guard.tryEnter()) {
+                refund();
+                return await(primary);
+            }
+            endpointStats.hedged.increment();
+            CompletableFuture<CommonApiService.ApiResponse> hedge = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return attempt.get();
+                } finally {
+                    guard.release();
+                }
+            }, executor);
+            CompletableFuture<CommonApiService.ApiResponse> first = new CompletableFuture<>();
+            AtomicInteger pending = new AtomicInteger(2);
+            primary.whenComplete((response, failure) ->
+                    answer(first, orFailed(response, failure), pending, () -> { }));
+            hedge.whenComplete((response, failure) ->
+                    answer(first, orFailed(response, failure), pending, endpointStats.won::increment));
+            return await(first);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return failed(ex);
+        } catch (ExecutionException ex) {
+            return failed(ex.getCause());
+        }
+    }
+
+    /**
+     * Completes {@code first} with a response that reached the endpoint, or with the last one if
+     * neither did. {@code won} runs before the caller is answered, so it is counted by then.
+     */
+    private static void answer(CompletableFuture<CommonApiService.ApiResponse> first,
+                               CommonApiService.ApiResponse response, AtomicInteger pending, Runnable won) {
+        boolean last = pending.decrementAndGet() == 0;
+        if (response.statusCode() == 0 && !last) {
+            return;
+        }
+        synchronized (first) {
+            if (!first.isDone()) {
+                won.run();
+                first.complete(response);
+            }
+        }
+    }
+
+    /**
+     * Waits for the call's response, answering with a failed one (status 0) if it threw, so the
+     * caller's breaker still records the call.
+     */
+    private static CommonApiService.ApiResponse await(CompletableFuture<CommonApiService.ApiResponse> call) {
+        try {
+            return call.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return failed(ex);
+        } catch (ExecutionException ex) {
+            return failed(ex.getCause());
+        }
+    }
+
+    private static CommonApiService.ApiResponse orFailed(CommonApiService.ApiResponse response, Throwable failure) {
+        return failure == null ? response : failed(failure);
+    }
+
+    private static CommonApiService.ApiResponse failed(Throwable cause) {
+        Throwable root = cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause;
+        return new CommonApiService.ApiResponse(false, 0, new HttpHeaders(), null,
+                root.getClass().getSimpleName() + ": " + (root.getMessage() == null ? "<no-message>" : root.getMessage()));
+    }
+
+    private synchronized void earn() {
+        budget = Math.min(MAX_BUDGET, budget + budgetPerCall);
+    }
+
+    private synchronized boolean spend() {
+        if (budget < 1.0) {
+            return false;
+        }
+        budget -= 1.0;
+        return true;
+    }
+
+    private synchronized void refund() {
+        budget = Math.min(MAX_BUDGET, budget + 1.0);
+    }
+
+    /** Adds a latency sample, as a finished first attempt would. */
+    void recordLatency(String endpoint, long latencyMs) {
+        stats(endpoint).record(latencyMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Stats stats(String endpoint) {
+        Stats existing = stats.get(endpoint);
+        if (existing != null) {
+            return existing;
+        }
+        return stats.computeIfAbsent(endpoint, name -> {
+            Stats created = new Stats();
+            FunctionCounter.builder("apiman.hedge.calls", created, s -> s.calls.sum())
+                    .description("Calls to an endpoint that could be hedged")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            FunctionCounter.builder("apiman.hedge.sent", created, s -> s.hedged.sum())
+                    .description("Second calls sent because the first was slow")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            FunctionCounter.builder("apiman.hedge.won", created, s -> s.won.sum())
+                    .description("Hedges that answered before the first call")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            FunctionCounter.builder("apiman.hedge.budget.exhausted", created, s -> s.budgetExhausted.sum())
+                    .description("Slow calls not hedged because the hedge budget was spent")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            Gauge.builder("apiman.hedge.rate", created, Stats::hedgeRate)
+                    .description("Share of hedgeable calls that were hedged")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            Gauge.builder("apiman.hedge.win.rate", created, Stats::winRate)
+                    .description("Share of hedges that answered first")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            return created;
+        });
+    }
+}
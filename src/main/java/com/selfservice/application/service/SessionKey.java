@@ -0,0 +1,125 @@
+package com.selfservice.application.service;
+
+/**
+ * Identity of a chat: its channel and the channel's id for it, packed into one {@code long} so
+ * session maps can key on a primitive. The channel takes the top byte and the id the low 56 bits,
+ * which holds every Telegram chat id (at most 52 significant bits, negative for groups) and every
+ * WhatsApp id (an E.164 number of at most 15 digits).
+ */
+public final class SessionKey {
+
+    public enum Channel {
+        TELEGRAM("telegram", false),
+        WHATSAPP("whatsapp", true);
+
+        private final String id;
+        private final boolean numberedOptions;
+
+        Channel(String id, boolean numberedOptions) {
+            this.id = id;
+            this.numberedOptions = numberedOptions;
+        }
+
+        /**
+         * Lower-case name used in metric tags and file names.
+         */
+        public String id() {
+            return id;
+        }
+
+        /**
+         * Whether menus are sent as numbered text, so a reply may name an option by its number.
+         */
+        public boolean numberedOptions() {
+            return numberedOptions;
+        }
+    }
+
+    private static final int ID_BITS = 56;
+    private static final long ID_MASK = (1L << ID_BITS) - 1;
+    private static final long MIN_ID = -(1L << (ID_BITS - 1));
+    private static final long MAX_ID = (1L << (ID_BITS - 1)) - 1;
+    private static final int MAX_PHONE_DIGITS = 15;
+    private static final Channel[] CHANNELS = Channel.values();
+
+    private final long packed;
+
+    private SessionKey(long packed) {
+        this.packed = packed;
+    }
+
+    public static SessionKey of(Channel channel, long id) {
+        if (id < MIN_ID || id > MAX_ID) {
+            throw new IllegalArgumentException("Chat id " + id + " does not fit a session key");
+        }
+        return new SessionKey(((long) channel.ordinal() << ID_BITS) | (id & ID_MASK));
+    }
+
+    public static SessionKey telegram(long chatId) {
+        return of(Channel.TELEGRAM, chatId);
+    }
+
+    /**
+     * Key for a WhatsApp id, which is the user's phone number in digits, optionally with a
+     * leading {@code +}.
+     *
+     * @throws IllegalArgumentException if {@code waId} is not such a number
+     */
+    public static SessionKey whatsapp(String waId) {
+        if (waId == null) {
+            throw new IllegalArgumentException("WhatsApp id is missing");
+        }
+        int start = waId.startsWith("+") ? 1 : 0;
+        int digits = waId.length() - start;
+        if (digits == 0 || digits > MAX_PHONE_DIGITS) {
+            throw new IllegalArgumentException("WhatsApp id must be a phone number");
+        }
+        long id = 0;
+        for (int i = start; i < waId.length(); i++) {
+            char c = waId.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("WhatsApp id must be a phone number");
+            }
+            id = id * 10 + (c - '0');
+        }
+        return of(Channel.WHATSAPP, id);
+    }
+
+    public static SessionKey fromPacked(long packed) {
+        int channel = (int) (packed >>> ID_BITS);
+        if (channel >= CHANNELS.length) {
+            throw new IllegalArgumentException("Unknown channel " + channel + " in session key");
+        }
+        return new SessionKey(packed);
+    }
+
+    public Channel channel() {
+        return CHANNELS[(int) (packed >>> ID_BITS)];
+    }
+
+    /**
+     * The channel's id for the chat, sign-extended back from 56 bits.
+     */
+    public long id() {
+        return (packed << (Long.SIZE - ID_BITS)) >> (Long.SIZE - ID_BITS);
+    }
+
+    public long packed() {
+        return packed;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof SessionKey key && key.packed == packed;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(packed);
+    }
+
+    @Override
+    public String toString() {
+        return channel().id() + ":" + id();
+    }
+}
@@ -0,0 +1,507 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.SessionSnapshotProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Encrypted, memory-mapped log of chat sessions that lets a restart pick up where the previous
+ * process stopped. Every flush interval the sessions used since the last pass, plus those the
+ * sweeper or a logout changed or removed, are appended; once the file is three quarters full it
+ * is rewritten with only the live sessions. Startup replays the file, later records winning.
+ *
+ * <p>Records are sealed with AES-GCM under a key derived from the configured key and a random
+ * per-file nonce, using the record's sequence number as IV. IVs therefore never repeat under a
+ * key, and a record cannot be altered or spliced into another file without failing its tag.
+ *
+ * @param <K> session key type
+ * @param <S> session type
+ */
+public final class SessionSnapshotLog<K, S extends IdleSessionSweeper.Tracked> {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionSnapshotLog.class);
+
+    /**
+     * Binary form of one channel's sessions.
+     */
+    public interface Codec<K, S> {
+        K keyOf(S session);
+
+        void writeKey(DataOutput out, K key) throws IOException;
+
+        K readKey(DataInput in) throws IOException;
+
+        /**
+         * Writes the state worth keeping across a restart. Called under the session lock.
+         */
+        void writeSession(DataOutput out, S session) throws IOException;
+
+        S readSession(DataInput in, K key) throws IOException;
+    }
+
+    /**
+     * The live sessions. Lookups must not count as activity.
+     */
+    public interface Store<K, S> {
+        S get(K key);
+
+        void forEach(Consumer<S> visitor);
+    }
+
+    /**
+     * Receives each restored session with the time it was last used.
+     */
+    @FunctionalInterface
+    public interface Installer<S> {
+        void install(S session, long lastAccessMs);
+    }
+
+    private static final int MAGIC = 0x53534e50;
+    private static final int VERSION = 2;
+    private static final int NONCE_SIZE = 16;
+    private static final int CHECK_SIZE = 16;
+    private static final int HEADER_SIZE = 64;
+    private static final int TAG_BITS = 128;
+    private static final byte UPSERT = 1;
+    private static final byte REMOVE = 2;
+    /** A session stamped just before a pass may be changed just after it, so it is written again. */
+    private static final long GRACE_MS = 1_000;
+
+    private final boolean enabled;
+    private final String channel;
+    private final Path file;
+    private final Path compactFile;
+    private final int minCapacity;
+    private final long flushIntervalMs;
+    private final byte[] masterKey;
+    private final Codec<K, S> codec;
+    private final Store<K, S> store;
+    private final Queue<K> changed = new ConcurrentLinkedQueue<>();
+    private final SecureRandom random = new SecureRandom();
+    private final ByteArrayOutputStream plain = new ByteArrayOutputStream(1024);
+    private final DataOutputStream plainOut = new DataOutputStream(plain);
+
+    private Cipher cipher;
+    private Segment active;
+    private long lastPassMs;
+    private ScheduledExecutorService writer;
+
+    public SessionSnapshotLog(String channel, SessionSnapshotProperties properties, Codec<K, S> codec, Store<K, S> store) {
+        this.enabled = properties.isEnabled();
+        this.channel = channel;
+        this.file = Paths.get(properties.getDirectory()).resolve(channel + "-sessions.snap");
+        this.compactFile = Paths.get(properties.getDirectory()).resolve(channel + "-sessions.snap.compact");
+        this.minCapacity = Math.max(1, properties.getFileSizeMb()) * 1024 * 1024;
+        this.flushIntervalMs = Math.max(1L, properties.getFlushIntervalSeconds()) * 1000L;
+        this.codec = codec;
+        this.store = store;
+        if (!enabled) {
+            this.masterKey = null;
+            return;
+        }
+        this.masterKey = decodeKey(properties.getEncryptionKey(), "sessions.snapshot.encryption-key");
+        try {
+            this.cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM is not available for the session snapshot", e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Loads the sessions of the last snapshot and opens it for appending. Call once, before the
+     * sessions are used.
+     */
+    public synchronized void restore(Installer<S> installer) {
+        if (!enabled) {
+            return;
+        }
+        long started = System.nanoTime();
+        Map<K, Restored<S>> restored = new LinkedHashMap<>();
+        try {
+            Files.createDirectories(file.getParent());
+            if (Files.exists(file)) {
+                active = replay(restored);
+            }
+            if (active == null) {
+                active = create(file, minCapacity);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open session snapshot " + file.toAbsolutePath(), e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot open session snapshot " + file.toAbsolutePath(), e);
+        }
+        restored.values().forEach(entry -> installer.install(entry.session(), entry.lastAccessMs()));
+        lastPassMs = System.currentTimeMillis();
+        log.info("Restored {} {} sessions from {} in {} ms", restored.size(), channel, file.toAbsolutePath(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /**
+     * Starts appending changes in the background, once per flush interval.
+     */
+    public synchronized void start() {
+        if (!enabled || writer != null) {
+            return;
+        }
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, channel + "-session-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(() -> flush(System.currentTimeMillis()),
+                flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records a change that did not come with an access, such as an eviction or removal.
+     */
+    public void changed(K key) {
+        if (enabled) {
+            changed.add(key);
+        }
+    }
+
+    /**
+     * Stops the background writer and appends the last changes.
+     */
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (writer != null) {
+                writer.shutdown();
+                writer = null;
+            }
+        }
+        flush(System.currentTimeMillis());
+    }
+
+    /**
+     * Appends the sessions changed since the previous pass as of {@code nowMs}.
+     */
+    public synchronized void flush(long nowMs) {
+        if (!enabled || active == null) {
+            return;
+        }
+        long since = lastPassMs - GRACE_MS;
+        lastPassMs = nowMs;
+        try {
+            K key;
+            while ((key = changed.poll()) != null) {
+                S session = store.get(key);
+                boolean written = session == null || session.isRetired()
+                        ? append(active, REMOVE, nowMs, key, null)
+                        : appendSession(active, session);
+                if (!written) {
+                    compact();
+                    return;
+                }
+            }
+            List<S> used = new ArrayList<>();
+            store.forEach(session -> {
+                if (session.lastAccessMs() >= since) {
+                    used.add(session);
+                }
+            });
+            for (S session : used) {
+                if (!appendSession(active, session)) {
+                    compact();
+                    return;
+                }
+            }
+            active.buffer.force();
+            if (active.position > active.buffer.capacity() / 4 * 3) {
+                compact();
+            }
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            log.error("Writing the {} session snapshot failed", channel, e);
+        }
+    }
+
+    /**
+     * Rewrites the file with only the live sessions under a fresh nonce, growing it when they
+     * need more than half of it.
+     */
+    private void compact() throws IOException, GeneralSecurityException {
+        List<S> live = new ArrayList<>();
+        store.forEach(live::add);
+        int capacity = Math.max(minCapacity, active.buffer.capacity());
+        while (true) {
+            Segment next = create(compactFile, capacity);
+            boolean fits = true;
+            for (S session : live) {
+                if (!appendSession(next, session)) {
+                    fits = false;
+                    break;
+                }
+            }
+            if (fits && next.position <= capacity / 2) {
+                next.buffer.force();
+                Files.move(compactFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                active = next;
+                log.info("Compacted the {} session snapshot to {} sessions ({} KB of {} MB)", channel, live.size(),
+                        next.position / 1024, capacity / (1024 * 1024));
+                return;
+            }
+            capacity *= 2;
+        }
+    }
+
+    private boolean appendSession(Segment target, S session) throws IOException, GeneralSecurityException {
+        synchronized (session) {
+            if (session.isRetired()) {
+                return true;
+            }
+            return append(target, UPSERT, session.lastAccessMs(), codec.keyOf(session), session);
+        }
+    }
+
+    /**
+     * Seals and appends one record: [int length][long sequence][ciphertext and tag]. The length is
+     * written last, so a torn record reads as the end of the log. Returns false when it does not fit.
+     */
+    private boolean append(Segment target, byte type, long lastAccessMs, K key, S session)
+            throws IOException, GeneralSecurityException {
+        plain.reset();
+        plainOut.writeByte(type);
+        plainOut.writeLong(lastAccessMs);
+        codec.writeKey(plainOut, key);
+        if (session != null) {
+            codec.writeSession(plainOut, session);
+        }
+        long sequence = target.sequence;
+        cipher.init(Cipher.ENCRYPT_MODE, target.key, iv(sequence));
+        cipher.updateAAD(target.nonce);
+        byte[] sealed = cipher.doFinal(plain.toByteArray());
+        int length = Long.BYTES + sealed.length;
+        int start = target.position;
+        if (start + Integer.BYTES + length > target.buffer.capacity()) {
+            return false;
+        }
+        target.buffer.putLong(start + Integer.BYTES, sequence);
+        target.buffer.put(start + Integer.BYTES + Long.BYTES, sealed);
+        target.buffer.putInt(start, length);
+        target.position = start + Integer.BYTES + length;
+        target.sequence = sequence + 1;
+        return true;
+    }
+
+    private Segment replay(Map<K, Restored<S>> restored) throws IOException, GeneralSecurityException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            Path aside = file.resolveSibling(file.getFileName() + ".unreadable");
+            log.warn("{} is not a session snapshot this version can read; moving it to {} and starting empty",
+                    file, aside);
+            Files.move(file, aside, StandardCopyOption.REPLACE_EXISTING);
+            return null;
+        }
+        byte[] nonce = new byte[NONCE_SIZE];
+        buffer.get(8, nonce);
+        byte[] check = new byte[CHECK_SIZE];
+        buffer.get(8 + NONCE_SIZE, check);
+        if (!MessageDigest.isEqual(check, keyCheck())) {
+            throw new IllegalStateException("Session snapshot " + file.toAbsolutePath()
+                    + " was written with a different encryption key; restore the previous key or delete the file");
+        }
+        Segment segment = new Segment(buffer, nonce, fileKey(nonce));
+        int position = HEADER_SIZE;
+        int limit = buffer.capacity();
+        while (position + Integer.BYTES <= limit) {
+            int length = buffer.getInt(position);
+            if (length <= Long.BYTES || position + Integer.BYTES + length > limit) {
+                break;
+            }
+            long sequence = buffer.getLong(position + Integer.BYTES);
+            byte[] sealed = new byte[length - Long.BYTES];
+            buffer.get(position + Integer.BYTES + Long.BYTES, sealed);
+            byte[] record;
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, segment.key, iv(sequence));
+                cipher.updateAAD(nonce);
+                record = cipher.doFinal(sealed);
+            } catch (AEADBadTagException e) {
+                log.warn("Session snapshot {} has a damaged record at offset {}; ignoring the rest", file, position);
+                break;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            byte type = in.readByte();
+            long lastAccessMs = in.readLong();
+            K key = codec.readKey(in);
+            if (type == UPSERT) {
+                restored.put(key, new Restored<>(codec.readSession(in, key), lastAccessMs));
+            } else {
+                restored.remove(key);
+            }
+            segment.sequence = sequence + 1;
+            position += Integer.BYTES + length;
+        }
+        segment.position = position;
+        // Clear a torn tail so later appends are not mistaken for it.
+        for (int i = position; i < Math.min(limit, position + Integer.BYTES); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        return segment;
+    }
+
+    private Segment create(Path path, int capacity) throws IOException, GeneralSecurityException {
+        byte[] nonce = new byte[NONCE_SIZE];
+        random.nextBytes(nonce);
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.put(8, nonce);
+        buffer.put(8 + NONCE_SIZE, keyCheck());
+        Segment segment = new Segment(buffer, nonce, fileKey(nonce));
+        segment.position = HEADER_SIZE;
+        return segment;
+    }
+
+    private SecretKeySpec fileKey(byte[] nonce) throws GeneralSecurityException {
+        return new SecretKeySpec(hmac(nonce), "AES");
+    }
+
+    private byte[] keyCheck() throws GeneralSecurityException {
+        return Arrays.copyOf(hmac("session-snapshot-key-check".getBytes(StandardCharsets.US_ASCII)), CHECK_SIZE);
+    }
+
+    private byte[] hmac(byte[] data) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(masterKey, "HmacSHA256"));
+        return mac.doFinal(data);
+    }
+
+    private static GCMParameterSpec iv(long sequence) {
+        byte[] iv = new byte[12];
+        for (int i = 0; i < Long.BYTES; i++) {
+            iv[4 + i] = (byte) (sequence >>> (56 - 8 * i));
+        }
+        return new GCMParameterSpec(TAG_BITS, iv);
+    }
+
+    /**
+     * Decodes a Base64 AES key from the named setting, failing startup if it is missing or malformed.
+     */
+    static byte[] decodeKey(String encoded, String property) {
+        if (encoded == null || encoded.isBlank()) {
+            throw new IllegalStateException(property + " is required when sessions are written to disk");
+        }
+        byte[] key;
+        try {
+            key = Base64.getDecoder().decode(encoded.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException(property + " must be Base64", e);
+        }
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalStateException(property + " must decode to 16, 24 or 32 bytes");
+        }
+        return key;
+    }
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeStrings(DataOutput out, List<String> values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    public static List<String> readStrings(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return List.copyOf(values);
+    }
+
+    private record Restored<S>(S session, long lastAccessMs) { }
+
+    private static final class Segment {
+        private final MappedByteBuffer buffer;
+        private final byte[] nonce;
+        private final SecretKeySpec key;
+        private int position;
+        private long sequence;
+
+        private Segment(MappedByteBuffer buffer, byte[] nonce, SecretKeySpec key) {
+            this.buffer = buffer;
+            this.nonce = nonce;
+            this.key = key;
+        }
+    }
+}
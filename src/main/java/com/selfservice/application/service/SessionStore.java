@@ -0,0 +1,47 @@
+package com.selfservice.application.service;
+
+/**
+ * Where a channel's chat sessions live. Lookups never count as activity; callers touch the
+ * session with their {@link IdleSessionSweeper} once they have it.
+ *
+ * <p>{@link HeapSessionStore} keeps sessions in this JVM only. {@link SharedSessionStore} keeps
+ * them in storage every replica can reach, with a near-cache in front, so updates for a chat
+ * may land on any node.
+ *
+ * @param <K> session key type
+ * @param <S> session type
+ */
+public interface SessionStore<K, S extends IdleSessionSweeper.Tracked> extends SessionSnapshotLog.Store<K, S> {
+
+    /**
+     * Returns the session for {@code key}, creating an empty one if there is none.
+     */
+    S getOrCreate(K key);
+
+    /**
+     * Adds a restored session unless one is already present; returns the session now stored.
+     */
+    S putIfAbsent(K key, S session);
+
+    /**
+     * Removes the session if {@code session} is still the one stored under {@code key}.
+     */
+    boolean remove(K key, S session);
+
+    /**
+     * Records a change made without a lookup, such as an eviction trimming the session.
+     */
+    default void changed(K key) {
+    }
+
+    /**
+     * Number of sessions held by this node.
+     */
+    int size();
+
+    default void start() {
+    }
+
+    default void shutdown() {
+    }
+}
@@ -0,0 +1,40 @@
+package com.selfservice.application.service;
+
+import java.io.IOException;
+
+/**
+ * Storage reachable by every replica, holding one opaque, versioned record per chat. Writes are
+ * compare-and-set on the version so a node holding a stale copy cannot overwrite a newer one.
+ */
+public interface SharedSessionBackend {
+
+    /** Version reported for a chat with no record; also the expected version when creating one. */
+    long ABSENT = 0;
+
+    /** Returned by {@link #write} when the stored version no longer matches. */
+    long CONFLICT = -1;
+
+    record Stored(long version, byte[] data) { }
+
+    /**
+     * Current version of the chat's record, cheaper than reading it.
+     */
+    long version(String channel, String id) throws IOException;
+
+    /**
+     * The chat's record, or null if there is none.
+     */
+    Stored read(String channel, String id) throws IOException;
+
+    /**
+     * Replaces the record if its version is still {@code expectedVersion}.
+     *
+     * @return the new version, or {@link #CONFLICT}
+     */
+    long write(String channel, String id, long expectedVersion, byte[] data) throws IOException;
+
+    /**
+     * Deletes the record if its version is still {@code expectedVersion}.
+     */
+    boolean delete(String channel, String id, long expectedVersion) throws IOException;
+}
@@ -0,0 +1,364 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.SessionStoreProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Sessions kept in a {@link SharedSessionBackend} so any replica can serve any chat, with a
+ * near-cache of live session objects in front.
+ *
+ * <p>A cached session is trusted for the near-cache TTL; after that the next lookup compares its
+ * version with the backend's and reloads it if another node wrote since. Changes are written
+ * behind, once per flush interval, for sessions used since the previous pass; a write only goes
+ * out if the encoded state differs from what was last read or written, and only if the backend
+ * still holds the version this node started from. A node that loses that race drops its copy and
+ * reloads on next use. Records are sealed with AES-GCM, bound to their channel and chat id.
+ * Sessions the near-cache drops or replaces are handed to a callback, so the caller can retire
+ * them from its {@link IdleSessionSweeper}.
+ *
+ * <p>A chat updated on two nodes within one TTL plus flush interval keeps only one node's
+ * changes; routing a chat to the same node where possible avoids that.
+ *
+ * @param <K> session key type
+ * @param <S> session type
+ */
+public final class SharedSessionStore<K, S extends IdleSessionSweeper.Tracked> implements SessionStore<K, S> {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedSessionStore.class);
+
+    private static final int IV_SIZE = 12;
+    private static final int TAG_BITS = 128;
+    /** A session stamped just before a pass may be changed just after it, so it is checked again. */
+    private static final long GRACE_MS = 1_000;
+
+    /**
+     * A session held by this node and the backend version it is based on. The version, stored
+     * encoding and check time change under the entry's lock.
+     */
+    private static final class Near<S> {
+        final S session;
+        long version;
+        byte[] stored;
+        volatile long checkedMs;
+
+        Near(S session, long version, byte[] stored, long checkedMs) {
+            this.session = session;
+            this.version = version;
+            this.stored = stored;
+            this.checkedMs = checkedMs;
+        }
+    }
+
+    private final String channel;
+    private final SharedSessionBackend backend;
+    private final SessionSnapshotLog.Codec<K, S> codec;
+    private final Function<K, S> factory;
+    private final Consumer<S> dropped;
+    private final long nearCacheTtlMs;
+    private final long flushIntervalMs;
+    private final SecretKeySpec key;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(SharedSessionStore::newCipher);
+    private final Map<K, Near<S>> cache = new ConcurrentHashMap<>();
+    private final Queue<K> changed = new ConcurrentLinkedQueue<>();
+    private final Counter reloads;
+    private final Counter conflicts;
+    private final Counter failures;
+
+    private long lastPassMs = System.currentTimeMillis();
+    private ScheduledExecutorService writer;
+
+    /**
+     * @param dropped called with a session this node no longer holds because another node wrote a
+     *                newer one; runs without any of the store's locks held
+     */
+    public SharedSessionStore(String channel, SharedSessionBackend backend, SessionStoreProperties properties,
+                              SessionSnapshotLog.Codec<K, S> codec, Function<K, S> factory, Consumer<S> dropped,
+                              MeterRegistry meterRegistry) {
+        this.channel = channel;
+        this.backend = backend;
+        this.codec = codec;
+        this.factory = factory;
+        this.dropped = dropped;
+        this.nearCacheTtlMs = Math.max(0L, properties.getNearCacheTtlMillis());
+        this.flushIntervalMs = Math.max(1L, properties.getFlushIntervalMillis());
+        this.key = new SecretKeySpec(SessionSnapshotLog.decodeKey(properties.getEncryptionKey(),
+                "sessions.store.encryption-key"), "AES");
+        this.reloads = Counter.builder("session.store.reloads")
+                .description("Sessions reloaded because another node wrote a newer version")
+                .tag("channel", channel)
+                .register(meterRegistry);
+        this.conflicts = Counter.builder("session.store.conflicts")
+                .description("Writes dropped because another node wrote the session first")
+                .tag("channel", channel)
+                .register(meterRegistry);
+        this.failures = Counter.builder("session.store.failures")
+                .description("Shared session store reads or writes that failed")
+                .tag("channel", channel)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public S get(K key) {
+        return get(key, System.currentTimeMillis());
+    }
+
+    S get(K key, long nowMs) {
+        Near<S> near = cache.get(key);
+        if (near != null && nowMs - near.checkedMs < nearCacheTtlMs) {
+            return near.session;
+        }
+        return near == null ? load(key, nowMs) : revalidate(key, near, nowMs);
+    }
+
+    @Override
+    public S getOrCreate(K key) {
+        long nowMs = System.currentTimeMillis();
+        S session = get(key, nowMs);
+        if (session != null) {
+            return session;
+        }
+        Near<S> created = new Near<>(factory.apply(key), SharedSessionBackend.ABSENT, null, nowMs);
+        Near<S> existing = cache.putIfAbsent(key, created);
+        return (existing == null ? created : existing).session;
+    }
+
+    @Override
+    public S putIfAbsent(K key, S session) {
+        Near<S> existing = cache.putIfAbsent(key, new Near<>(session, SharedSessionBackend.ABSENT, null, 0L));
+        return existing == null ? session : existing.session;
+    }
+
+    @Override
+    public boolean remove(K key, S session) {
+        Near<S> near = cache.get(key);
+        if (near == null || near.session != session) {
+            return false;
+        }
+        synchronized (near) {
+            if (!cache.remove(key, near)) {
+                return false;
+            }
+            if (near.version != SharedSessionBackend.ABSENT) {
+                try {
+                    backend.delete(channel, String.valueOf(key), near.version);
+                } catch (IOException e) {
+                    failures.increment();
+                    log.warn("Could not delete shared {} session: {}", channel, e.getMessage());
+                }
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public void changed(K key) {
+        changed.add(key);
+    }
+
+    @Override
+    public void forEach(Consumer<S> visitor) {
+        cache.values().forEach(near -> visitor.accept(near.session));
+    }
+
+    @Override
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, channel + "-session-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(() -> flush(System.currentTimeMillis()),
+                flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (this) {
+            if (writer != null) {
+                writer.shutdown();
+                writer = null;
+            }
+        }
+        flush(System.currentTimeMillis());
+    }
+
+    /**
+     * Writes the sessions changed on this node since the previous pass as of {@code nowMs}.
+     */
+    public synchronized void flush(long nowMs) {
+        long since = lastPassMs - GRACE_MS;
+        lastPassMs = nowMs;
+        Set<K> due = new HashSet<>();
+        K key;
+        while ((key = changed.poll()) != null) {
+            due.add(key);
+        }
+        cache.forEach((sessionKey, near) -> {
+            if (near.session.lastAccessMs() >= since || due.contains(sessionKey)) {
+                push(sessionKey, near, nowMs);
+            }
+        });
+    }
+
+    private void push(K key, Near<S> near, long nowMs) {
+        String id = String.valueOf(key);
+        try {
+            byte[] plain;
+            synchronized (near.session) {
+                plain = encode(near.session);
+            }
+            synchronized (near) {
+                if (cache.get(key) != near || Arrays.equals(plain, near.stored)) {
+                    return;
+                }
+                long version = backend.write(channel, id, near.version, seal(id, plain));
+                if (version != SharedSessionBackend.CONFLICT) {
+                    near.version = version;
+                    near.stored = plain;
+                    near.checkedMs = nowMs;
+                    return;
+                }
+                conflicts.increment();
+                cache.remove(key, near);
+                log.debug("Dropped {} session changes: another node wrote it first", channel);
+            }
+            dropped.accept(near.session);
+        } catch (IOException | GeneralSecurityException e) {
+            failures.increment();
+            log.warn("Could not write shared {} session: {}", channel, e.getMessage());
+        }
+    }
+
+    private S load(K key, long nowMs) {
+        Near<S> fresh;
+        try {
+            fresh = read(key, nowMs);
+        } catch (IOException | GeneralSecurityException e) {
+            failures.increment();
+            log.warn("Could not read shared {} session: {}", channel, e.getMessage());
+            return null;
+        }
+        if (fresh == null) {
+            return null;
+        }
+        Near<S> existing = cache.putIfAbsent(key, fresh);
+        return (existing == null ? fresh : existing).session;
+    }
+
+    private S revalidate(K key, Near<S> near, long nowMs) {
+        Near<S> fresh;
+        synchronized (near) {
+            if (nowMs - near.checkedMs < nearCacheTtlMs) {
+                return near.session;
+            }
+            try {
+                if (backend.version(channel, String.valueOf(key)) == near.version) {
+                    near.checkedMs = nowMs;
+                    return near.session;
+                }
+                fresh = read(key, nowMs);
+            } catch (IOException | GeneralSecurityException e) {
+                // Serve the copy we have rather than fail the update; the next lookup retries.
+                failures.increment();
+                log.warn("Could not check shared {} session: {}", channel, e.getMessage());
+                return near.session;
+            }
+            boolean swapped = fresh == null ? cache.remove(key, near) : cache.replace(key, near, fresh);
+            if (!swapped) {
+                Near<S> current = cache.get(key);
+                return current == null ? null : current.session;
+            }
+            if (fresh != null) {
+                reloads.increment();
+            }
+        }
+        // Outside the entry's lock: the callback locks the session, which nests the other way round.
+        dropped.accept(near.session);
+        return fresh == null ? null : fresh.session;
+    }
+
+    private Near<S> read(K key, long nowMs) throws IOException, GeneralSecurityException {
+        String id = String.valueOf(key);
+        SharedSessionBackend.Stored stored = backend.read(channel, id);
+        if (stored == null) {
+            return null;
+        }
+        byte[] plain = open(id, stored.data());
+        S session = codec.readSession(new DataInputStream(new ByteArrayInputStream(plain)), key);
+        return new Near<>(session, stored.version(), plain, nowMs);
+    }
+
+    private byte[] encode(S session) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        codec.writeSession(out, session);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private byte[] seal(String id, byte[] plain) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_SIZE];
+        random.nextBytes(iv);
+        Cipher cipher = ciphers.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+        cipher.updateAAD(associatedData(id));
+        byte[] sealed = Arrays.copyOf(iv, IV_SIZE + cipher.getOutputSize(plain.length));
+        cipher.doFinal(plain, 0, plain.length, sealed, IV_SIZE);
+        return sealed;
+    }
+
+    private byte[] open(String id, byte[] sealed) throws GeneralSecurityException {
+        Cipher cipher = ciphers.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, sealed, 0, IV_SIZE));
+        cipher.updateAAD(associatedData(id));
+        return cipher.doFinal(sealed, IV_SIZE, sealed.length - IV_SIZE);
+    }
+
+    private byte[] associatedData(String id) {
+        return (channel + ':' + id).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM is not available for the shared session store", e);
+        }
+    }
+}
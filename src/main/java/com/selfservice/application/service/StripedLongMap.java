@@ -0,0 +1,203 @@
+package com.selfservice.application.service;
+
+import java.util.function.LongFunction;
+
+/**
+ * Concurrent map from primitive {@code long} keys to values, split into independently locked
+ * stripes. Each stripe is an open-addressing table of {@code long[]} keys and {@code Object[]}
+ * values, so lookups neither box the key nor allocate entry nodes. Reads lock their stripe too,
+ * for the length of one probe, since deletions shift entries within the table.
+ *
+ * @param <V> value type; null values are not supported
+ */
+public final class StripedLongMap<V> {
+
+    /**
+     * Receives entries from {@link #forEach(Visitor)}.
+     */
+    @FunctionalInterface
+    public interface Visitor<V> {
+        void visit(long key, V value);
+    }
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    public StripedLongMap() {
+        this(64);
+    }
+
+    /**
+     * @param concurrency expected number of threads updating the map at once; rounded up to a power of two
+     */
+    public StripedLongMap(int concurrency) {
+        int count = Integer.highestOneBit(Math.max(1, concurrency - 1)) << 1;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.stripeMask = count - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        long hash = mix(key);
+        return (V) stripe(hash).get(key, hash);
+    }
+
+    /**
+     * Returns the value for {@code key}, creating it with {@code factory} under the stripe lock if
+     * absent, so concurrent callers always see the same instance.
+     */
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(long key, LongFunction<? extends V> factory) {
+        long hash = mix(key);
+        return (V) stripe(hash).computeIfAbsent(key, hash, factory);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        long hash = mix(key);
+        return (V) stripe(hash).remove(key, hash, null);
+    }
+
+    /**
+     * Removes the entry only if it still maps to {@code expected}.
+     */
+    public boolean remove(long key, V expected) {
+        long hash = mix(key);
+        return stripe(hash).remove(key, hash, expected) != null;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * Visits every entry, one stripe at a time. The visitor runs under the stripe lock and must not
+     * modify this map; collect keys and act on them afterwards instead.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<? super V> visitor) {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (int i = 0; i < stripe.values.length; i++) {
+                    if (stripe.values[i] != null) {
+                        visitor.visit(stripe.keys[i], (V) stripe.values[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    private Stripe stripe(long hash) {
+        // High bits pick the stripe, low bits the slot, so the two stay independent.
+        return stripes[(int) (hash >>> 40) & stripeMask];
+    }
+
+    private static long mix(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Linear-probing table. A null value marks a free slot, so every key including 0 is usable.
+     */
+    private static final class Stripe {
+        private long[] keys = new long[8];
+        private Object[] values = new Object[8];
+        private int size;
+
+        synchronized Object get(long key, long hash) {
+            int mask = values.length - 1;
+            for (int i = (int) hash & mask; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        synchronized Object computeIfAbsent(long key, long hash, LongFunction<?> factory) {
+            int mask = values.length - 1;
+            int i = (int) hash & mask;
+            for (; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            Object created = factory.apply(key);
+            if (created == null) {
+                return null;
+            }
+            keys[i] = key;
+            values[i] = created;
+            if (++size * 4 > values.length * 3) {
+                grow();
+            }
+            return created;
+        }
+
+        synchronized Object remove(long key, long hash, Object expected) {
+            int mask = values.length - 1;
+            int i = (int) hash & mask;
+            while (values[i] != null && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            Object removed = values[i];
+            if (removed == null || (expected != null && removed != expected)) {
+                return null;
+            }
+            // Backward-shift deletion keeps probe chains intact without tombstones.
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (values[j] == null) {
+                    break;
+                }
+                int home = (int) mix(keys[j]) & mask;
+                boolean between = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (between) {
+                    continue;
+                }
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+            values[i] = null;
+            size--;
+            return removed;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Object[oldValues.length * 2];
+            int mask = values.length - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    int j = (int) mix(oldKeys[i]) & mask;
+                    while (values[j] != null) {
+                        j = (j + 1) & mask;
+                    }
+                    keys[j] = oldKeys[i];
+                    values[j] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.selfservice.application.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket implemented as a generic cell rate algorithm: the state is one
+ * "theoretical arrival time" updated with compare-and-set, so buckets are cheap enough to keep
+ * one per chat. The last grant is remembered so an unused permit can be given back exactly.
+ */
+public final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong theoreticalArrival;
+    private volatile Grant lastGrant;
+
+    /**
+     * @param permitsPerSecond sustained rate
+     * @param burst            permits that may be taken back-to-back when the bucket is full
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        this.intervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.toleranceNanos = intervalNanos * (Math.max(1, burst) - 1L);
+        this.theoreticalArrival = new AtomicLong(System.nanoTime() - toleranceNanos - intervalNanos);
+    }
+
+    /**
+     * Takes a permit if one is available. Returns 0 on success, otherwise the nanoseconds to wait
+     * before a permit becomes available.
+     */
+    public long tryAcquire(long nowNanos) {
+        while (true) {
+            long current = theoreticalArrival.get();
+            long base = current - nowNanos > 0 ? current : nowNanos;
+            long wait = base - nowNanos - toleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (theoreticalArrival.compareAndSet(current, base + intervalNanos)) {
+                lastGrant = new Grant(current, base + intervalNanos);
+                return 0L;
+            }
+        }
+    }
+
+    /**
+     * Gives back a permit taken by {@link #tryAcquire(long)} that ended up unused. If nothing
+     * touched the bucket since, the arrival time it replaced is restored; an idle bucket then stays
+     * as it was instead of being moved up to the time of the failed attempt.
+     */
+    public void release() {
+        Grant grant = lastGrant;
+        if (grant != null && theoreticalArrival.compareAndSet(grant.granted(), grant.replaced())) {
+            return;
+        }
+        // Another permit or a pause came in after ours; give back our interval only.
+        theoreticalArrival.addAndGet(-intervalNanos);
+    }
+
+    /**
+     * Blocks all permits until the given instant, e.g. when the remote side asked us to back off.
+     */
+    public void pauseUntil(long resumeAtNanos) {
+        long target = resumeAtNanos + toleranceNanos;
+        theoreticalArrival.accumulateAndGet(target, (current, proposed) -> proposed - current > 0 ? proposed : current);
+    }
+
+    /**
+     * Nanoseconds until the bucket is full again; 0 means it holds no state worth keeping.
+     */
+    public long nanosUntilFull(long nowNanos) {
+        return Math.max(0L, theoreticalArrival.get() - nowNanos);
+    }
+
+    private record Grant(long replaced, long granted) {
+    }
+}
@@ -25,6 +25,7 @@ public class TroubleTicketService {
     private static final Logger log = LoggerFactory.getLogger(TroubleTicketService.class);
 
     private final CommonApiService commonApiService;
+    private final ApiResponseCache responseCache;
     private final String troubleTicketEndpoint;
     private final ObjectMapper objectMapper;
     private final ApimanEndpointsProperties apimanEndpoints;
@@ -32,8 +33,10 @@ public class TroubleTicketService {
 
     public TroubleTicketService(CommonApiService commonApiService,
             ApimanEndpointsProperties apimanEndpoints,
-            ObjectMapper objectMapper) {
+            ObjectMapper objectMapper,
+            ApiResponseCache responseCache) {
         this.commonApiService = commonApiService;
+        this.responseCache = responseCache;
         this.troubleTicketEndpoint = apimanEndpoints.getTroubleTicketUrl();
         this.objectMapper = objectMapper;
         this.apimanEndpoints = apimanEndpoints;
@@ -114,6 +117,12 @@ public class TroubleTicketService {
             queryParams.put("relatedEntity.product.id", serviceId);
         }
 
+        return responseCache.get("trouble-ticket", accessToken, accountId, queryParams,
+                apimanEndpoints.getTroubleTicketCacheTtlSeconds(),
+                () -> fetchTroubleTickets(accessToken, queryParams), result -> !result.hasError());
+    }
+
+    private TroubleTicketListResult fetchTroubleTickets(String accessToken, Map<String, String> queryParams) {
         CommonApiService.ApiResponse response = commonApiService.execute(
                 new CommonApiService.ApiRequest(troubleTicketEndpoint, apimanEndpoints.getTroubleTicketMethod(), accessToken,
                         queryParams, null, null));
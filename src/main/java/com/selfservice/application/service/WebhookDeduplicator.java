@@ -0,0 +1,67 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.WebhookProcessingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Drops webhook deliveries that the channel already sent us recently, so redeliveries do not
+ * repeat session work, APIMAN calls and outbound messages.
+ */
+@Component
+public class WebhookDeduplicator {
+
+    private final WebhookProcessingProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, RecentIdWindow> windowsByChannel = new ConcurrentHashMap<>();
+
+    public WebhookDeduplicator(WebhookProcessingProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Returns true when the id was already delivered on this channel within the dedup window.
+     */
+    public boolean isDuplicate(String channel, long id) {
+        boolean duplicate = !window(channel).firstSeen(id);
+        counter(channel, duplicate ? "hit" : "miss").increment();
+        return duplicate;
+    }
+
+    /**
+     * String-id variant; ids are reduced to a 64-bit hash so they share the primitive window.
+     */
+    public boolean isDuplicate(String channel, String id) {
+        return isDuplicate(channel, RecentIdWindow.hash(id));
+    }
+
+    /**
+     * Forgets a delivery that was recorded but could not be accepted, so the channel's retry is processed.
+     */
+    public void forget(String channel, long id) {
+        window(channel).forget(id);
+    }
+
+    public void forget(String channel, String id) {
+        forget(channel, RecentIdWindow.hash(id));
+    }
+
+    private RecentIdWindow window(String channel) {
+        return windowsByChannel.computeIfAbsent(channel, c -> new RecentIdWindow(
+                Math.max(1, properties.getDedupCapacity()),
+                Duration.ofSeconds(Math.max(1, properties.getDedupWindowSeconds()))));
+    }
+
+    private Counter counter(String channel, String result) {
+        return Counter.builder("webhook.dedup")
+                .description("Webhook deliveries checked against the dedup window")
+                .tag("channel", channel)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,142 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.WebhookProcessingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands inbound webhook updates to a bounded worker pool so the channel receives its
+ * acknowledgement before any session work or downstream calls happen. Updates for the same
+ * conversation run in order through per-channel {@link KeyedSerialExecutor} lanes; different
+ * conversations run in parallel.
+ */
+@Component
+public class WebhookDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookDispatcher.class);
+
+    private final WebhookProcessingProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<String, KeyedSerialExecutor> lanesByChannel = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean stopping;
+
+    public WebhookDispatcher(WebhookProcessingProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        if (properties.isAsync()) {
+            int threads = Math.max(1, properties.getWorkerThreads());
+            // The pool queue only ever holds one entry per active lane; admission is bounded by `pending`.
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), new WorkerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+            Gauge.builder("webhook.dispatch.queue.depth", pending, AtomicInteger::get)
+                    .description("Accepted webhook updates not yet finished")
+                    .register(meterRegistry);
+            Gauge.builder("webhook.dispatch.active", executor, ThreadPoolExecutor::getActiveCount)
+                    .description("Webhook updates currently being processed")
+                    .register(meterRegistry);
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Queues the task behind earlier work for the same conversation key. Returns false when the
+     * queue is full or the dispatcher is shutting down, in which case the caller should answer
+     * with a retryable status.
+     */
+    public boolean submit(String channel, Object conversationKey, Runnable task) {
+        if (executor == null) {
+            runSafely(channel, task);
+            return true;
+        }
+        if (stopping) {
+            return reject(channel, "dispatcher is shutting down");
+        }
+        if (pending.incrementAndGet() > Math.max(1, properties.getQueueCapacity())) {
+            pending.decrementAndGet();
+            return reject(channel, "worker queue is full");
+        }
+        counter("webhook.dispatch.accepted", channel).increment();
+        lanes(channel).execute(conversationKey, () -> {
+            try {
+                runSafely(channel, task);
+            } finally {
+                pending.decrementAndGet();
+            }
+        });
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        stopping = true;
+        if (properties.isDrainOnShutdown()) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(properties.getDrainTimeoutSeconds());
+            try {
+                while (pending.get() > 0 && System.nanoTime() < deadline) {
+                    Thread.sleep(50);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int remaining = pending.get();
+        executor.shutdownNow();
+        if (remaining > 0) {
+            log.warn("Webhook dispatcher stopped with {} update(s) unprocessed", remaining);
+        } else {
+            log.info("Webhook dispatcher stopped");
+        }
+    }
+
+    private KeyedSerialExecutor lanes(String channel) {
+        return lanesByChannel.computeIfAbsent(channel,
+                c -> new KeyedSerialExecutor(c, executor, meterRegistry));
+    }
+
+    private boolean reject(String channel, String reason) {
+        counter("webhook.dispatch.rejected", channel).increment();
+        log.warn("Rejected {} update: {} ({} pending)", channel, reason, pending.get());
+        return false;
+    }
+
+    private void runSafely(String channel, Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException ex) {
+            log.error("Unhandled error processing {} update", channel, ex);
+        }
+    }
+
+    private Counter counter(String name, String channel) {
+        return Counter.builder(name).tag("channel", channel).register(meterRegistry);
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger sequence = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "webhook-worker-" + sequence.incrementAndGet());
+            thread.setDaemon(false);
+            return thread;
+        }
+    }
+}
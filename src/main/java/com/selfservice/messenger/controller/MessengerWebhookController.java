@@ -1,7 +1,10 @@
 package com.selfservice.messenger.controller;
 
 import com.selfservice.application.service.OperationsMonitoringService;
+import com.selfservice.application.service.WebhookDeduplicator;
+import com.selfservice.application.service.WebhookDispatcher;
 import com.selfservice.application.config.ConnectorsProperties;
+import com.selfservice.messenger.dto.MessengerWebhookPayload;
 import com.selfservice.messenger.service.MessengerService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,8 +18,6 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 @RestController
@@ -29,16 +30,22 @@ public class MessengerWebhookController {
     private final String verifyToken;
     private final OperationsMonitoringService monitoringService;
     private final ConnectorsProperties connectorsProperties;
+    private final WebhookDispatcher webhookDispatcher;
+    private final WebhookDeduplicator webhookDeduplicator;
 
     public MessengerWebhookController(
             MessengerService messengerService,
             @Value("${messenger.verify-token}") String verifyToken,
             OperationsMonitoringService monitoringService,
-            ConnectorsProperties connectorsProperties) {
+            ConnectorsProperties connectorsProperties,
+            WebhookDispatcher webhookDispatcher,
+            WebhookDeduplicator webhookDeduplicator) {
         this.messengerService = messengerService;
         this.verifyToken = Objects.requireNonNull(verifyToken, "messenger.verify-token must be set");
         this.monitoringService = monitoringService;
         this.connectorsProperties = connectorsProperties;
+        this.webhookDispatcher = webhookDispatcher;
+        this.webhookDeduplicator = webhookDeduplicator;
     }
 
     @GetMapping
@@ -62,58 +69,80 @@ public class MessengerWebhookController {
     }
 
     @PostMapping
-    public ResponseEntity<Void> onEvent(@RequestBody Map<String, Object> payload) {
+    public ResponseEntity<Void> onEvent(@RequestBody MessengerWebhookPayload payload) {
         if (!connectorsProperties.isMessengerEnabled()) {
             return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         }
         log.info("Incoming Messenger webhook: {}", payload);
 
-        if (!"page".equals(payload.get("object"))) {
+        if (payload == null || !"page".equals(payload.object()) || payload.entry() == null) {
             return ResponseEntity.ok().build();
         }
 
-        List<Map<String, Object>> entries = (List<Map<String, Object>>) payload.get("entry");
-        if (entries == null) {
-            return ResponseEntity.ok().build();
-        }
-
-        for (Map<String, Object> entry : entries) {
-            List<Map<String, Object>> messagingList = (List<Map<String, Object>>) entry.get("messaging");
-            if (messagingList == null) {
+        boolean accepted = true;
+        for (MessengerWebhookPayload.Entry entry : payload.entry()) {
+            if (entry == null || entry.messaging() == null) {
                 continue;
             }
 
-            for (Map<String, Object> messagingEvent : messagingList) {
-                Map<String, Object> sender = (Map<String, Object>) messagingEvent.get("sender");
-                String senderId = sender == null ? null : (String) sender.get("id");
+            for (MessengerWebhookPayload.Messaging messagingEvent : entry.messaging()) {
+                String senderId = messagingEvent == null || messagingEvent.sender() == null
+                        ? null : messagingEvent.sender().id();
                 if (senderId == null || senderId.isBlank()) {
                     continue;
                 }
 
-                monitoringService.recordActivity("Messenger", senderId, null, false, false);
-
-                Map<String, Object> message = (Map<String, Object>) messagingEvent.get("message");
-                if (message == null) {
-                    messengerService.sendHelloWorldMenu(senderId);
-                    continue;
-                }
-
-                Object textObj = message.get("text");
-                String text = textObj instanceof String ? ((String) textObj).trim() : "";
-
-                if (text.isEmpty()) {
-                    messengerService.sendHelloWorldMenu(senderId);
+                String eventId = eventId(senderId, messagingEvent);
+                if (eventId != null && webhookDeduplicator.isDuplicate("messenger", eventId)) {
+                    log.info("Ignoring redelivered Messenger event {}", eventId);
                     continue;
                 }
 
-                if ("1".equals(text) || text.equalsIgnoreCase("hello world") || text.equalsIgnoreCase("hello")) {
-                    messengerService.sendHelloWorld(senderId);
-                } else {
-                    messengerService.sendHelloWorldMenu(senderId);
+                // A 503 makes Meta redeliver the whole batch; accepted events are then dropped as duplicates
+                if (!webhookDispatcher.submit("messenger", senderId, () -> handleEvent(senderId, messagingEvent))) {
+                    accepted = false;
+                    if (eventId != null) {
+                        webhookDeduplicator.forget("messenger", eventId);
+                    }
                 }
             }
         }
 
-        return ResponseEntity.ok().build();
+        return accepted ? ResponseEntity.ok().build() : ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+
+    /**
+     * The message id, or for events without a message (postbacks, reads) the sender and event
+     * timestamp; {@code null} if neither is known.
+     */
+    private static String eventId(String senderId, MessengerWebhookPayload.Messaging messagingEvent) {
+        MessengerWebhookPayload.Message message = messagingEvent.message();
+        if (message != null && message.mid() != null && !message.mid().isBlank()) {
+            return message.mid();
+        }
+        return messagingEvent.timestamp() == null ? null : senderId + ":" + messagingEvent.timestamp();
+    }
+
+    private void handleEvent(String senderId, MessengerWebhookPayload.Messaging messagingEvent) {
+        monitoringService.recordActivity("Messenger", senderId, null, false, false);
+
+        MessengerWebhookPayload.Message message = messagingEvent.message();
+        if (message == null) {
+            messengerService.sendHelloWorldMenu(senderId);
+            return;
+        }
+
+        String text = message.text() == null ? "" : message.text().trim();
+
+        if (text.isEmpty()) {
+            messengerService.sendHelloWorldMenu(senderId);
+            return;
+        }
+
+        if ("1".equals(text) || text.equalsIgnoreCase("hello world") || text.equalsIgnoreCase("hello")) {
+            messengerService.sendHelloWorld(senderId);
+        } else {
+            messengerService.sendHelloWorldMenu(senderId);
+        }
     }
 }
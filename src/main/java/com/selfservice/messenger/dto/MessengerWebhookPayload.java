@@ -0,0 +1,29 @@
+package com.selfservice.messenger.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/**
+ * The parts of a Messenger Platform webhook the controller acts on: sender id and message text,
+ * plus the message id and event timestamp used to drop redeliveries.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record MessengerWebhookPayload(String object, List<Entry> entry) {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Entry(List<Messaging> messaging) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Messaging(Sender sender, Long timestamp, Message message) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Sender(String id) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Message(String mid, String text) {
+    }
+}
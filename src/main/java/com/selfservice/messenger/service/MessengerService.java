@@ -1,8 +1,12 @@
 package com.selfservice.messenger.service;
 
+import com.selfservice.application.service.OutboxJournal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -11,6 +15,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.PreDestroy;
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -18,11 +24,19 @@ public class MessengerService {
 
     private static final Logger log = LoggerFactory.getLogger(MessengerService.class);
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private static final String CHANNEL = "messenger";
+
+    private final RestTemplate restTemplate;
     private final String pageAccessToken;
+    private final OutboxJournal outbox;
+    private volatile boolean stopping;
 
-    public MessengerService(@Value("${messenger.page-access-token:}") String pageAccessToken) {
+    public MessengerService(@Value("${messenger.page-access-token:}") String pageAccessToken,
+            @Qualifier("channelRestTemplate") RestTemplate restTemplate,
+            OutboxJournal outbox) {
         this.pageAccessToken = pageAccessToken == null ? "" : pageAccessToken.trim();
+        this.restTemplate = restTemplate;
+        this.outbox = outbox;
 
         if (!this.pageAccessToken.isBlank()) {
             log.info("Facebook Messenger page access token configured");
@@ -53,10 +67,43 @@ public class MessengerService {
                 "message", Map.of("text", text)
         );
 
-        postToMessenger(payload);
+        send(recipientId, payload, 0);
+    }
+
+    private void send(String recipientId, Map<String, Object> payload, int replays) {
+        long journalId = outbox.append(CHANNEL, recipientId, null, payload, replays);
+        // Only sends cut off by shutdown stay unacknowledged and are replayed on the next start;
+        // a send Messenger answered, even with an error, would fail the same way again.
+        if (postToMessenger(payload) || !stopping) {
+            outbox.acknowledge(journalId);
+        }
+    }
+
+    /**
+     * Resends messages that were journaled but never answered before the last shutdown.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayOutbox() {
+        List<OutboxJournal.Entry> entries = outbox.takeRecovered(CHANNEL);
+        if (entries.isEmpty()) {
+            return;
+        }
+        log.info("Replaying {} unacknowledged Messenger messages from the outbox", entries.size());
+        for (OutboxJournal.Entry entry : entries) {
+            send(entry.recipient(), entry.body(), entry.replays() + 1);
+            outbox.acknowledge(entry.id());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
     }
 
-    private void postToMessenger(Map<String, Object> payload) {
+    /**
+     * Posts one message, returning whether Messenger answered it, successfully or not.
+     */
+    private boolean postToMessenger(Map<String, Object> payload) {
         String url = "https://graph.facebook.com/v20.0/me/messages?access_token=" + pageAccessToken;
 
         HttpHeaders headers = new HttpHeaders();
@@ -67,10 +114,13 @@ public class MessengerService {
         try {
             ResponseEntity<String> response = restTemplate.postForEntity(url, entity, String.class);
             log.info("Facebook Messenger API responded with status {}", response.getStatusCode());
+            return true;
         } catch (HttpStatusCodeException ex) {
             log.error("Facebook Messenger API error {}: {}", ex.getStatusCode(), ex.getResponseBodyAsString());
+            return true;
         } catch (Exception ex) {
             log.error("Failed to call Facebook Messenger API", ex);
+            return false;
         }
     }
 
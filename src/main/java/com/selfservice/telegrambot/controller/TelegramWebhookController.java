@@ -8,17 +8,22 @@ import com.selfservice.application.dto.InvoiceSummary;
 import com.selfservice.application.dto.ServiceListResult;
 import com.selfservice.application.dto.ServiceSummary;
 import com.selfservice.application.dto.TroubleTicketListResult;
+import com.selfservice.application.service.InvoiceDocumentService;
+import com.selfservice.application.service.ChatSessionEngine;
 import com.selfservice.application.service.ProductService;
 import com.selfservice.application.service.InvoiceService;
 import com.selfservice.application.service.TroubleTicketService;
 import com.selfservice.application.service.OperationsMonitoringService;
 import com.selfservice.application.service.ServiceFunctionExecutor;
 import com.selfservice.application.service.ContextTraceLogger;
+import com.selfservice.application.service.WebhookDeduplicator;
+import com.selfservice.application.service.WebhookDispatcher;
 import com.selfservice.application.config.menu.LoginMenuFunction;
 import com.selfservice.application.config.menu.LoginMenuItem;
 import com.selfservice.application.config.menu.BusinessMenuConfigurationProvider;
 import com.selfservice.application.config.menu.BusinessMenuItem;
 import com.selfservice.application.config.ConnectorsProperties;
+import com.selfservice.telegrambot.dto.TelegramUpdate;
 import com.selfservice.telegrambot.service.TelegramService;
 import com.selfservice.telegrambot.service.UserSessionService;
 import org.slf4j.Logger;
@@ -28,7 +33,6 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
-import java.util.Map;
 
 @RestController
 @RequestMapping("/webhook/telegram")
@@ -47,6 +51,9 @@ public class TelegramWebhookController {
     private final BusinessMenuConfigurationProvider menuConfigurationProvider;
     private final ServiceFunctionExecutor serviceFunctionExecutor;
     private final ContextTraceLogger contextTraceLogger;
+    private final WebhookDispatcher webhookDispatcher;
+    private final WebhookDeduplicator webhookDeduplicator;
+    private final InvoiceDocumentService invoiceDocumentService;
 
     public TelegramWebhookController(TelegramService telegramService,
             KeycloakAuthService keycloakAuthService,
@@ -59,7 +66,10 @@ public class TelegramWebhookController {
             ConnectorsProperties connectorsProperties,
             BusinessMenuConfigurationProvider menuConfigurationProvider,
             ServiceFunctionExecutor serviceFunctionExecutor,
-            ContextTraceLogger contextTraceLogger) {
+            ContextTraceLogger contextTraceLogger,
+            WebhookDispatcher webhookDispatcher,
+            WebhookDeduplicator webhookDeduplicator,
+            InvoiceDocumentService invoiceDocumentService) {
         this.telegramService = telegramService;
         this.keycloakAuthService = keycloakAuthService;
         this.productService = productService;
@@ -73,59 +83,60 @@ public class TelegramWebhookController {
         this.menuConfigurationProvider = menuConfigurationProvider;
         this.serviceFunctionExecutor = serviceFunctionExecutor;
         this.contextTraceLogger = contextTraceLogger;
+        this.webhookDispatcher = webhookDispatcher;
+        this.webhookDeduplicator = webhookDeduplicator;
+        this.invoiceDocumentService = invoiceDocumentService;
 
     }
 
     @PostMapping
-    public ResponseEntity<Void> onUpdate(@RequestBody Map<String, Object> update) {
+    public ResponseEntity<Void> onUpdate(@RequestBody TelegramUpdate update) {
         if (!connectorsProperties.isTelegramEnabled()) {
             return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         }
+        Long updateId = update == null ? null : update.updateId();
+        if (updateId != null && webhookDeduplicator.isDuplicate("telegram", updateId)) {
+            log.info("Ignoring redelivered Telegram update {}", updateId);
+            return ResponseEntity.ok().build();
+        }
+        Long laneChatId = update == null ? null : update.chatId();
+        if (laneChatId == null) {
+            log.debug("Ignoring Telegram update without a chat: {}", update);
+            return ResponseEntity.ok().build();
+        }
+        // Updates from one chat are processed in arrival order; different chats run in parallel.
+        if (!webhookDispatcher.submit("telegram", laneChatId, () -> processUpdate(update))) {
+            // Non-2xx makes Telegram redeliver the update once we have capacity again.
+            if (updateId != null) {
+                webhookDeduplicator.forget("telegram", updateId);
+            }
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    private void processUpdate(TelegramUpdate update) {
         log.info("Incoming Telegram update: {}", update);
 
         try {
 
-            Map<String, Object> message = (Map<String, Object>) update.get("message");
-            Map<String, Object> callbackQuery = (Map<String, Object>) update.get("callback_query");
-            Map<String, Object> chat;
+            TelegramUpdate.Message message = update.message();
+            TelegramUpdate.CallbackQuery callbackQuery = update.callbackQuery();
+            TelegramUpdate.Chat chat = update.chat();
+            if (chat == null || chat.id() == null)
+                return;
+
+            long chatId = chat.id();
+            String chatUsername = extractDisplayName(chat);
             String text;
-            long chatId;
-            String chatUsername;
 
             if (message != null) {
-                chat = (Map<String, Object>) message.get("chat");
-                if (chat == null || chat.get("id") == null)
-                    return ResponseEntity.ok().build();
-
-                chatId = ((Number) chat.get("id")).longValue();
-                chatUsername = extractDisplayName(chat);
-                text = (String) message.get("text");
-                if (text == null)
-                    text = "";
-                text = text.trim();
-            } else if (callbackQuery != null) {
-                Map<String, Object> callbackMessage = (Map<String, Object>) callbackQuery.get("message");
-                if (callbackMessage == null)
-                    return ResponseEntity.ok().build();
-
-                chat = (Map<String, Object>) callbackMessage.get("chat");
-                if (chat == null || chat.get("id") == null)
-                    return ResponseEntity.ok().build();
-
-                chatId = ((Number) chat.get("id")).longValue();
-                chatUsername = extractDisplayName(chat);
-                text = (String) callbackQuery.get("data");
-                if (text == null)
-                    text = "";
-                text = text.trim();
-
-                telegramService.answerCallbackQuery((String) callbackQuery.get("id"));
+                text = message.text();
             } else {
-
-
-                return ResponseEntity.ok().build();
-
+                text = callbackQuery.data();
+                telegramService.answerCallbackQuery(callbackQuery.id());
             }
+            text = text == null ? "" : text.trim();
 
             if (text.equals(telegramService.translate(chatId, TelegramService.KEY_BUTTON_HELLO_WORLD))) {
                 text = TelegramService.CALLBACK_HELLO_WORLD;
@@ -189,7 +200,7 @@ public class TelegramWebhookController {
                 monitoringService.recordActivity("Telegram", Long.toString(chatId), chatUsername, hasValidToken,
                         monitoringService.toTokenDetails(tokenSnapshot), false);
                 telegramService.sendMessageWithKey(chatId, "OptOutConfirmation");
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (text.equals(TelegramService.CALLBACK_BUSINESS_MENU_HOME)) {
@@ -201,7 +212,7 @@ public class TelegramWebhookController {
                 } else {
                     telegramService.sendLoginMenu(chatId, oauthSessionService.buildAuthUrl(chatId));
                 }
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (text.equals(TelegramService.CALLBACK_HOME)) {
@@ -214,12 +225,12 @@ public class TelegramWebhookController {
                     telegramService.goHomeLoginMenu(chatId);
                     telegramService.sendLoginMenu(chatId, oauthSessionService.buildAuthUrl(chatId));
                 }
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (text.equals(TelegramService.CALLBACK_SETTINGS_MENU)) {
                 telegramService.sendSettingsMenu(chatId);
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (text.startsWith(TelegramService.CALLBACK_BUSINESS_MENU_PREFIX)) {
@@ -234,7 +245,7 @@ public class TelegramWebhookController {
                 } else {
                     telegramService.sendLoginMenu(chatId, oauthSessionService.buildAuthUrl(chatId));
                 }
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (text.startsWith(TelegramService.CALLBACK_SHOW_MORE_ACCOUNTS_PREFIX)) {
@@ -246,7 +257,7 @@ public class TelegramWebhookController {
                 } else {
                     telegramService.sendAccountPage(chatId, accounts, offset);
                 }
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (text.startsWith(TelegramService.CALLBACK_SHOW_MORE_SERVICES_PREFIX)) {
@@ -258,7 +269,7 @@ public class TelegramWebhookController {
                 } else {
                     telegramService.sendServicePage(chatId, services, offset);
                 }
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (text.startsWith(TelegramService.CALLBACK_SHOW_MORE_TICKETS_PREFIX)) {
@@ -270,7 +281,7 @@ public class TelegramWebhookController {
                 } else {
                     telegramService.sendTroubleTicketPage(chatId, tickets, offset);
                 }
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (text.startsWith(TelegramService.CALLBACK_SHOW_MORE_INVOICES_PREFIX)) {
@@ -282,17 +293,17 @@ public class TelegramWebhookController {
                 } else {
                     telegramService.sendInvoicePage(chatId, invoices, offset);
                 }
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (TelegramService.CALLBACK_LANGUAGE_MENU.equals(text)) {
                 telegramService.sendLanguageMenu(chatId);
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (TelegramService.CALLBACK_OPT_IN_PROMPT.equals(text)) {
                 telegramService.sendOptInPrompt(chatId);
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (TelegramService.CALLBACK_OPT_IN_ACCEPT.equals(text)) {
@@ -307,7 +318,7 @@ public class TelegramWebhookController {
                 } else {
                     telegramService.sendLoginMenu(chatId, oauthSessionService.buildAuthUrl(chatId));
                 }
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (TelegramService.CALLBACK_OPT_IN_DECLINE.equals(text)) {
@@ -322,7 +333,7 @@ public class TelegramWebhookController {
                 } else {
                     telegramService.sendLoginMenu(chatId, oauthSessionService.buildAuthUrl(chatId));
                 }
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (text.startsWith(TelegramService.CALLBACK_LANGUAGE_PREFIX)) {
@@ -348,7 +359,7 @@ public class TelegramWebhookController {
                         telegramService.sendLoginMenu(chatId, oauthSessionService.buildAuthUrl(chatId));
                     }
                 }
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (text.startsWith(TelegramService.CALLBACK_TROUBLE_TICKET_PREFIX)) {
@@ -366,25 +377,25 @@ public class TelegramWebhookController {
                 } else {
                     telegramService.sendLoginMenu(chatId, oauthSessionService.buildAuthUrl(chatId));
                 }
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (text.startsWith(TelegramService.CALLBACK_INVOICE_VIEW_PDF_PREFIX)) {
                 String invoiceId = text.substring(TelegramService.CALLBACK_INVOICE_VIEW_PDF_PREFIX.length()).trim();
                 handleInvoiceAction(chatId, invoiceId, "InvoiceViewPdf");
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (text.startsWith(TelegramService.CALLBACK_INVOICE_PAY_PREFIX)) {
                 String invoiceId = text.substring(TelegramService.CALLBACK_INVOICE_PAY_PREFIX.length()).trim();
                 handleInvoiceAction(chatId, invoiceId, "InvoicePay");
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (text.startsWith(TelegramService.CALLBACK_INVOICE_COMPARE_PREFIX)) {
                 String invoiceId = text.substring(TelegramService.CALLBACK_INVOICE_COMPARE_PREFIX.length()).trim();
                 handleInvoiceAction(chatId, invoiceId, "InvoiceCompare");
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (TelegramService.CALLBACK_LOGOUT.equals(text)) {
@@ -399,7 +410,7 @@ public class TelegramWebhookController {
                 monitoringService.markLoggedOut("Telegram", Long.toString(chatId));
                 telegramService.sendMessageWithKey(chatId, "LoggedOutMessage");
                 telegramService.sendLoginMenu(chatId, oauthSessionService.buildAuthUrl(chatId));
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (text.startsWith(TelegramService.CALLBACK_SERVICE_PREFIX)) {
@@ -425,7 +436,7 @@ public class TelegramWebhookController {
                         telegramService.sendLoginMenu(chatId, oauthSessionService.buildAuthUrl(chatId));
                     }
                 }
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (text.startsWith(TelegramService.CALLBACK_INVOICE_PREFIX)) {
@@ -440,7 +451,7 @@ public class TelegramWebhookController {
                     telegramService.sendMessageWithKey(chatId, "InvoiceSelected", selectedInvoice.id());
                     telegramService.sendInvoiceActions(chatId, selectedInvoice);
                 }
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (text.startsWith(TelegramService.CALLBACK_ACCOUNT_PREFIX)) {
@@ -461,12 +472,12 @@ public class TelegramWebhookController {
                                 userSessionService.clearServices(chatId);
                                 telegramService.sendMessageWithKey(chatId, "UnableToRetrieveServices", services.errorMessage());
                                 telegramService.sendLoggedInMenu(chatId, selected, accounts.size() > 1);
-                                return ResponseEntity.ok().build();
+                                return;
                             } else if (services.services() == null || services.services().isEmpty()) {
                                 userSessionService.clearServices(chatId);
                                 telegramService.sendMessageWithKey(chatId, "NoServicesForAccount", selected.accountId());
                                 telegramService.sendLoggedInMenu(chatId, selected, accounts.size() > 1);
-                                return ResponseEntity.ok().build();
+                                return;
                             } else {
                                 userSessionService.saveServices(chatId, services.services());
                                 var firstService = services.services().get(0);
@@ -479,7 +490,7 @@ public class TelegramWebhookController {
                                         : firstService.accessNumber().strip();
                                 telegramService.sendMessageWithKey(chatId, "ServiceSelected", name, number);
                                 telegramService.sendAccountServiceCard(chatId, selected, firstService, accounts.size() > 1, null);
-                                return ResponseEntity.ok().build();
+                                return;
                             }
                         }
                     } catch (Exception e) {
@@ -488,7 +499,7 @@ public class TelegramWebhookController {
 
                     telegramService.sendAccountServiceCard(chatId, selected, userSessionService.getServices(chatId).isEmpty() ? null : userSessionService.getServices(chatId).get(0), accounts.size() > 1, null);
                 }
-                return ResponseEntity.ok().build();
+                return;
             }
 
             if (TelegramService.CALLBACK_CHANGE_ACCOUNT.equals(text)) {
@@ -502,7 +513,7 @@ public class TelegramWebhookController {
                     telegramService.sendMessageWithKey(chatId, "ChooseAccountToContinue");
                     telegramService.sendAccountPage(chatId, accounts, 0);
                 }
-                return ResponseEntity.ok().build();
+                return;
             }
 
             switch (text) {
@@ -703,7 +714,7 @@ public class TelegramWebhookController {
                         }
                         AccountSummary selected = userSessionService.getSelectedAccount(chatId);
                         ServiceSummary selectedService = userSessionService.getSelectedService(chatId);
-                        UserSessionService.PendingSelection pendingMenu = userSessionService
+                        ChatSessionEngine.PendingSelection pendingMenu = userSessionService
                                 .consumePendingFunctionMenu(chatId, text);
                         if (pendingMenu != null) {
                             String contextMessage = null;
@@ -775,8 +786,6 @@ public class TelegramWebhookController {
         } catch (Exception e) {
             log.error("Error processing Telegram update", e);
         }
-
-        return ResponseEntity.ok().build();
     }
 
     private boolean handleFunctionMenuResponse(long chatId, BusinessMenuItem matchedItem,
@@ -937,25 +946,25 @@ public class TelegramWebhookController {
         return header.toString();
     }
 
-    private String extractDisplayName(Map<String, Object> chat) {
+    private String extractDisplayName(TelegramUpdate.Chat chat) {
         if (chat == null) {
             return null;
         }
-        Object username = chat.get("username");
-        if (username instanceof String handle && !handle.isBlank()) {
-            return handle.strip();
+        String username = chat.username();
+        if (username != null && !username.isBlank()) {
+            return username.strip();
         }
-        Object first = chat.get("first_name");
-        Object last = chat.get("last_name");
+        String first = chat.firstName();
+        String last = chat.lastName();
         StringBuilder name = new StringBuilder();
-        if (first instanceof String firstName && !firstName.isBlank()) {
-            name.append(firstName.strip());
+        if (first != null && !first.isBlank()) {
+            name.append(first.strip());
         }
-        if (last instanceof String lastName && !lastName.isBlank()) {
+        if (last != null && !last.isBlank()) {
             if (!name.isEmpty()) {
                 name.append(' ');
             }
-            name.append(lastName.strip());
+            name.append(last.strip());
         }
         return name.isEmpty() ? null : name.toString();
     }
@@ -968,10 +977,23 @@ public class TelegramWebhookController {
             return;
         }
         userSessionService.selectInvoice(chatId, invoice);
-        telegramService.sendMessageWithKey(chatId, translationKey, invoice.id());
+        if ("InvoiceViewPdf".equals(translationKey)) {
+            sendInvoicePdf(chatId, invoice);
+        } else {
+            telegramService.sendMessageWithKey(chatId, translationKey, invoice.id());
+        }
         telegramService.sendInvoiceActions(chatId, invoice);
     }
 
+    private void sendInvoicePdf(long chatId, InvoiceSummary invoice) {
+        String link = invoiceDocumentService.downloadLink(userSessionService.getValidAccessToken(chatId), invoice.id());
+        if (link == null) {
+            telegramService.sendMessageWithKey(chatId, "InvoicePdfUnavailable", invoice.id());
+            return;
+        }
+        telegramService.sendDocument(chatId, link, telegramService.format(chatId, "InvoicePdfCaption", invoice.id()));
+    }
+
     private InvoiceSummary findInvoiceById(long chatId, String invoiceId) {
         if (invoiceId == null || invoiceId.isBlank()) {
             return null;
@@ -0,0 +1,50 @@
+package com.selfservice.telegrambot.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The parts of a Telegram Bot API update the webhook acts on. Everything else in the payload is
+ * skipped by the parser instead of being materialised.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record TelegramUpdate(
+        @JsonProperty("update_id") Long updateId,
+        Message message,
+        @JsonProperty("callback_query") CallbackQuery callbackQuery) {
+
+    /**
+     * Chat the update belongs to, taken from the message or from the message the callback button
+     * was attached to.
+     */
+    public Chat chat() {
+        if (message != null) {
+            return message.chat();
+        }
+        if (callbackQuery != null && callbackQuery.message() != null) {
+            return callbackQuery.message().chat();
+        }
+        return null;
+    }
+
+    public Long chatId() {
+        Chat chat = chat();
+        return chat == null ? null : chat.id();
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Message(Chat chat, String text) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Chat(
+            Long id,
+            String username,
+            @JsonProperty("first_name") String firstName,
+            @JsonProperty("last_name") String lastName) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record CallbackQuery(String id, String data, Message message) {
+    }
+}
@@ -0,0 +1,171 @@
+package com.selfservice.telegrambot.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.selfservice.application.service.PacedSendQueue.Outcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends Bot API calls either through the pooled RestTemplate on a small sender pool (blocking,
+ * the original transport) or through a non-blocking {@link WebClient} (reactive). Ordering and
+ * rate limiting are handled by {@link TelegramSendScheduler}. In both modes {@link #post} returns
+ * before Telegram answered: blocking mode blocks a {@code telegram-sender} thread, not the caller.
+ */
+@Component
+public class TelegramBotApiClient {
+
+    private static final Logger log = LoggerFactory.getLogger(TelegramBotApiClient.class);
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final long DEFAULT_RETRY_AFTER_MS = 1_000L;
+
+    public enum Mode {
+        BLOCKING,
+        REACTIVE
+    }
+
+    private final Mode mode;
+    private final RestTemplate rest;
+    private final WebClient webClient;
+    private final Duration timeout;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService senderPool;
+
+    public TelegramBotApiClient(
+            @Value("${telegram.api.mode:blocking}") String mode,
+            @Value("${telegram.api.timeout-seconds:30}") long timeoutSeconds,
+            @Value("${telegram.api.sender-threads:8}") int senderThreads,
+            @Qualifier("channelRestTemplate") RestTemplate rest,
+            WebClient.Builder webClientBuilder,
+            ObjectMapper objectMapper) {
+        this.mode = "reactive".equalsIgnoreCase(mode == null ? "" : mode.trim()) ? Mode.REACTIVE : Mode.BLOCKING;
+        this.rest = rest;
+        this.webClient = webClientBuilder.build();
+        this.timeout = Duration.ofSeconds(timeoutSeconds);
+        this.objectMapper = objectMapper;
+        if (this.mode == Mode.BLOCKING) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            this.senderPool = Executors.newFixedThreadPool(Math.max(1, senderThreads), runnable -> {
+                Thread thread = new Thread(runnable, "telegram-sender-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.senderPool = null;
+        }
+        log.info("Telegram Bot API client mode={}", this.mode);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Posts the call. The returned future never completes exceptionally: errors are logged and
+     * reported as {@link Outcome#failed()}, flood-control answers as {@link Outcome#retryAfter(long)}.
+     */
+    public CompletableFuture<Outcome> post(String url, Map<String, Object> body, HttpHeaders headers) {
+        Objects.requireNonNull(url, "url must not be null");
+        HttpHeaders effectiveHeaders = headers == null ? new HttpHeaders() : headers;
+        if (mode == Mode.BLOCKING) {
+            return CompletableFuture.supplyAsync(() -> postBlocking(url, body, effectiveHeaders), senderPool);
+        }
+        return postReactive(url, body, effectiveHeaders);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (senderPool != null) {
+            senderPool.shutdown();
+        }
+    }
+
+    private Outcome postBlocking(String url, Map<String, Object> body, HttpHeaders headers) {
+        try {
+            ResponseEntity<String> resp = rest.postForEntity(url, new HttpEntity<>(body, headers), String.class);
+
+            String respBody = (resp.hasBody() && resp.getBody() != null) ? resp.getBody() : "<no-body>";
+            log.info("Telegram API OK status={} body={}", resp.getStatusCode().value(), respBody);
+            return Outcome.delivered();
+
+        } catch (HttpStatusCodeException ex) {
+            return onError(ex.getRawStatusCode(), ex.getResponseBodyAsString());
+
+        } catch (Exception ex) {
+            log.error("Telegram API call failed", ex);
+            return Outcome.failed();
+        }
+    }
+
+    private CompletableFuture<Outcome> postReactive(String url, Map<String, Object> body, HttpHeaders headers) {
+        return webClient.post()
+                .uri(url)
+                .headers(h -> h.addAll(headers))
+                .bodyValue(body == null ? Map.of() : body)
+                .retrieve()
+                .toEntity(String.class)
+                .timeout(timeout)
+                .toFuture()
+                .handle((resp, error) -> {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    if (cause == null) {
+                        String respBody = resp.getBody() != null ? resp.getBody() : "<no-body>";
+                        log.info("Telegram API OK status={} body={}", resp.getStatusCodeValue(), respBody);
+                        return Outcome.delivered();
+                    }
+                    if (cause instanceof WebClientResponseException ex) {
+                        return onError(ex.getRawStatusCode(), ex.getResponseBodyAsString());
+                    }
+                    log.error("Telegram API call failed", cause);
+                    return Outcome.failed();
+                });
+    }
+
+    private Outcome onError(int status, String errBody) {
+        if (errBody == null || errBody.isBlank())
+            errBody = "<no-body>";
+        if (status == TOO_MANY_REQUESTS) {
+            long retryAfterMs = retryAfterMillis(errBody);
+            log.warn("Telegram API flood control, retry after {} ms -> {}", retryAfterMs, errBody);
+            return Outcome.retryAfter(retryAfterMs);
+        }
+        log.error("Telegram API HTTP {} -> {}", status, errBody);
+        return Outcome.failed();
+    }
+
+    /**
+     * Reads {@code parameters.retry_after} (seconds) from a 429 answer.
+     */
+    private long retryAfterMillis(String errBody) {
+        try {
+            JsonNode retryAfter = objectMapper.readTree(errBody).path("parameters").path("retry_after");
+            if (retryAfter.canConvertToLong() && retryAfter.asLong() > 0) {
+                return retryAfter.asLong() * 1_000L;
+            }
+        } catch (Exception ignored) {
+            // fall back to the default below
+        }
+        return DEFAULT_RETRY_AFTER_MS;
+    }
+}
@@ -0,0 +1,141 @@
+package com.selfservice.telegrambot.service;
+
+import com.selfservice.application.service.OutboxJournal;
+import com.selfservice.application.service.PacedSendQueue;
+import com.selfservice.application.service.PacedSendQueue.Outcome;
+import com.selfservice.application.service.PacedSendQueue.Result;
+import com.selfservice.application.service.TokenBucket;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Paces outgoing Bot API messages to Telegram's limits (about 30 messages per second overall and
+ * one per second per chat). Bursts such as notification fan-outs are queued instead of being
+ * rejected with 429, and {@code retry_after} answers put the message back at the head of its chat.
+ * Queued messages are journaled in the {@link OutboxJournal} so a restart does not lose them.
+ */
+@Component
+public class TelegramSendScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(TelegramSendScheduler.class);
+
+    private static final String CHANNEL = "telegram";
+
+    private final TelegramBotApiClient apiClient;
+    private final OutboxJournal outbox;
+    private final String apiBase;
+    private final PacedSendQueue<Call> queue;
+
+    public TelegramSendScheduler(
+            TelegramBotApiClient apiClient,
+            OutboxJournal outbox,
+            @Value("${telegram.bot.token:}") String token,
+            @Value("${telegram.rate-limit.global-per-second:30}") double globalPerSecond,
+            @Value("${telegram.rate-limit.global-burst:30}") int globalBurst,
+            @Value("${telegram.rate-limit.per-chat-per-second:1}") double perChatPerSecond,
+            @Value("${telegram.rate-limit.per-chat-burst:3}") int perChatBurst,
+            @Value("${telegram.rate-limit.max-attempts:5}") int maxAttempts,
+            @Value("${telegram.rate-limit.max-queued:10000}") int maxQueued,
+            MeterRegistry meterRegistry) {
+        this.apiClient = apiClient;
+        this.outbox = outbox;
+        this.apiBase = "https://api.telegram.org/bot" + (token == null ? "" : token.trim());
+        this.queue = new PacedSendQueue<>(CHANNEL,
+                new TokenBucket(globalPerSecond, globalBurst),
+                () -> new TokenBucket(perChatPerSecond, perChatBurst),
+                maxAttempts,
+                maxQueued,
+                (call, attempt) -> apiClient.post(call.url(), call.body(), call.headers()),
+                meterRegistry);
+        log.info("Telegram send rate limit global={}/s per-chat={}/s (burst {})",
+                globalPerSecond, perChatPerSecond, perChatBurst);
+    }
+
+    /**
+     * Queues a Bot API call. Calls carrying a {@code chat_id} are paced and kept in order per chat;
+     * others (e.g. answerCallbackQuery) are not messages and go out directly. The future completes
+     * with whether Telegram accepted the call.
+     */
+    public CompletableFuture<Boolean> submit(String url, Map<String, Object> body, HttpHeaders headers) {
+        return submit(url, body, headers, 0);
+    }
+
+    private CompletableFuture<Boolean> submit(String url, Map<String, Object> body, HttpHeaders headers, int replays) {
+        Object chatId = body == null ? null : body.get("chat_id");
+        if (chatId == null) {
+            return apiClient.post(url, body, headers)
+                    .thenApply(outcome -> outcome.status() == Outcome.Status.DELIVERED);
+        }
+        // Numbers come back from the journal as Integer or Long; one key type keeps one queue per chat.
+        Object recipient = chatId instanceof Number number ? (Object) number.longValue() : chatId;
+        long journalId = url.startsWith(apiBase)
+                // Only the method is journaled, never the token-bearing URL.
+                ? outbox.append(CHANNEL, String.valueOf(recipient), url.substring(apiBase.length()), body, replays)
+                : -1L;
+        CompletableFuture<Result> result = queue.enqueue(recipient, new Call(url, body, headers));
+        if (journalId >= 0) {
+            // Only messages cut off by shutdown stay unacknowledged and are replayed on the next start;
+            // a permanent failure or a full queue would fail the same way again.
+            result = result.thenApply(outcome -> {
+                if (outcome != Result.STOPPED) {
+                    outbox.acknowledge(journalId);
+                }
+                return outcome;
+            });
+        }
+        return result.thenApply(outcome -> outcome == Result.DELIVERED);
+    }
+
+    /**
+     * Resends messages that were journaled but never answered before the last shutdown.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayOutbox() {
+        List<OutboxJournal.Entry> entries = outbox.takeRecovered(CHANNEL);
+        if (entries.isEmpty()) {
+            return;
+        }
+        log.info("Replaying {} unacknowledged Telegram messages from the outbox", entries.size());
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        for (OutboxJournal.Entry entry : entries) {
+            submit(apiBase + entry.target(), entry.body(), headers, entry.replays() + 1);
+            outbox.acknowledge(entry.id());
+        }
+    }
+
+    /**
+     * Bot API base URL including the bot token, e.g. {@code https://api.telegram.org/bot<token>}.
+     */
+    public String apiBase() {
+        return apiBase;
+    }
+
+    public int queuedMessages() {
+        return queue.queuedMessages();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        int pending = queue.queuedMessages();
+        if (pending > 0) {
+            log.warn("Stopping with {} queued Telegram messages; they are replayed on the next start when the outbox is enabled", pending);
+        }
+        queue.shutdown();
+    }
+
+    private record Call(String url, Map<String, Object> body, HttpHeaders headers) {
+    }
+}
@@ -10,19 +10,16 @@ import com.selfservice.application.config.menu.BusinessMenuItem;
 import com.selfservice.application.config.menu.LoginMenuDefinition;
 import com.selfservice.application.config.menu.LoginMenuFunction;
 import com.selfservice.application.config.menu.LoginMenuItem;
+import com.selfservice.application.service.ChatSessionEngine;
 import com.selfservice.application.service.ImpersonationService;
 import com.selfservice.application.service.TranslationService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
-import org.springframework.web.client.HttpStatusCodeException;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 import org.springframework.web.util.UriUtils;
 
@@ -32,6 +29,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class TelegramService {
@@ -92,7 +90,7 @@ public class TelegramService {
     public static final String INTERACTIVE_ID_ACCOUNT_BALANCE_PAY_NOW = "ACCOUNT_BALANCE_PAY_NOW";
     public static final String INTERACTIVE_ID_ACCOUNT_BALANCE_CONTINUE = "ACCOUNT_BALANCE_CONTINUE";
 
-    private final RestTemplate rest = new RestTemplate();
+    private final TelegramSendScheduler sendScheduler;
     private final String baseUrl;
     private final String publicBaseUrl;
     private final TranslationService translationService;
@@ -108,19 +106,22 @@ public class TelegramService {
             UserSessionService userSessionService,
             BusinessMenuConfigurationProvider menuConfigurationProvider,
             LoginMenuProperties loginMenuProperties,
-            ImpersonationService impersonationService) {
+            ImpersonationService impersonationService,
+            TelegramSendScheduler sendScheduler) {
 
         if (!StringUtils.hasText(token)) {
             throw new IllegalArgumentException("telegram.bot.token must be configured in telegram-local.yml");
         }
 
-        this.baseUrl = "https://api.telegram.org/bot" + token;
+        // Shared with the scheduler, which recognises journaled calls by this prefix.
+        this.baseUrl = sendScheduler.apiBase();
         this.publicBaseUrl = (publicBaseUrl == null) ? "" : publicBaseUrl;
         this.translationService = translationService;
         this.userSessionService = userSessionService;
         this.menuConfigurationProvider = menuConfigurationProvider;
         this.loginMenuProperties = loginMenuProperties;
         this.impersonationService = impersonationService;
+        this.sendScheduler = sendScheduler;
 
         String masked = this.baseUrl.replaceFirst("/bot[^/]+", "/bot<token>");
         log.info("Telegram baseUrl set to {}", masked);
@@ -149,7 +150,7 @@ public class TelegramService {
         sendMessage(chatId, format(chatId, key, args));
     }
 
-    public void sendMessage(long chatId, String text) {
+    public CompletableFuture<Boolean> sendMessage(long chatId, String text) {
         String url = baseUrl + "/sendMessage";
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
@@ -158,7 +159,23 @@ public class TelegramService {
                 "chat_id", chatId,
                 "text", text);
 
-        post(url, body, headers);
+        return post(url, body, headers);
+    }
+
+    /**
+     * Sends a document Telegram fetches from {@code documentUrl} itself, so the bot never uploads it.
+     */
+    public CompletableFuture<Boolean> sendDocument(long chatId, String documentUrl, String caption) {
+        String url = baseUrl + "/sendDocument";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        Map<String, Object> body = Map.of(
+                "chat_id", chatId,
+                "document", documentUrl,
+                "caption", caption);
+
+        return post(url, body, headers);
     }
 
     public void sendCardMessage(long chatId, String text, List<String> buttonLabels) {
@@ -248,7 +265,7 @@ public class TelegramService {
     }
 
     private boolean isLoggedIn(long chatId) {
-        return userSessionService.getTokenSnapshot(chatId).state() == UserSessionService.TokenState.VALID;
+        return userSessionService.getTokenSnapshot(chatId).state() == ChatSessionEngine.TokenState.VALID;
     }
 
     private boolean hasAlternateAccount(long chatId) {
@@ -775,9 +792,13 @@ public class TelegramService {
         return userSessionService.goUpLoginMenu(chatId, menuConfigurationProvider.getLoginRootMenuId());
     }
 
-    public void answerCallbackQuery(String callbackQueryId) {
+    /**
+     * Acknowledges a button tap. The returned future lets the handler send its reply without
+     * waiting for this call.
+     */
+    public CompletableFuture<Boolean> answerCallbackQuery(String callbackQueryId) {
         if (callbackQueryId == null || callbackQueryId.isBlank()) {
-            return;
+            return CompletableFuture.completedFuture(false);
         }
 
         String url = baseUrl + "/answerCallbackQuery";
@@ -786,7 +807,7 @@ public class TelegramService {
 
         Map<String, Object> body = Map.of("callback_query_id", callbackQueryId);
 
-        post(url, body, headers);
+        return post(url, body, headers);
     }
 
     public String authHelloUrl() {
@@ -1136,25 +1157,7 @@ public class TelegramService {
         return value.strip();
     }
 
-    private void post(String url, Map<String, Object> body, HttpHeaders headers) {
-        Objects.requireNonNull(url, "url must not be null");
-        if (headers == null)
-            headers = new HttpHeaders();
-
-        try {
-            ResponseEntity<String> resp = rest.postForEntity(url, new HttpEntity<>(body, headers), String.class);
-
-            String respBody = (resp.hasBody() && resp.getBody() != null) ? resp.getBody() : "<no-body>";
-            log.info("Telegram API OK status={} body={}", resp.getStatusCode().value(), respBody);
-
-        } catch (HttpStatusCodeException ex) {
-            String errBody = ex.getResponseBodyAsString();
-            if (errBody == null || errBody.isBlank())
-                errBody = "<no-body>";
-            log.error("Telegram API HTTP {} -> {}", ex.getStatusCode().value(), errBody, ex);
-
-        } catch (Exception ex) {
-            log.error("Telegram API call failed", ex);
-        }
+    private CompletableFuture<Boolean> post(String url, Map<String, Object> body, HttpHeaders headers) {
+        return sendScheduler.submit(url, body, headers);
     }
 }
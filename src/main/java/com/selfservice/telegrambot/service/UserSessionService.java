@@ -1,597 +1,290 @@
 package com.selfservice.telegrambot.service;
 
+import com.selfservice.application.config.ApimanEndpointsProperties;
+import com.selfservice.application.config.SessionEvictionProperties;
+import com.selfservice.application.config.SessionSnapshotProperties;
+import com.selfservice.application.config.SessionStoreProperties;
 import com.selfservice.application.dto.AccountSummary;
 import com.selfservice.application.dto.InvoiceSummary;
 import com.selfservice.application.dto.ServiceSummary;
 import com.selfservice.application.dto.TroubleTicketSummary;
+import com.selfservice.application.service.ApiResponseCache;
+import com.selfservice.application.service.ChatSessionEngine;
+import com.selfservice.application.service.SessionKey;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Per-chat Telegram session state, kept by a {@link ChatSessionEngine} for the Telegram channel.
+ * Telegram needs no state beyond the engine's own.
+ */
 @Service
 public class UserSessionService {
 
-    public static final class TokenInfo {
-        public final String accessToken;
-        public final String refreshToken;
-        public final String idToken;
-        public final long expiryEpochMs;
-        public final List<AccountSummary> accounts;
-        public final AccountSummary selectedAccount;
-        public final String exchangeId;
+    private static final String DEFAULT_LANGUAGE = "en";
+
+    private final ChatSessionEngine<ChatSessionEngine.Extension> engine;
 
-        public TokenInfo(String accessToken, String refreshToken, String idToken, long expiryEpochMs,
-                List<AccountSummary> accounts, AccountSummary selectedAccount, String exchangeId) {
-            this.accessToken = accessToken;
-            this.refreshToken = refreshToken;
-            this.idToken = idToken;
-            this.expiryEpochMs = expiryEpochMs;
-            this.accounts = accounts;
-            this.selectedAccount = selectedAccount;
-            this.exchangeId = exchangeId;
-        }
+    @Autowired
+    public UserSessionService(SessionEvictionProperties properties, SessionSnapshotProperties snapshotProperties,
+                              SessionStoreProperties storeProperties, ApiResponseCache responseCache,
+                              MeterRegistry meterRegistry) {
+        this.engine = new ChatSessionEngine<>(SessionKey.Channel.TELEGRAM, () -> ChatSessionEngine.Extension.NONE,
+                properties, snapshotProperties, storeProperties, responseCache, meterRegistry);
     }
 
-    public enum TokenState {
-        NONE,
-        VALID,
-        EXPIRED,
-        INVALID
+    /**
+     * Standalone instance with default limits, no snapshot, and a sweeper that only runs when
+     * asked to.
+     */
+    public UserSessionService() {
+        this(new SessionEvictionProperties(), new SessionSnapshotProperties(), new SessionStoreProperties(),
+                new ApiResponseCache(new ApimanEndpointsProperties(), new SimpleMeterRegistry()),
+                new SimpleMeterRegistry());
     }
 
-    public record TokenSnapshot(TokenState state, String token) {
-        public static TokenSnapshot none() {
-            return new TokenSnapshot(TokenState.NONE, null);
-        }
+    @PostConstruct
+    public void start() {
+        engine.start();
     }
 
-    private static final String DEFAULT_LANGUAGE = "en";
+    @PreDestroy
+    public void shutdown() {
+        engine.shutdown();
+    }
+
+    private static SessionKey key(long chatId) {
+        return SessionKey.telegram(chatId);
+    }
+
+    /**
+     * Runs one sweep as of {@code nowMs}; the background sweeper does the same once per interval.
+     */
+    void sweepIdleSessions(long nowMs) {
+        engine.sweepIdleSessions(nowMs);
+    }
 
-    private final Map<Long, TokenInfo> byChat = new ConcurrentHashMap<>();
-    private final Map<Long, List<ServiceSummary>> servicesByChat = new ConcurrentHashMap<>();
-    private final Map<Long, ServiceSummary> selectedServiceByChat = new ConcurrentHashMap<>();
-    private final Map<Long, List<TroubleTicketSummary>> ticketsByChat = new ConcurrentHashMap<>();
-    private final Map<Long, List<InvoiceSummary>> invoicesByChat = new ConcurrentHashMap<>();
-    private final Map<Long, InvoiceSummary> selectedInvoiceByChat = new ConcurrentHashMap<>();
-    private final Map<Long, String> invoiceActionsMenuByChat = new ConcurrentHashMap<>();
-    private final Map<Long, String> languageByChat = new ConcurrentHashMap<>();
-    private final Map<Long, List<String>> menuPathByChat = new ConcurrentHashMap<>();
-    private final Map<Long, List<String>> loginMenuPathByChat = new ConcurrentHashMap<>();
-    private final Map<Long, Boolean> optInByChat = new ConcurrentHashMap<>();
-    private final Map<Long, String> menuContextByChat = new ConcurrentHashMap<>();
-    private final Map<Long, PendingFunctionMenu> pendingFunctionMenusByChat = new ConcurrentHashMap<>();
-    private final Map<Long, ContextState> contextStateByChat = new ConcurrentHashMap<>();
-
-    public record ContextState(String accountContext, String serviceContext, String objectContext, String objectLabel) { }
+    public String getLanguage(long chatId) {
+        return engine.getLanguage(key(chatId), DEFAULT_LANGUAGE);
+    }
 
     public void save(long chatId, String accessToken, String refreshToken, String idToken, long expiresInSeconds,
-            String exchangeId) {
-        long exp = System.currentTimeMillis() + expiresInSeconds * 1000L;
-        byChat.put(chatId, new TokenInfo(accessToken, refreshToken, idToken, exp, Collections.emptyList(), null,
-                exchangeId));
-        clearServices(chatId);
-        clearTroubleTickets(chatId);
-        clearInvoices(chatId);
-        clearSelectedService(chatId);
+                     String exchangeId) {
+        engine.save(key(chatId), accessToken, refreshToken, idToken, expiresInSeconds, exchangeId);
     }
 
-    public TokenSnapshot getTokenSnapshot(long chatId) {
-        TokenInfo info = byChat.get(chatId);
-        if (info == null) {
-            return TokenSnapshot.none();
-        }
-        boolean expired = info.expiryEpochMs <= System.currentTimeMillis() + 30_000;
-        return new TokenSnapshot(expired ? TokenState.EXPIRED : TokenState.VALID, info.accessToken);
+    public void saveExchangeId(long chatId, String accessToken, String exchangeId) {
+        engine.saveExchangeId(key(chatId), accessToken, exchangeId);
+    }
+
+    public ChatSessionEngine.TokenSnapshot getTokenSnapshot(long chatId) {
+        return engine.getTokenSnapshot(key(chatId));
     }
 
     public String getValidAccessToken(long chatId) {
-        TokenInfo ti = byChat.get(chatId);
-        if (ti == null) return null;
-        // 30s safety buffer
-        if (ti.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-            byChat.remove(chatId);
-            return null;
-        }
-        return ti.accessToken;
+        return engine.getValidAccessToken(key(chatId));
     }
 
     public String getExchangeId(long chatId) {
-        TokenInfo ti = byChat.get(chatId);
-        if (ti == null) {
-            return null;
-        }
-        if (ti.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-            byChat.remove(chatId);
-            return null;
-        }
-        return ti.exchangeId;
+        return engine.getExchangeId(key(chatId));
     }
 
     public void saveAccounts(long chatId, List<AccountSummary> accounts) {
-        final List<AccountSummary> copy = accounts == null ? Collections.emptyList() : List.copyOf(accounts);
-        byChat.computeIfPresent(chatId, (id, existing) -> {
-            if (existing.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-                return null;
-            }
-            AccountSummary selected = null;
-            AccountSummary priorSelection = existing.selectedAccount;
-            if (priorSelection != null) {
-                String selectedAccountId = priorSelection.accountId();
-                selected = copy.stream()
-                        .filter(a -> a.accountId().equals(selectedAccountId))
-                        .findFirst()
-                        .orElse(null);
-            }
-            return new TokenInfo(existing.accessToken, existing.refreshToken, existing.idToken, existing.expiryEpochMs, copy,
-                    selected, existing.exchangeId);
-        });
-        AccountSummary selectedAccount = getSelectedAccount(chatId);
-        boolean selectedAccountPresent = selectedAccount != null
-                && copy.stream().anyMatch(a -> a.accountId().equals(selectedAccount.accountId()));
-        if (!selectedAccountPresent) {
-            clearSelectedService(chatId);
-        }
+        engine.saveAccounts(key(chatId), accounts);
     }
 
     public List<AccountSummary> getAccounts(long chatId) {
-        TokenInfo info = byChat.get(chatId);
-        if (info == null) {
-            return List.of();
-        }
-        if (info.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-            byChat.remove(chatId);
-            return List.of();
-        }
-        return info.accounts;
+        return engine.getAccounts(key(chatId));
     }
 
     public AccountSummary getSelectedAccount(long chatId) {
-        TokenInfo info = byChat.get(chatId);
-        if (info == null) {
-            return null;
-        }
-        if (info.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-            byChat.remove(chatId);
-            return null;
-        }
-        return info.selectedAccount;
+        return engine.getSelectedAccount(key(chatId));
     }
 
     public void selectAccount(long chatId, AccountSummary account) {
-        if (account == null) {
-            return;
-        }
-        byChat.computeIfPresent(chatId, (id, existing) -> {
-            if (existing.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-                return null;
-            }
-            AccountSummary matched = existing.accounts.stream()
-                    .filter(a -> a.accountId().equals(account.accountId()))
-                    .findFirst()
-                    .orElse(null);
-            if (matched == null) {
-                return existing;
-            }
-            return new TokenInfo(existing.accessToken, existing.refreshToken, existing.idToken, existing.expiryEpochMs, existing.accounts,
-                    matched, existing.exchangeId);
-        });
-        updateContext(chatId, account.accountId(), null, null);
-        clearServices(chatId);
-        clearTroubleTickets(chatId);
-        clearInvoices(chatId);
-        clearSelectedService(chatId);
+        engine.selectAccount(key(chatId), account);
     }
 
     public void clearSelectedAccount(long chatId) {
-        byChat.computeIfPresent(chatId, (id, existing) -> {
-            if (existing.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-                return null;
-            }
-            if (existing.selectedAccount == null) {
-                return existing;
-            }
-            return new TokenInfo(existing.accessToken, existing.refreshToken, existing.idToken, existing.expiryEpochMs, existing.accounts,
-                    null, existing.exchangeId);
-        });
-        clearServices(chatId);
-        clearTroubleTickets(chatId);
-        clearInvoices(chatId);
-        clearSelectedService(chatId);
-        updateContext(chatId, null, null, null);
+        engine.clearSelectedAccount(key(chatId));
     }
 
     public void saveServices(long chatId, List<ServiceSummary> services) {
-        List<ServiceSummary> copy = services == null ? List.of() : List.copyOf(services);
-        servicesByChat.put(chatId, copy);
-        ServiceSummary currentSelection = selectedServiceByChat.get(chatId);
-        if (copy.size() == 1) {
-            selectedServiceByChat.put(chatId, copy.get(0));
-        } else if (currentSelection != null) {
-            boolean stillPresent = copy.stream()
-                    .anyMatch(s -> s.productId().equals(currentSelection.productId()));
-            if (!stillPresent) {
-                selectedServiceByChat.remove(chatId);
-            }
-        } else {
-            selectedServiceByChat.remove(chatId);
-        }
+        engine.saveServices(key(chatId), services);
     }
 
     public List<ServiceSummary> getServices(long chatId) {
-        return servicesByChat.getOrDefault(chatId, List.of());
+        return engine.getServices(key(chatId));
     }
 
     public void clearServices(long chatId) {
-        servicesByChat.remove(chatId);
-        clearSelectedService(chatId);
+        engine.clearServices(key(chatId));
     }
 
     public ServiceSummary getSelectedService(long chatId) {
-        return selectedServiceByChat.get(chatId);
+        return engine.getSelectedService(key(chatId));
     }
 
     public void selectService(long chatId, ServiceSummary service) {
-        if (service == null) {
-            return;
-        }
-        List<ServiceSummary> services = servicesByChat.getOrDefault(chatId, List.of());
-        ServiceSummary matched = services.stream()
-                .filter(s -> s.productId().equals(service.productId()))
-                .findFirst()
-                .orElse(null);
-        if (matched != null) {
-            selectedServiceByChat.put(chatId, matched);
-            updateContext(chatId, null, matched.productId(), null);
-        }
+        engine.selectService(key(chatId), service);
     }
 
     public void clearSelectedService(long chatId) {
-        selectedServiceByChat.remove(chatId);
+        engine.clearSelectedService(key(chatId));
     }
 
     public void saveTroubleTickets(long chatId, List<TroubleTicketSummary> tickets) {
-        ticketsByChat.put(chatId, tickets == null ? List.of() : List.copyOf(tickets));
+        engine.saveTroubleTickets(key(chatId), tickets);
     }
 
     public List<TroubleTicketSummary> getTroubleTickets(long chatId) {
-        return ticketsByChat.getOrDefault(chatId, List.of());
+        return engine.getTroubleTickets(key(chatId));
     }
 
     public void clearTroubleTickets(long chatId) {
-        ticketsByChat.remove(chatId);
+        engine.clearTroubleTickets(key(chatId));
     }
 
     public void saveInvoices(long chatId, List<InvoiceSummary> invoices) {
-        invoicesByChat.put(chatId, invoices == null ? List.of() : List.copyOf(invoices));
-        InvoiceSummary currentSelection = selectedInvoiceByChat.get(chatId);
-        if (invoices != null && invoices.size() == 1) {
-            selectedInvoiceByChat.put(chatId, invoices.get(0));
-        } else if (currentSelection != null) {
-            boolean stillPresent = invoices != null && invoices.stream()
-                    .anyMatch(inv -> inv.id().equals(currentSelection.id()));
-            if (!stillPresent) {
-                selectedInvoiceByChat.remove(chatId);
-            }
-        } else {
-            selectedInvoiceByChat.remove(chatId);
-        }
+        engine.saveInvoices(key(chatId), invoices);
     }
 
     public List<InvoiceSummary> getInvoices(long chatId) {
-        return invoicesByChat.getOrDefault(chatId, List.of());
+        return engine.getInvoices(key(chatId));
     }
 
     public void setInvoiceActionsMenu(long chatId, String menuId) {
-        if (menuId == null || menuId.isBlank()) {
-            invoiceActionsMenuByChat.remove(chatId);
-        } else {
-            invoiceActionsMenuByChat.put(chatId, menuId);
-        }
+        engine.setInvoiceActionsMenu(key(chatId), menuId);
     }
 
     public String getInvoiceActionsMenu(long chatId) {
-        return invoiceActionsMenuByChat.get(chatId);
+        return engine.getInvoiceActionsMenu(key(chatId));
     }
 
     public void selectInvoice(long chatId, InvoiceSummary invoice) {
-        if (invoice == null) {
-            return;
-        }
-        List<InvoiceSummary> invoices = invoicesByChat.getOrDefault(chatId, List.of());
-        InvoiceSummary matched = invoices.stream()
-                .filter(inv -> inv.id().equals(invoice.id()))
-                .findFirst()
-                .orElse(null);
-        if (matched != null) {
-            selectedInvoiceByChat.put(chatId, matched);
-        }
+        engine.selectInvoice(key(chatId), invoice);
     }
 
     public InvoiceSummary getSelectedInvoice(long chatId) {
-        return selectedInvoiceByChat.get(chatId);
+        return engine.getSelectedInvoice(key(chatId));
     }
 
     public void clearInvoices(long chatId) {
-        invoicesByChat.remove(chatId);
-        selectedInvoiceByChat.remove(chatId);
-        invoiceActionsMenuByChat.remove(chatId);
+        engine.clearInvoices(key(chatId));
     }
 
     public void clearSession(long chatId) {
-        byChat.remove(chatId);
-        servicesByChat.remove(chatId);
-        selectedServiceByChat.remove(chatId);
-        ticketsByChat.remove(chatId);
-        invoicesByChat.remove(chatId);
-        selectedInvoiceByChat.remove(chatId);
-        invoiceActionsMenuByChat.remove(chatId);
-        languageByChat.remove(chatId);
-        menuPathByChat.remove(chatId);
-        optInByChat.remove(chatId);
-        menuContextByChat.remove(chatId);
-        pendingFunctionMenusByChat.remove(chatId);
-        contextStateByChat.remove(chatId);
+        engine.clearSession(key(chatId));
     }
 
     public String getRefreshToken(long chatId) {
-        TokenInfo info = byChat.get(chatId);
-        if (info == null) {
-            return null;
-        }
-        if (info.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-            byChat.remove(chatId);
-            return null;
-        }
-        return info.refreshToken;
+        return engine.getRefreshToken(key(chatId));
     }
 
     public String getIdToken(long chatId) {
-        TokenInfo info = byChat.get(chatId);
-        if (info == null) {
-            return null;
-        }
-        if (info.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-            byChat.remove(chatId);
-            return null;
-        }
-        return info.idToken;
-    }
-
-    public String getLanguage(long chatId) {
-        return languageByChat.getOrDefault(chatId, DEFAULT_LANGUAGE);
+        return engine.getIdToken(key(chatId));
     }
 
     public void setLanguage(long chatId, String language) {
-        if (language == null || language.isBlank()) {
-            languageByChat.remove(chatId);
-            return;
-        }
-        languageByChat.put(chatId, language);
+        engine.setLanguage(key(chatId), language);
     }
 
     public void resetBusinessMenu(long chatId, String rootMenuId) {
-        menuPathByChat.put(chatId, new ArrayList<>(List.of(rootMenuId)));
-        clearMenuContext(chatId);
-        clearPendingFunctionMenu(chatId);
+        engine.resetBusinessMenu(key(chatId), rootMenuId);
     }
 
     public void resetLoginMenu(long chatId, String rootMenuId) {
-        loginMenuPathByChat.put(chatId, new ArrayList<>(List.of(rootMenuId)));
+        engine.resetLoginMenu(key(chatId), rootMenuId);
     }
 
     public boolean isOptedIn(long chatId) {
-        return optInByChat.getOrDefault(chatId, false);
+        return engine.isOptedIn(key(chatId));
     }
 
     public void setOptIn(long chatId, boolean optIn) {
-        if (optIn) {
-            optInByChat.put(chatId, true);
-        } else {
-            optInByChat.remove(chatId);
-        }
+        engine.setOptIn(key(chatId), optIn);
     }
 
     public String currentBusinessMenu(long chatId, String rootMenuId) {
-        List<String> path = ensureMenuPath(chatId, rootMenuId);
-        return path.get(path.size() - 1);
+        return engine.currentBusinessMenu(key(chatId), rootMenuId);
     }
 
     public String currentLoginMenu(long chatId, String rootMenuId) {
-        List<String> path = ensureLoginMenuPath(chatId, rootMenuId);
-        return path.get(path.size() - 1);
+        return engine.currentLoginMenu(key(chatId), rootMenuId);
     }
 
     public void enterBusinessMenu(long chatId, String menuId, String rootMenuId) {
-        menuPathByChat.compute(chatId, (id, existing) -> {
-            List<String> path = (existing == null || existing.isEmpty())
-                    ? new ArrayList<>(List.of(rootMenuId))
-                    : new ArrayList<>(existing);
-            path.add(menuId);
-            return path;
-        });
+        engine.enterBusinessMenu(key(chatId), menuId, rootMenuId);
     }
 
     public void enterLoginMenu(long chatId, String menuId, String rootMenuId) {
-        loginMenuPathByChat.compute(chatId, (id, existing) -> {
-            List<String> path = (existing == null || existing.isEmpty())
-                    ? new ArrayList<>(List.of(rootMenuId))
-                    : new ArrayList<>(existing);
-            path.add(menuId);
-            return path;
-        });
+        engine.enterLoginMenu(key(chatId), menuId, rootMenuId);
     }
 
     public boolean goUpBusinessMenu(long chatId, String rootMenuId) {
-        final boolean[] moved = {false};
-        menuPathByChat.compute(chatId, (id, existing) -> {
-            List<String> path = (existing == null || existing.isEmpty())
-                    ? new ArrayList<>(List.of(rootMenuId))
-                    : new ArrayList<>(existing);
-            if (path.size() > 1) {
-                path.remove(path.size() - 1);
-                moved[0] = true;
-            }
-            return path;
-        });
-        if (moved[0]) {
-            clearMenuContext(chatId);
-            clearPendingFunctionMenu(chatId);
-        }
-        return moved[0];
+        return engine.goUpBusinessMenu(key(chatId), rootMenuId);
     }
 
     public boolean goUpLoginMenu(long chatId, String rootMenuId) {
-        final boolean[] moved = {false};
-        loginMenuPathByChat.compute(chatId, (id, existing) -> {
-            List<String> path = (existing == null || existing.isEmpty())
-                    ? new ArrayList<>(List.of(rootMenuId))
-                    : new ArrayList<>(existing);
-            if (path.size() > 1) {
-                path.remove(path.size() - 1);
-                moved[0] = true;
-            }
-            return path;
-        });
-        return moved[0];
+        return engine.goUpLoginMenu(key(chatId), rootMenuId);
     }
 
     public void setMenuContext(long chatId, String contextMessage) {
-        if (contextMessage == null || contextMessage.isBlank()) {
-            menuContextByChat.remove(chatId);
-            return;
-        }
-        menuContextByChat.put(chatId, contextMessage);
+        engine.setMenuContext(key(chatId), contextMessage);
     }
 
     public String getMenuContext(long chatId) {
-        return menuContextByChat.get(chatId);
+        return engine.getMenuContext(key(chatId));
     }
 
     public void clearMenuContext(long chatId) {
-        menuContextByChat.remove(chatId);
+        engine.clearMenuContext(key(chatId));
     }
 
     public void updateContext(long chatId, String accountContext, String serviceContext, String objectContext) {
-        updateContext(chatId, accountContext, serviceContext, objectContext, null);
+        engine.updateContext(key(chatId), accountContext, serviceContext, objectContext);
     }
 
     public void updateContext(long chatId, String accountContext, String serviceContext, String objectContext,
                               String objectLabel) {
-        contextStateByChat.compute(chatId, (id, existing) -> {
-            String accountValue = accountContext == null ? (existing == null ? null : existing.accountContext())
-                    : (accountContext.isBlank() ? null : accountContext);
-            String serviceValue = serviceContext == null ? (existing == null ? null : existing.serviceContext())
-                    : (serviceContext.isBlank() ? null : serviceContext);
-            String objectValue = objectContext == null ? (existing == null ? null : existing.objectContext())
-                    : (objectContext.isBlank() ? null : objectContext);
-            String objectLabelValue = objectLabel == null ? (existing == null ? null : existing.objectLabel())
-                    : (objectLabel.isBlank() ? null : objectLabel);
-            if (objectValue == null) {
-                objectLabelValue = null;
-            }
-            if (accountValue == null && serviceValue == null && objectValue == null) {
-                return null;
-            }
-            return new ContextState(accountValue, serviceValue, objectValue, objectLabelValue);
-        });
+        engine.updateContext(key(chatId), accountContext, serviceContext, objectContext, objectLabel);
     }
 
     public boolean resetObjectContextIfLabelMismatch(long chatId, String newObjectLabel) {
-        ContextState state = contextStateByChat.get(chatId);
-        if (state == null || state.objectContext() == null || state.objectContext().isBlank()) {
-            return false;
-        }
-        String existingLabel = state.objectLabel() == null ? null : state.objectLabel().trim();
-        String incomingLabel = newObjectLabel == null ? null : newObjectLabel.trim();
-        if (Objects.equals(existingLabel, incomingLabel)) {
-            return false;
-        }
-        updateContext(chatId, null, null, "", "");
-        return true;
+        return engine.resetObjectContextIfLabelMismatch(key(chatId), newObjectLabel);
     }
 
-    public ContextState getContextState(long chatId) {
-        return contextStateByChat.get(chatId);
+    public ChatSessionEngine.ContextState getContextState(long chatId) {
+        return engine.getContextState(key(chatId));
     }
 
     public void setPendingFunctionMenu(long chatId, String submenuId, String contextLabel, List<String> options,
                                        List<String> contextValues, boolean storeContext, boolean accountContext,
-                                       boolean serviceContext, boolean objectContextEnabled, String objectContextLabel) {
-        if (options == null || options.isEmpty()) {
-            pendingFunctionMenusByChat.remove(chatId);
-            return;
-        }
-        pendingFunctionMenusByChat.put(chatId,
-                new PendingFunctionMenu(submenuId, contextLabel, List.copyOf(options),
-                        contextValues == null ? List.of() : List.copyOf(contextValues), storeContext,
-                        accountContext, serviceContext, objectContextEnabled, objectContextLabel));
-    }
-
-    public PendingSelection consumePendingFunctionMenu(long chatId, String selection) {
-        PendingFunctionMenu pending = pendingFunctionMenusByChat.get(chatId);
-        if (pending == null || selection == null || selection.isBlank()) {
-            return null;
-        }
-        String matchedOption = null;
-        String matchedContext = null;
-        for (int i = 0; i < pending.options().size(); i++) {
-            String option = pending.options().get(i);
-            if (option != null && option.equalsIgnoreCase(selection.trim())) {
-                matchedOption = option;
-                if (pending.contextValues().size() > i) {
-                    matchedContext = pending.contextValues().get(i);
-                }
-                break;
-            }
-        }
-        if (matchedOption == null) {
-            return null;
-        }
-        pendingFunctionMenusByChat.remove(chatId);
-        return new PendingSelection(pending, matchedOption, matchedContext);
+                                       boolean serviceContext, boolean objectContextEnabled,
+                                       String objectContextLabel) {
+        engine.setPendingFunctionMenu(key(chatId), submenuId, contextLabel, options, contextValues, storeContext,
+                accountContext, serviceContext, objectContextEnabled, objectContextLabel);
     }
 
-    public void clearPendingFunctionMenu(long chatId) {
-        pendingFunctionMenusByChat.remove(chatId);
+    public ChatSessionEngine.PendingSelection consumePendingFunctionMenu(long chatId, String selection) {
+        return engine.consumePendingFunctionMenu(key(chatId), selection);
     }
 
-    public record PendingFunctionMenu(String submenuId, String contextLabel, List<String> options,
-                                      List<String> contextValues, boolean storeContext,
-                                      boolean accountContext, boolean serviceContext, boolean objectContextEnabled,
-                                      String objectContextLabel) { }
-
-    public record PendingSelection(PendingFunctionMenu menu, String selection, String objectContextValue) { }
+    public void clearPendingFunctionMenu(long chatId) {
+        engine.clearPendingFunctionMenu(key(chatId));
+    }
 
     public int getBusinessMenuDepth(long chatId, String rootMenuId) {
-        List<String> path = ensureMenuPath(chatId, rootMenuId);
-        return Math.max(0, path.size() - 1);
+        return engine.getBusinessMenuDepth(key(chatId), rootMenuId);
     }
 
     public int getLoginMenuDepth(long chatId, String rootMenuId) {
-        List<String> path = ensureLoginMenuPath(chatId, rootMenuId);
-        return Math.max(0, path.size() - 1);
-    }
-
-    private List<String> ensureMenuPath(long chatId, String rootMenuId) {
-        return menuPathByChat.compute(chatId, (id, existing) -> {
-            if (existing == null || existing.isEmpty()) {
-                return new ArrayList<>(List.of(rootMenuId));
-            }
-            return existing;
-        });
-    }
-
-    private List<String> ensureLoginMenuPath(long chatId, String rootMenuId) {
-        return loginMenuPathByChat.compute(chatId, (id, existing) -> {
-            if (existing == null || existing.isEmpty()) {
-                return new ArrayList<>(List.of(rootMenuId));
-            }
-            return existing;
-        });
+        return engine.getLoginMenuDepth(key(chatId), rootMenuId);
     }
 }
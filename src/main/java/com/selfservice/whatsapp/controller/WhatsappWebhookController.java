@@ -9,12 +9,16 @@ import com.selfservice.application.dto.ServiceListResult;
 import com.selfservice.application.dto.ServiceSummary;
 import com.selfservice.application.dto.TroubleTicketListResult;
 import com.selfservice.application.dto.TroubleTicketSummary;
+import com.selfservice.application.service.InvoiceDocumentService;
+import com.selfservice.application.service.ChatSessionEngine;
 import com.selfservice.application.service.ContextTraceLogger;
 import com.selfservice.application.service.AccountBalanceService;
 import com.selfservice.application.service.InvoiceService;
 import com.selfservice.application.service.ProductService;
 import com.selfservice.application.service.TroubleTicketService;
 import com.selfservice.application.service.ServiceFunctionExecutor;
+import com.selfservice.application.service.WebhookDeduplicator;
+import com.selfservice.application.service.WebhookDispatcher;
 import com.selfservice.application.config.menu.BusinessMenuItem;
 import com.selfservice.application.config.menu.LoginMenuFunction;
 import com.selfservice.application.config.menu.LoginMenuItem;
@@ -22,6 +26,7 @@ import com.selfservice.application.config.menu.BusinessMenuConfigurationProvider
 import com.selfservice.application.config.ConnectorsProperties;
 import com.selfservice.application.service.OperationsMonitoringService;
 import com.selfservice.telegrambot.service.TelegramService;
+import com.selfservice.whatsapp.dto.WhatsappWebhookPayload;
 import com.selfservice.whatsapp.service.WhatsappService;
 import com.selfservice.whatsapp.service.WhatsappSessionService;
 import org.slf4j.Logger;
@@ -37,7 +42,6 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
-import java.util.Map;
 import java.math.BigDecimal;
 import java.util.Objects;
 
@@ -61,6 +65,9 @@ public class WhatsappWebhookController {
     private final ServiceFunctionExecutor serviceFunctionExecutor;
     private final ContextTraceLogger contextTraceLogger;
     private final AccountBalanceService accountBalanceService;
+    private final WebhookDispatcher webhookDispatcher;
+    private final WebhookDeduplicator webhookDeduplicator;
+    private final InvoiceDocumentService invoiceDocumentService;
 
     public WhatsappWebhookController(
             WhatsappService whatsappService,
@@ -76,7 +83,10 @@ public class WhatsappWebhookController {
             BusinessMenuConfigurationProvider menuConfigurationProvider,
             ServiceFunctionExecutor serviceFunctionExecutor,
             ContextTraceLogger contextTraceLogger,
-            AccountBalanceService accountBalanceService) {
+            AccountBalanceService accountBalanceService,
+            WebhookDispatcher webhookDispatcher,
+            WebhookDeduplicator webhookDeduplicator,
+            InvoiceDocumentService invoiceDocumentService) {
         this.whatsappService = whatsappService;
         this.oauthSessionService = oauthSessionService;
         this.sessionService = sessionService;
@@ -91,6 +101,9 @@ public class WhatsappWebhookController {
         this.serviceFunctionExecutor = serviceFunctionExecutor;
         this.contextTraceLogger = contextTraceLogger;
         this.accountBalanceService = accountBalanceService;
+        this.webhookDispatcher = webhookDispatcher;
+        this.webhookDeduplicator = webhookDeduplicator;
+        this.invoiceDocumentService = invoiceDocumentService;
     }
 
     @GetMapping
@@ -114,71 +127,77 @@ public class WhatsappWebhookController {
     }
 
     @PostMapping
-    public ResponseEntity<Void> onEvent(@RequestBody Map<String, Object> payload) {
+    public ResponseEntity<Void> onEvent(@RequestBody WhatsappWebhookPayload payload) {
         if (!connectorsProperties.isWhatsappEnabled()) {
             return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         }
         log.info("Incoming WhatsApp webhook: {}", payload);
 
-        List<Map<String, Object>> entries = (List<Map<String, Object>>) payload.get("entry");
-        if (entries == null) {
+        if (payload == null || payload.entry() == null) {
             return ResponseEntity.ok().build();
         }
 
-        for (Map<String, Object> entry : entries) {
-            List<Map<String, Object>> changes = (List<Map<String, Object>>) entry.get("changes");
-            if (changes == null) {
+        boolean accepted = true;
+        for (WhatsappWebhookPayload.Entry entry : payload.entry()) {
+            if (entry == null || entry.changes() == null) {
                 continue;
             }
 
-            for (Map<String, Object> change : changes) {
-                Map<String, Object> value = (Map<String, Object>) change.get("value");
-                if (value == null) {
+            for (WhatsappWebhookPayload.Change change : entry.changes()) {
+                if (change == null || change.value() == null || change.value().messages() == null) {
                     continue;
                 }
 
-                List<Map<String, Object>> messages =
-                        (List<Map<String, Object>>) value.get("messages");
-                if (messages == null) {
-                    continue;
-                }
-
-                for (Map<String, Object> message : messages) {
-                    String from = (String) message.get("from");
+                for (WhatsappWebhookPayload.Message message : change.value().messages()) {
+                    String from = message == null ? null : message.from();
                     if (from == null || from.isBlank()) {
                         continue;
                     }
 
-                    String type = (String) message.get("type");
-                    if ("interactive".equals(type)) {
-                        Map<String, Object> interactive = (Map<String, Object>) message.get("interactive");
-                        String id = extractInteractiveId(interactive);
-                        if (id == null) {
-                            dispatchFallback(from);
-                            continue;
-                        }
-                        handleCommand(from, id.trim());
+                    String messageId = message.id() == null || message.id().isBlank() ? null : message.id();
+                    if (messageId != null && webhookDeduplicator.isDuplicate("whatsapp", messageId)) {
+                        log.info("Ignoring redelivered WhatsApp message {}", messageId);
                         continue;
                     }
 
-                    if (!"text".equals(type)) {
-                        dispatchFallback(from);
-                        continue;
+                    // Senders in one batch are handled in parallel; each sender's messages stay in order.
+                    if (!webhookDispatcher.submit("whatsapp", from, () -> handleMessage(from, message))) {
+                        accepted = false;
+                        if (messageId != null) {
+                            webhookDeduplicator.forget("whatsapp", messageId);
+                        }
                     }
+                }
+            }
+        }
 
-                    Map<String, Object> text = (Map<String, Object>) message.get("text");
-                    String body = text == null ? null : (String) text.get("body");
-                    if (body == null) {
-                        dispatchFallback(from);
-                        continue;
-                    }
+        return accepted ? ResponseEntity.ok().build() : ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
 
-                    handleCommand(from, body.trim());
-                }
+    private void handleMessage(String from, WhatsappWebhookPayload.Message message) {
+        String type = message.type();
+        if ("interactive".equals(type)) {
+            String id = message.interactive() == null ? null : message.interactive().replyId();
+            if (id == null) {
+                dispatchFallback(from);
+                return;
             }
+            handleCommand(from, id.trim());
+            return;
+        }
+
+        if (!"text".equals(type)) {
+            dispatchFallback(from);
+            return;
         }
 
-        return ResponseEntity.ok().build();
+        String body = message.text() == null ? null : message.text().body();
+        if (body == null) {
+            dispatchFallback(from);
+            return;
+        }
+
+        handleCommand(from, body.trim());
     }
 
     private void handleCommand(String from, String body) {
@@ -579,7 +598,7 @@ public class WhatsappWebhookController {
         int depth = whatsappService.currentMenuDepth(userId);
         boolean showChangeAccountOption = sessionService.getAccounts(userId).size() > 1;
         int numeric = parseIndex(lower);
-        WhatsappSessionService.PendingFunctionSelection pendingMenuSelection =
+        ChatSessionEngine.PendingSelection pendingMenuSelection =
                 sessionService.consumePendingFunctionMenu(userId, cleanedBody);
         if (pendingMenuSelection != null) {
             String contextMessage = null;
@@ -1005,10 +1024,24 @@ public class WhatsappWebhookController {
             whatsappService.sendText(from, whatsappService.translate(userId, "InvoiceActionsInstruction"));
             return;
         }
-        whatsappService.sendText(from, whatsappService.format(userId, translationKey, selectedInvoice.id()));
+        if ("InvoiceViewPdf".equals(translationKey)) {
+            sendInvoicePdf(userId, from, selectedInvoice);
+        } else {
+            whatsappService.sendText(from, whatsappService.format(userId, translationKey, selectedInvoice.id()));
+        }
         whatsappService.sendInvoiceActions(from, selectedInvoice);
     }
 
+    private void sendInvoicePdf(String userId, String from, InvoiceSummary invoice) {
+        String link = invoiceDocumentService.downloadLink(sessionService.getValidAccessToken(userId), invoice.id());
+        if (link == null) {
+            whatsappService.sendText(from, whatsappService.format(userId, "InvoicePdfUnavailable", invoice.id()));
+            return;
+        }
+        whatsappService.sendDocument(from, link, InvoiceDocumentService.fileName(invoice.id()),
+                whatsappService.format(userId, "InvoicePdfCaption", invoice.id()));
+    }
+
     private void handleTroubleTickets(String sessionKey, String userId, String token) {
         if (!ensureAccountSelected(sessionKey, userId)) {
             return;
@@ -1288,26 +1321,6 @@ public class WhatsappWebhookController {
         }
         return null;
     }
-
-    private String extractInteractiveId(Map<String, Object> interactive) {
-        if (interactive == null) {
-            return null;
-        }
-        Map<String, Object> buttonReply = (Map<String, Object>) interactive.get("button_reply");
-        if (buttonReply != null) {
-            return (String) buttonReply.get("id");
-        }
-        Map<String, Object> button = (Map<String, Object>) interactive.get("button");
-        if (button != null) {
-            Map<String, Object> reply = (Map<String, Object>) button.get("reply");
-            return reply == null ? null : (String) reply.get("id");
-        }
-        Map<String, Object> listReply = (Map<String, Object>) interactive.get("list_reply");
-        if (listReply != null) {
-            return (String) listReply.get("id");
-        }
-        return null;
-    }
 }
 
 
@@ -0,0 +1,65 @@
+package com.selfservice.whatsapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * The parts of a WhatsApp Cloud API webhook the controller acts on: sender, message id, text body
+ * and interactive reply ids. Statuses, contacts and metadata are skipped by the parser.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record WhatsappWebhookPayload(List<Entry> entry) {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Entry(List<Change> changes) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Change(Value value) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Value(List<Message> messages) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Message(String id, String from, String type, Text text, Interactive interactive) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Text(String body) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Interactive(
+            @JsonProperty("button_reply") Reply buttonReply,
+            Button button,
+            @JsonProperty("list_reply") Reply listReply) {
+
+        /**
+         * Id of the selected reply button or list row, whichever shape the payload used.
+         */
+        public String replyId() {
+            if (buttonReply != null) {
+                return buttonReply.id();
+            }
+            if (button != null) {
+                return button.reply() == null ? null : button.reply().id();
+            }
+            if (listReply != null) {
+                return listReply.id();
+            }
+            return null;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Button(Reply reply) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Reply(String id) {
+    }
+}
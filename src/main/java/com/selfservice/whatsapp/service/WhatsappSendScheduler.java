@@ -0,0 +1,212 @@
+package com.selfservice.whatsapp.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.selfservice.application.service.OutboxJournal;
+import com.selfservice.application.service.PacedSendQueue;
+import com.selfservice.application.service.PacedSendQueue.Outcome;
+import com.selfservice.application.service.PacedSendQueue.Result;
+import com.selfservice.application.service.TokenBucket;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Paces Cloud API sends to Meta's per-phone-number throughput and per-recipient pair-rate limits,
+ * keeps messages to one recipient in order, and retries rate-limit errors, 429 and 5xx answers
+ * with jittered exponential backoff. Meta reports most rate limits as HTTP 400, so they are told
+ * apart by the Graph error code. Queued messages are journaled in the {@link OutboxJournal} so a restart does
+ * not lose them.
+ */
+@Component
+public class WhatsappSendScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(WhatsappSendScheduler.class);
+
+    // Cloud API error codes that throttle the whole business phone number rather than one recipient.
+    private static final int ERROR_THROUGHPUT_LIMIT = 130429;
+    private static final int ERROR_APP_RATE_LIMIT = 4;
+    private static final int ERROR_ACCOUNT_RATE_LIMIT = 80007;
+    // Pair rate limit: too many messages to this one recipient.
+    private static final int ERROR_PAIR_RATE_LIMIT = 131056;
+
+    private static final String CHANNEL = "whatsapp";
+
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+    private final OutboxJournal outbox;
+    private final String accessToken;
+    private final ExecutorService senderPool;
+    private final PacedSendQueue<Request> queue;
+    private final long backoffBaseMs;
+    private final long backoffMaxMs;
+
+    public WhatsappSendScheduler(
+            @Qualifier("channelRestTemplate") RestTemplate restTemplate,
+            ObjectMapper objectMapper,
+            OutboxJournal outbox,
+            @Value("${whatsapp.access-token:}") String accessToken,
+            @Value("${whatsapp.rate-limit.messages-per-second:80}") double messagesPerSecond,
+            @Value("${whatsapp.rate-limit.burst:80}") int burst,
+            @Value("${whatsapp.rate-limit.per-recipient-per-minute:10}") double perRecipientPerMinute,
+            @Value("${whatsapp.rate-limit.per-recipient-burst:45}") int perRecipientBurst,
+            @Value("${whatsapp.rate-limit.max-attempts:5}") int maxAttempts,
+            @Value("${whatsapp.rate-limit.max-queued:10000}") int maxQueued,
+            @Value("${whatsapp.rate-limit.backoff-base-ms:500}") long backoffBaseMs,
+            @Value("${whatsapp.rate-limit.backoff-max-ms:30000}") long backoffMaxMs,
+            @Value("${whatsapp.api.sender-threads:8}") int senderThreads,
+            MeterRegistry meterRegistry) {
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+        this.outbox = outbox;
+        this.accessToken = accessToken == null ? "" : accessToken.trim();
+        this.backoffBaseMs = Math.max(1L, backoffBaseMs);
+        this.backoffMaxMs = Math.max(this.backoffBaseMs, backoffMaxMs);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.senderPool = Executors.newFixedThreadPool(Math.max(1, senderThreads), runnable -> {
+            Thread thread = new Thread(runnable, "whatsapp-sender-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.queue = new PacedSendQueue<>(CHANNEL,
+                new TokenBucket(messagesPerSecond, burst),
+                () -> new TokenBucket(perRecipientPerMinute / 60.0, perRecipientBurst),
+                maxAttempts,
+                maxQueued,
+                (request, attempt) -> CompletableFuture.supplyAsync(() -> post(request, attempt), senderPool),
+                meterRegistry);
+        log.info("WhatsApp send rate limit {}/s per phone number, {}/min per recipient (burst {})",
+                messagesPerSecond, perRecipientPerMinute, perRecipientBurst);
+    }
+
+    /**
+     * Queues a message for {@code to}. The future completes with whether Meta accepted it, after
+     * any retries.
+     */
+    public CompletableFuture<Boolean> submit(String to, String url, Map<String, Object> payload) {
+        return submit(to, url, payload, 0);
+    }
+
+    private CompletableFuture<Boolean> submit(String to, String url, Map<String, Object> payload, int replays) {
+        long journalId = outbox.append(CHANNEL, to, url, payload, replays);
+        CompletableFuture<Result> result = queue.enqueue(to, new Request(url, new HttpEntity<>(payload, headers())));
+        if (journalId >= 0) {
+            // Only messages cut off by shutdown stay unacknowledged and are replayed on the next start;
+            // a permanent failure or a full queue would fail the same way again.
+            result = result.thenApply(outcome -> {
+                if (outcome != Result.STOPPED) {
+                    outbox.acknowledge(journalId);
+                }
+                return outcome;
+            });
+        }
+        return result.thenApply(outcome -> outcome == Result.DELIVERED);
+    }
+
+    /**
+     * Resends messages that were journaled but never answered before the last shutdown.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayOutbox() {
+        List<OutboxJournal.Entry> entries = outbox.takeRecovered(CHANNEL);
+        if (entries.isEmpty()) {
+            return;
+        }
+        log.info("Replaying {} unacknowledged WhatsApp messages from the outbox", entries.size());
+        for (OutboxJournal.Entry entry : entries) {
+            submit(entry.recipient(), entry.target(), entry.body(), entry.replays() + 1);
+            outbox.acknowledge(entry.id());
+        }
+    }
+
+    public int queuedMessages() {
+        return queue.queuedMessages();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        int pending = queue.queuedMessages();
+        if (pending > 0) {
+            log.warn("Stopping with {} queued WhatsApp messages; they are replayed on the next start when the outbox is enabled", pending);
+        }
+        queue.shutdown();
+        senderPool.shutdown();
+    }
+
+    /**
+     * Built per message rather than stored in the journal, so the access token never hits disk.
+     */
+    private HttpHeaders headers() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(accessToken);
+        return headers;
+    }
+
+    private Outcome post(Request request, int attempt) {
+        try {
+            ResponseEntity<String> response = restTemplate.postForEntity(request.url(), request.entity(), String.class);
+            log.info("WhatsApp API responded with status {}", response.getStatusCode());
+            return Outcome.delivered();
+        } catch (HttpStatusCodeException ex) {
+            int status = ex.getRawStatusCode();
+            String body = ex.getResponseBodyAsString();
+            int code = errorCode(body);
+            boolean phoneNumberThrottled = code == ERROR_THROUGHPUT_LIMIT || code == ERROR_APP_RATE_LIMIT
+                    || code == ERROR_ACCOUNT_RATE_LIMIT;
+            if (phoneNumberThrottled || code == ERROR_PAIR_RATE_LIMIT || status == 429 || status >= 500) {
+                long delayMs = backoffMillis(attempt);
+                log.warn("WhatsApp API error {} code {} (attempt {}), backing off {} ms: {}",
+                        status, code, attempt, delayMs, body);
+                return phoneNumberThrottled ? Outcome.retryAllAfter(delayMs) : Outcome.retryAfter(delayMs);
+            }
+            log.error("WhatsApp API error {}: {}", ex.getStatusCode(), body);
+        } catch (Exception ex) {
+            log.error("Failed to call WhatsApp API", ex);
+        }
+        return Outcome.failed();
+    }
+
+    /**
+     * Jittered exponential backoff: a random delay between half the base and base * 2^(attempt - 1),
+     * capped at the configured maximum.
+     */
+    private long backoffMillis(int attempt) {
+        long ceiling = backoffBaseMs << Math.min(Math.max(0, attempt - 1), 20);
+        ceiling = Math.min(backoffMaxMs, ceiling);
+        return ThreadLocalRandom.current().nextLong(backoffBaseMs / 2, ceiling + 1);
+    }
+
+    /**
+     * The Graph API {@code error.code}, or 0 when the body carries none.
+     */
+    private int errorCode(String body) {
+        try {
+            return objectMapper.readTree(body).path("error").path("code").asInt(0);
+        } catch (Exception ignored) {
+            return 0;
+        }
+    }
+
+    private record Request(String url, HttpEntity<Map<String, Object>> entity) {
+    }
+}
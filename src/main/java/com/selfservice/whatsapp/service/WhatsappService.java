@@ -13,20 +13,15 @@ import com.selfservice.application.config.menu.ProductFeatureMenu;
 import com.selfservice.application.config.menu.LoginMenuDefinition;
 import com.selfservice.application.config.menu.LoginMenuFunction;
 import com.selfservice.application.config.menu.LoginMenuItem;
+import com.selfservice.application.service.ChatSessionEngine;
 import com.selfservice.application.service.ImpersonationService;
 import com.selfservice.application.service.TranslationService;
 import com.selfservice.telegrambot.service.TelegramService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
-import org.springframework.web.client.HttpStatusCodeException;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 import org.springframework.web.util.UriUtils;
 
@@ -34,6 +29,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class WhatsappService {
@@ -63,7 +59,7 @@ public class WhatsappService {
     private static final int WHATSAPP_HEADER_TEXT_LIMIT = 60;
     private static final int WHATSAPP_CTA_BUTTON_LABEL_LIMIT = 20;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final WhatsappSendScheduler sendScheduler;
     private final String phoneNumberId;
     private final String accessToken;
     private final String publicBaseUrl;
@@ -89,7 +85,8 @@ public class WhatsappService {
             WhatsappSessionService sessionService,
             BusinessMenuConfigurationProvider menuConfigurationProvider,
             LoginMenuProperties loginMenuProperties,
-            ImpersonationService impersonationService) {
+            ImpersonationService impersonationService,
+            WhatsappSendScheduler sendScheduler) {
         this.phoneNumberId = phoneNumberId == null ? "" : phoneNumberId.trim();
         this.accessToken = accessToken == null ? "" : accessToken.trim();
         this.publicBaseUrl = publicBaseUrl == null ? "" : publicBaseUrl.trim();
@@ -102,6 +99,7 @@ public class WhatsappService {
         this.menuConfigurationProvider = menuConfigurationProvider;
         this.loginMenuProperties = loginMenuProperties;
         this.impersonationService = impersonationService;
+        this.sendScheduler = sendScheduler;
         if (!this.phoneNumberId.isBlank()) {
             log.info("WhatsApp phone-number-id configured");
         }
@@ -123,14 +121,14 @@ public class WhatsappService {
         return translationService.format(language(userId), key, args);
     }
 
-    public void sendText(String to, String message) {
-        sendText(to, message, true);
+    public CompletableFuture<Boolean> sendText(String to, String message) {
+        return sendText(to, message, true);
     }
 
-    private void sendText(String to, String message, boolean previewUrl) {
+    private CompletableFuture<Boolean> sendText(String to, String message, boolean previewUrl) {
         if (!isConfigured()) {
             log.warn("WhatsApp messaging is not fully configured; cannot send text");
-            return;
+            return CompletableFuture.completedFuture(false);
         }
 
         Map<String, Object> payload = Map.of(
@@ -142,7 +140,29 @@ public class WhatsappService {
                         "preview_url", previewUrl)
         );
 
-        postToWhatsapp(payload);
+        return postToWhatsappAsync(to, payload);
+    }
+
+    /**
+     * Sends a document WhatsApp fetches from {@code link} itself.
+     */
+    public CompletableFuture<Boolean> sendDocument(String to, String link, String fileName, String caption) {
+        if (!isConfigured()) {
+            log.warn("WhatsApp messaging is not fully configured; cannot send document");
+            return CompletableFuture.completedFuture(false);
+        }
+
+        Map<String, Object> payload = Map.of(
+                "messaging_product", "whatsapp",
+                "to",           to,
+                "type",         "document",
+                "document",     Map.of(
+                        "link", link,
+                        "filename", fileName,
+                        "caption", caption)
+        );
+
+        return postToWhatsappAsync(to, payload);
     }
 
     public void sendCardMessage(String to, String message, List<String> buttonLabels) {
@@ -166,14 +186,15 @@ public class WhatsappService {
         }
 
         String title = (message == null || message.isBlank()) ? "Select an option" : message;
-        boolean sent = sendInteractiveList(to, title, title, rows);
-        if (!sent) {
-            StringBuilder prompt = new StringBuilder(title).append('\n');
-            for (int i = 0; i < buttonLabels.size(); i++) {
-                prompt.append(i + 1).append(") ").append(buttonLabels.get(i)).append('\n');
+        sendInteractiveList(to, title, title, rows).thenAccept(sent -> {
+            if (!sent) {
+                StringBuilder prompt = new StringBuilder(title).append('\n');
+                for (int i = 0; i < buttonLabels.size(); i++) {
+                    prompt.append(i + 1).append(") ").append(buttonLabels.get(i)).append('\n');
+                }
+                sendText(to, prompt.toString());
             }
-            sendText(to, prompt.toString());
-        }
+        });
     }
 
     public List<LoginMenuItem> loginSettingsMenuOptions(String userId) {
@@ -230,7 +251,7 @@ public class WhatsappService {
     }
 
     private boolean isLoggedIn(String userId) {
-        return sessionService.getTokenSnapshot(userId).state() == WhatsappSessionService.TokenState.VALID;
+        return sessionService.getTokenSnapshot(userId).state() == ChatSessionEngine.TokenState.VALID;
     }
 
     private boolean hasAlternateAccount(String userId) {
@@ -301,10 +322,10 @@ public class WhatsappService {
         sendLoginMenuCards(to, menuId, options);
     }
 
-    private boolean sendLoginMenuCards(String to, String menuId, List<LoginMenuItem> options) {
+    private CompletableFuture<Boolean> sendLoginMenuCards(String to, String menuId, List<LoginMenuItem> options) {
         if (!isConfigured()) {
             log.warn("WhatsApp messaging is not fully configured; cannot send login menu cards");
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
 
         List<Map<String, Object>> rows = new ArrayList<>();
@@ -408,11 +429,12 @@ public class WhatsappService {
         }
         dynamicOutput.setHeaderText(cardHeader);
         dynamicOutput.setBodyText(cardText);
-        boolean sent = sendInteractiveList(to, cardHeader, cardText, rows, dynamicOutput);
-        if (!sent) {
-            log.warn("[WhatsApp] interactive list failed for {}. Falling back to plain text header", to);
-            sendText(to, cardText);
-        }
+        sendInteractiveList(to, cardHeader, cardText, rows, dynamicOutput).thenAccept(sent -> {
+            if (!sent) {
+                log.warn("[WhatsApp] interactive list failed for {}. Falling back to plain text header", to);
+                sendText(to, cardText);
+            }
+        });
     }
 
     private String buildAccountServiceSummary(String userId, AccountSummary account, ServiceSummary service) {
@@ -676,25 +698,27 @@ public class WhatsappService {
                 "interactive", interactive
         );
 
-        if (postToWhatsapp(payload)) {
-            return;
-        }
-
-        if (interactive.containsKey("header")) {
-            log.warn("Retrying CTA URL message without header image for {}", to);
-            interactive.remove("header");
-            Map<String, Object> retryPayload = Map.of(
-                    "messaging_product", "whatsapp",
-                    "to", to,
-                    "type", "interactive",
-                    "interactive", interactive
-            );
-            if (postToWhatsapp(retryPayload)) {
-                return;
-            }
-        }
-
-        sendText(to, linkLabel + ": " + url, false);
+        postToWhatsappAsync(to, payload)
+                .thenCompose(sent -> {
+                    if (sent || !interactive.containsKey("header")) {
+                        return CompletableFuture.completedFuture(sent);
+                    }
+                    log.warn("Retrying CTA URL message without header image for {}", to);
+                    Map<String, Object> withoutHeader = new java.util.HashMap<>(interactive);
+                    withoutHeader.remove("header");
+                    Map<String, Object> retryPayload = Map.of(
+                            "messaging_product", "whatsapp",
+                            "to", to,
+                            "type", "interactive",
+                            "interactive", withoutHeader
+                    );
+                    return postToWhatsappAsync(to, retryPayload);
+                })
+                .thenAccept(sent -> {
+                    if (!sent) {
+                        sendText(to, linkLabel + ": " + url, false);
+                    }
+                });
     }
 
     private String resolveCtaHeaderImageUrl(String headerImageUrl) {
@@ -1064,26 +1088,9 @@ public class WhatsappService {
         return prompt;
     }
 
-    private boolean postToWhatsapp(Map<String, Object> payload) {
+    private CompletableFuture<Boolean> postToWhatsappAsync(String to, Map<String, Object> payload) {
         String url = "https://graph.facebook.com/v20.0/" + phoneNumberId + "/messages";
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBearerAuth(accessToken);
-
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(payload, headers);
-
-        try {
-            ResponseEntity<String> response = restTemplate.postForEntity(url, entity, String.class);
-            log.info("WhatsApp API responded with status {}", response.getStatusCode());
-            return true;
-        } catch (HttpStatusCodeException ex) {
-            log.error("WhatsApp API error {}: {}", ex.getStatusCode(), ex.getResponseBodyAsString());
-        } catch (Exception ex) {
-            log.error("Failed to call WhatsApp API", ex);
-        }
-
-        return false;
+        return sendScheduler.submit(to, url, payload);
     }
 
     private boolean isConfigured() {
@@ -1238,17 +1245,22 @@ public class WhatsappService {
         return trimmed.startsWith("http://") || trimmed.startsWith("https://");
     }
 
-    private boolean sendInteractiveList(String to, String title, String instruction, List<Map<String, Object>> rows) {
+    private CompletableFuture<Boolean> sendInteractiveList(String to, String title, String instruction, List<Map<String, Object>> rows) {
         return sendInteractiveList(to, title, instruction, rows, null);
     }
 
-    private boolean sendInteractiveList(String to, String title, String instruction, List<Map<String, Object>> rows, MenuOutputConfiguration outputConfiguration) {
+    /**
+     * Sends the rows as a list, or as reply buttons when configured and they fit, falling back to
+     * a list if the buttons are refused. The fallback is chained on the send rather than waited
+     * for, so the calling webhook worker is never held by a paced or retried send.
+     */
+    private CompletableFuture<Boolean> sendInteractiveList(String to, String title, String instruction, List<Map<String, Object>> rows, MenuOutputConfiguration outputConfiguration) {
         if (!isConfigured()) {
             log.warn("WhatsApp messaging is not fully configured; cannot send interactive list");
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
         if (rows == null || rows.isEmpty()) {
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
 
         String configuredMessageType = outputConfiguration == null ? null : outputConfiguration.getMessageType();
@@ -1269,16 +1281,23 @@ public class WhatsappService {
             if (rows.size() > WHATSAPP_REPLY_BUTTON_MAX) {
                 log.info("Configured Reply Buttons for menu with {} items; falling back to interactive list", rows.size());
             } else {
-                boolean sent = sendInteractiveReplyButtons(to, headerSource, bodySource, footerText, rows, headerImageUrl);
-                if (sent) {
-                    return true;
-                }
-                log.warn("Unable to send reply buttons for message type {}. Falling back to interactive list.", configuredMessageType);
+                return sendInteractiveReplyButtons(to, headerSource, bodySource, footerText, rows, headerImageUrl)
+                        .thenCompose(sent -> {
+                            if (sent) {
+                                return CompletableFuture.completedFuture(true);
+                            }
+                            log.warn("Unable to send reply buttons for message type {}. Falling back to interactive list.", configuredMessageType);
+                            return postInteractiveList(to, headerSource, bodySource, footerText, buttonText, headerImageUrl, rows);
+                        });
             }
         } else if (!isInteractiveListMessageType(configuredMessageType)) {
             log.warn("Unsupported menu output message type {}. Falling back to interactive list.", configuredMessageType);
         }
+        return postInteractiveList(to, headerSource, bodySource, footerText, buttonText, headerImageUrl, rows);
+    }
 
+    private CompletableFuture<Boolean> postInteractiveList(String to, String headerSource, String bodySource, String footerText,
+                                                          String buttonText, String headerImageUrl, List<Map<String, Object>> rows) {
         String headerText = normalizeHeaderText(headerSource);
         String instructionText = composeInteractiveBody(headerText, bodySource, headerImageUrl);
         Map<String, Object> interactive = new java.util.HashMap<>();
@@ -1303,13 +1322,13 @@ public class WhatsappService {
                 "interactive", interactive
         );
 
-        return postToWhatsapp(payload);
+        return postToWhatsappAsync(to, payload);
     }
 
 
 
 
-    private boolean sendInteractiveReplyButtons(String to, String title, String instruction, String footerText, List<Map<String, Object>> rows, String headerImageUrl) {
+    private CompletableFuture<Boolean> sendInteractiveReplyButtons(String to, String title, String instruction, String footerText, List<Map<String, Object>> rows, String headerImageUrl) {
         List<Map<String, Object>> buttons = new ArrayList<>();
         for (Map<String, Object> row : rows) {
             if (row == null) {
@@ -1333,7 +1352,7 @@ public class WhatsappService {
         }
 
         if (buttons.isEmpty()) {
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
 
         Map<String, Object> interactive = new java.util.HashMap<>();
@@ -1354,7 +1373,7 @@ public class WhatsappService {
                 "interactive", interactive
         );
 
-        return postToWhatsapp(payload);
+        return postToWhatsappAsync(to, payload);
     }
 
     private String composeInteractiveBody(String headerText, String bodyText, String headerImageUrl) {
@@ -1426,9 +1445,9 @@ public class WhatsappService {
         return definition == null ? null : definition.getOutput();
     }
 
-    private boolean sendImage(String to, String imageUrl) {
+    private CompletableFuture<Boolean> sendImage(String to, String imageUrl) {
         if (!isConfigured() || !StringUtils.hasText(imageUrl)) {
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
         Map<String, Object> payload = Map.of(
                 "messaging_product", "whatsapp",
@@ -1436,7 +1455,7 @@ public class WhatsappService {
                 "type", "image",
                 "image", Map.of("link", imageUrl.trim())
         );
-        return postToWhatsapp(payload);
+        return postToWhatsappAsync(to, payload);
     }
 
 
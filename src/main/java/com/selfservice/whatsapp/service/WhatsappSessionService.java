@@ -1,75 +1,33 @@
 package com.selfservice.whatsapp.service;
 
+import com.selfservice.application.config.ApimanEndpointsProperties;
+import com.selfservice.application.config.SessionEvictionProperties;
+import com.selfservice.application.config.SessionSnapshotProperties;
+import com.selfservice.application.config.SessionStoreProperties;
 import com.selfservice.application.dto.AccountSummary;
 import com.selfservice.application.dto.InvoiceSummary;
 import com.selfservice.application.dto.ServiceSummary;
 import com.selfservice.application.dto.TroubleTicketSummary;
+import com.selfservice.application.service.ApiResponseCache;
+import com.selfservice.application.service.ChatSessionEngine;
+import com.selfservice.application.service.SessionKey;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Per-user WhatsApp session state, kept by a {@link ChatSessionEngine} for the WhatsApp channel.
+ * WhatsApp menus are numbered text, so each session also tracks which list the user is choosing
+ * from and whether a language choice is awaited.
+ */
 @Service
 public class WhatsappSessionService {
 
-    public static final class TokenInfo {
-        public final String accessToken;
-        public final String refreshToken;
-        public final String idToken;
-        public final long expiryEpochMs;
-        public final List<AccountSummary> accounts;
-        public final AccountSummary selectedAccount;
-        public final String exchangeId;
-
-        public TokenInfo(String accessToken, String refreshToken, String idToken, long expiryEpochMs,
-                List<AccountSummary> accounts, AccountSummary selectedAccount, String exchangeId) {
-            this.accessToken = accessToken;
-            this.refreshToken = refreshToken;
-            this.idToken = idToken;
-            this.expiryEpochMs = expiryEpochMs;
-            this.accounts = accounts;
-            this.selectedAccount = selectedAccount;
-            this.exchangeId = exchangeId;
-        }
-    }
-
-    public enum TokenState {
-        NONE,
-        VALID,
-        EXPIRED,
-        INVALID
-    }
-
-    public record TokenSnapshot(TokenState state, String token) {
-        public static TokenSnapshot none() {
-            return new TokenSnapshot(TokenState.NONE, null);
-        }
-    }
-
-    private final Map<String, TokenInfo> byUser = new ConcurrentHashMap<>();
-    private final Map<String, List<ServiceSummary>> servicesByUser = new ConcurrentHashMap<>();
-    private final Map<String, ServiceSummary> selectedServiceByUser = new ConcurrentHashMap<>();
-    private final Map<String, List<InvoiceSummary>> invoicesByUser = new ConcurrentHashMap<>();
-    private final Map<String, InvoiceSummary> selectedInvoiceByUser = new ConcurrentHashMap<>();
-    private final Map<String, String> invoiceActionsMenuByUser = new ConcurrentHashMap<>();
-    private final Map<String, List<TroubleTicketSummary>> ticketsByUser = new ConcurrentHashMap<>();
-    private final Map<String, String> languageByUser = new ConcurrentHashMap<>();
-    private final Map<String, List<String>> menuPathByUser = new ConcurrentHashMap<>();
-    private final Map<String, List<String>> loginMenuPathByUser = new ConcurrentHashMap<>();
-    private final Map<String, Boolean> awaitingLanguageSelectionByUser = new ConcurrentHashMap<>();
-    private final Map<String, SelectionContext> selectionContextByUser = new ConcurrentHashMap<>();
-    private final Map<String, Integer> selectionPageStartByUser = new ConcurrentHashMap<>();
-    private final Map<String, Boolean> optInByUser = new ConcurrentHashMap<>();
-    private final Map<String, String> menuContextByUser = new ConcurrentHashMap<>();
-    private final Map<String, PendingFunctionMenu> pendingFunctionMenusByUser = new ConcurrentHashMap<>();
-    private final Map<String, ContextState> contextStateByUser = new ConcurrentHashMap<>();
-
-    public record ContextState(String accountContext, String serviceContext, String objectContext, String objectLabel) { }
-
     public enum SelectionContext {
         NONE,
         ACCOUNT,
@@ -82,600 +40,342 @@ public class WhatsappSessionService {
         ACCOUNT_BALANCE_ALERT
     }
 
-    public void save(String userId, String accessToken, String refreshToken, String idToken, long expiresInSeconds,
-            String exchangeId) {
-        long exp = System.currentTimeMillis() + expiresInSeconds * 1000L;
-        byUser.put(userId, new TokenInfo(accessToken, refreshToken, idToken, exp, Collections.emptyList(), null,
-                exchangeId));
-        clearServices(userId);
-        clearTroubleTickets(userId);
-        clearSelectedService(userId);
-    }
-
-    public TokenSnapshot getTokenSnapshot(String userId) {
-        TokenInfo info = byUser.get(userId);
-        if (info == null) {
-            return TokenSnapshot.none();
+    /**
+     * The list a user is choosing from. Not kept across restarts; the user is asked again.
+     */
+    static final class Selection implements ChatSessionEngine.Extension {
+        private volatile boolean awaitingLanguageSelection;
+        private volatile SelectionContext context;
+        private volatile int pageStart;
+
+        @Override
+        public synchronized void reset() {
+            awaitingLanguageSelection = false;
+            context = null;
+            pageStart = 0;
         }
-        boolean expired = info.expiryEpochMs <= System.currentTimeMillis() + 30_000;
-        return new TokenSnapshot(expired ? TokenState.EXPIRED : TokenState.VALID, info.accessToken);
     }
 
-    public String getValidAccessToken(String userId) {
-        TokenInfo info = byUser.get(userId);
-        if (info == null) {
-            return null;
-        }
-        if (info.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-            byUser.remove(userId);
-            return null;
-        }
-        return info.accessToken;
+    private final ChatSessionEngine<Selection> engine;
+
+    @Autowired
+    public WhatsappSessionService(SessionEvictionProperties properties, SessionSnapshotProperties snapshotProperties,
+                                  SessionStoreProperties storeProperties, ApiResponseCache responseCache,
+                                  MeterRegistry meterRegistry) {
+        this.engine = new ChatSessionEngine<>(SessionKey.Channel.WHATSAPP, Selection::new,
+                properties, snapshotProperties, storeProperties, responseCache, meterRegistry);
     }
 
-    public String getExchangeId(String userId) {
-        TokenInfo info = byUser.get(userId);
-        if (info == null) {
-            return null;
-        }
-        if (info.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-            byUser.remove(userId);
-            return null;
-        }
-        return info.exchangeId;
+    /**
+     * Standalone instance with default limits, no snapshot, and a sweeper that only runs when
+     * asked to.
+     */
+    public WhatsappSessionService() {
+        this(new SessionEvictionProperties(), new SessionSnapshotProperties(), new SessionStoreProperties(),
+                new ApiResponseCache(new ApimanEndpointsProperties(), new SimpleMeterRegistry()),
+                new SimpleMeterRegistry());
     }
 
-    public void saveAccounts(String userId, List<AccountSummary> accounts) {
-        final List<AccountSummary> copy = accounts == null ? Collections.emptyList() : List.copyOf(accounts);
-        byUser.computeIfPresent(userId, (id, existing) -> {
-            if (existing.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-                return null;
-            }
-            AccountSummary selected = null;
-            AccountSummary priorSelection = existing.selectedAccount;
-            if (priorSelection != null) {
-                String selectedAccountId = priorSelection.accountId();
-                selected = copy.stream()
-                        .filter(a -> a.accountId().equals(selectedAccountId))
-                        .findFirst()
-                        .orElse(null);
+    @PostConstruct
+    public void start() {
+        engine.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        engine.shutdown();
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code userId} is not a WhatsApp phone number
+     */
+    private static SessionKey key(String userId) {
+        return SessionKey.whatsapp(userId);
+    }
+
+    /**
+     * Runs one sweep as of {@code nowMs}; the background sweeper does the same once per interval.
+     */
+    void sweepIdleSessions(long nowMs) {
+        engine.sweepIdleSessions(nowMs);
+    }
+
+    /**
+     * Logs the user out, keeping opt-in, context and login menu position. Returns whether a
+     * token was stored.
+     */
+    public boolean clear(String userId) {
+        return engine.logout(key(userId));
+    }
+
+    public void setAwaitingLanguageSelection(String userId, boolean awaiting) {
+        if (awaiting) {
+            engine.extension(key(userId)).awaitingLanguageSelection = true;
+        } else {
+            Selection selection = engine.existingExtension(key(userId));
+            if (selection != null) {
+                selection.awaitingLanguageSelection = false;
             }
-            return new TokenInfo(existing.accessToken, existing.refreshToken, existing.idToken, existing.expiryEpochMs, copy,
-                    selected, existing.exchangeId);
-        });
-        AccountSummary selectedAccount = getSelectedAccount(userId);
-        boolean selectedAccountPresent = selectedAccount != null
-                && copy.stream().anyMatch(a -> a.accountId().equals(selectedAccount.accountId()));
-        if (!selectedAccountPresent) {
-            clearSelectedService(userId);
         }
     }
 
-    public List<AccountSummary> getAccounts(String userId) {
-        TokenInfo info = byUser.get(userId);
-        if (info == null) {
-            return List.of();
-        }
-        if (info.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-            byUser.remove(userId);
-            return List.of();
-        }
-        return info.accounts;
+    public boolean isAwaitingLanguageSelection(String userId) {
+        Selection selection = engine.existingExtension(key(userId));
+        return selection != null && selection.awaitingLanguageSelection;
     }
 
-    public AccountSummary getSelectedAccount(String userId) {
-        TokenInfo info = byUser.get(userId);
-        if (info == null) {
-            return null;
-        }
-        if (info.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-            byUser.remove(userId);
-            return null;
-        }
-        return info.selectedAccount;
+    public void setSelectionContext(String userId, SelectionContext context) {
+        setSelectionContext(userId, context, 0);
     }
 
-    public void selectAccount(String userId, AccountSummary account) {
-        if (account == null) {
+    public void setSelectionContext(String userId, SelectionContext context, int pageStartIndex) {
+        if (context == null || context == SelectionContext.NONE) {
+            Selection selection = engine.existingExtension(key(userId));
+            if (selection != null) {
+                synchronized (selection) {
+                    selection.context = null;
+                    selection.pageStart = 0;
+                }
+            }
             return;
         }
-        byUser.computeIfPresent(userId, (id, existing) -> {
-            if (existing.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-                return null;
-            }
-            AccountSummary matched = existing.accounts.stream()
-                    .filter(a -> a.accountId().equals(account.accountId()))
-                    .findFirst()
-                    .orElse(null);
-            if (matched == null) {
-                return existing;
-            }
-            return new TokenInfo(existing.accessToken, existing.refreshToken, existing.idToken, existing.expiryEpochMs,
-                    existing.accounts,
-                    matched, existing.exchangeId);
-        });
-        updateContext(userId, account.accountId(), null, null);
-        clearServices(userId);
-        clearTroubleTickets(userId);
-        clearSelectedService(userId);
-        clearInvoices(userId);
+        Selection selection = engine.extension(key(userId));
+        synchronized (selection) {
+            selection.context = context;
+            selection.pageStart = Math.max(0, pageStartIndex);
+        }
     }
 
-    public void clearSelectedAccount(String userId) {
-        byUser.computeIfPresent(userId, (id, existing) -> {
-            if (existing.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-                return null;
-            }
-            if (existing.selectedAccount == null) {
-                return existing;
-            }
-            return new TokenInfo(existing.accessToken, existing.refreshToken, existing.idToken, existing.expiryEpochMs,
-                    existing.accounts, null, existing.exchangeId);
-        });
-        clearServices(userId);
-        clearTroubleTickets(userId);
-        clearSelectedService(userId);
-        clearInvoices(userId);
-        updateContext(userId, null, null, null);
+    public SelectionContext getSelectionContext(String userId) {
+        Selection selection = engine.existingExtension(key(userId));
+        SelectionContext context = selection == null ? null : selection.context;
+        return context == null ? SelectionContext.NONE : context;
     }
 
-    public void saveServices(String userId, List<ServiceSummary> services) {
-        List<ServiceSummary> copy = services == null ? List.of() : List.copyOf(services);
-        servicesByUser.put(userId, copy);
-        ServiceSummary currentSelection = selectedServiceByUser.get(userId);
-        if (copy.size() == 1) {
-            selectedServiceByUser.put(userId, copy.get(0));
-        } else if (currentSelection != null) {
-            boolean stillPresent = copy.stream()
-                    .anyMatch(s -> s.productId().equals(currentSelection.productId()));
-            if (!stillPresent) {
-                selectedServiceByUser.remove(userId);
-            }
-        } else {
-            selectedServiceByUser.remove(userId);
-        }
+    public int getSelectionPageStart(String userId) {
+        Selection selection = engine.existingExtension(key(userId));
+        return selection == null ? 0 : selection.pageStart;
     }
 
-    public List<ServiceSummary> getServices(String userId) {
-        return servicesByUser.getOrDefault(userId, List.of());
+    public void save(String userId, String accessToken, String refreshToken, String idToken, long expiresInSeconds,
+                     String exchangeId) {
+        engine.save(key(userId), accessToken, refreshToken, idToken, expiresInSeconds, exchangeId);
     }
 
-    public void clearServices(String userId) {
-        servicesByUser.remove(userId);
-        clearSelectedService(userId);
+    public void saveExchangeId(String userId, String accessToken, String exchangeId) {
+        engine.saveExchangeId(key(userId), accessToken, exchangeId);
     }
 
-    public ServiceSummary getSelectedService(String userId) {
-        return selectedServiceByUser.get(userId);
+    public ChatSessionEngine.TokenSnapshot getTokenSnapshot(String userId) {
+        return engine.getTokenSnapshot(key(userId));
     }
 
-    public void selectService(String userId, ServiceSummary service) {
-        if (service == null) {
-            return;
-        }
-        List<ServiceSummary> services = servicesByUser.getOrDefault(userId, List.of());
-        ServiceSummary matched = services.stream()
-                .filter(s -> s.productId().equals(service.productId()))
-                .findFirst()
-                .orElse(null);
-        if (matched != null) {
-            selectedServiceByUser.put(userId, matched);
-            updateContext(userId, null, matched.productId(), null);
-        }
+    public String getValidAccessToken(String userId) {
+        return engine.getValidAccessToken(key(userId));
     }
 
-    public void clearSelectedService(String userId) {
-        selectedServiceByUser.remove(userId);
+    public String getExchangeId(String userId) {
+        return engine.getExchangeId(key(userId));
     }
 
-    public void saveInvoices(String userId, List<InvoiceSummary> invoices) {
-        List<InvoiceSummary> copy = invoices == null ? List.of() : List.copyOf(invoices);
-        invoicesByUser.put(userId, copy);
-        InvoiceSummary currentSelection = selectedInvoiceByUser.get(userId);
-        if (copy.size() == 1) {
-            selectedInvoiceByUser.put(userId, copy.get(0));
-        } else if (currentSelection != null) {
-            boolean stillPresent = copy.stream()
-                    .anyMatch(inv -> inv.id().equals(currentSelection.id()));
-            if (!stillPresent) {
-                selectedInvoiceByUser.remove(userId);
-            }
-        } else {
-            selectedInvoiceByUser.remove(userId);
-        }
+    public void saveAccounts(String userId, List<AccountSummary> accounts) {
+        engine.saveAccounts(key(userId), accounts);
     }
 
-    public List<InvoiceSummary> getInvoices(String userId) {
-        return invoicesByUser.getOrDefault(userId, List.of());
+    public List<AccountSummary> getAccounts(String userId) {
+        return engine.getAccounts(key(userId));
     }
 
-    public void setInvoiceActionsMenu(String userId, String menuId) {
-        if (menuId == null || menuId.isBlank()) {
-            invoiceActionsMenuByUser.remove(userId);
-        } else {
-            invoiceActionsMenuByUser.put(userId, menuId);
-        }
+    public AccountSummary getSelectedAccount(String userId) {
+        return engine.getSelectedAccount(key(userId));
     }
 
-    public String getInvoiceActionsMenu(String userId) {
-        return invoiceActionsMenuByUser.get(userId);
+    public void selectAccount(String userId, AccountSummary account) {
+        engine.selectAccount(key(userId), account);
     }
 
-    public void clearInvoices(String userId) {
-        invoicesByUser.remove(userId);
-        clearSelectedInvoice(userId);
-        invoiceActionsMenuByUser.remove(userId);
+    public void clearSelectedAccount(String userId) {
+        engine.clearSelectedAccount(key(userId));
     }
 
-    public InvoiceSummary getSelectedInvoice(String userId) {
-        return selectedInvoiceByUser.get(userId);
+    public void saveServices(String userId, List<ServiceSummary> services) {
+        engine.saveServices(key(userId), services);
     }
 
-    public void selectInvoice(String userId, InvoiceSummary invoice) {
-        if (invoice == null) {
-            return;
-        }
-        List<InvoiceSummary> invoices = invoicesByUser.getOrDefault(userId, List.of());
-        InvoiceSummary matched = invoices.stream()
-                .filter(inv -> inv.id().equals(invoice.id()))
-                .findFirst()
-                .orElse(null);
-        if (matched != null) {
-            selectedInvoiceByUser.put(userId, matched);
-        }
+    public List<ServiceSummary> getServices(String userId) {
+        return engine.getServices(key(userId));
     }
 
-    public void clearSelectedInvoice(String userId) {
-        selectedInvoiceByUser.remove(userId);
+    public void clearServices(String userId) {
+        engine.clearServices(key(userId));
+    }
+
+    public ServiceSummary getSelectedService(String userId) {
+        return engine.getSelectedService(key(userId));
+    }
+
+    public void selectService(String userId, ServiceSummary service) {
+        engine.selectService(key(userId), service);
+    }
+
+    public void clearSelectedService(String userId) {
+        engine.clearSelectedService(key(userId));
     }
 
     public void saveTroubleTickets(String userId, List<TroubleTicketSummary> tickets) {
-        ticketsByUser.put(userId, tickets == null ? List.of() : List.copyOf(tickets));
+        engine.saveTroubleTickets(key(userId), tickets);
     }
 
     public List<TroubleTicketSummary> getTroubleTickets(String userId) {
-        return ticketsByUser.getOrDefault(userId, List.of());
+        return engine.getTroubleTickets(key(userId));
     }
 
     public void clearTroubleTickets(String userId) {
-        ticketsByUser.remove(userId);
-    }
-
-    public void clearSession(String userId) {
-        byUser.remove(userId);
-        servicesByUser.remove(userId);
-        selectedServiceByUser.remove(userId);
-        invoicesByUser.remove(userId);
-        selectedInvoiceByUser.remove(userId);
-        invoiceActionsMenuByUser.remove(userId);
-        ticketsByUser.remove(userId);
-        languageByUser.remove(userId);
-        menuPathByUser.remove(userId);
-        awaitingLanguageSelectionByUser.remove(userId);
-        selectionContextByUser.remove(userId);
-        selectionPageStartByUser.remove(userId);
-        optInByUser.remove(userId);
-        menuContextByUser.remove(userId);
-        pendingFunctionMenusByUser.remove(userId);
-        contextStateByUser.remove(userId);
+        engine.clearTroubleTickets(key(userId));
     }
 
-    public String getIdToken(String userId) {
-        TokenInfo info = byUser.get(userId);
-        if (info == null) {
-            return null;
-        }
-        if (info.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-            byUser.remove(userId);
-            return null;
-        }
-        return info.idToken;
+    public void saveInvoices(String userId, List<InvoiceSummary> invoices) {
+        engine.saveInvoices(key(userId), invoices);
     }
 
-    public String getRefreshToken(String userId) {
-        TokenInfo info = byUser.get(userId);
-        if (info == null) {
-            return null;
-        }
-        if (info.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
-            byUser.remove(userId);
-            return null;
-        }
-        return info.refreshToken;
+    public List<InvoiceSummary> getInvoices(String userId) {
+        return engine.getInvoices(key(userId));
     }
 
-    public boolean clear(String userId) {
-        clearServices(userId);
-        clearInvoices(userId);
-        clearTroubleTickets(userId);
-        languageByUser.remove(userId);
-        menuPathByUser.remove(userId);
-        awaitingLanguageSelectionByUser.remove(userId);
-        selectionContextByUser.remove(userId);
-        selectionPageStartByUser.remove(userId);
-        menuContextByUser.remove(userId);
-        pendingFunctionMenusByUser.remove(userId);
-        return byUser.remove(userId) != null;
+    public void setInvoiceActionsMenu(String userId, String menuId) {
+        engine.setInvoiceActionsMenu(key(userId), menuId);
     }
 
-    public String getLanguage(String userId, String defaultLanguage) {
-        return languageByUser.getOrDefault(userId, defaultLanguage);
+    public String getInvoiceActionsMenu(String userId) {
+        return engine.getInvoiceActionsMenu(key(userId));
     }
 
-    public void setLanguage(String userId, String language) {
-        if (language == null || language.isBlank()) {
-            languageByUser.remove(userId);
-            return;
-        }
-        languageByUser.put(userId, language);
+    public void selectInvoice(String userId, InvoiceSummary invoice) {
+        engine.selectInvoice(key(userId), invoice);
     }
 
-    public void setAwaitingLanguageSelection(String userId, boolean awaiting) {
-        if (!awaiting) {
-            awaitingLanguageSelectionByUser.remove(userId);
-            return;
-        }
-        awaitingLanguageSelectionByUser.put(userId, true);
+    public InvoiceSummary getSelectedInvoice(String userId) {
+        return engine.getSelectedInvoice(key(userId));
     }
 
-    public boolean isOptedIn(String userId) {
-        return optInByUser.getOrDefault(userId, false);
+    public void clearSelectedInvoice(String userId) {
+        engine.clearSelectedInvoice(key(userId));
     }
 
-    public void setOptIn(String userId, boolean optIn) {
-        if (optIn) {
-            optInByUser.put(userId, true);
-        } else {
-            optInByUser.remove(userId);
-        }
+    public void clearInvoices(String userId) {
+        engine.clearInvoices(key(userId));
     }
 
-    public boolean isAwaitingLanguageSelection(String userId) {
-        return awaitingLanguageSelectionByUser.getOrDefault(userId, false);
+    public void clearSession(String userId) {
+        engine.clearSession(key(userId));
     }
 
-    public void setSelectionContext(String userId, SelectionContext context) {
-        setSelectionContext(userId, context, 0);
+    public String getRefreshToken(String userId) {
+        return engine.getRefreshToken(key(userId));
     }
 
-    public void setSelectionContext(String userId, SelectionContext context, int pageStartIndex) {
-        if (context == null || context == SelectionContext.NONE) {
-            selectionContextByUser.remove(userId);
-            selectionPageStartByUser.remove(userId);
-            return;
-        }
-        selectionContextByUser.put(userId, context);
-        selectionPageStartByUser.put(userId, Math.max(0, pageStartIndex));
+    public String getIdToken(String userId) {
+        return engine.getIdToken(key(userId));
     }
 
-    public SelectionContext getSelectionContext(String userId) {
-        return selectionContextByUser.getOrDefault(userId, SelectionContext.NONE);
+    public String getLanguage(String userId, String defaultLanguage) {
+        return engine.getLanguage(key(userId), defaultLanguage);
     }
 
-    public int getSelectionPageStart(String userId) {
-        return selectionPageStartByUser.getOrDefault(userId, 0);
+    public void setLanguage(String userId, String language) {
+        engine.setLanguage(key(userId), language);
     }
 
     public void resetBusinessMenu(String userId, String rootMenuId) {
-        menuPathByUser.put(userId, new ArrayList<>(List.of(rootMenuId)));
+        engine.resetBusinessMenu(key(userId), rootMenuId);
     }
 
     public void resetLoginMenu(String userId, String rootMenuId) {
-        loginMenuPathByUser.put(userId, new ArrayList<>(List.of(rootMenuId)));
+        engine.resetLoginMenu(key(userId), rootMenuId);
+    }
+
+    public boolean isOptedIn(String userId) {
+        return engine.isOptedIn(key(userId));
+    }
+
+    public void setOptIn(String userId, boolean optIn) {
+        engine.setOptIn(key(userId), optIn);
     }
 
     public String currentBusinessMenu(String userId, String rootMenuId) {
-        List<String> path = ensureMenuPath(userId, rootMenuId);
-        return path.get(path.size() - 1);
+        return engine.currentBusinessMenu(key(userId), rootMenuId);
     }
 
     public String currentLoginMenu(String userId, String rootMenuId) {
-        List<String> path = ensureLoginMenuPath(userId, rootMenuId);
-        return path.get(path.size() - 1);
+        return engine.currentLoginMenu(key(userId), rootMenuId);
     }
 
     public void enterBusinessMenu(String userId, String menuId, String rootMenuId) {
-        menuPathByUser.compute(userId, (id, existing) -> {
-            List<String> path = (existing == null || existing.isEmpty())
-                    ? new ArrayList<>(List.of(rootMenuId))
-                    : new ArrayList<>(existing);
-            path.add(menuId);
-            return path;
-        });
+        engine.enterBusinessMenu(key(userId), menuId, rootMenuId);
     }
 
     public void enterLoginMenu(String userId, String menuId, String rootMenuId) {
-        loginMenuPathByUser.compute(userId, (id, existing) -> {
-            List<String> path = (existing == null || existing.isEmpty())
-                    ? new ArrayList<>(List.of(rootMenuId))
-                    : new ArrayList<>(existing);
-            path.add(menuId);
-            return path;
-        });
+        engine.enterLoginMenu(key(userId), menuId, rootMenuId);
     }
 
     public boolean goUpBusinessMenu(String userId, String rootMenuId) {
-        final boolean[] moved = {false};
-        menuPathByUser.compute(userId, (id, existing) -> {
-            List<String> path = (existing == null || existing.isEmpty())
-                    ? new ArrayList<>(List.of(rootMenuId))
-                    : new ArrayList<>(existing);
-            if (path.size() > 1) {
-                path.remove(path.size() - 1);
-                moved[0] = true;
-            }
-            return path;
-        });
-        if (moved[0]) {
-            clearMenuContext(userId);
-            clearPendingFunctionMenu(userId);
-        }
-        return moved[0];
+        return engine.goUpBusinessMenu(key(userId), rootMenuId);
     }
 
     public boolean goUpLoginMenu(String userId, String rootMenuId) {
-        final boolean[] moved = {false};
-        loginMenuPathByUser.compute(userId, (id, existing) -> {
-            List<String> path = (existing == null || existing.isEmpty())
-                    ? new ArrayList<>(List.of(rootMenuId))
-                    : new ArrayList<>(existing);
-            if (path.size() > 1) {
-                path.remove(path.size() - 1);
-                moved[0] = true;
-            }
-            return path;
-        });
-        return moved[0];
-    }
-
-    public int getBusinessMenuDepth(String userId, String rootMenuId) {
-        List<String> path = ensureMenuPath(userId, rootMenuId);
-        return Math.max(0, path.size() - 1);
-    }
-
-    public int getLoginMenuDepth(String userId, String rootMenuId) {
-        List<String> path = ensureLoginMenuPath(userId, rootMenuId);
-        return Math.max(0, path.size() - 1);
+        return engine.goUpLoginMenu(key(userId), rootMenuId);
     }
 
     public void setMenuContext(String userId, String contextMessage) {
-        if (contextMessage == null || contextMessage.isBlank()) {
-            menuContextByUser.remove(userId);
-            return;
-        }
-        menuContextByUser.put(userId, contextMessage);
+        engine.setMenuContext(key(userId), contextMessage);
     }
 
     public String getMenuContext(String userId) {
-        return menuContextByUser.get(userId);
+        return engine.getMenuContext(key(userId));
     }
 
     public void clearMenuContext(String userId) {
-        menuContextByUser.remove(userId);
+        engine.clearMenuContext(key(userId));
     }
 
     public void updateContext(String userId, String accountContext, String serviceContext, String objectContext) {
-        updateContext(userId, accountContext, serviceContext, objectContext, null);
+        engine.updateContext(key(userId), accountContext, serviceContext, objectContext);
     }
 
     public void updateContext(String userId, String accountContext, String serviceContext, String objectContext,
                               String objectLabel) {
-        contextStateByUser.compute(userId, (id, existing) -> {
-            String accountValue = accountContext == null ? (existing == null ? null : existing.accountContext())
-                    : (accountContext.isBlank() ? null : accountContext);
-            String serviceValue = serviceContext == null ? (existing == null ? null : existing.serviceContext())
-                    : (serviceContext.isBlank() ? null : serviceContext);
-            String objectValue = objectContext == null ? (existing == null ? null : existing.objectContext())
-                    : (objectContext.isBlank() ? null : objectContext);
-            String objectLabelValue = objectLabel == null ? (existing == null ? null : existing.objectLabel())
-                    : (objectLabel.isBlank() ? null : objectLabel);
-            if (objectValue == null) {
-                objectLabelValue = null;
-            }
-            if (accountValue == null && serviceValue == null && objectValue == null) {
-                return null;
-            }
-            return new ContextState(accountValue, serviceValue, objectValue, objectLabelValue);
-        });
+        engine.updateContext(key(userId), accountContext, serviceContext, objectContext, objectLabel);
     }
 
     public boolean resetObjectContextIfLabelMismatch(String userId, String newObjectLabel) {
-        ContextState state = contextStateByUser.get(userId);
-        if (state == null || state.objectContext() == null || state.objectContext().isBlank()) {
-            return false;
-        }
-        String existingLabel = state.objectLabel() == null ? null : state.objectLabel().trim();
-        String incomingLabel = newObjectLabel == null ? null : newObjectLabel.trim();
-        if (Objects.equals(existingLabel, incomingLabel)) {
-            return false;
-        }
-        updateContext(userId, null, null, "", "");
-        return true;
+        return engine.resetObjectContextIfLabelMismatch(key(userId), newObjectLabel);
     }
 
-    public ContextState getContextState(String userId) {
-        return contextStateByUser.get(userId);
+    public ChatSessionEngine.ContextState getContextState(String userId) {
+        return engine.getContextState(key(userId));
     }
 
     public void setPendingFunctionMenu(String userId, String submenuId, String contextLabel, List<String> options,
                                        List<String> contextValues, boolean storeContext, boolean accountContext,
-                                       boolean serviceContext, boolean objectContextEnabled, String objectContextLabel) {
-        if (options == null || options.isEmpty()) {
-            pendingFunctionMenusByUser.remove(userId);
-            return;
-        }
-        pendingFunctionMenusByUser.put(userId,
-                new PendingFunctionMenu(submenuId, contextLabel, List.copyOf(options),
-                        contextValues == null ? List.of() : List.copyOf(contextValues), storeContext,
-                        accountContext, serviceContext, objectContextEnabled, objectContextLabel));
+                                       boolean serviceContext, boolean objectContextEnabled,
+                                       String objectContextLabel) {
+        engine.setPendingFunctionMenu(key(userId), submenuId, contextLabel, options, contextValues, storeContext,
+                accountContext, serviceContext, objectContextEnabled, objectContextLabel);
     }
 
-    public PendingFunctionSelection consumePendingFunctionMenu(String userId, String selection) {
-        PendingFunctionMenu pending = pendingFunctionMenusByUser.get(userId);
-        if (pending == null || selection == null || selection.isBlank()) {
-            return null;
-        }
-        String trimmed = selection.trim();
-        String matched = null;
-        String matchedContext = null;
-        for (int i = 0; i < pending.options().size(); i++) {
-            String option = pending.options().get(i);
-            if (option != null && option.equalsIgnoreCase(trimmed)) {
-                matched = option;
-                if (pending.contextValues().size() > i) {
-                    matchedContext = pending.contextValues().get(i);
-                }
-                break;
-            }
-        }
-        if (matched == null) {
-            try {
-                int numeric = Integer.parseInt(trimmed);
-                if (numeric >= 1 && numeric <= pending.options().size()) {
-                    matched = pending.options().get(numeric - 1);
-                    if (pending.contextValues().size() >= numeric) {
-                        matchedContext = pending.contextValues().get(numeric - 1);
-                    }
-                }
-            } catch (Exception ignored) {
-            }
-        }
-        if (matched == null) {
-            return null;
-        }
-        pendingFunctionMenusByUser.remove(userId);
-        return new PendingFunctionSelection(pending, matched, matchedContext);
+    public ChatSessionEngine.PendingSelection consumePendingFunctionMenu(String userId, String selection) {
+        return engine.consumePendingFunctionMenu(key(userId), selection);
     }
 
     public void clearPendingFunctionMenu(String userId) {
-        pendingFunctionMenusByUser.remove(userId);
+        engine.clearPendingFunctionMenu(key(userId));
     }
 
-    public record PendingFunctionMenu(String submenuId, String contextLabel, List<String> options,
-                                      List<String> contextValues, boolean storeContext,
-                                      boolean accountContext, boolean serviceContext, boolean objectContextEnabled,
-                                      String objectContextLabel) { }
-
-    public record PendingFunctionSelection(PendingFunctionMenu menu, String selection, String objectContextValue) { }
-
-    private List<String> ensureMenuPath(String userId, String rootMenuId) {
-        return menuPathByUser.compute(userId, (id, existing) -> {
-            if (existing == null || existing.isEmpty()) {
-                return new ArrayList<>(List.of(rootMenuId));
-            }
-            return existing;
-        });
+    public int getBusinessMenuDepth(String userId, String rootMenuId) {
+        return engine.getBusinessMenuDepth(key(userId), rootMenuId);
     }
 
-    private List<String> ensureLoginMenuPath(String userId, String rootMenuId) {
-        return loginMenuPathByUser.compute(userId, (id, existing) -> {
-            if (existing == null || existing.isEmpty()) {
-                return new ArrayList<>(List.of(rootMenuId));
-            }
-            return existing;
-        });
+    public int getLoginMenuDepth(String userId, String rootMenuId) {
+        return engine.getLoginMenuDepth(key(userId), rootMenuId);
     }
 }
-
-
-
@@ -0,0 +1,83 @@
+package com.selfservice.application.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpLoggingConfigTest {
+
+    @Test
+    void teePassesWholeBodyThroughAndCapturesOnlyPrefix() throws IOException {
+        String json = "{\"items\":[" + "1,".repeat(5_000) + "1]}";
+        AtomicReference<String> logged = new AtomicReference<>();
+        AtomicInteger reports = new AtomicInteger();
+        HttpLoggingConfig.TeeClientHttpResponse response = new HttpLoggingConfig.TeeClientHttpResponse(
+                response(json), 16, (captured, total) -> {
+                    reports.incrementAndGet();
+                    logged.set(new String(captured, StandardCharsets.UTF_8) + "|" + total);
+                });
+
+        String read = StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8);
+        response.close();
+        response.close();
+
+        assertThat(read).isEqualTo(json);
+        assertThat(logged.get()).isEqualTo(json.substring(0, 16) + "|" + json.length());
+        assertThat(reports.get()).isEqualTo(1);
+    }
+
+    @Test
+    void unreadBodyIsReportedEmpty() {
+        AtomicReference<String> logged = new AtomicReference<>();
+        HttpLoggingConfig.TeeClientHttpResponse response = new HttpLoggingConfig.TeeClientHttpResponse(
+                response("ignored"), 16, (captured, total) -> logged.set(captured.length + "|" + total));
+
+        response.close();
+
+        assertThat(logged.get()).isEqualTo("0|0");
+    }
+
+    private static ClientHttpResponse response(String body) {
+        return new ClientHttpResponse() {
+            @Override
+            public HttpStatus getStatusCode() {
+                return HttpStatus.OK;
+            }
+
+            @Override
+            public int getRawStatusCode() {
+                return 200;
+            }
+
+            @Override
+            public String getStatusText() {
+                return "OK";
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public InputStream getBody() {
+                return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return new HttpHeaders();
+            }
+        };
+    }
+}
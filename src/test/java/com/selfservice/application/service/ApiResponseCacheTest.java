@@ -0,0 +1,124 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.ApimanEndpointsProperties;
+import com.selfservice.application.dto.ServiceListResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ApiResponseCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ApiResponseCache cache = new ApiResponseCache(new ApimanEndpointsProperties(), registry);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void repeatedLookupIsServedFromCache() {
+        lookup(token("alice"), "A1", null);
+        lookup(token("alice"), "A1", null);
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(registry.get("apiman.cache.hit.ratio").tag("endpoint", "product").gauge().value()).isEqualTo(0.5);
+    }
+
+    @Test
+    void refreshedTokenOfSameUserSharesEntries() {
+        lookup(token("alice"), "A1", null);
+        lookup(token("alice") + "x", "A1", null);
+
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void usersAndAccountsDoNotShareEntries() {
+        lookup(token("alice"), "A1", null);
+        lookup(token("bob"), "A1", null);
+        lookup(token("alice"), "A2", null);
+
+        assertThat(calls.get()).isEqualTo(3);
+    }
+
+    @Test
+    void errorsAreNotCached() {
+        lookup(token("alice"), "A1", "Service API error 503");
+        lookup(token("alice"), "A1", null);
+
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void accountInvalidationLeavesOtherAccounts() {
+        lookup(token("alice"), "A1", null);
+        lookup(token("alice"), "A2", null);
+
+        cache.invalidateAccount(token("alice"), "A1");
+        lookup(token("alice"), "A1", null);
+        lookup(token("alice"), "A2", null);
+
+        assertThat(calls.get()).isEqualTo(3);
+    }
+
+    @Test
+    void logoutDropsEverythingForTheUser() {
+        lookup(token("alice"), "A1", null);
+        lookup(token("bob"), "A1", null);
+
+        cache.invalidateUser(token("alice"));
+
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void prefetchedEntryIsCountedWhenUsed() {
+        cache.prefetch(token("alice"), "A1", System.nanoTime(), () -> lookup(token("alice"), "A1", null));
+
+        lookup(token("alice"), "A1", null);
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(registry.get("apiman.prefetch.loaded").tag("endpoint", "product").functionCounter().count())
+                .isEqualTo(1.0);
+        assertThat(registry.get("apiman.prefetch.used").tag("endpoint", "product").functionCounter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    void prefetchRequestedBeforeLogoutDoesNotRun() {
+        long requested = System.nanoTime();
+        cache.invalidateUser(token("alice"));
+
+        cache.prefetch(token("alice"), "A1", requested, () -> lookup(token("alice"), "A1", null));
+
+        assertThat(calls.get()).isZero();
+    }
+
+    @Test
+    void loadOverlappingLogoutIsNotKept() {
+        cache.get("product", token("alice"), "A1", Map.of(), 60, () -> {
+            cache.invalidateUser(token("alice"));
+            return new ServiceListResult(List.of(), null);
+        }, result -> true);
+
+        assertThat(cache.size()).isZero();
+    }
+
+    private ServiceListResult lookup(String accessToken, String accountId, String error) {
+        return cache.get("product", accessToken, accountId, Map.of("billingAccount.id", accountId), 60,
+                () -> {
+                    calls.incrementAndGet();
+                    return new ServiceListResult(List.of(), error);
+                }, result -> !result.hasError());
+    }
+
+    private static String token(String subject) {
+        String claims = "{\"sub\":\"" + subject + "\"}";
+        return "e30." + Base64.getUrlEncoder().withoutPadding().encodeToString(claims.getBytes(StandardCharsets.UTF_8))
+                + ".sig";
+    }
+}
@@ -0,0 +1,75 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.ConnectorsProperties;
+import com.selfservice.telegrambot.service.TelegramService;
+import com.selfservice.telegrambot.service.UserSessionService;
+import com.selfservice.whatsapp.service.WhatsappService;
+import com.selfservice.whatsapp.service.WhatsappSessionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BroadcastServiceTest {
+
+    private final TelegramService telegramService = mock(TelegramService.class);
+    private final UserSessionService sessions = new UserSessionService();
+    private final Map<Long, CompletableFuture<Boolean>> sent = new ConcurrentHashMap<>();
+    private final BroadcastService broadcasts = new BroadcastService(telegramService, mock(WhatsappService.class),
+            sessions, mock(WhatsappSessionService.class), new ConnectorsProperties(), 100, 10, 2);
+
+    @AfterEach
+    void stop() {
+        broadcasts.shutdown();
+    }
+
+    @Test
+    void keepsAtMostMaxInFlightMessagesQueued() throws InterruptedException {
+        when(telegramService.sendMessage(anyLong(), anyString())).thenAnswer(invocation -> {
+            CompletableFuture<Boolean> result = new CompletableFuture<>();
+            sent.put(invocation.getArgument(0, Long.class), result);
+            return result;
+        });
+        List<BroadcastService.Recipient> recipients = LongStream.rangeClosed(1, 5)
+                .peek(chatId -> sessions.setOptIn(chatId, true))
+                .mapToObj(chatId -> new BroadcastService.Recipient("telegram", Long.toString(chatId)))
+                .toList();
+
+        String jobId = broadcasts.start("hello", recipients).jobId();
+
+        waitUntil(() -> sent.size() == 2);
+        assertThat(sent).containsOnlyKeys(1L, 2L);
+
+        sent.get(1L).complete(true);
+        waitUntil(() -> sent.size() == 3);
+        assertThat(sent).containsOnlyKeys(1L, 2L, 3L);
+
+        sent.get(2L).complete(false);
+        sent.get(3L).complete(true);
+        waitUntil(() -> sent.size() == 5);
+        sent.get(4L).complete(true);
+        sent.get(5L).complete(true);
+
+        waitUntil(() -> broadcasts.progress(jobId).delivered() == 4);
+        assertThat(broadcasts.progress(jobId).failed()).isEqualTo(1);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.selfservice.application.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CircuitBreaker breaker = new CircuitBreaker("bill", 4, 4, 50, 30_000, registry);
+
+    @Test
+    void opensOnceFailureRateIsReachedOverMinimumCalls() {
+        breaker.record(false, 0);
+        breaker.record(false, 0);
+        breaker.record(true, 0);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        breaker.record(true, 0);
+
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire(29_999)).isFalse();
+        assertThat(registry.get("apiman.circuit.transitions").tag("endpoint", "bill")
+                .tag("from", "closed").tag("to", "open").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void oldOutcomesLeaveTheWindow() {
+        breaker.record(false, 0);
+        breaker.record(true, 0);
+        breaker.record(true, 0);
+        breaker.record(true, 0);
+        breaker.record(false, 0);
+
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void singleTrialCallClosesOrReopens() {
+        open();
+
+        assertThat(breaker.tryAcquire(30_000)).isTrue();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire(30_000)).isFalse();
+        breaker.record(false, 30_000);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        assertThat(breaker.tryAcquire(60_000)).isTrue();
+        breaker.record(true, 60_000);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(registry.get("apiman.circuit.state").tag("endpoint", "bill").gauge().value()).isEqualTo(0.0);
+    }
+
+    @Test
+    void releasedTrialLetsAnotherCallTry() {
+        open();
+        assertThat(breaker.tryAcquire(30_000)).isTrue();
+
+        breaker.release();
+
+        assertThat(breaker.tryAcquire(30_000)).isTrue();
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            breaker.record(false, 0);
+        }
+    }
+}
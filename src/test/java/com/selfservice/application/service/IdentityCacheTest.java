@@ -0,0 +1,76 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.IdentityCacheProperties;
+import com.selfservice.application.dto.AccountSummary;
+import com.selfservice.application.dto.FindUserResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdentityCacheTest {
+
+    private final IdentityCache cache = new IdentityCache(new IdentityCacheProperties(), new SimpleMeterRegistry());
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    @Test
+    void subjectIsReadFromAccessToken() {
+        String payload = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("{\"sub\":\"f3a1\",\"exp\":1}".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(cache.subjectOf("e30." + payload + ".sig")).isEqualTo("f3a1");
+        assertThat(cache.subjectOf("opaque-token")).isNull();
+    }
+
+    @Test
+    void secondLoginReusesAccountsFetchedByFirst() {
+        cache.identity("f3a1", 300, 0L).findUser(this::found);
+
+        FindUserResult reused = cache.identity("f3a1", 300, 1_000L).findUser(this::found);
+
+        assertThat(reused.accounts()).hasSize(1);
+        assertThat(fetches.get()).isEqualTo(1);
+    }
+
+    @Test
+    void failedLookupIsFetchedAgain() {
+        cache.identity("f3a1", 300, 0L).findUser(this::failed);
+
+        cache.identity("f3a1", 300, 1_000L).findUser(this::found);
+
+        assertThat(fetches.get()).isEqualTo(2);
+    }
+
+    @Test
+    void entryDoesNotOutliveTheToken() {
+        cache.identity("f3a1", 60, 0L).findUser(this::found);
+
+        cache.identity("f3a1", 60, 61_000L).findUser(this::found);
+
+        assertThat(fetches.get()).isEqualTo(2);
+    }
+
+    @Test
+    void loginWithoutSubjectKeepsNothing() {
+        cache.identity(null, 300, 0L).findUser(this::found);
+
+        cache.identity(null, 300, 1_000L).findUser(this::found);
+
+        assertThat(fetches.get()).isEqualTo(2);
+    }
+
+    private FindUserResult found() {
+        fetches.incrementAndGet();
+        return new FindUserResult(true, "ok", List.of(new AccountSummary("A1", "Home")), "Ana");
+    }
+
+    private FindUserResult failed() {
+        fetches.incrementAndGet();
+        return new FindUserResult(false, "timeout", List.of(), null);
+    }
+}
@@ -0,0 +1,145 @@
+package com.selfservice.application.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdleSessionSweeperTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void sessionIsEvictedOnceIdleTimeoutElapses() {
+        IdleSessionSweeper<TestSession> sweeper = sweeper(100);
+        TestSession session = new TestSession(false);
+
+        sweeper.touch(session, 0L);
+        sweeper.sweep(9_000L);
+        assertThat(session.evictions).isZero();
+
+        sweeper.sweep(10_000L);
+        assertThat(session.evictions).isEqualTo(1);
+        assertThat(sweeper.activeSessions()).isZero();
+        assertThat(evictions("idle")).isEqualTo(1.0);
+    }
+
+    @Test
+    void sessionUsedSinceFilingIsKept() {
+        IdleSessionSweeper<TestSession> sweeper = sweeper(100);
+        TestSession session = new TestSession(false);
+
+        sweeper.touch(session, 0L);
+        sweeper.touch(session, 8_000L);
+        sweeper.sweep(10_000L);
+        assertThat(session.evictions).isZero();
+
+        sweeper.sweep(18_000L);
+        assertThat(session.evictions).isEqualTo(1);
+    }
+
+    @Test
+    void evictedSessionIsFiledAgainOnNextUse() {
+        IdleSessionSweeper<TestSession> sweeper = sweeper(100);
+        TestSession session = new TestSession(false);
+
+        sweeper.touch(session, 0L);
+        sweeper.sweep(10_000L);
+        assertThat(sweeper.touch(session, 11_000L)).isTrue();
+        assertThat(sweeper.activeSessions()).isEqualTo(1);
+
+        sweeper.sweep(21_000L);
+        assertThat(session.evictions).isEqualTo(2);
+    }
+
+    @Test
+    void removedSessionMustBeLookedUpAgain() {
+        IdleSessionSweeper<TestSession> sweeper = sweeper(100);
+        TestSession session = new TestSession(true);
+
+        sweeper.touch(session, 0L);
+        sweeper.sweep(10_000L);
+
+        assertThat(sweeper.touch(session, 11_000L)).isFalse();
+        assertThat(sweeper.activeSessions()).isZero();
+    }
+
+    @Test
+    void overCapacityEvictsLeastRecentlyUsedFirst() {
+        IdleSessionSweeper<TestSession> sweeper = sweeper(2);
+        TestSession oldest = new TestSession(false);
+        TestSession middle = new TestSession(false);
+        TestSession newest = new TestSession(false);
+
+        sweeper.touch(oldest, 0L);
+        sweeper.touch(middle, 1_000L);
+        sweeper.touch(newest, 2_000L);
+        sweeper.sweep(5_000L);
+
+        assertThat(oldest.evictions).isEqualTo(1);
+        assertThat(middle.evictions).isZero();
+        assertThat(newest.evictions).isZero();
+        assertThat(sweeper.activeSessions()).isEqualTo(2);
+        assertThat(evictions("capacity")).isEqualTo(1.0);
+    }
+
+    @Test
+    void overCapacityGoesByLastUseNotByFilingOrder() {
+        IdleSessionSweeper<TestSession> sweeper = sweeper(2);
+        TestSession filedFirst = new TestSession(false);
+        TestSession middle = new TestSession(false);
+        TestSession newest = new TestSession(false);
+
+        sweeper.touch(filedFirst, 0L);
+        sweeper.touch(middle, 1_000L);
+        sweeper.touch(newest, 2_000L);
+        // Only stamps the session; it stays filed under its first deadline.
+        sweeper.touch(filedFirst, 4_000L);
+        sweeper.sweep(5_000L);
+
+        assertThat(filedFirst.evictions).isZero();
+        assertThat(middle.evictions).isEqualTo(1);
+        assertThat(newest.evictions).isZero();
+        assertThat(sweeper.activeSessions()).isEqualTo(2);
+    }
+
+    @Test
+    void retiredSessionLeavesTheWheel() {
+        IdleSessionSweeper<TestSession> sweeper = sweeper(100);
+        TestSession session = new TestSession(false);
+
+        sweeper.touch(session, 0L);
+        synchronized (session) {
+            sweeper.retire(session);
+        }
+        sweeper.sweep(10_000L);
+
+        assertThat(session.evictions).isZero();
+        assertThat(sweeper.activeSessions()).isZero();
+        assertThat(sweeper.touch(session, 11_000L)).isFalse();
+    }
+
+    private IdleSessionSweeper<TestSession> sweeper(int maxActive) {
+        return new IdleSessionSweeper<>("test", Duration.ofSeconds(10), Duration.ofSeconds(1), maxActive,
+                session -> {
+                    session.evictions++;
+                    return session.removable;
+                },
+                meterRegistry);
+    }
+
+    private double evictions(String reason) {
+        return meterRegistry.get("session.evictions").tag("reason", reason).counter().count();
+    }
+
+    private static final class TestSession extends IdleSessionSweeper.Tracked {
+        private final boolean removable;
+        private int evictions;
+
+        private TestSession(boolean removable) {
+            this.removable = removable;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.ApimanEndpointsProperties;
+import com.selfservice.application.config.InvoiceDocumentProperties;
+import com.selfservice.application.config.SessionStoreProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InvoiceDocumentServiceTest {
+
+    private static final Pattern LINK = Pattern.compile(
+            "https://bot\\.example/invoices/pdf/([0-9a-f]{64}\\.pdf)\\?file=([^&]+)&expires=(\\d+)&signature=(.+)");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void cachedPdfGetsSignedLinkThatResolvesToIt() throws IOException {
+        InvoiceDocumentService service = open();
+        Path cached = cache("token:t1", "INV-1", 10);
+
+        Matcher link = LINK.matcher(service.downloadLink("t1", "INV-1"));
+
+        assertThat(link.matches()).isTrue();
+        assertThat(link.group(2)).isEqualTo("invoice-INV-1.pdf");
+        assertThat(service.resolve(link.group(1), link.group(2), Long.parseLong(link.group(3)), link.group(4)))
+                .isEqualTo(cached);
+    }
+
+    @Test
+    void tamperedOrExpiredLinkResolvesToNothing() throws IOException {
+        InvoiceDocumentService service = open();
+        cache("token:t1", "INV-1", 10);
+        Matcher link = LINK.matcher(service.downloadLink("t1", "INV-1"));
+        assertThat(link.matches()).isTrue();
+        String name = link.group(1);
+        long expires = Long.parseLong(link.group(3));
+
+        assertThat(service.resolve(name, "other.pdf", expires, link.group(4))).isNull();
+        assertThat(service.resolve(name, link.group(2), expires + 60, link.group(4))).isNull();
+        assertThat(service.resolve(name, link.group(2), expires, link.group(4), (expires + 1) * 1000L)).isNull();
+        assertThat(service.resolve("../" + name, link.group(2), expires, link.group(4))).isNull();
+    }
+
+    @Test
+    void usersDoNotShareCachedPdfs() {
+        assertThat(InvoiceDocumentService.cacheName("sub:alice", "INV-1"))
+                .isNotEqualTo(InvoiceDocumentService.cacheName("sub:bob", "INV-1"));
+    }
+
+    @Test
+    void pruneDeletesOldestBeyondLimit() throws IOException {
+        InvoiceDocumentService service = open();
+        Path oldest = cache("sub:a", "1", 400_000);
+        Path newer = cache("sub:a", "2", 400_000);
+        Path newest = cache("sub:a", "3", 400_000);
+        Files.setLastModifiedTime(oldest, FileTime.fromMillis(1_000));
+        Files.setLastModifiedTime(newer, FileTime.fromMillis(2_000));
+        Files.setLastModifiedTime(newest, FileTime.fromMillis(3_000));
+
+        service.prune();
+
+        assertThat(Files.exists(oldest)).isFalse();
+        assertThat(Files.exists(newer)).isTrue();
+        assertThat(Files.exists(newest)).isTrue();
+    }
+
+    @Test
+    void sharedSessionsNeedSharedCacheAndSecret() {
+        SessionStoreProperties shared = new SessionStoreProperties();
+        shared.setType(SessionStoreProperties.Type.FILE);
+        InvoiceDocumentProperties properties = new InvoiceDocumentProperties();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ApimanEndpointsProperties apiman = new ApimanEndpointsProperties();
+        EndpointGuards guards = new EndpointGuards(apiman, registry);
+
+        assertThatThrownBy(() -> new InvoiceDocumentService(null, apiman, guards, properties, shared,
+                "https://bot.example/", registry))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("invoices.pdf.signing-secret");
+
+        properties.setSigningSecret("secret");
+        assertThatThrownBy(() -> new InvoiceDocumentService(null, apiman, guards, properties, shared,
+                "https://bot.example/", registry))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("invoices.pdf.cache-dir");
+
+        properties.setCacheDir(directory.toString());
+        assertThat(new InvoiceDocumentService(null, apiman, guards, properties, shared,
+                "https://bot.example/", registry)).isNotNull();
+    }
+
+    private Path cache(String owner, String invoiceId, int bytes) throws IOException {
+        return Files.write(directory.resolve(InvoiceDocumentService.cacheName(owner, invoiceId)), new byte[bytes]);
+    }
+
+    /** A service with a 1 MB cache in the test directory. */
+    private InvoiceDocumentService open() {
+        InvoiceDocumentProperties properties = new InvoiceDocumentProperties();
+        properties.setCacheDir(directory.toString());
+        properties.setMaxCacheMegabytes(1);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ApimanEndpointsProperties apiman = new ApimanEndpointsProperties();
+        return new InvoiceDocumentService(null, apiman, new EndpointGuards(apiman, registry), properties,
+                new SessionStoreProperties(), "https://bot.example/", registry);
+    }
+}
@@ -0,0 +1,69 @@
+package com.selfservice.application.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyedSerialExecutorTest {
+
+    @Test
+    void tasksForTheSameKeyRunInSubmissionOrder() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            KeyedSerialExecutor lanes = new KeyedSerialExecutor("test", pool, new SimpleMeterRegistry());
+            List<Integer> first = new CopyOnWriteArrayList<>();
+            List<Integer> second = new CopyOnWriteArrayList<>();
+            CountDownLatch done = new CountDownLatch(200);
+
+            for (int i = 0; i < 100; i++) {
+                int value = i;
+                lanes.execute(1L, () -> {
+                    first.add(value);
+                    done.countDown();
+                });
+                lanes.execute(2L, () -> {
+                    second.add(value);
+                    done.countDown();
+                });
+            }
+
+            assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(first).isSorted().hasSize(100);
+            assertThat(second).isSorted().hasSize(100);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void slowKeyDoesNotBlockOtherKeys() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            KeyedSerialExecutor lanes = new KeyedSerialExecutor("test", pool, new SimpleMeterRegistry());
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch otherDone = new CountDownLatch(1);
+
+            lanes.execute("slow", () -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            lanes.execute("fast", otherDone::countDown);
+
+            assertThat(otherDone.await(5, TimeUnit.SECONDS)).isTrue();
+            release.countDown();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
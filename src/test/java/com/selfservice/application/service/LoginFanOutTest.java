@@ -0,0 +1,76 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.LoginFanOutProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoginFanOutTest {
+
+    private final LoginFanOut fanOut = fanOut(200);
+
+    @AfterEach
+    void stop() {
+        fanOut.shutdown();
+    }
+
+    @Test
+    void independentCallsRunSideBySide() {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        CompletableFuture<Boolean> first = fanOut.call("first", () -> meet(bothStarted), false);
+        CompletableFuture<Boolean> second = fanOut.call("second", () -> meet(bothStarted), false);
+
+        assertThat(first.join()).isTrue();
+        assertThat(second.join()).isTrue();
+    }
+
+    @Test
+    void slowCallYieldsFallback() {
+        CompletableFuture<String> call = fanOut.call("slow", () -> {
+            sleep(2_000);
+            return "late";
+        }, "fallback");
+
+        assertThat(call.join()).isEqualTo("fallback");
+    }
+
+    @Test
+    void failedCallYieldsFallback() {
+        CompletableFuture<String> call = fanOut.call("broken", () -> {
+            throw new IllegalStateException("APIMAN down");
+        }, "fallback");
+
+        assertThat(call.join()).isEqualTo("fallback");
+    }
+
+    private static LoginFanOut fanOut(long timeoutMs) {
+        LoginFanOutProperties properties = new LoginFanOutProperties();
+        properties.setThreads(4);
+        properties.setCallTimeoutMillis(timeoutMs);
+        return new LoginFanOut(properties, new SimpleMeterRegistry());
+    }
+
+    private static boolean meet(CountDownLatch latch) {
+        latch.countDown();
+        try {
+            return latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.ApimanEndpointsProperties;
+import com.selfservice.application.config.LoginFanOutProperties;
+import com.selfservice.application.dto.AccountSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LoginPrefetcherTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ProductService productService = mock(ProductService.class);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private LoginPrefetcher prefetcher;
+
+    @AfterEach
+    void stop() {
+        release.countDown();
+        prefetcher.shutdown();
+    }
+
+    @Test
+    void loadsBeyondThePrefetchQueueAreSkipped() throws Exception {
+        LoginFanOutProperties properties = new LoginFanOutProperties();
+        properties.setPrefetchThreads(1);
+        properties.setPrefetchQueue(1);
+        prefetcher = new LoginPrefetcher(new ApiResponseCache(new ApimanEndpointsProperties(), registry),
+                productService, mock(InvoiceService.class), mock(TroubleTicketService.class), properties, registry);
+        CountDownLatch started = new CountDownLatch(1);
+        when(productService.getMainServices(anyString(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        });
+
+        // Products hold the only thread, invoices wait in the queue, tickets find it full
+        prefetcher.prefetch("token", new AccountSummary("acct-1", "Account"), null);
+
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(registry.get("login.prefetch.skipped").counter().count()).isEqualTo(1.0);
+    }
+}
@@ -0,0 +1,82 @@
+package com.selfservice.application.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.selfservice.application.config.OutboxProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class OutboxJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void unacknowledgedEntriesAreRecoveredAfterRestart() {
+        OutboxJournal journal = open();
+        long delivered = journal.append("telegram", "42", "/sendMessage", Map.of("chat_id", 42L, "text", "first"));
+        long lost = journal.append("telegram", "42", "/sendMessage", Map.of("chat_id", 42L, "text", "second"));
+        long other = journal.append("whatsapp", "351900000000", "https://example/messages", Map.of("to", "351900000000"));
+        journal.acknowledge(delivered);
+        // no shutdown: simulates the process being killed
+
+        OutboxJournal restarted = open();
+        List<OutboxJournal.Entry> telegram = restarted.takeRecovered("telegram");
+        assertThat(telegram).extracting(OutboxJournal.Entry::id).containsExactly(lost);
+        assertThat(telegram.get(0).body()).containsEntry("text", "second");
+        assertThat(telegram.get(0).target()).isEqualTo("/sendMessage");
+        assertThat(restarted.takeRecovered("whatsapp")).extracting(OutboxJournal.Entry::id).containsExactly(other);
+        assertThat(restarted.takeRecovered("telegram")).isEmpty();
+        assertThat(restarted.append("telegram", "42", "/sendMessage", Map.of("text", "third"))).isGreaterThan(other);
+    }
+
+    @Test
+    void acknowledgedEntriesAreNotReplayed() {
+        OutboxJournal journal = open();
+        for (int i = 0; i < 100; i++) {
+            journal.acknowledge(journal.append("messenger", "psid", null, Map.of("text", "message " + i)));
+        }
+        journal.shutdown();
+
+        assertThat(open().takeRecovered("messenger")).isEmpty();
+    }
+
+    @Test
+    void entriesReplayedTooOftenAreDropped() {
+        OutboxJournal journal = open();
+        long retried = journal.append("telegram", "42", "/sendMessage", Map.of("text", "again"), 2);
+        long exhausted = journal.append("telegram", "42", "/sendMessage", Map.of("text", "poison"), 3);
+
+        OutboxJournal restarted = open();
+        assertThat(restarted.takeRecovered("telegram")).extracting(OutboxJournal.Entry::id, OutboxJournal.Entry::replays)
+                .containsExactly(tuple(retried, 2));
+
+        assertThat(open().takeRecovered("telegram")).extracting(OutboxJournal.Entry::id).containsExactly(retried);
+    }
+
+    @Test
+    void disabledJournalDoesNothing() {
+        OutboxProperties properties = new OutboxProperties();
+        properties.setDirectory(directory.toString());
+        OutboxJournal journal = new OutboxJournal(properties, new ObjectMapper(), new SimpleMeterRegistry());
+
+        assertThat(journal.append("telegram", "42", "/sendMessage", Map.of())).isEqualTo(-1L);
+        assertThat(journal.takeRecovered("telegram")).isEmpty();
+        assertThat(directory.toFile().list()).isEmpty();
+    }
+
+    private OutboxJournal open() {
+        OutboxProperties properties = new OutboxProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(directory.toString());
+        properties.setSegmentSizeMb(1);
+        return new OutboxJournal(properties, new ObjectMapper(), new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,131 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.service.PacedSendQueue.Outcome;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PacedSendQueueTest {
+
+    @Test
+    void messagesForOneRecipientKeepTheirOrderAcrossRetries() throws Exception {
+        List<Integer> sent = new CopyOnWriteArrayList<>();
+        AtomicInteger throttled = new AtomicInteger();
+        PacedSendQueue<Integer> queue = new PacedSendQueue<>("test",
+                new TokenBucket(1_000, 100), () -> new TokenBucket(1_000, 10), 3, 100,
+                (message, attempt) -> {
+                    if (message == 3 && attempt == 1) {
+                        throttled.incrementAndGet();
+                        return CompletableFuture.completedFuture(Outcome.retryAfter(50));
+                    }
+                    sent.add(message);
+                    return CompletableFuture.completedFuture(Outcome.delivered());
+                },
+                new SimpleMeterRegistry());
+        try {
+            List<CompletableFuture<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                results.add(queue.submit("chat", i));
+            }
+
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+            assertThat(results).allMatch(CompletableFuture::join);
+            assertThat(sent).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+            assertThat(throttled).hasValue(1);
+            assertThat(queue.queuedMessages()).isZero();
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void recipientRateIsEnforced() throws Exception {
+        List<Long> sentAt = new CopyOnWriteArrayList<>();
+        PacedSendQueue<Integer> queue = new PacedSendQueue<>("test",
+                new TokenBucket(1_000, 100), () -> new TokenBucket(20, 1), 1, 100,
+                (message, attempt) -> {
+                    sentAt.add(System.nanoTime());
+                    return CompletableFuture.completedFuture(Outcome.delivered());
+                },
+                new SimpleMeterRegistry());
+        try {
+            long startedAt = System.nanoTime();
+            List<CompletableFuture<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                results.add(queue.submit("chat", i));
+            }
+
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+            // The first permit is free, each of the other four waits a 50 ms interval.
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(sentAt.get(4) - startedAt);
+            assertThat(elapsedMs).isGreaterThanOrEqualTo(200);
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void failedMessagesAreReportedWithoutRetry() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        PacedSendQueue<String> queue = new PacedSendQueue<>("test",
+                new TokenBucket(1_000, 100), () -> new TokenBucket(1_000, 10), 5, 100,
+                (message, attempt) -> {
+                    attempts.incrementAndGet();
+                    return CompletableFuture.completedFuture(Outcome.failed());
+                },
+                new SimpleMeterRegistry());
+        try {
+            assertThat(queue.submit("chat", "hello").get(5, TimeUnit.SECONDS)).isFalse();
+            assertThat(attempts).hasValue(1);
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void submitsBeyondTheBoundAreRejected() throws Exception {
+        CompletableFuture<Outcome> blocked = new CompletableFuture<>();
+        PacedSendQueue<Integer> queue = new PacedSendQueue<>("test",
+                new TokenBucket(1_000, 100), () -> new TokenBucket(1_000, 10), 1, 2,
+                (message, attempt) -> blocked,
+                new SimpleMeterRegistry());
+        try {
+            CompletableFuture<Boolean> first = queue.submit("chat", 1);
+            CompletableFuture<Boolean> second = queue.submit("chat", 2);
+            CompletableFuture<Boolean> third = queue.submit("chat", 3);
+
+            assertThat(third.get(5, TimeUnit.SECONDS)).isFalse();
+            assertThat(first).isNotDone();
+            assertThat(second).isNotDone();
+            assertThat(queue.queuedMessages()).isEqualTo(2);
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void shutdownIsToldApartFromFinalResults() throws Exception {
+        CompletableFuture<Outcome> blocked = new CompletableFuture<>();
+        PacedSendQueue<Integer> queue = new PacedSendQueue<>("test",
+                new TokenBucket(1_000, 100), () -> new TokenBucket(1_000, 10), 1, 2,
+                (message, attempt) -> blocked,
+                new SimpleMeterRegistry());
+        queue.enqueue("chat", 1);
+        CompletableFuture<PacedSendQueue.Result> queued = queue.enqueue("chat", 2);
+        CompletableFuture<PacedSendQueue.Result> rejected = queue.enqueue("chat", 3);
+
+        queue.shutdown();
+
+        assertThat(rejected.get(5, TimeUnit.SECONDS)).isEqualTo(PacedSendQueue.Result.REJECTED);
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo(PacedSendQueue.Result.STOPPED);
+        assertThat(queue.enqueue("chat", 4).get(5, TimeUnit.SECONDS)).isEqualTo(PacedSendQueue.Result.STOPPED);
+    }
+}
@@ -0,0 +1,71 @@
+package com.selfservice.application.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecentIdWindowTest {
+
+    @Test
+    void repeatedIdIsReportedWithinWindow() {
+        RecentIdWindow window = new RecentIdWindow(8, Duration.ofSeconds(10));
+
+        assertThat(window.firstSeen(1001L, 0L)).isTrue();
+        assertThat(window.firstSeen(1001L, 1_000L)).isFalse();
+        assertThat(window.firstSeen(1002L, 2_000L)).isTrue();
+    }
+
+    @Test
+    void idIsForgottenOnceWindowElapses() {
+        RecentIdWindow window = new RecentIdWindow(8, Duration.ofNanos(100));
+
+        assertThat(window.firstSeen(7L, 0L)).isTrue();
+        assertThat(window.firstSeen(7L, 101L)).isTrue();
+        assertThat(window.size()).isEqualTo(1);
+    }
+
+    @Test
+    void oldestIdIsEvictedWhenFull() {
+        RecentIdWindow window = new RecentIdWindow(3, Duration.ofSeconds(10));
+
+        for (long id = 1; id <= 4; id++) {
+            assertThat(window.firstSeen(id, id)).isTrue();
+        }
+
+        assertThat(window.firstSeen(1L, 5L)).isTrue();
+        assertThat(window.firstSeen(4L, 6L)).isFalse();
+        assertThat(window.size()).isEqualTo(3);
+    }
+
+    @Test
+    void forgottenIdRecordedAgainSurvivesEvictionOfItsOldSlot() {
+        RecentIdWindow window = new RecentIdWindow(3, Duration.ofSeconds(10));
+        window.firstSeen(1L, 1L);
+        window.firstSeen(2L, 2L);
+
+        window.forget(1L);
+        assertThat(window.size()).isEqualTo(1);
+        assertThat(window.firstSeen(1L, 3L)).isTrue();
+        // Fills the ring, so the forgotten first slot of 1 is evicted
+        assertThat(window.firstSeen(3L, 4L)).isTrue();
+        assertThat(window.firstSeen(4L, 5L)).isTrue();
+
+        assertThat(window.firstSeen(1L, 6L)).isFalse();
+        assertThat(window.size()).isEqualTo(3);
+    }
+
+    @Test
+    void forgettingNewestIdFreesItsSlot() {
+        RecentIdWindow window = new RecentIdWindow(2, Duration.ofSeconds(10));
+        window.firstSeen(1L, 1L);
+        window.firstSeen(2L, 2L);
+
+        window.forget(2L);
+        window.firstSeen(3L, 3L);
+
+        assertThat(window.firstSeen(1L, 4L)).isFalse();
+        assertThat(window.size()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,108 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.ApimanEndpointsProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestHedgerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ApimanEndpointsProperties properties = properties();
+    private final RequestHedger hedger = new RequestHedger(properties, registry);
+    private final EndpointGuards.Guard guard = new EndpointGuards(properties, registry)
+            .guardFor("https://apiman.example/findUser/1.0");
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @AfterEach
+    void stop() {
+        hedger.shutdown();
+    }
+
+    @Test
+    void noHedgeUntilLatenciesAreKnown() {
+        CommonApiService.ApiResponse response = hedger.run(guard, () -> slowThenFast(200));
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void slowCallIsHedgedAndFasterAnswerWins() {
+        warmUp();
+
+        CommonApiService.ApiResponse response = hedger.run(guard, () -> slowThenFast(2_000));
+
+        assertThat(response.body()).isEqualTo("attempt 2");
+        assertThat(registry.get("apiman.hedge.won").tag("endpoint", "find-user").functionCounter().count())
+                .isEqualTo(1.0);
+        assertThat(registry.get("apiman.hedge.win.rate").tag("endpoint", "find-user").gauge().value())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    void failedAttemptIsAnsweredWithStatusZero() {
+        warmUp();
+
+        CommonApiService.ApiResponse response = hedger.run(guard, () -> {
+            throw new IllegalStateException("boom");
+        });
+
+        assertThat(response.success()).isFalse();
+        assertThat(response.statusCode()).isZero();
+        assertThat(response.errorMessage()).isEqualTo("IllegalStateException: boom");
+    }
+
+    @Test
+    void budgetLimitsHedges() {
+        properties.getHedging().setBudgetPercent(0);
+        // The slow calls' own latencies must not lift the delay above them
+        properties.getHedging().setPercentile(50);
+        RequestHedger stingy = new RequestHedger(properties, new SimpleMeterRegistry());
+        for (int i = 0; i < RequestHedger.WINDOW; i++) {
+            stingy.recordLatency("find-user", 10);
+        }
+        int hedges = 0;
+        for (int i = 0; i < 12; i++) {
+            attempts.set(0);
+            stingy.run(guard, () -> slowThenFast(100));
+            hedges += attempts.get() - 1;
+        }
+        stingy.shutdown();
+
+        assertThat(hedges).isEqualTo(10);
+    }
+
+    private void warmUp() {
+        for (int i = 0; i < RequestHedger.MIN_SAMPLES; i++) {
+            hedger.recordLatency("find-user", 10);
+        }
+    }
+
+    /** The first attempt takes {@code firstMs}; later ones answer at once. */
+    private CommonApiService.ApiResponse slowThenFast(long firstMs) {
+        int attempt = attempts.incrementAndGet();
+        if (attempt == 1) {
+            try {
+                Thread.sleep(firstMs);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return new CommonApiService.ApiResponse(true, 200, new HttpHeaders(), "attempt " + attempt, null);
+    }
+
+    private static ApimanEndpointsProperties properties() {
+        ApimanEndpointsProperties properties = new ApimanEndpointsProperties();
+        ApimanEndpointsProperties.Endpoint findUser = new ApimanEndpointsProperties.Endpoint();
+        findUser.setUrl("https://apiman.example/findUser/1.0");
+        properties.setFindUser(findUser);
+        properties.getHedging().setEnabled(true);
+        return properties;
+    }
+}
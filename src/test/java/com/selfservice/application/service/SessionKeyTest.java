@@ -0,0 +1,42 @@
+package com.selfservice.application.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SessionKeyTest {
+
+    @Test
+    void telegramGroupIdSurvivesPacking() {
+        SessionKey key = SessionKey.telegram(-1001234567890L);
+
+        SessionKey restored = SessionKey.fromPacked(key.packed());
+
+        assertThat(restored.channel()).isEqualTo(SessionKey.Channel.TELEGRAM);
+        assertThat(restored.id()).isEqualTo(-1001234567890L);
+        assertThat(restored).isEqualTo(key);
+    }
+
+    @Test
+    void whatsappIdIsReadAsPhoneNumber() {
+        SessionKey key = SessionKey.whatsapp("+351912345678");
+
+        assertThat(key.channel()).isEqualTo(SessionKey.Channel.WHATSAPP);
+        assertThat(key.id()).isEqualTo(351912345678L);
+        assertThat(key).isEqualTo(SessionKey.whatsapp("351912345678"));
+        assertThat(key.toString()).isEqualTo("whatsapp:351912345678");
+    }
+
+    @Test
+    void sameIdOnTwoChannelsIsTwoKeys() {
+        assertThat(SessionKey.telegram(351912345678L).equals(SessionKey.whatsapp("351912345678"))).isFalse();
+    }
+
+    @Test
+    void whatsappIdThatIsNotANumberIsRejected() {
+        assertThatThrownBy(() -> SessionKey.whatsapp("alice")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SessionKey.whatsapp("+")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SessionKey.whatsapp("1234567890123456")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,172 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.SessionSnapshotProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SessionSnapshotLogTest {
+
+    private static final String KEY = Base64.getEncoder().encodeToString(new byte[32]);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restoresSessionsWrittenBeforeShutdown() {
+        TestStore first = new TestStore();
+        SessionSnapshotLog<String, TestSession> log = open(first, KEY);
+        log.restore(first::install);
+        first.use("alice", "en");
+        first.use("bob", "pt");
+        log.flush(System.currentTimeMillis());
+        first.use("alice", "fr");
+        log.shutdown();
+
+        TestStore second = new TestStore();
+        open(second, KEY).restore(second::install);
+
+        assertThat(second.sessions).hasSize(2);
+        assertThat(second.sessions.get("alice").language).isEqualTo("fr");
+        assertThat(second.sessions.get("bob").language).isEqualTo("pt");
+    }
+
+    @Test
+    void removedSessionIsNotRestored() {
+        TestStore first = new TestStore();
+        SessionSnapshotLog<String, TestSession> log = open(first, KEY);
+        log.restore(first::install);
+        first.use("alice", "en");
+        first.use("bob", "pt");
+        log.flush(System.currentTimeMillis());
+        first.sessions.remove("bob");
+        log.changed("bob");
+        log.shutdown();
+
+        TestStore second = new TestStore();
+        open(second, KEY).restore(second::install);
+
+        assertThat(second.sessions).hasSize(1);
+        assertThat(second.sessions.get("bob")).isNull();
+    }
+
+    @Test
+    void snapshotWrittenWithAnotherKeyIsRejected() {
+        TestStore first = new TestStore();
+        SessionSnapshotLog<String, TestSession> log = open(first, KEY);
+        log.restore(first::install);
+        first.use("alice", "en");
+        log.shutdown();
+
+        byte[] other = new byte[32];
+        other[0] = 1;
+        TestStore second = new TestStore();
+        SessionSnapshotLog<String, TestSession> reopened =
+                open(second, Base64.getEncoder().encodeToString(other));
+
+        assertThatThrownBy(() -> reopened.restore(second::install)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void disabledSnapshotDoesNothing() {
+        SessionSnapshotProperties properties = new SessionSnapshotProperties();
+        properties.setDirectory(directory.toString());
+        TestStore store = new TestStore();
+        SessionSnapshotLog<String, TestSession> log = new SessionSnapshotLog<>("test", properties, new TestCodec(), store);
+
+        log.restore(store::install);
+        store.use("alice", "en");
+        log.shutdown();
+
+        assertThat(log.isEnabled()).isFalse();
+        assertThat(directory.toFile().list()).isEmpty();
+    }
+
+    private SessionSnapshotLog<String, TestSession> open(TestStore store, String key) {
+        SessionSnapshotProperties properties = new SessionSnapshotProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(directory.toString());
+        properties.setEncryptionKey(key);
+        properties.setFileSizeMb(1);
+        return new SessionSnapshotLog<>("test", properties, new TestCodec(), store);
+    }
+
+    private static final class TestSession extends IdleSessionSweeper.Tracked {
+        private final String id;
+        private volatile String language;
+
+        private TestSession(String id) {
+            this.id = id;
+        }
+    }
+
+    private static final class TestStore implements SessionSnapshotLog.Store<String, TestSession> {
+        private final Map<String, TestSession> sessions = new LinkedHashMap<>();
+        private final IdleSessionSweeper<TestSession> sweeper = new IdleSessionSweeper<>("test",
+                Duration.ofMinutes(30), Duration.ofSeconds(15), 100, session -> false, new SimpleMeterRegistry());
+
+        void use(String id, String language) {
+            TestSession session = sessions.computeIfAbsent(id, TestSession::new);
+            session.language = language;
+            sweeper.touch(session, System.currentTimeMillis());
+        }
+
+        void install(TestSession session, long lastAccessMs) {
+            sessions.put(session.id, session);
+            sweeper.restore(session, lastAccessMs);
+        }
+
+        @Override
+        public TestSession get(String id) {
+            return sessions.get(id);
+        }
+
+        @Override
+        public void forEach(Consumer<TestSession> visitor) {
+            sessions.values().forEach(visitor);
+        }
+    }
+
+    private static final class TestCodec implements SessionSnapshotLog.Codec<String, TestSession> {
+
+        @Override
+        public String keyOf(TestSession session) {
+            return session.id;
+        }
+
+        @Override
+        public void writeKey(DataOutput out, String key) throws IOException {
+            SessionSnapshotLog.writeString(out, key);
+        }
+
+        @Override
+        public String readKey(DataInput in) throws IOException {
+            return SessionSnapshotLog.readString(in);
+        }
+
+        @Override
+        public void writeSession(DataOutput out, TestSession session) throws IOException {
+            SessionSnapshotLog.writeString(out, session.language);
+        }
+
+        @Override
+        public TestSession readSession(DataInput in, String key) throws IOException {
+            TestSession session = new TestSession(key);
+            session.language = SessionSnapshotLog.readString(in);
+            return session;
+        }
+    }
+}
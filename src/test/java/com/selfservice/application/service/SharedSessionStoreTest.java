@@ -0,0 +1,176 @@
+package com.selfservice.application.service;
+
+import com.selfservice.application.config.SessionStoreProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SharedSessionStoreTest {
+
+    private static final byte[] SECRET = new byte[16];
+
+    @TempDir
+    Path directory;
+
+    private final IdleSessionSweeper<TestSession> sweeper = new IdleSessionSweeper<>("test",
+            Duration.ofMinutes(30), Duration.ofSeconds(15), 100, session -> false, new SimpleMeterRegistry());
+
+    @Test
+    void changeOnOneNodeIsSeenByAnother() {
+        SharedSessionStore<String, TestSession> first = node();
+        SharedSessionStore<String, TestSession> second = node();
+
+        use(first.getOrCreate("alice"), "en");
+        first.flush(System.currentTimeMillis());
+
+        assertThat(second.get("alice").language).isEqualTo("en");
+
+        use(second.get("alice"), "pt");
+        second.flush(System.currentTimeMillis());
+
+        assertThat(first.get("alice").language).isEqualTo("pt");
+    }
+
+    @Test
+    void staleCopyLosesToNewerWrite() {
+        SharedSessionStore<String, TestSession> first = node();
+        SharedSessionStore<String, TestSession> second = node();
+        use(first.getOrCreate("alice"), "en");
+        first.flush(System.currentTimeMillis());
+        TestSession stale = second.get("alice");
+
+        use(first.get("alice"), "fr");
+        first.flush(System.currentTimeMillis());
+        stale.language = "de";
+        sweeper.touch(stale, System.currentTimeMillis());
+        second.flush(System.currentTimeMillis());
+
+        assertThat(second.get("alice").language).isEqualTo("fr");
+        assertThat(first.get("alice").language).isEqualTo("fr");
+    }
+
+    @Test
+    void removalDeletesTheSharedRecord() {
+        SharedSessionStore<String, TestSession> first = node();
+        SharedSessionStore<String, TestSession> second = node();
+        TestSession session = first.getOrCreate("alice");
+        use(session, "en");
+        first.flush(System.currentTimeMillis());
+
+        assertThat(first.remove("alice", session)).isTrue();
+
+        assertThat(second.get("alice")).isNull();
+    }
+
+    @Test
+    void readingWithoutChangesWritesNothing() throws IOException {
+        FileSessionBackend backend = new FileSessionBackend(directory, SECRET);
+        SharedSessionStore<String, TestSession> first = node();
+        SharedSessionStore<String, TestSession> second = node();
+        use(first.getOrCreate("alice"), "en");
+        first.flush(System.currentTimeMillis());
+        long version = backend.version("test", "alice");
+
+        sweeper.touch(second.get("alice"), System.currentTimeMillis());
+        second.flush(System.currentTimeMillis());
+
+        assertThat(backend.version("test", "alice")).isEqualTo(version);
+    }
+
+    @Test
+    void replacedCopyIsRetiredFromTheSweeper() {
+        SharedSessionStore<String, TestSession> first = node();
+        SharedSessionStore<String, TestSession> second = node();
+        use(first.getOrCreate("alice"), "en");
+        first.flush(System.currentTimeMillis());
+        TestSession replaced = second.get("alice");
+        sweeper.touch(replaced, System.currentTimeMillis());
+        int active = sweeper.activeSessions();
+
+        use(first.get("alice"), "fr");
+        first.flush(System.currentTimeMillis());
+        TestSession reloaded = second.get("alice");
+
+        assertThat(reloaded).isNotSameAs(replaced);
+        assertThat(replaced.isRetired()).isTrue();
+        assertThat(sweeper.activeSessions()).isEqualTo(active - 1);
+    }
+
+    @Test
+    void fileNamesAreKeyedByTheSecret() throws IOException {
+        FileSessionBackend backend = new FileSessionBackend(directory, SECRET);
+        long version = backend.write("test", "447700900001", SharedSessionBackend.ABSENT, new byte[] {1});
+
+        assertThat(backend.version("test", "447700900001")).isEqualTo(version);
+        assertThat(new FileSessionBackend(directory, new byte[] {1, 2, 3}).version("test", "447700900001"))
+                .isEqualTo(SharedSessionBackend.ABSENT);
+    }
+
+    private SharedSessionStore<String, TestSession> node() {
+        SessionStoreProperties properties = new SessionStoreProperties();
+        properties.setType(SessionStoreProperties.Type.FILE);
+        properties.setEncryptionKey(Base64.getEncoder().encodeToString(SECRET));
+        properties.setNearCacheTtlMillis(0);
+        return new SharedSessionStore<>("test", new FileSessionBackend(directory, SECRET), properties, new TestCodec(),
+                TestSession::new, this::retire, new SimpleMeterRegistry());
+    }
+
+    private void retire(TestSession session) {
+        synchronized (session) {
+            sweeper.retire(session);
+        }
+    }
+
+    private void use(TestSession session, String language) {
+        session.language = language;
+        sweeper.touch(session, System.currentTimeMillis());
+    }
+
+    private static final class TestSession extends IdleSessionSweeper.Tracked {
+        private final String id;
+        private volatile String language;
+
+        private TestSession(String id) {
+            this.id = id;
+        }
+    }
+
+    private static final class TestCodec implements SessionSnapshotLog.Codec<String, TestSession> {
+
+        @Override
+        public String keyOf(TestSession session) {
+            return session.id;
+        }
+
+        @Override
+        public void writeKey(DataOutput out, String key) throws IOException {
+            SessionSnapshotLog.writeString(out, key);
+        }
+
+        @Override
+        public String readKey(DataInput in) throws IOException {
+            return SessionSnapshotLog.readString(in);
+        }
+
+        @Override
+        public void writeSession(DataOutput out, TestSession session) throws IOException {
+            SessionSnapshotLog.writeString(out, session.language);
+        }
+
+        @Override
+        public TestSession readSession(DataInput in, String key) throws IOException {
+            TestSession session = new TestSession(key);
+            session.language = SessionSnapshotLog.readString(in);
+            return session;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.selfservice.application.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SingleFlight<String, String> flights = new SingleFlight<>("test", registry);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void overlappingCallsShareOneExecution() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> flights.run("services:A1", () -> {
+            started.countDown();
+            await(release);
+            return "v" + calls.incrementAndGet();
+        }));
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(
+                () -> flights.run("services:A1", () -> "v" + calls.incrementAndGet()));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (registry.counter("single.flight.shared", "name", "test").count() < 1 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        assertThat(leader.get(1, TimeUnit.SECONDS)).isEqualTo("v1");
+        assertThat(follower.get(1, TimeUnit.SECONDS)).isEqualTo("v1");
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void finishedCallIsRunAgain() {
+        flights.run("services:A1", () -> "v" + calls.incrementAndGet());
+
+        assertThat(flights.run("services:A1", () -> "v" + calls.incrementAndGet())).isEqualTo("v2");
+        assertThat(flights.inFlight()).isZero();
+    }
+
+    @Test
+    void failureIsRethrownAndForgotten() {
+        assertThatThrownBy(() -> flights.run("services:A1", () -> {
+            throw new IllegalStateException("APIMAN down");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(flights.run("services:A1", () -> "ok")).isEqualTo("ok");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.selfservice.application.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripedLongMapTest {
+
+    @Test
+    void behavesLikeAHashMapUnderRandomOperations() {
+        StripedLongMap<String> map = new StripedLongMap<>(4);
+        Map<Long, String> reference = new HashMap<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000) - 2_500L;
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(key)).isEqualTo(reference.remove(key));
+            } else {
+                String value = "v" + key;
+                assertThat(map.computeIfAbsent(key, k -> value)).isEqualTo(reference.computeIfAbsent(key, k -> value));
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(reference.size());
+        reference.forEach((key, value) -> assertThat(map.get(key)).isEqualTo(value));
+        Map<Long, String> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertThat(visited).isEqualTo(reference);
+    }
+
+    @Test
+    void conditionalRemoveOnlyRemovesTheExpectedValue() {
+        StripedLongMap<Object> map = new StripedLongMap<>();
+        Object first = new Object();
+        map.computeIfAbsent(0L, key -> first);
+
+        assertThat(map.remove(0L, new Object())).isFalse();
+        assertThat(map.get(0L)).isSameAs(first);
+        assertThat(map.remove(0L, first)).isTrue();
+        assertThat(map.get(0L)).isNull();
+    }
+}
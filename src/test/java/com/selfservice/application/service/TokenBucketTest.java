@@ -0,0 +1,47 @@
+package com.selfservice.application.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    @Test
+    void burstIsAvailableThenPermitsArePaced() {
+        TokenBucket bucket = new TokenBucket(10, 3);
+        long now = System.nanoTime();
+
+        assertThat(bucket.tryAcquire(now)).isZero();
+        assertThat(bucket.tryAcquire(now)).isZero();
+        assertThat(bucket.tryAcquire(now)).isZero();
+        assertThat(bucket.tryAcquire(now)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    void releaseRestoresTheArrivalTimeThePermitReplaced() {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        long now = System.nanoTime();
+        long later = now + TimeUnit.SECONDS.toNanos(10);
+
+        assertThat(bucket.tryAcquire(later)).isZero();
+        bucket.release();
+
+        // Had the release only moved the bucket back one interval, it would now sit at "later".
+        assertThat(bucket.tryAcquire(now)).isZero();
+    }
+
+    @Test
+    void releaseAfterAPauseGivesBackOneInterval() {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        long now = System.nanoTime();
+
+        assertThat(bucket.tryAcquire(now)).isZero();
+        bucket.pauseUntil(now + TimeUnit.MILLISECONDS.toNanos(300));
+        bucket.release();
+
+        assertThat(bucket.tryAcquire(now + TimeUnit.MILLISECONDS.toNanos(150))).isEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+        assertThat(bucket.tryAcquire(now + TimeUnit.MILLISECONDS.toNanos(200))).isZero();
+    }
+}
@@ -0,0 +1,219 @@
+package com.selfservice.benchmark;
+
+import com.selfservice.application.dto.AccountSummary;
+import com.selfservice.application.dto.ServiceSummary;
+import com.selfservice.application.service.ChatSessionEngine;
+import com.selfservice.telegrambot.service.UserSessionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Per-update session lookups with the old layout (one {@link ConcurrentHashMap} per attribute,
+ * boxed {@code Long} keys) against the consolidated {@link UserSessionService}. Both sides make the
+ * same eight calls with the old and the new method bodies. Run with:
+ *
+ * <pre>
+ * mvn -q test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     -Dexec.args="-cp %classpath com.selfservice.benchmark.UserSessionStoreBenchmark"
+ * </pre>
+ *
+ * Before the JMH run, {@link #main} prints the footprint per session of both layouts, walked with
+ * JOL's {@link GraphLayout} rather than guessed from heap usage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserSessionStoreBenchmark {
+
+    private static final String ROOT_MENU = "home";
+
+    @Param({"10000", "100000"})
+    int chats;
+
+    private LegacySessions legacy;
+    private UserSessionService consolidated;
+
+    @Setup(Level.Trial)
+    public void populate() {
+        legacy = new LegacySessions();
+        consolidated = new UserSessionService();
+        for (long chatId = 1; chatId <= chats; chatId++) {
+            legacy.populate(chatId);
+            populate(consolidated, chatId);
+        }
+    }
+
+    /**
+     * The reads a typical callback performs before rendering a menu.
+     */
+    @Benchmark
+    public void updateLegacy(Blackhole bh) {
+        long chatId = ThreadLocalRandom.current().nextLong(1, chats + 1);
+        bh.consume(legacy.getValidAccessToken(chatId));
+        bh.consume(legacy.getLanguage(chatId));
+        bh.consume(legacy.isOptedIn(chatId));
+        bh.consume(legacy.currentBusinessMenu(chatId, ROOT_MENU));
+        bh.consume(legacy.getMenuContext(chatId));
+        bh.consume(legacy.getContextState(chatId));
+        bh.consume(legacy.getSelectedService(chatId));
+        bh.consume(legacy.getSelectedInvoice(chatId));
+    }
+
+    @Benchmark
+    public void updateConsolidated(Blackhole bh) {
+        long chatId = ThreadLocalRandom.current().nextLong(1, chats + 1);
+        bh.consume(consolidated.getValidAccessToken(chatId));
+        bh.consume(consolidated.getLanguage(chatId));
+        bh.consume(consolidated.isOptedIn(chatId));
+        bh.consume(consolidated.currentBusinessMenu(chatId, ROOT_MENU));
+        bh.consume(consolidated.getMenuContext(chatId));
+        bh.consume(consolidated.getContextState(chatId));
+        bh.consume(consolidated.getSelectedService(chatId));
+        bh.consume(consolidated.getSelectedInvoice(chatId));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        // Lets JOL read the field offsets of record classes such as ContextState on JDK 17.
+        System.setProperty("jol.magicFieldOffset", "true");
+        int sessions = 100_000;
+        LegacySessions legacyStore = new LegacySessions();
+        System.out.printf("legacy layout:       %d bytes/session%n",
+                bytesPerSession(legacyStore, legacyStore::populate, sessions));
+        UserSessionService consolidatedStore = new UserSessionService();
+        System.out.printf("consolidated layout: %d bytes/session%n",
+                bytesPerSession(consolidatedStore, chatId -> populate(consolidatedStore, chatId), sessions));
+
+        new Runner(new OptionsBuilder()
+                .include(UserSessionStoreBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    private static void populate(UserSessionService store, long chatId) {
+        store.save(chatId, "access-" + chatId, "refresh-" + chatId, "id-" + chatId, 3_600, "exchange");
+        store.saveAccounts(chatId, List.of(new AccountSummary("ACC" + chatId, "Account")));
+        store.saveServices(chatId, List.of(new ServiceSummary("PRD" + chatId, "Mobile", "0700" + chatId)));
+        store.setLanguage(chatId, "pt");
+        store.setOptIn(chatId, true);
+        store.resetBusinessMenu(chatId, ROOT_MENU);
+        store.updateContext(chatId, "ACC" + chatId, "PRD" + chatId, null);
+    }
+
+    /**
+     * Bytes reachable from {@code store} per session, net of what the empty store already holds.
+     */
+    private static long bytesPerSession(Object store, LongConsumer populate, int sessions) {
+        long empty = GraphLayout.parseInstance(store).totalSize();
+        for (long chatId = 1; chatId <= sessions; chatId++) {
+            populate.accept(chatId);
+        }
+        return (GraphLayout.parseInstance(store).totalSize() - empty) / sessions;
+    }
+
+    /**
+     * The previous UserSessionService layout, reduced to its maps, the same populated values and
+     * the old bodies of the methods the benchmark calls.
+     */
+    private static final class LegacySessions {
+        final Map<Long, ChatSessionEngine.TokenInfo> byChat = new ConcurrentHashMap<>();
+        final Map<Long, List<ServiceSummary>> servicesByChat = new ConcurrentHashMap<>();
+        final Map<Long, ServiceSummary> selectedServiceByChat = new ConcurrentHashMap<>();
+        final Map<Long, Object> ticketsByChat = new ConcurrentHashMap<>();
+        final Map<Long, Object> invoicesByChat = new ConcurrentHashMap<>();
+        final Map<Long, Object> selectedInvoiceByChat = new ConcurrentHashMap<>();
+        final Map<Long, String> invoiceActionsMenuByChat = new ConcurrentHashMap<>();
+        final Map<Long, String> languageByChat = new ConcurrentHashMap<>();
+        final Map<Long, List<String>> menuPathByChat = new ConcurrentHashMap<>();
+        final Map<Long, List<String>> loginMenuPathByChat = new ConcurrentHashMap<>();
+        final Map<Long, Boolean> optInByChat = new ConcurrentHashMap<>();
+        final Map<Long, String> menuContextByChat = new ConcurrentHashMap<>();
+        final Map<Long, Object> pendingFunctionMenusByChat = new ConcurrentHashMap<>();
+        final Map<Long, ChatSessionEngine.ContextState> contextStateByChat = new ConcurrentHashMap<>();
+
+        void populate(long chatId) {
+            List<AccountSummary> accounts = List.of(new AccountSummary("ACC" + chatId, "Account"));
+            byChat.put(chatId, new ChatSessionEngine.TokenInfo("access-" + chatId, "refresh-" + chatId,
+                    "id-" + chatId, System.currentTimeMillis() + 3_600_000L, accounts, null, "exchange"));
+            ServiceSummary service = new ServiceSummary("PRD" + chatId, "Mobile", "0700" + chatId);
+            servicesByChat.put(chatId, List.of(service));
+            selectedServiceByChat.put(chatId, service);
+            languageByChat.put(chatId, "pt");
+            optInByChat.put(chatId, true);
+            menuPathByChat.put(chatId, new ArrayList<>(List.of(ROOT_MENU)));
+            contextStateByChat.put(chatId,
+                    new ChatSessionEngine.ContextState("ACC" + chatId, "PRD" + chatId, null, null));
+        }
+
+        String getValidAccessToken(long chatId) {
+            ChatSessionEngine.TokenInfo ti = byChat.get(chatId);
+            if (ti == null) return null;
+            // 30s safety buffer
+            if (ti.expiryEpochMs <= System.currentTimeMillis() + 30_000) {
+                byChat.remove(chatId);
+                return null;
+            }
+            return ti.accessToken;
+        }
+
+        String getLanguage(long chatId) {
+            return languageByChat.getOrDefault(chatId, "en");
+        }
+
+        boolean isOptedIn(long chatId) {
+            return optInByChat.getOrDefault(chatId, false);
+        }
+
+        String currentBusinessMenu(long chatId, String rootMenuId) {
+            List<String> path = menuPathByChat.compute(chatId, (id, existing) -> {
+                if (existing == null || existing.isEmpty()) {
+                    return new ArrayList<>(List.of(rootMenuId));
+                }
+                return existing;
+            });
+            return path.get(path.size() - 1);
+        }
+
+        String getMenuContext(long chatId) {
+            return menuContextByChat.get(chatId);
+        }
+
+        ChatSessionEngine.ContextState getContextState(long chatId) {
+            return contextStateByChat.get(chatId);
+        }
+
+        ServiceSummary getSelectedService(long chatId) {
+            return selectedServiceByChat.get(chatId);
+        }
+
+        Object getSelectedInvoice(long chatId) {
+            return selectedInvoiceByChat.get(chatId);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.selfservice.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.selfservice.telegrambot.dto.TelegramUpdate;
+import com.selfservice.whatsapp.dto.WhatsappWebhookPayload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the generic {@code Map<String, Object>} binding the webhook controllers used to do
+ * with the typed update records. Run with:
+ *
+ * <pre>
+ * mvn -q test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     -Dexec.args="-cp %classpath com.selfservice.benchmark.WebhookPayloadBindingBenchmark"
+ * </pre>
+ *
+ * The GC profiler is enabled so {@code gc.alloc.rate.norm} reports bytes allocated per update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebhookPayloadBindingBenchmark {
+
+    private static final byte[] TELEGRAM_CALLBACK = ("""
+            {"update_id":871230001,"callback_query":{"id":"4382bfdwdsb323b2d9","from":{"id":123456789,
+            "is_bot":false,"first_name":"Ana","last_name":"Silva","username":"anasilva","language_code":"en"},
+            "message":{"message_id":5120,"from":{"id":987654321,"is_bot":true,"first_name":"Selfservice",
+            "username":"selfservice_bot"},"chat":{"id":123456789,"first_name":"Ana","last_name":"Silva",
+            "username":"anasilva","type":"private"},"date":1718000000,"text":"Choose an option",
+            "reply_markup":{"inline_keyboard":[[{"text":"My services","callback_data":"SELECT_SERVICE"}],
+            [{"text":"My invoices","callback_data":"INVOICE_HISTORY"}],[{"text":"My issues",
+            "callback_data":"MY_ISSUES"}],[{"text":"Logout","callback_data":"LOGOUT"}]]}},
+            "chat_instance":"-7712345678901234567","data":"INVOICE_HISTORY"}}
+            """).getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] WHATSAPP_BATCH = ("""
+            {"object":"whatsapp_business_account","entry":[{"id":"102290129340398","changes":[{"value":{
+            "messaging_product":"whatsapp","metadata":{"display_phone_number":"15550783881",
+            "phone_number_id":"106540352242922"},"contacts":[{"profile":{"name":"Ana Silva"},"wa_id":"447700900001"},
+            {"profile":{"name":"Rui Costa"},"wa_id":"447700900002"}],"messages":[{"from":"447700900001",
+            "id":"wamid.HBgLMTY1MDM4Nzk0MzkVAgASGBQzQTRBNjU5OUFFRTAzODEwMTQ0RgA=","timestamp":"1718000000",
+            "type":"interactive","interactive":{"type":"button_reply","button_reply":{"id":"DIGITAL_LOGIN",
+            "title":"Self Service Login"}}},{"from":"447700900002",
+            "id":"wamid.HBgLMTY1MDM4Nzk0MzkVAgASGBQzQTRBNjU5OUFFRTAzODEwMTQ0RwA=","timestamp":"1718000001",
+            "type":"text","text":{"body":"hello"}}]},"field":"messages"}]}]}
+            """).getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ObjectReader mapReader = mapper.readerFor(new TypeReference<Map<String, Object>>() {
+    });
+    private final ObjectReader telegramReader = mapper.readerFor(TelegramUpdate.class);
+    private final ObjectReader whatsappReader = mapper.readerFor(WhatsappWebhookPayload.class);
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void telegramMapTree(Blackhole bh) throws Exception {
+        Map<String, Object> update = mapReader.readValue(TELEGRAM_CALLBACK);
+        Map<String, Object> callbackQuery = (Map<String, Object>) update.get("callback_query");
+        Map<String, Object> message = (Map<String, Object>) callbackQuery.get("message");
+        Map<String, Object> chat = (Map<String, Object>) message.get("chat");
+        bh.consume(((Number) chat.get("id")).longValue());
+        bh.consume(callbackQuery.get("data"));
+        bh.consume(callbackQuery.get("id"));
+    }
+
+    @Benchmark
+    public void telegramTyped(Blackhole bh) throws Exception {
+        TelegramUpdate update = telegramReader.readValue(TELEGRAM_CALLBACK);
+        bh.consume(update.chatId());
+        bh.consume(update.callbackQuery().data());
+        bh.consume(update.callbackQuery().id());
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void whatsappMapTree(Blackhole bh) throws Exception {
+        Map<String, Object> payload = mapReader.readValue(WHATSAPP_BATCH);
+        for (Map<String, Object> entry : (List<Map<String, Object>>) payload.get("entry")) {
+            for (Map<String, Object> change : (List<Map<String, Object>>) entry.get("changes")) {
+                Map<String, Object> value = (Map<String, Object>) change.get("value");
+                for (Map<String, Object> message : (List<Map<String, Object>>) value.get("messages")) {
+                    bh.consume(message.get("id"));
+                    bh.consume(message.get("from"));
+                    Map<String, Object> interactive = (Map<String, Object>) message.get("interactive");
+                    if (interactive != null) {
+                        bh.consume(((Map<String, Object>) interactive.get("button_reply")).get("id"));
+                    } else {
+                        bh.consume(((Map<String, Object>) message.get("text")).get("body"));
+                    }
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void whatsappTyped(Blackhole bh) throws Exception {
+        WhatsappWebhookPayload payload = whatsappReader.readValue(WHATSAPP_BATCH);
+        for (WhatsappWebhookPayload.Entry entry : payload.entry()) {
+            for (WhatsappWebhookPayload.Change change : entry.changes()) {
+                for (WhatsappWebhookPayload.Message message : change.value().messages()) {
+                    bh.consume(message.id());
+                    bh.consume(message.from());
+                    if (message.interactive() != null) {
+                        bh.consume(message.interactive().replyId());
+                    } else {
+                        bh.consume(message.text().body());
+                    }
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WebhookPayloadBindingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -5,6 +5,7 @@ import com.selfservice.application.dto.ServiceSummary;
 import com.selfservice.application.dto.TroubleTicketSummary;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -44,4 +45,61 @@ class UserSessionServiceTest {
         assertThat(service.getRefreshToken(chatId)).isNull();
         assertThat(service.getIdToken(chatId)).isNull();
     }
+
+    @Test
+    void clearSessionKeepsLoginMenuPosition() {
+        UserSessionService service = new UserSessionService();
+        long chatId = 7L;
+
+        service.enterLoginMenu(chatId, "login-sub", "login-root");
+        service.enterBusinessMenu(chatId, "business-sub", "business-root");
+        service.setOptIn(chatId, true);
+
+        service.clearSession(chatId);
+
+        assertThat(service.currentLoginMenu(chatId, "login-root")).isEqualTo("login-sub");
+        assertThat(service.currentBusinessMenu(chatId, "business-root")).isEqualTo("business-root");
+        assertThat(service.isOptedIn(chatId)).isFalse();
+    }
+
+    @Test
+    void idleSweepKeepsOnlyLanguageAndOptIn() {
+        UserSessionService service = new UserSessionService();
+        long chatId = 9L;
+        long anonymousChatId = 10L;
+
+        service.save(chatId, "token", "refresh", "id-token", 3_600L, "exch-123");
+        service.saveTroubleTickets(chatId, List.of(new TroubleTicketSummary("tt-1", "OPEN", "desc")));
+        service.enterBusinessMenu(chatId, "business-sub", "business-root");
+        service.setLanguage(chatId, "pt");
+        service.setOptIn(chatId, true);
+        service.saveTroubleTickets(anonymousChatId, List.of(new TroubleTicketSummary("tt-2", "OPEN", "desc")));
+
+        service.sweepIdleSessions(System.currentTimeMillis() + Duration.ofMinutes(31).toMillis());
+
+        assertThat(service.getValidAccessToken(chatId)).isNull();
+        assertThat(service.getTroubleTickets(chatId)).isEmpty();
+        assertThat(service.currentBusinessMenu(chatId, "business-root")).isEqualTo("business-root");
+        assertThat(service.getLanguage(chatId)).isEqualTo("pt");
+        assertThat(service.isOptedIn(chatId)).isTrue();
+        assertThat(service.getTroubleTickets(anonymousChatId)).isEmpty();
+    }
+
+    @Test
+    void exchangeIdAttachesOnlyToTheLoginItCameFrom() {
+        UserSessionService service = new UserSessionService();
+        long chatId = 11L;
+
+        service.save(chatId, "token", "refresh", "id-token", 3_600L, null);
+        service.saveAccounts(chatId, List.of(new AccountSummary("acct-1", "Account")));
+        service.saveExchangeId(chatId, "token", "exch-123");
+
+        assertThat(service.getExchangeId(chatId)).isEqualTo("exch-123");
+        assertThat(service.getAccounts(chatId)).hasSize(1);
+
+        service.save(chatId, "newer-token", "refresh", "id-token", 3_600L, null);
+        service.saveExchangeId(chatId, "token", "exch-stale");
+
+        assertThat(service.getExchangeId(chatId)).isNull();
+    }
 }
@@ -1,10 +1,13 @@
 package com.selfservice.whatsapp.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.selfservice.application.auth.KeycloakAuthService;
 import com.selfservice.application.auth.OAuthSessionService;
 import com.selfservice.application.config.ConnectorsProperties;
+import com.selfservice.application.config.WebhookProcessingProperties;
 import com.selfservice.application.config.menu.BusinessMenuConfigurationProvider;
 import com.selfservice.application.config.menu.LoginMenuItem;
+import com.selfservice.application.service.InvoiceDocumentService;
 import com.selfservice.application.service.AccountBalanceService;
 import com.selfservice.application.service.ContextTraceLogger;
 import com.selfservice.application.service.InvoiceService;
@@ -12,8 +15,12 @@ import com.selfservice.application.service.OperationsMonitoringService;
 import com.selfservice.application.service.ProductService;
 import com.selfservice.application.service.ServiceFunctionExecutor;
 import com.selfservice.application.service.TroubleTicketService;
+import com.selfservice.application.service.WebhookDeduplicator;
+import com.selfservice.application.service.WebhookDispatcher;
+import com.selfservice.whatsapp.dto.WhatsappWebhookPayload;
 import com.selfservice.whatsapp.service.WhatsappService;
 import com.selfservice.whatsapp.service.WhatsappSessionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -26,7 +33,9 @@ import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -53,11 +62,14 @@ class WhatsappWebhookControllerTest {
     private ContextTraceLogger contextTraceLogger;
     @Mock
     private AccountBalanceService accountBalanceService;
+    @Mock
+    private InvoiceDocumentService invoiceDocumentService;
 
     private WhatsappSessionService sessionService;
     private OperationsMonitoringService monitoringService;
     private ConnectorsProperties connectorsProperties;
     private WhatsappWebhookController controller;
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     @BeforeEach
     void setUp() {
@@ -65,6 +77,9 @@ class WhatsappWebhookControllerTest {
         monitoringService = new OperationsMonitoringService();
         connectorsProperties = new ConnectorsProperties();
         connectorsProperties.setWhatsapp(true);
+        WebhookProcessingProperties inlineProcessing = new WebhookProcessingProperties();
+        inlineProcessing.setAsync(false);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
         controller = new WhatsappWebhookController(
                 whatsappService,
                 oauthSessionService,
@@ -79,12 +94,16 @@ class WhatsappWebhookControllerTest {
                 menuConfigurationProvider,
                 serviceFunctionExecutor,
                 contextTraceLogger,
-                accountBalanceService);
+                accountBalanceService,
+                new WebhookDispatcher(inlineProcessing, meterRegistry),
+                new WebhookDeduplicator(inlineProcessing, meterRegistry),
+                invoiceDocumentService);
 
-        when(whatsappService.translate(anyString(), anyString()))
+        // Shared by the tests, not all of which reach every stub
+        lenient().when(whatsappService.translate(anyString(), anyString()))
                 .thenAnswer(invocation -> invocation.getArgument(1, String.class));
-        when(whatsappService.loginMenuOptions(anyString())).thenReturn(List.of());
-        when(whatsappService.loginSettingsMenuOptions(anyString())).thenReturn(List.of());
+        lenient().when(whatsappService.loginMenuOptions(anyString())).thenReturn(List.of());
+        lenient().when(whatsappService.loginSettingsMenuOptions(anyString())).thenReturn(List.of());
     }
 
     @Test
@@ -140,12 +159,32 @@ class WhatsappWebhookControllerTest {
         verify(whatsappService).sendLoginMenu(from);
     }
 
-    private Map<String, Object> interactiveReplyPayload(String from, String id, String title) {
-        return Map.of(
+    @Test
+    void onEventIgnoresRedeliveredMessageIds() {
+        String from = "447700900003";
+        String loginUrl = "https://login.example";
+        when(oauthSessionService.buildAuthUrl("WhatsApp", "wa-" + from)).thenReturn(loginUrl);
+        WhatsappWebhookPayload payload = interactiveReplyPayload(from, "wamid.ABC123",
+                WhatsappService.INTERACTIVE_ID_DIGITAL_LOGIN, "Self Service Login");
+
+        controller.onEvent(payload);
+        var response = controller.onEvent(payload);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        verify(whatsappService, times(1)).sendDigitalLoginLink(from, loginUrl);
+    }
+
+    private WhatsappWebhookPayload interactiveReplyPayload(String from, String id, String title) {
+        return interactiveReplyPayload(from, "", id, title);
+    }
+
+    private WhatsappWebhookPayload interactiveReplyPayload(String from, String messageId, String id, String title) {
+        return objectMapper.convertValue(Map.of(
                 "entry", List.of(Map.of(
                         "changes", List.of(Map.of(
                                 "value", Map.of(
                                         "messages", List.of(Map.of(
+                                                "id", messageId,
                                                 "from", from,
                                                 "type", "interactive",
                                                 "interactive", Map.of(
@@ -158,6 +197,6 @@ class WhatsappWebhookControllerTest {
                                 )
                         ))
                 ))
-        );
+        ), WhatsappWebhookPayload.class);
     }
 }
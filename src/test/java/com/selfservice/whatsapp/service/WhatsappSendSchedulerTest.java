@@ -0,0 +1,114 @@
+package com.selfservice.whatsapp.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.selfservice.application.config.OutboxProperties;
+import com.selfservice.application.service.OutboxJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.ResponseCreator;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class WhatsappSendSchedulerTest {
+
+    private static final String URL = "https://graph.example/v19.0/123/messages";
+    private static final String TO = "447700900001";
+
+    private MockRestServiceServer server;
+    private WhatsappSendScheduler scheduler;
+
+    @TempDir
+    Path directory;
+
+    private RestTemplate restTemplate;
+    private OutboxJournal outbox;
+
+    @BeforeEach
+    void setUp() {
+        restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        outbox = journal();
+        scheduler = scheduler(outbox);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void pairRateLimitReportedAsBadRequestIsRetried() throws Exception {
+        server.expect(requestTo(URL)).andRespond(graphError(131056));
+        server.expect(requestTo(URL)).andRespond(withSuccess("{}", MediaType.APPLICATION_JSON));
+
+        assertThat(scheduler.submit(TO, URL, Map.of("to", TO)).get(5, TimeUnit.SECONDS)).isTrue();
+        server.verify();
+    }
+
+    @Test
+    void throughputLimitReportedAsBadRequestIsRetried() throws Exception {
+        server.expect(requestTo(URL)).andRespond(graphError(130429));
+        server.expect(requestTo(URL)).andRespond(withSuccess("{}", MediaType.APPLICATION_JSON));
+
+        assertThat(scheduler.submit(TO, URL, Map.of("to", TO)).get(5, TimeUnit.SECONDS)).isTrue();
+        server.verify();
+    }
+
+    @Test
+    void otherBadRequestsFailWithoutRetry() throws Exception {
+        server.expect(ExpectedCount.once(), requestTo(URL)).andRespond(graphError(100));
+
+        assertThat(scheduler.submit(TO, URL, Map.of("to", TO)).get(5, TimeUnit.SECONDS)).isFalse();
+        server.verify();
+    }
+
+    @Test
+    void permanentlyFailedSendIsNotReplayedAndItsSegmentIsCompacted() throws Exception {
+        server.expect(ExpectedCount.once(), requestTo(URL)).andRespond(graphError(100));
+        assertThat(scheduler.submit(TO, URL, Map.of("to", TO)).get(5, TimeUnit.SECONDS)).isFalse();
+
+        // Fill the first segment with handled messages so the journal moves on to the next one
+        Path first = directory.resolve("outbox-0000000000000001.seg");
+        Map<String, Object> filler = Map.of("text", "x".repeat(1_000));
+        while (Files.exists(first)) {
+            outbox.acknowledge(outbox.append("whatsapp", TO, URL, filler));
+        }
+
+        assertThat(journal().takeRecovered("whatsapp")).isEmpty();
+    }
+
+    private OutboxJournal journal() {
+        OutboxProperties properties = new OutboxProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(directory.toString());
+        properties.setSegmentSizeMb(1);
+        return new OutboxJournal(properties, new ObjectMapper(), new SimpleMeterRegistry());
+    }
+
+    private WhatsappSendScheduler scheduler(OutboxJournal journal) {
+        return new WhatsappSendScheduler(restTemplate, new ObjectMapper(), journal,
+                "token", 1_000, 100, 6_000, 10, 3, 100, 1, 5, 1, new SimpleMeterRegistry());
+    }
+
+    private static ResponseCreator graphError(int code) {
+        return withStatus(HttpStatus.BAD_REQUEST)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body("{\"error\":{\"message\":\"limited\",\"type\":\"OAuthException\",\"code\":" + code + "}}");
+    }
+}